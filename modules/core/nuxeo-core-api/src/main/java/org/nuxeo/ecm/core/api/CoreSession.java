@@ -28,6 +28,7 @@ import java.util.GregorianCalendar;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
+import java.util.stream.Stream;
 
 import org.nuxeo.ecm.core.api.DocumentModel.DocumentModelRefresh;
 import org.nuxeo.ecm.core.api.event.DocumentEventTypes;
@@ -1067,6 +1068,38 @@ public interface CoreSession {
      */
     DocumentModelList query(String query, String queryType, Filter filter, long limit, long offset, long countUpTo);
 
+    /**
+     * Executes the given NXQL query and returns the documents sorted after the given sort key values (keyset
+     * pagination).
+     * <p>
+     * The sort keys are the ones of the ORDER BY clause of the query, followed by {@code ecm:uuid} if it is not already
+     * the last one. The documents are returned in this order, so that the sort key values of the last document of the
+     * result can be used to get the next page, whose cost doesn't depend on its position.
+     *
+     * @param query the query to execute
+     * @param filter the filter to apply to result
+     * @param limit the maximum number of documents to retrieve, or 0 for all of them
+     * @param sortValues the values of the sort keys for the last document of the previous page, which may be
+     *            {@code null} except for {@code ecm:uuid}
+     * @return the query result, without total size
+     * @since 11.5
+     */
+    DocumentModelList queryAfter(String query, Filter filter, long limit, List<Serializable> sortValues);
+
+    /**
+     * Estimates the number of documents matched by the given NXQL query from the repository statistics, without
+     * executing it.
+     * <p>
+     * This is much cheaper than counting on large result sets, but the estimate may be far from the actual count. Only
+     * some backends can estimate counts, for instance PostgreSQL from its planner statistics, or MongoDB for queries
+     * without any restriction.
+     *
+     * @param query the query to estimate
+     * @return the estimated number of documents, or {@code -1} if the repository cannot estimate it
+     * @since 11.5
+     */
+    long queryEstimatedCount(String query);
+
     /**
      * Executes the given query and returns an iterable of maps containing the requested properties (which must be
      * closed when done).
@@ -1138,6 +1171,23 @@ public interface CoreSession {
     PartialList<Map<String, Serializable>> queryProjection(String query, String queryType, boolean distinctDocuments,
             long limit, long offset, long countUpTo, Object... params);
 
+    /**
+     * Executes the given query and returns the results as a stream of maps, lazily fetched from the repository.
+     * <p>
+     * Unlike {@link #queryProjection}, the results are not all kept in memory, which allows processing very large
+     * result sets. The returned stream MUST be closed when no more needed, to release the underlying cursor.
+     *
+     * @param query the query to execute
+     * @param queryType the query type, like "NXQL"
+     * @param distinctDocuments if {@code true} then a maximum of one row per document will be returned
+     * @param batchSize the number of results fetched from the database at a time, or {@code 0} for the default
+     * @param params optional query-type-dependent parameters
+     * @return the query result stream
+     * @since 11.5
+     */
+    Stream<Map<String, Serializable>> queryProjectionStream(String query, String queryType, boolean distinctDocuments,
+            int batchSize, Object... params);
+
     /**
      * Executes the given query and returns the first batch of results containing id of documents, next batch must be
      * requested within the {@code keepAliveSeconds} delay.
@@ -1152,6 +1202,26 @@ public interface CoreSession {
      */
     ScrollResult<String> scroll(String query, int batchSize, int keepAliveSeconds);
 
+    /**
+     * Executes the given query restricted to a partition of the documents and returns the first batch of results
+     * containing id of documents, next batch must be requested within the {@code keepAliveSeconds} delay.
+     * <p>
+     * The partitions are disjoint and together cover all the documents matched by the query, so that they can be
+     * scrolled concurrently. If the document ids are not random (for instance sequences), they cannot be partitioned:
+     * the first partition then holds all the documents and the other ones are empty.
+     *
+     * @param query The NXQL query to execute
+     * @param batchSize The expected result batch size, note that more results can be returned when the backend don't
+     *            implement properly this feature
+     * @param keepAliveSeconds The scroll context lifetime in seconds
+     * @param partition The partition to scroll, from 0 to {@code partitions - 1}
+     * @param partitions The number of partitions
+     * @return A {@link ScrollResult} including the search results and a scroll id, to be passed to the subsequent calls
+     *         to {@link #scroll(String)}
+     * @since 11.5
+     */
+    ScrollResult<String> scroll(String query, int batchSize, int keepAliveSeconds, int partition, int partitions);
+
     /**
      * Get the next batch of results containing id of documents, the {@code scrollId} is part of the previous
      * {@link ScrollResult} response.
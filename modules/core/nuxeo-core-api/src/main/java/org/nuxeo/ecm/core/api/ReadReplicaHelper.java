@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.api;
+
+import java.util.function.Supplier;
+
+/**
+ * Utilities to mark queries as tolerant to the replication lag of read replicas.
+ * <p>
+ * A repository configured with read replicas may run the queries done in the scope of
+ * {@link #runLagTolerant(Supplier)} on a replica, whose results may not include the most recent changes done by other
+ * transactions. The queries of a transaction that already wrote to the repository are never run on a replica.
+ *
+ * @since 11.5
+ */
+public class ReadReplicaHelper {
+
+    private static final ThreadLocal<Boolean> LAG_TOLERATED = new ThreadLocal<>();
+
+    private ReadReplicaHelper() {
+    }
+
+    /**
+     * Calls a {@link Supplier} in a scope where the queries tolerate the replication lag of read replicas.
+     *
+     * @param supplier the supplier
+     * @return the result of the supplier
+     */
+    public static <R> R runLagTolerant(Supplier<R> supplier) {
+        Boolean previous = LAG_TOLERATED.get();
+        LAG_TOLERATED.set(Boolean.TRUE);
+        try {
+            return supplier.get();
+        } finally {
+            if (previous == null) {
+                LAG_TOLERATED.remove();
+            } else {
+                LAG_TOLERATED.set(previous);
+            }
+        }
+    }
+
+    /**
+     * Checks if the current queries tolerate the replication lag of read replicas.
+     */
+    public static boolean isLagTolerated() {
+        return LAG_TOLERATED.get() != null;
+    }
+
+}
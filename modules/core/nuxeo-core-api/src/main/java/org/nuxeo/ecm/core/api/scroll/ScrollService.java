@@ -34,4 +34,11 @@ public interface ScrollService {
      * Returns {@code true} if the requested Scroll implementation exists.
      */
     boolean exists(ScrollRequest request);
+
+    /**
+     * Returns {@code true} if the requested Scroll implementation can scroll a single partition of the result set.
+     *
+     * @since 11.5
+     */
+    boolean supportsPartitions(ScrollRequest request);
 }
@@ -280,4 +280,13 @@ public interface BlobStore {
      */
     BlobStore unwrap();
 
+    /**
+     * Closes this blob store and releases its resources. If this blob store wraps other ones, they are closed too.
+     *
+     * @since 11.5
+     */
+    default void close() {
+        // nothing by default
+    }
+
 }
@@ -24,17 +24,31 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.TeeInputStream;
 import org.nuxeo.common.file.FileCache;
 import org.nuxeo.common.file.LRUFileCache;
+import org.nuxeo.common.file.ShardedLRUFileCache;
+import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
 import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
+import org.nuxeo.ecm.core.blob.binary.ListableBinaryGarbageCollector;
 import org.nuxeo.runtime.trackers.files.FileEventTracker;
 
 /**
  * Blob store wrapper that caches blobs locally because fetching them may be expensive.
+ * <p>
+ * Concurrent cache misses for the same key are de-duplicated: only one of them fetches the blob from the underlying
+ * store, the others wait for it and then use the cached file.
  *
  * @since 11.1
  */
@@ -53,11 +67,24 @@ public class CachingBlobStore extends AbstractBlobStore {
 
     protected final BinaryGarbageCollector gc;
 
+    /**
+     * The fetches from the underlying store in progress, by key. The future holds the cached file, or {@code null} if
+     * the blob is missing.
+     *
+     * @since 11.5
+     */
+    protected final ConcurrentMap<String, CompletableFuture<File>> fetches = new ConcurrentHashMap<>();
+
     public CachingBlobStore(String name, BlobStore store, CachingConfiguration config) {
         super(name, store.getKeyStrategy());
         this.store = store;
         cacheDir = config.dir;
-        fileCache = new LRUFileCache(cacheDir.toFile(), config.maxSize, config.maxCount, config.minAge);
+        if (config.shards > 0) {
+            fileCache = new ShardedLRUFileCache(cacheDir.toFile(), config.maxSize, config.maxCount, config.minAge,
+                    config.shards);
+        } else {
+            fileCache = new LRUFileCache(cacheDir.toFile(), config.maxSize, config.maxCount, config.minAge);
+        }
         // be sure FileTracker won't steal our files
         FileEventTracker.registerProtectedPath(cacheDir.toAbsolutePath().toString());
         tmpPathStrategy = new PathStrategyFlat(cacheDir);
@@ -75,8 +102,20 @@ public class CachingBlobStore extends AbstractBlobStore {
         return store.unwrap();
     }
 
+    @Override
+    public void close() {
+        if (fileCache instanceof ShardedLRUFileCache) {
+            ((ShardedLRUFileCache) fileCache).close();
+        }
+        store.close();
+    }
+
     @Override
     public String writeBlob(BlobWriteContext blobWriteContext) throws IOException {
+        if (blobWriteContext.getFile() == null && blobWriteContext.blobContext.blob.getFile() == null) {
+            // pure stream, don't wait for it to be fully written locally before sending it to storage
+            return writeBlobTee(blobWriteContext);
+        }
         // write the blob to a temporary file
         String tmpKey = tmpStore.writeBlob(blobWriteContext.copyWithKey(randomString()));
         // get the final key
@@ -109,6 +148,98 @@ public class CachingBlobStore extends AbstractBlobStore {
         return returnedKey;
     }
 
+    /**
+     * Writes a blob by sending its stream to storage while also writing it to a temporary file of the cache.
+     * <p>
+     * If storage didn't read the whole stream (for instance because it did a direct copy), the blob isn't cached.
+     *
+     * @since 11.5
+     */
+    protected String writeBlobTee(BlobWriteContext blobWriteContext) throws IOException {
+        Path tmp = tmpPathStrategy.getPathForKey(randomString());
+        TeeBlobWriteContext teeContext = new TeeBlobWriteContext(blobWriteContext, tmp);
+        String returnedKey;
+        try {
+            try {
+                returnedKey = store.writeBlob(teeContext);
+            } finally {
+                teeContext.closeTee();
+            }
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        if (!teeContext.isComplete()) {
+            Files.deleteIfExists(tmp);
+            return returnedKey;
+        }
+        // register the file in the file cache using its actual key
+        logTrace(name, "-->", name, "rename");
+        logTrace("hnote right of " + name + ": " + returnedKey);
+        fileCache.putFile(returnedKey, tmp.toFile());
+        return returnedKey;
+    }
+
+    /**
+     * Write context whose first stream is also copied to a file as it is read.
+     *
+     * @since 11.5
+     */
+    protected static class TeeBlobWriteContext extends BlobWriteContext {
+
+        protected final Path tmp;
+
+        protected OutputStream tee;
+
+        protected boolean complete;
+
+        protected boolean broken;
+
+        public TeeBlobWriteContext(BlobWriteContext blobWriteContext, Path tmp) {
+            super(blobWriteContext.blobContext, blobWriteContext.writeObserver, blobWriteContext.keyComputer,
+                    blobWriteContext.keyStrategy);
+            this.tmp = tmp;
+        }
+
+        @Override
+        public InputStream getStream() throws IOException {
+            InputStream stream = super.getStream();
+            if (tee != null) {
+                // stream read again, the first one is the one cached
+                return stream;
+            }
+            tee = Files.newOutputStream(tmp);
+            return new TeeInputStream(stream, tee, false) {
+
+                @Override
+                protected void afterRead(int n) {
+                    if (n == IOUtils.EOF && !broken) {
+                        complete = true;
+                    }
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    // skipped bytes are not copied
+                    broken = true;
+                    complete = false;
+                    return super.skip(n);
+                }
+            };
+        }
+
+        protected void closeTee() throws IOException {
+            if (tee != null) {
+                tee.close();
+            }
+        }
+
+        /** Checks whether the whole stream was copied to the file. */
+        public boolean isComplete() {
+            return complete;
+        }
+    }
+
     @Override
     public boolean copyBlob(String key, BlobStore sourceStore, String sourceKey, boolean atomicMove)
             throws IOException {
@@ -147,17 +278,10 @@ public class CachingBlobStore extends AbstractBlobStore {
         if (cachedFile == null) {
             logTrace("<--", "missing");
             logTrace("hnote right: " + key);
-            // fetch file from storage into the cache
-            // go through a tmp file for atomicity
-            String tmpKey = randomString();
-            boolean found = tmpStore.copyBlob(tmpKey, store, key, false);
-            if (!found) {
+            cachedFile = fetch(key);
+            if (cachedFile == null) {
                 return OptionalOrUnknown.missing();
             }
-            File tmp = tmpPathStrategy.getPathForKey(tmpKey).toFile();
-            logTrace("->", "write " + tmp.length() + " bytes");
-            logTrace("hnote right: " + key);
-            cachedFile = fileCache.putFile(key, tmp);
         } else {
             logTrace("<-", "read " + cachedFile.length() + " bytes");
             logTrace("hnote right: " + key);
@@ -165,6 +289,65 @@ public class CachingBlobStore extends AbstractBlobStore {
         return OptionalOrUnknown.of(new FileInputStream(cachedFile));
     }
 
+    /**
+     * Fetches a file from storage into the cache, or waits for a concurrent fetch of the same key.
+     *
+     * @return the cached file, or {@code null} if the blob is missing
+     * @since 11.5
+     */
+    protected File fetch(String key) throws IOException {
+        CompletableFuture<File> future = new CompletableFuture<>();
+        CompletableFuture<File> existing = fetches.putIfAbsent(key, future);
+        if (existing != null) {
+            // another thread is fetching it
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException(e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+                throw new NuxeoException(cause);
+            }
+        }
+        try {
+            // check the cache again, a previous fetch may have completed in the meantime
+            File cachedFile = fileCache.getFile(key);
+            if (cachedFile == null) {
+                cachedFile = doFetch(key);
+            }
+            future.complete(cachedFile);
+            return cachedFile;
+        } catch (IOException | RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            fetches.remove(key, future);
+        }
+    }
+
+    /**
+     * Fetches a file from storage into the cache.
+     *
+     * @return the cached file, or {@code null} if the blob is missing
+     * @since 11.5
+     */
+    protected File doFetch(String key) throws IOException {
+        // go through a tmp file for atomicity
+        String tmpKey = randomString();
+        boolean found = tmpStore.copyBlob(tmpKey, store, key, false);
+        if (!found) {
+            return null;
+        }
+        File tmp = tmpPathStrategy.getPathForKey(tmpKey).toFile();
+        logTrace("->", "write " + tmp.length() + " bytes");
+        logTrace("hnote right: " + key);
+        return fileCache.putFile(key, tmp);
+    }
+
     @Override
     public boolean readBlob(String key, Path dest) throws IOException {
         OptionalOrUnknown<InputStream> streamOpt = getStream(key);
@@ -196,7 +379,7 @@ public class CachingBlobStore extends AbstractBlobStore {
     /**
      * Garbage collector that delegates to the underlying one, but purges the cache after an actual GC is done.
      */
-    public class CachingBinaryGarbageCollector implements BinaryGarbageCollector {
+    public class CachingBinaryGarbageCollector implements ListableBinaryGarbageCollector {
 
         protected final BinaryGarbageCollector delegate;
 
@@ -237,5 +420,39 @@ public class CachingBlobStore extends AbstractBlobStore {
         public boolean isInProgress() {
             return delegate.isInProgress();
         }
+
+        /** @since 11.5 */
+        @Override
+        public boolean isListable() {
+            return delegate instanceof ListableBinaryGarbageCollector
+                    && ((ListableBinaryGarbageCollector) delegate).isListable();
+        }
+
+        /** @since 11.5 */
+        protected ListableBinaryGarbageCollector getListableDelegate() {
+            if (!(delegate instanceof ListableBinaryGarbageCollector)) {
+                throw new UnsupportedOperationException("Cannot list blobs of: " + delegate.getId());
+            }
+            return (ListableBinaryGarbageCollector) delegate;
+        }
+
+        /** @since 11.5 */
+        @Override
+        public List<String> getKeyPrefixes() {
+            return getListableDelegate().getKeyPrefixes();
+        }
+
+        /** @since 11.5 */
+        @Override
+        public void listBlobs(String prefix, BlobConsumer consumer) throws IOException {
+            getListableDelegate().listBlobs(prefix, consumer);
+        }
+
+        /** @since 11.5 */
+        @Override
+        public void deleteBlob(String key) {
+            // also purges the cache
+            CachingBlobStore.this.deleteBlob(key);
+        }
     }
 }
@@ -38,12 +38,23 @@ public class CachingConfiguration extends PropertyBasedConfiguration {
 
     public static final String CACHE_MIN_AGE_PROPERTY = "cacheminage";
 
+    /**
+     * The number of segments of the cache. When positive, a {@link org.nuxeo.common.file.ShardedLRUFileCache} with this
+     * number of segments is used, which scales better with many concurrent accesses.
+     *
+     * @since 11.5
+     */
+    public static final String CACHE_SHARDS_PROPERTY = "cacheshards";
+
     public static final String DEFAULT_CACHE_SIZE = "100 mb";
 
     public static final String DEFAULT_CACHE_COUNT = "10000";
 
     public static final String DEFAULT_CACHE_MIN_AGE = "3600"; // 1h
 
+    /** @since 11.5 */
+    public static final String DEFAULT_CACHE_SHARDS = "0";
+
     public final Path dir;
 
     public final long maxSize;
@@ -52,6 +63,13 @@ public class CachingConfiguration extends PropertyBasedConfiguration {
 
     public final long minAge;
 
+    /**
+     * The number of segments of the cache, or 0 for a non-sharded cache.
+     *
+     * @since 11.5
+     */
+    public final int shards;
+
     public CachingConfiguration(String systemPropertyPrefix, Map<String, String> properties) throws IOException {
         super(systemPropertyPrefix, properties);
         dir = Framework.createTempDirectory("nxbincache.");
@@ -61,14 +79,21 @@ public class CachingConfiguration extends PropertyBasedConfiguration {
         maxSize = SizeUtils.parseSizeInBytes(maxSizeProp);
         maxCount = Long.parseLong(maxCountProp);
         minAge = Long.parseLong(minAgeProp);
+        shards = Integer.parseInt(getProperty(CACHE_SHARDS_PROPERTY, DEFAULT_CACHE_SHARDS));
     }
 
     public CachingConfiguration(Path dir, long maxSize, long maxCount, long minAge) {
+        this(dir, maxSize, maxCount, minAge, 0);
+    }
+
+    /** @since 11.5 */
+    public CachingConfiguration(Path dir, long maxSize, long maxCount, long minAge, int shards) {
         super(null, null);
         this.dir = dir;
         this.maxSize = maxSize;
         this.maxCount = maxCount;
         this.minAge = minAge;
+        this.shards = shards;
     }
 
 }
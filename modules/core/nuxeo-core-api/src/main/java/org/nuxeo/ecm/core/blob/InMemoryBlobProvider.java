@@ -55,7 +55,7 @@ public class InMemoryBlobProvider extends BlobStoreBlobProvider {
 
     @Override
     public void close() {
-        // nothing
+        store.close();
     }
 
     @Override
@@ -31,6 +31,7 @@ import java.util.Iterator;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Random;
+import java.util.TreeMap;
 import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.io.FileUtils;
@@ -39,6 +40,7 @@ import org.apache.commons.lang3.mutable.MutableObject;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.ListableBinaryGarbageCollector;
 import org.nuxeo.runtime.api.Framework;
 
 /**
@@ -248,7 +250,8 @@ public class InMemoryBlobStore extends AbstractBlobStore {
         return gc;
     }
 
-    public class InMemoryBlobGarbageCollector extends AbstractBlobGarbageCollector {
+    public class InMemoryBlobGarbageCollector extends AbstractBlobGarbageCollector
+            implements ListableBinaryGarbageCollector {
 
         @Override
         public String getId() {
@@ -274,6 +277,22 @@ public class InMemoryBlobStore extends AbstractBlobStore {
                 }
             }
         }
+
+        /** @since 11.5 */
+        @Override
+        public void listBlobs(String prefix, BlobConsumer consumer) {
+            new TreeMap<>(map).forEach((key, bytes) -> {
+                if (key.startsWith(prefix)) {
+                    consumer.accept(key, bytes.length, 0);
+                }
+            });
+        }
+
+        /** @since 11.5 */
+        @Override
+        public void deleteBlob(String key) {
+            InMemoryBlobStore.this.deleteBlob(key);
+        }
     }
 
 }
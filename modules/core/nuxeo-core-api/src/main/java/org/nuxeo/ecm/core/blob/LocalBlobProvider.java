@@ -62,7 +62,7 @@ public class LocalBlobProvider extends BlobStoreBlobProvider {
 
     @Override
     public void close() {
-        // nothing to do
+        store.close();
     }
 
     @Override
@@ -26,15 +26,22 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Predicate;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
 import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
+import org.nuxeo.ecm.core.blob.binary.ListableBinaryGarbageCollector;
 
 /**
  * Blob storage as files on a local filesystem. The actual storage path chosen for a given key is decided based on a
@@ -218,7 +225,7 @@ public class LocalBlobStore extends AbstractBlobStore {
         return gc;
     }
 
-    public class LocalBlobGarbageCollector implements BinaryGarbageCollector {
+    public class LocalBlobGarbageCollector implements ListableBinaryGarbageCollector {
 
         /**
          * Windows FAT filesystems have a time resolution of 2s. Other common filesystems have 1s.
@@ -302,6 +309,91 @@ public class LocalBlobStore extends AbstractBlobStore {
             }
         }
 
+        /** @since 11.5 */
+        @Override
+        public List<String> getKeyPrefixes() {
+            if (keyStrategy.useDeDuplication()) {
+                return HEX_PREFIXES;
+            }
+            return ListableBinaryGarbageCollector.super.getKeyPrefixes();
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * Only the directories that may contain keys with the given prefix are walked. The entries of each directory
+         * are sorted by name and walked in that order, so that the blobs are listed as they are found. As the
+         * subdirectories are named after the first characters of the keys, this gives the key order.
+         *
+         * @since 11.5
+         */
+        @Override
+        public void listBlobs(String prefix, BlobConsumer consumer) throws IOException {
+            Path root = pathStrategy.dir;
+            if (!Files.isDirectory(root)) {
+                return;
+            }
+            listBlobs(root, "", prefix, getValidKeyPredicate(), consumer);
+        }
+
+        /**
+         * Lists the blobs of a directory in key order.
+         *
+         * @param dir the directory
+         * @param dirPrefix the key prefix corresponding to the directory
+         * @since 11.5
+         */
+        protected void listBlobs(Path dir, String dirPrefix, String prefix, Predicate<String> validKey,
+                BlobConsumer consumer) throws IOException {
+            List<String> names = new ArrayList<>();
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                ds.forEach(path -> names.add(path.getFileName().toString()));
+            } catch (NoSuchFileException e) {
+                // deleted concurrently
+                return;
+            }
+            Collections.sort(names);
+            for (String name : names) {
+                Path path = dir.resolve(name);
+                BasicFileAttributes attrs;
+                try {
+                    attrs = Files.readAttributes(path, BasicFileAttributes.class);
+                } catch (NoSuchFileException e) {
+                    // deleted concurrently
+                    log.debug("Cannot read attributes of file: {}", path);
+                    continue;
+                }
+                if (attrs.isDirectory()) {
+                    String subPrefix = dirPrefix + name;
+                    if (subPrefix.startsWith(prefix) || prefix.startsWith(subPrefix)) {
+                        listBlobs(path, subPrefix, prefix, validKey, consumer);
+                    }
+                } else if (attrs.isRegularFile() && name.startsWith(prefix) && validKey.test(name)) {
+                    consumer.accept(name, attrs.size(), attrs.lastModifiedTime().toMillis());
+                }
+            }
+        }
+
+        /**
+         * Only digests can be keys when using de-duplication, other files are ignored for safety.
+         *
+         * @since 11.5
+         */
+        protected Predicate<String> getValidKeyPredicate() {
+            if (keyStrategy instanceof KeyStrategyDigest) {
+                DigestConfiguration digestConfiguration = new DigestConfiguration(
+                        ((KeyStrategyDigest) keyStrategy).digestAlgorithm);
+                return digestConfiguration::isValidDigest;
+            }
+            return key -> true;
+        }
+
+        /** @since 11.5 */
+        @Override
+        public void deleteBlob(String key) {
+            LocalBlobStore.this.deleteBlob(key);
+        }
+
         /** Sets the last modification date to now on a file. */
         protected void touch(File file) {
             long time = System.currentTimeMillis();
@@ -106,6 +106,14 @@ public class TransactionalBlobStore extends AbstractBlobStore implements Synchro
         return store.unwrap();
     }
 
+    @Override
+    public void close() {
+        if (transientStore != store) {
+            transientStore.close();
+        }
+        store.close();
+    }
+
     @Override
     public String writeBlob(BlobWriteContext blobWriteContext)
             throws IOException {
@@ -0,0 +1,105 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob.binary;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A {@link BinaryGarbageCollector} able to list the blobs of its storage in key order.
+ * <p>
+ * This allows the unreferenced blobs to be found by comparing the listing with a sorted list of the referenced keys,
+ * without keeping any key in memory. The {@link #start}, {@link #mark} and {@link #stop} methods are not used in that
+ * case.
+ * <p>
+ * The keys are partitioned by prefixes, whose blobs can be listed concurrently.
+ *
+ * @since 11.5
+ */
+public interface ListableBinaryGarbageCollector extends BinaryGarbageCollector {
+
+    /** The 256 prefixes of two hexadecimal characters, suitable for keys that are digests. */
+    List<String> HEX_PREFIXES = Collections.unmodifiableList(getHexPrefixes());
+
+    private static List<String> getHexPrefixes() {
+        List<String> prefixes = new ArrayList<>(256);
+        for (int i = 0; i < 256; i++) {
+            prefixes.add(String.format("%02x", Integer.valueOf(i)));
+        }
+        return prefixes;
+    }
+
+    /**
+     * Receives the listed blobs.
+     */
+    @FunctionalInterface
+    interface BlobConsumer {
+
+        /**
+         * Receives a listed blob.
+         *
+         * @param key the blob key
+         * @param length the blob length
+         * @param lastModified the last modification time of the blob, in milliseconds, or 0 if unknown
+         */
+        void accept(String key, long length, long lastModified);
+    }
+
+    /**
+     * Checks if the blobs can actually be listed. A garbage collector wrapping another one may not be able to list
+     * them, in which case the other methods must not be called.
+     *
+     * @return {@code true} if the blobs can be listed
+     */
+    default boolean isListable() {
+        return true;
+    }
+
+    /**
+     * Gets the key prefixes partitioning the keys of the storage.
+     * <p>
+     * The prefixes are disjoint: a listed key starts with exactly one of them.
+     *
+     * @return the key prefixes
+     */
+    default List<String> getKeyPrefixes() {
+        return Collections.singletonList("");
+    }
+
+    /**
+     * Lists the blobs whose key starts with the given prefix, in increasing {@link String#compareTo} order of keys.
+     * <p>
+     * Blobs whose key cannot be a key referenced by a document, for instance because it's not a valid digest when
+     * using de-duplication, are not listed, for safety.
+     *
+     * @param prefix the key prefix, one of {@link #getKeyPrefixes}
+     * @param consumer the consumer of the listed blobs
+     */
+    void listBlobs(String prefix, BlobConsumer consumer) throws IOException;
+
+    /**
+     * Deletes an unreferenced blob. No error occurs if the blob does not exist.
+     *
+     * @param key the blob key
+     */
+    void deleteBlob(String key);
+
+}
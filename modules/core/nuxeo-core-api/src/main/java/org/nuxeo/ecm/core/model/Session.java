@@ -23,6 +23,7 @@ import java.io.Serializable;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentNotFoundException;
@@ -56,6 +57,16 @@ public interface Session<T extends QueryFilter> {
      */
     PartialList<Document> query(String query, String queryType, T queryFilter, long countUpTo);
 
+    /**
+     * Estimates the number of results of a query from the backend statistics, without executing it.
+     *
+     * @return the estimated number of results, or {@code -1} if the backend cannot estimate it
+     * @since 11.5
+     */
+    default long queryEstimatedCount(String query, String queryType, T queryFilter) {
+        return -1;
+    }
+
     /**
      * Does a query and fetch the individual results as maps.
      */
@@ -70,6 +81,20 @@ public interface Session<T extends QueryFilter> {
     PartialList<Map<String, Serializable>> queryProjection(String query, String queryType, T queryFilter,
             boolean distinctDocuments, long countUpTo, Object[] params);
 
+    /**
+     * Does a query and returns the individual results as a stream of maps, fetched lazily in batches.
+     * <p>
+     * The returned stream MUST be closed when no more needed, to release the underlying resources. The default
+     * implementation fetches all the results in memory.
+     *
+     * @param batchSize the number of results fetched from the database at a time, or {@code 0} for the default
+     * @since 11.5
+     */
+    default Stream<Map<String, Serializable>> queryProjectionStream(String query, String queryType, T queryFilter,
+            boolean distinctDocuments, int batchSize, Object[] params) {
+        return queryProjection(query, queryType, queryFilter, distinctDocuments, 0, params).stream();
+    }
+
     /**
      * Executes the given query and returns the first batch of results containing id of documents, next batch must be
      * requested within the keepAliveSeconds delay.
@@ -93,6 +118,30 @@ public interface Session<T extends QueryFilter> {
      */
     ScrollResult<String> scroll(String scrollId);
 
+    /**
+     * Gets the lowest possible document id, if document ids are random with uniformly distributed leading hexadecimal
+     * digits (like UUIDs), so that ranges of ids can be used to partition the documents.
+     *
+     * @return the lowest possible id, or {@code null} if ids are not random (for instance sequences)
+     * @since 11.5
+     */
+    default String getRandomIdTemplate() {
+        return null;
+    }
+
+    /**
+     * Checks whether documents with a NULL value for a sort key come first when sorting in the given direction.
+     * <p>
+     * By default NULL is sorted as smaller than any value, so comes first in ascending order.
+     *
+     * @param descending whether the sort is descending
+     * @return {@code true} if NULL values are sorted first
+     * @since 11.5
+     */
+    default boolean isNullSortedFirst(boolean descending) {
+        return !descending;
+    }
+
     /**
      * Gets the lock manager for this session.
      *
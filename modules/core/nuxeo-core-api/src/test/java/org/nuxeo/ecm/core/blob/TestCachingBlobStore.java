@@ -18,9 +18,55 @@
  */
 package org.nuxeo.ecm.core.blob;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.blob.BlobStore.OptionalOrUnknown;
+import org.nuxeo.ecm.core.blob.CachingBlobStore.CachingBinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.ListableBinaryGarbageCollector;
 import org.nuxeo.runtime.test.runner.Deploy;
 
 @Deploy("org.nuxeo.ecm.core.api.tests:OSGI-INF/test-blob-provider-inmemory-caching.xml")
 public class TestCachingBlobStore extends TestAbstractBlobStore {
 
+    @Test
+    public void testGarbageCollectorListable() {
+        assertTrue(((ListableBinaryGarbageCollector) bs.getBinaryGarbageCollector()).isListable());
+
+        // a caching store on top of a store whose blobs cannot be listed
+        BinaryGarbageCollector notListable = new AbstractBlobGarbageCollector() {
+            @Override
+            public String getId() {
+                return "notlistable";
+            }
+        };
+        CachingBinaryGarbageCollector gc = ((CachingBlobStore) bs).new CachingBinaryGarbageCollector(notListable);
+        assertFalse(gc.isListable());
+    }
+
+    @Test
+    public void testWriteStreamIsCached() throws IOException {
+        CachingBlobStore cbs = (CachingBlobStore) bs;
+        // a pure stream blob is sent to the underlying store and cached at the same time
+        String key = bp.writeBlob(blobContext(ID1, FOO));
+        assertKey(ID1, key);
+        OptionalOrUnknown<Path> cachedFile = cbs.getFile(key);
+        assertTrue(cachedFile.isPresent());
+        assertEquals(FOO, new String(Files.readAllBytes(cachedFile.get()), UTF_8));
+        assertBlob(cbs.store, key, FOO);
+        // no temporary file left in the cache
+        try (Stream<Path> files = Files.list(cbs.cacheDir)) {
+            assertEquals(1, files.filter(Files::isRegularFile).count());
+        }
+    }
+
 }
@@ -0,0 +1,95 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.blob;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.nuxeo.common.file.ShardedLRUFileCache;
+import org.nuxeo.runtime.test.runner.Deploy;
+
+/**
+ * @since 11.5
+ */
+@Deploy("org.nuxeo.ecm.core.api.tests:OSGI-INF/test-blob-provider-inmemory-caching-sharded.xml")
+public class TestCachingBlobStoreSharded extends TestAbstractBlobStore {
+
+    @Test
+    public void testShardedCacheUsed() {
+        assertTrue(((CachingBlobStore) bs).fileCache instanceof ShardedLRUFileCache);
+    }
+
+    @Test
+    public void testConcurrentMissesFetchOnce() throws Exception {
+        AtomicInteger reads = new AtomicInteger();
+        InMemoryBlobStore store = new InMemoryBlobStore("slow", new KeyStrategyDigest("MD5")) {
+            @Override
+            public boolean readBlob(String key, Path dest) throws IOException {
+                reads.incrementAndGet();
+                try {
+                    Thread.sleep(200); // slow storage
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.readBlob(key, dest);
+            }
+        };
+        store.map.put(FOO_MD5, FOO.getBytes(UTF_8));
+        Path dir = Files.createTempDirectory("nxtestcache.");
+        int n = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            CachingBlobStore cachingStore = new CachingBlobStore("Cache", store,
+                    new CachingConfiguration(dir, 1_000_000, 1000, 3600, 4));
+            List<Future<String>> futures = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                futures.add(executor.submit(() -> {
+                    try (InputStream stream = cachingStore.getStream(FOO_MD5).get()) {
+                        return IOUtils.toString(stream, UTF_8);
+                    }
+                }));
+            }
+            for (Future<String> future : futures) {
+                assertEquals(FOO, future.get(10, TimeUnit.SECONDS));
+            }
+            assertEquals(1, reads.get());
+            assertEquals(1, cachingStore.fileCache.getNumberOfItems());
+        } finally {
+            executor.shutdownNow();
+            FileUtils.deleteQuietly(dir.toFile());
+        }
+    }
+
+}
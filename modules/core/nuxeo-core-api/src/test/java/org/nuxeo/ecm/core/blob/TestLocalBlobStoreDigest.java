@@ -18,10 +18,18 @@
  */
 package org.nuxeo.ecm.core.blob;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 import org.junit.Test;
+import org.nuxeo.ecm.core.blob.binary.ListableBinaryGarbageCollector;
 import org.nuxeo.runtime.test.runner.Deploy;
 
 @Deploy("org.nuxeo.ecm.core.api.tests:OSGI-INF/test-blob-provider-local-digest.xml")
@@ -34,4 +42,22 @@ public class TestLocalBlobStoreDigest extends TestLocalBlobStoreAbstract {
         assertTrue(bs.getKeyStrategy().useDeDuplication());
     }
 
+    @Test
+    public void testListBlobs() throws IOException {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            keys.add(bs.writeBlob(blobContext(ID1, FOO + i)));
+        }
+        Collections.sort(keys);
+        // a file that is not a blob
+        Files.write(((LocalBlobStore) bs).pathStrategy.dir.resolve("README"), FOO.getBytes());
+
+        ListableBinaryGarbageCollector gc = (ListableBinaryGarbageCollector) bs.getBinaryGarbageCollector();
+        List<String> listed = new ArrayList<>();
+        for (String prefix : gc.getKeyPrefixes()) {
+            gc.listBlobs(prefix, (key, length, lastModified) -> listed.add(key));
+        }
+        assertEquals(keys, listed);
+    }
+
 }
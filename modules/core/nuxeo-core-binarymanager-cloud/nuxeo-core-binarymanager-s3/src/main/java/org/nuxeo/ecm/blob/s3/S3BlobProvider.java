@@ -115,6 +115,7 @@ public class S3BlobProvider extends BlobStoreBlobProvider implements S3ManagedTr
 
     @Override
     public void close() {
+        store.close();
         config.close();
     }
 
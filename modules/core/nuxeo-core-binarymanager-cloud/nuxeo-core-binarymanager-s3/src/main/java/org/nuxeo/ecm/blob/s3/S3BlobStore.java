@@ -18,23 +18,41 @@
  */
 package org.nuxeo.ecm.blob.s3;
 
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
 import static org.apache.commons.io.output.NullOutputStream.NULL_OUTPUT_STREAM;
+import static org.apache.commons.lang3.StringUtils.isBlank;
 import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.nuxeo.ecm.core.blob.BlobProviderDescriptor.ALLOW_BYTE_RANGE;
 import static org.nuxeo.ecm.core.blob.KeyStrategy.VER_SEP;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.lang3.mutable.MutableObject;
@@ -57,16 +75,20 @@ import org.nuxeo.ecm.core.blob.ByteRange;
 import org.nuxeo.ecm.core.blob.KeyStrategy;
 import org.nuxeo.ecm.core.blob.ManagedBlob;
 import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.ListableBinaryGarbageCollector;
 import org.nuxeo.ecm.core.io.download.DownloadHelper;
 import org.nuxeo.runtime.api.Framework;
 
 import com.amazonaws.AmazonServiceException;
 import com.amazonaws.SdkBaseException;
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AbortMultipartUploadRequest;
 import com.amazonaws.services.s3.model.BucketVersioningConfiguration;
+import com.amazonaws.services.s3.model.CompleteMultipartUploadRequest;
 import com.amazonaws.services.s3.model.CopyObjectRequest;
 import com.amazonaws.services.s3.model.EncryptedPutObjectRequest;
 import com.amazonaws.services.s3.model.GetObjectRequest;
+import com.amazonaws.services.s3.model.InitiateMultipartUploadRequest;
 import com.amazonaws.services.s3.model.ListObjectsRequest;
 import com.amazonaws.services.s3.model.ListVersionsRequest;
 import com.amazonaws.services.s3.model.ObjectListing;
@@ -74,13 +96,16 @@ import com.amazonaws.services.s3.model.ObjectLockLegalHold;
 import com.amazonaws.services.s3.model.ObjectLockLegalHoldStatus;
 import com.amazonaws.services.s3.model.ObjectLockRetention;
 import com.amazonaws.services.s3.model.ObjectMetadata;
+import com.amazonaws.services.s3.model.PartETag;
 import com.amazonaws.services.s3.model.PutObjectRequest;
 import com.amazonaws.services.s3.model.RestoreObjectRequest;
+import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.amazonaws.services.s3.model.S3VersionSummary;
 import com.amazonaws.services.s3.model.SSEAwsKeyManagementParams;
 import com.amazonaws.services.s3.model.SetObjectLegalHoldRequest;
 import com.amazonaws.services.s3.model.SetObjectRetentionRequest;
+import com.amazonaws.services.s3.model.UploadPartRequest;
 import com.amazonaws.services.s3.model.VersionListing;
 import com.amazonaws.services.s3.transfer.Copy;
 import com.amazonaws.services.s3.transfer.Download;
@@ -99,6 +124,26 @@ public class S3BlobStore extends AbstractBlobStore {
     // x-amz-meta-username header
     protected static final String USER_METADATA_USERNAME = "username";
 
+    /** @since 11.5 */
+    protected static final int DOWNLOAD_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Prefix of the temporary keys used when streaming a blob whose final key is not known yet. It cannot be confused
+     * with a digest.
+     *
+     * @since 11.5
+     */
+    protected static final String TMP_KEY_PREFIX = "tmp-";
+
+    /** Maximum number of parts of a multipart upload. @since 11.5 */
+    protected static final int MAX_PARTS = 10_000;
+
+    /** Maximum size of an in-memory upload part. @since 11.5 */
+    protected static final long MAX_PART_SIZE = 512L * 1024 * 1024;
+
+    /** Initial size of the in-memory buffer of a streaming upload of unknown length. @since 11.5 */
+    protected static final int INITIAL_BUFFER_SIZE = 64 * 1024;
+
     protected final S3BlobStoreConfiguration config;
 
     protected final AmazonS3 amazonS3;
@@ -192,6 +237,9 @@ public class S3BlobStore extends AbstractBlobStore {
                     }
                     file = blobFile.toPath();
                     fileTraceSource = "Nuxeo";
+                } else if (config.writeStreaming) {
+                    // stream to S3 while computing the key
+                    return writeBlobStreaming(blobWriteContext);
                 } else {
                     // we must transfer the blob stream to a tmp file
                     tmp = Files.createTempFile("bin_", ".tmp");
@@ -202,15 +250,7 @@ public class S3BlobStore extends AbstractBlobStore {
                     fileTraceSource = "tmp";
                 }
             }
-            String key = blobWriteContext.getKey(); // may depend on write observer, for example for digests
-            if (key == null) {
-                // should never happen unless an invalid WriteObserver is used in new code
-                throw new NuxeoException("Missing key");
-            } else if (key.indexOf(VER_SEP) >= 0) {
-                // should never happen unless AWS S3 changes their key format
-                throw new NuxeoException(
-                        "Invalid key '" + key + "', it contains the version separator '" + VER_SEP + "'");
-            }
+            String key = getKey(blobWriteContext);
             String versionId = writeFile(key, file, blobContext, fileTraceSource);
             return versionId == null ? key : key + VER_SEP + versionId;
         } finally {
@@ -226,6 +266,271 @@ public class S3BlobStore extends AbstractBlobStore {
         }
     }
 
+    /**
+     * Gets the key computed for a write, which may depend on the write observer, for example for digests.
+     *
+     * @since 11.5
+     */
+    protected String getKey(BlobWriteContext blobWriteContext) {
+        String key = blobWriteContext.getKey();
+        if (key == null) {
+            // should never happen unless an invalid WriteObserver is used in new code
+            throw new NuxeoException("Missing key");
+        } else if (key.indexOf(VER_SEP) >= 0) {
+            // should never happen unless AWS S3 changes their key format
+            throw new NuxeoException("Invalid key '" + key + "', it contains the version separator '" + VER_SEP + "'");
+        }
+        return key;
+    }
+
+    /**
+     * Writes a blob by streaming it to S3 while its key is computed, without going through a temporary file.
+     * <p>
+     * A blob smaller than a multipart upload part is kept in memory and put directly with its final key. A bigger blob
+     * is sent using a multipart upload, to its final key if it doesn't depend on the content, otherwise to a temporary
+     * key from which it is then moved by a server-side copy (or just deleted if deduplication finds that the final key
+     * already exists).
+     *
+     * @since 11.5
+     */
+    protected String writeBlobStreaming(BlobWriteContext blobWriteContext) throws IOException {
+        // without write observer the key doesn't depend on the content and is known in advance
+        String knownKey = blobWriteContext.writeObserver == null ? getKey(blobWriteContext) : null;
+        String uploadBucketKey = bucketPrefix + (knownKey == null ? TMP_KEY_PREFIX + randomString() : knownKey);
+        long t0 = 0;
+        if (log.isDebugEnabled()) {
+            t0 = System.currentTimeMillis();
+            log.debug("Streaming to s3://" + bucketName + "/" + uploadBucketKey);
+        }
+        StreamingUpload upload = new StreamingUpload(uploadBucketKey, blobWriteContext.blobContext);
+        try {
+            transfer(blobWriteContext, upload);
+            String key = getKey(blobWriteContext);
+            String bucketKey = bucketPrefix + key;
+            String versionId;
+            if (!upload.isMultipart()) {
+                if (getKeyStrategy().useDeDuplication() && exists(bucketKey)) {
+                    return key;
+                }
+                versionId = upload.put(bucketKey);
+            } else {
+                versionId = upload.complete();
+                if (!bucketKey.equals(uploadBucketKey)) {
+                    if (getKeyStrategy().useDeDuplication() && exists(bucketKey)) {
+                        logTrace("->", "deleteObject");
+                        logTrace("hnote right: " + uploadBucketKey);
+                        amazonS3.deleteObject(bucketName, uploadBucketKey);
+                    } else {
+                        moveTemporaryObject(uploadBucketKey, bucketKey);
+                    }
+                    versionId = null; // no key version used with deduplication
+                }
+            }
+            if (log.isDebugEnabled()) {
+                long dtms = System.currentTimeMillis() - t0;
+                log.debug("Wrote s3://" + bucketName + "/" + bucketKey + " in " + dtms + "ms");
+            }
+            // if we don't want to use versions, ignore them even though the bucket may be versioned
+            return useVersion && versionId != null ? key + VER_SEP + versionId : key;
+        } catch (SdkBaseException e) {
+            // catch SdkBaseException and not just AmazonServiceException
+            throw new NuxeoException("Failed to write blob: " + uploadBucketKey, e);
+        } finally {
+            upload.abortIfIncomplete();
+        }
+    }
+
+    /**
+     * Moves an object uploaded to a temporary key to its final key, deleting the temporary object if the copy fails.
+     *
+     * @since 11.5
+     */
+    protected void moveTemporaryObject(String tmpBucketKey, String bucketKey) {
+        try {
+            copyBlob(config, tmpBucketKey, config, bucketKey, true);
+        } catch (RuntimeException e) {
+            try {
+                logTrace("->", "deleteObject");
+                logTrace("hnote right: " + tmpBucketKey);
+                amazonS3.deleteObject(bucketName, tmpBucketKey);
+            } catch (SdkBaseException ee) {
+                e.addSuppressed(ee);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Output stream sending its bytes to S3, in memory while they fit in one part, then as a multipart upload.
+     * <p>
+     * The memory buffer starts small and grows up to the part size as bytes are written, so that small blobs don't
+     * allocate a whole part.
+     *
+     * @since 11.5
+     */
+    protected class StreamingUpload extends OutputStream {
+
+        protected final String multipartBucketKey;
+
+        protected final BlobContext blobContext;
+
+        protected final int partSize;
+
+        protected byte[] buffer;
+
+        protected int count;
+
+        protected String uploadId;
+
+        protected final List<PartETag> partETags = new ArrayList<>();
+
+        protected boolean completed;
+
+        protected StreamingUpload(String multipartBucketKey, BlobContext blobContext) {
+            this.multipartBucketKey = multipartBucketKey;
+            this.blobContext = blobContext;
+            long size = config.multipartUploadPartSize;
+            long length = blobContext.blob.getLength();
+            if (length > 0) {
+                // stay within the maximum number of parts
+                size = Math.max(size, (length + MAX_PARTS - 1) / MAX_PARTS);
+            }
+            partSize = (int) Math.min(size, MAX_PART_SIZE);
+            int initialSize = length > 0 && length < partSize ? (int) length : INITIAL_BUFFER_SIZE;
+            buffer = new byte[Math.min(initialSize, partSize)];
+        }
+
+        protected boolean isMultipart() {
+            return uploadId != null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == partSize) {
+                    uploadPart();
+                }
+                int n = Math.min(len, partSize - count);
+                if (count + n > buffer.length) {
+                    // grow geometrically, up to the part size
+                    int newLength = (int) Math.min(partSize, Math.max(count + n, 2L * buffer.length));
+                    buffer = Arrays.copyOf(buffer, newLength);
+                }
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        protected ObjectMetadata newObjectMetadata() {
+            ObjectMetadata objectMetadata = new ObjectMetadata();
+            if (config.useServerSideEncryption && isBlank(config.serverSideKMSKeyID)) {
+                // SSE-S3
+                objectMetadata.setSSEAlgorithm(ObjectMetadata.AES_256_SERVER_SIDE_ENCRYPTION);
+            }
+            setMetadata(objectMetadata, blobContext);
+            return objectMetadata;
+        }
+
+        protected SSEAwsKeyManagementParams getSSEAwsKeyManagementParams() {
+            if (config.useServerSideEncryption && isNotBlank(config.serverSideKMSKeyID)) {
+                // SSE-KMS
+                return new SSEAwsKeyManagementParams(config.serverSideKMSKeyID);
+            }
+            return null;
+        }
+
+        /** When the bucket has Object Lock active, writes need to provide an MD5. */
+        protected String getMD5() {
+            if (config.bucketRetentionMode == null) {
+                return null;
+            }
+            MessageDigest md5 = DigestUtils.getMd5Digest();
+            md5.update(buffer, 0, count);
+            return Base64.getEncoder().encodeToString(md5.digest());
+        }
+
+        protected void uploadPart() {
+            if (uploadId == null) {
+                logTrace("->", "initiateMultipartUpload");
+                logTrace("hnote right: " + multipartBucketKey);
+                InitiateMultipartUploadRequest request = new InitiateMultipartUploadRequest(bucketName,
+                        multipartBucketKey, newObjectMetadata());
+                request.setSSEAwsKeyManagementParams(getSSEAwsKeyManagementParams());
+                uploadId = amazonS3.initiateMultipartUpload(request).getUploadId();
+            }
+            UploadPartRequest request = new UploadPartRequest();
+            request.setBucketName(bucketName);
+            request.setKey(multipartBucketKey);
+            request.setUploadId(uploadId);
+            request.setPartNumber(partETags.size() + 1);
+            request.setInputStream(new ByteArrayInputStream(buffer, 0, count));
+            request.setPartSize(count);
+            request.setMd5Digest(getMD5());
+            logTrace("->", "uploadPart " + count + " bytes");
+            partETags.add(amazonS3.uploadPart(request).getPartETag());
+            count = 0;
+        }
+
+        /**
+         * Puts the bytes, which fit in one part, as a single object with the given key.
+         *
+         * @return the version id
+         */
+        protected String put(String bucketKey) {
+            ObjectMetadata objectMetadata = newObjectMetadata();
+            objectMetadata.setContentLength(count);
+            String md5 = getMD5();
+            if (md5 != null) {
+                objectMetadata.setContentMD5(md5);
+            }
+            PutObjectRequest request = new PutObjectRequest(bucketName, bucketKey,
+                    new ByteArrayInputStream(buffer, 0, count), objectMetadata);
+            request.setSSEAwsKeyManagementParams(getSSEAwsKeyManagementParams());
+            logTrace("->", "putObject " + count + " bytes");
+            logTrace("hnote right: " + bucketKey);
+            String versionId = amazonS3.putObject(request).getVersionId();
+            completed = true;
+            return versionId;
+        }
+
+        /**
+         * Uploads the last part and completes the multipart upload.
+         *
+         * @return the version id
+         */
+        protected String complete() {
+            if (count > 0) {
+                uploadPart();
+            }
+            logTrace("->", "completeMultipartUpload " + partETags.size() + " parts");
+            CompleteMultipartUploadRequest request = new CompleteMultipartUploadRequest(bucketName,
+                    multipartBucketKey, uploadId, partETags);
+            String versionId = amazonS3.completeMultipartUpload(request).getVersionId();
+            completed = true;
+            return versionId;
+        }
+
+        protected void abortIfIncomplete() {
+            if (uploadId != null && !completed) {
+                try {
+                    amazonS3.abortMultipartUpload(
+                            new AbortMultipartUploadRequest(bucketName, multipartBucketKey, uploadId));
+                } catch (SdkBaseException e) {
+                    // old uploads are also aborted at startup
+                    log.warn("Failed to abort upload to s3://{}/{}: {}", bucketName, multipartBucketKey,
+                            e.getMessage());
+                }
+            }
+        }
+    }
+
     /** Writes a file with the given key and returns its version id. */
     protected String writeFile(String key, Path file, BlobContext blobContext, String fileTraceSource)
             throws IOException {
@@ -410,12 +715,16 @@ public class S3BlobStore extends AbstractBlobStore {
             log.debug("Reading s3://" + bucketName + "/" + bucketKey);
         }
         try {
-            GetObjectRequest getObjectRequest = new GetObjectRequest(bucketName, bucketKey, versionId);
-            if (byteRange != null) {
-                getObjectRequest.setRange(byteRange.getStart(), byteRange.getEnd());
+            String etag = byteRange == null ? readBlobParallel(bucketKey, versionId, dest) : null;
+            if (etag == null) {
+                GetObjectRequest getObjectRequest = new GetObjectRequest(bucketName, bucketKey, versionId);
+                if (byteRange != null) {
+                    getObjectRequest.setRange(byteRange.getStart(), byteRange.getEnd());
+                }
+                Download download = config.transferManager.download(getObjectRequest, dest.toFile());
+                download.waitForCompletion();
+                etag = download.getObjectMetadata().getETag();
             }
-            Download download = config.transferManager.download(getObjectRequest, dest.toFile());
-            download.waitForCompletion();
             logTrace("<-", "read " + Files.size(dest) + " bytes");
             logTrace("hnote right: " + bucketKey + (versionId == null ? "" : " v=" + versionId));
             if (log.isDebugEnabled()) {
@@ -436,7 +745,7 @@ public class S3BlobStore extends AbstractBlobStore {
             }
             String expectedDigest = getKeyStrategy().getDigestFromKey(objectKey);
             if (expectedDigest != null) {
-                checkDigest(expectedDigest, download, dest);
+                checkDigest(expectedDigest, etag, dest);
             }
             // else nothing to compare to, key is not digest-based
             return true;
@@ -457,7 +766,12 @@ public class S3BlobStore extends AbstractBlobStore {
     }
 
     protected void checkDigest(String expectedDigest, Download download, Path file) throws IOException {
-        if (!expectedDigest.equals(download.getObjectMetadata().getETag())) {
+        checkDigest(expectedDigest, download.getObjectMetadata().getETag(), file);
+    }
+
+    /** @since 11.5 */
+    protected void checkDigest(String expectedDigest, String etag, Path file) throws IOException {
+        if (!expectedDigest.equals(etag)) {
             // if our digest algorithm is not MD5 (so the ETag can never match),
             // or in case of a multipart upload (where the ETag may not be the MD5),
             // check manually the object integrity
@@ -471,6 +785,143 @@ public class S3BlobStore extends AbstractBlobStore {
         }
     }
 
+    /**
+     * Downloads an object into a file using ranged GETs, in parallel if the object is big enough.
+     * <p>
+     * The first range is fetched directly, and its Content-Range gives the total length of the object, so that no
+     * separate metadata request is needed. If the object is smaller than the parallel download threshold, the rest of
+     * it is fetched with a single ranged GET. Otherwise the remaining ranges are fetched by the calling thread and by
+     * up to {@code download.concurrency - 1} threads of the download executor, and written directly at their position
+     * in the file. The download executor is shared by all the downloads, when all its threads are busy the calling
+     * thread fetches more of the ranges itself. All the ranges must come from the object having the ETag of the first
+     * one, so that a concurrent overwrite of the object is detected.
+     *
+     * @return the ETag of the object, or {@code null} if the object must be downloaded with a single plain GET
+     * @since 11.5
+     */
+    protected String readBlobParallel(String bucketKey, String versionId, Path dest)
+            throws IOException, InterruptedException {
+        if (config.downloadExecutor == null) {
+            return null;
+        }
+        long partSize = config.downloadPartSize;
+        try (FileChannel channel = FileChannel.open(dest, CREATE, WRITE, TRUNCATE_EXISTING)) {
+            ObjectMetadata metadata;
+            try {
+                metadata = readRange(bucketKey, versionId, null, 0, partSize - 1, channel);
+            } catch (AmazonServiceException e) {
+                if (e.getStatusCode() == 416) {
+                    // empty object, no range can be satisfied
+                    return null;
+                }
+                throw e;
+            }
+            String etag = metadata.getETag();
+            long length = metadata.getInstanceLength();
+            if (length <= partSize) {
+                // the first range was the whole object
+                return etag;
+            }
+            if (length < config.downloadParallelThreshold) {
+                logTrace("->", "getObject remaining range");
+                readRange(bucketKey, versionId, etag, partSize, length - 1, channel);
+                return etag;
+            }
+            long parts = (length + partSize - 1) / partSize;
+            int workers = (int) Math.min(parts - 1, config.downloadConcurrency);
+            AtomicLong nextPart = new AtomicLong(1); // first part already read
+            logTrace("->", "parallel getObject " + (parts - 1) + " parts");
+            Callable<Void> worker = () -> {
+                long part;
+                while ((part = nextPart.getAndIncrement()) < parts) {
+                    long start = part * partSize;
+                    long end = Math.min(start + partSize, length) - 1;
+                    readRange(bucketKey, versionId, etag, start, end, channel);
+                }
+                return null;
+            };
+            List<Future<Void>> futures = new ArrayList<>();
+            try {
+                for (int i = 1; i < workers; i++) {
+                    try {
+                        futures.add(config.downloadExecutor.submit(worker));
+                    } catch (RejectedExecutionException e) {
+                        // all the download threads are busy
+                        break;
+                    }
+                }
+                worker.call(); // the calling thread downloads too
+                for (Future<Void> future : futures) {
+                    future.get();
+                }
+            } catch (ExecutionException e) {
+                nextPart.set(parts);
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                } else if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new NuxeoException(cause);
+            } catch (IOException | RuntimeException | InterruptedException e) {
+                nextPart.set(parts);
+                throw e;
+            } catch (Exception e) { // from Callable.call, cannot happen
+                nextPart.set(parts);
+                throw new NuxeoException(e);
+            } finally {
+                futures.forEach(future -> future.cancel(true));
+            }
+            return etag;
+        }
+    }
+
+    /**
+     * Downloads a range of an object at the same position into a file.
+     * <p>
+     * The range may extend past the end of the object, in which case only the available bytes are read.
+     *
+     * @param etag the ETag the object must have, or {@code null} for any
+     * @param start the start of the range (inclusive)
+     * @param end the end of the range (inclusive)
+     * @return the metadata of the object, whose instance length is the total length of the object
+     * @since 11.5
+     */
+    protected ObjectMetadata readRange(String bucketKey, String versionId, String etag, long start, long end,
+            FileChannel channel) throws IOException {
+        GetObjectRequest getObjectRequest = new GetObjectRequest(bucketName, bucketKey, versionId);
+        getObjectRequest.setRange(start, end);
+        if (etag != null) {
+            getObjectRequest.setMatchingETagConstraints(Collections.singletonList(etag));
+        }
+        try (S3Object object = amazonS3.getObject(getObjectRequest)) {
+            if (object == null) {
+                // ETag constraint not met
+                throw new IOException("Object s3://" + bucketName + "/" + bucketKey + " changed during download");
+            }
+            ObjectMetadata metadata = object.getObjectMetadata();
+            long expectedEnd = Math.min(end, metadata.getInstanceLength() - 1);
+            long position = start;
+            byte[] bytes = new byte[DOWNLOAD_BUFFER_SIZE];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            try (InputStream in = object.getObjectContent()) {
+                int n;
+                while ((n = in.read(bytes)) != -1) {
+                    buffer.clear();
+                    buffer.limit(n);
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                }
+            }
+            if (position != expectedEnd + 1) {
+                throw new IOException("Incomplete range " + start + "-" + expectedEnd + " for s3://" + bucketName
+                        + "/" + bucketKey + ", got " + (position - start) + " bytes");
+            }
+            return metadata;
+        }
+    }
+
     /**
      * Copies the blob as a direct S3 operation, if possible.
      *
@@ -773,7 +1224,8 @@ public class S3BlobStore extends AbstractBlobStore {
     /**
      * Garbage collector for S3 binaries that stores the marked (in use) binaries in memory.
      */
-    public class S3BlobGarbageCollector extends AbstractBlobGarbageCollector {
+    public class S3BlobGarbageCollector extends AbstractBlobGarbageCollector
+            implements ListableBinaryGarbageCollector {
 
         @Override
         public String getId() {
@@ -826,6 +1278,55 @@ public class S3BlobStore extends AbstractBlobStore {
         public void removeBlobs(Set<String> keys) {
             keys.forEach(S3BlobStore.this::deleteBlob);
         }
+
+        /** @since 11.5 */
+        @Override
+        public List<String> getKeyPrefixes() {
+            if (keyStrategy.useDeDuplication()) {
+                return HEX_PREFIXES;
+            }
+            return ListableBinaryGarbageCollector.super.getKeyPrefixes();
+        }
+
+        /**
+         * {@inheritDoc}
+         * <p>
+         * S3 lists the objects in key order.
+         *
+         * @since 11.5
+         */
+        @Override
+        public void listBlobs(String prefix, BlobConsumer consumer) {
+            boolean useDeDuplication = keyStrategy.useDeDuplication();
+            int prefixLength = bucketPrefix.length();
+            ObjectListing list = null;
+            logTrace("->", "listObjects " + prefix);
+            do {
+                if (list == null) {
+                    // use delimiter to avoid useless listing of objects in "subdirectories"
+                    ListObjectsRequest listObjectsRequest = new ListObjectsRequest(bucketName, bucketPrefix + prefix,
+                            null, S3BlobStoreConfiguration.DELIMITER, null);
+                    list = amazonS3.listObjects(listObjectsRequest);
+                } else {
+                    list = amazonS3.listNextBatchOfObjects(list);
+                }
+                for (S3ObjectSummary summary : list.getObjectSummaries()) {
+                    String key = summary.getKey().substring(prefixLength);
+                    if (useDeDuplication && !config.digestConfiguration.isValidDigest(key)) {
+                        // ignore files that cannot be digests, for safety
+                        continue;
+                    }
+                    Date lastModified = summary.getLastModified();
+                    consumer.accept(key, summary.getSize(), lastModified == null ? 0 : lastModified.getTime());
+                }
+            } while (list.isTruncated());
+        }
+
+        /** @since 11.5 */
+        @Override
+        public void deleteBlob(String key) {
+            S3BlobStore.this.deleteBlob(key);
+        }
     }
 
 }
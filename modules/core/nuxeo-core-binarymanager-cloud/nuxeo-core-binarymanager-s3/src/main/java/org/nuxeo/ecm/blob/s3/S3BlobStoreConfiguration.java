@@ -35,10 +35,18 @@ import java.time.Duration;
 import java.util.Date;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.nuxeo.common.Environment;
+import org.nuxeo.common.utils.SizeUtils;
 import org.nuxeo.ecm.blob.CloudBlobStoreConfiguration;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.storage.sql.S3Utils;
@@ -50,6 +58,7 @@ import com.amazonaws.AmazonServiceException;
 import com.amazonaws.ClientConfiguration;
 import com.amazonaws.auth.AWSCredentialsProvider;
 import com.amazonaws.client.builder.AwsClientBuilder.EndpointConfiguration;
+import com.amazonaws.client.builder.ExecutorFactory;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3Builder;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
@@ -132,6 +141,84 @@ public class S3BlobStoreConfiguration extends CloudBlobStoreConfiguration {
      */
     public static final String MULTIPART_CLEANUP_DISABLED_PROPERTY = "multipart.cleanup.disabled";
 
+    /**
+     * The size above which uploads are done in multiple parts. AWS SDK default is 16 MB.
+     *
+     * @since 11.5
+     */
+    public static final String MULTIPART_UPLOAD_THRESHOLD_PROPERTY = "multipart.upload.threshold";
+
+    /**
+     * The minimum size of the parts of a multipart upload. AWS SDK default is 5 MB, which is also the minimum.
+     *
+     * @since 11.5
+     */
+    public static final String MULTIPART_UPLOAD_PART_SIZE_PROPERTY = "multipart.upload.partsize";
+
+    /**
+     * The size above which copies are done in multiple parts. AWS SDK default is 5 GB.
+     *
+     * @since 11.5
+     */
+    public static final String MULTIPART_COPY_THRESHOLD_PROPERTY = "multipart.copy.threshold";
+
+    /**
+     * The number of threads used by the transfer manager for the parts of multipart uploads and copies. AWS SDK default
+     * is 10.
+     *
+     * @since 11.5
+     */
+    public static final String TRANSFER_THREADS_PROPERTY = "transfer.threads";
+
+    /**
+     * The size above which downloads are done with parallel ranged GETs, or 0 to disable parallel downloads.
+     *
+     * @since 11.5
+     */
+    public static final String DOWNLOAD_PARALLEL_THRESHOLD_PROPERTY = "download.parallel.threshold";
+
+    /**
+     * The size of the ranges of a parallel download.
+     *
+     * @since 11.5
+     */
+    public static final String DOWNLOAD_PART_SIZE_PROPERTY = "download.partsize";
+
+    /**
+     * The maximum number of concurrent ranged GETs for one parallel download.
+     *
+     * @since 11.5
+     */
+    public static final String DOWNLOAD_CONCURRENCY_PROPERTY = "download.concurrency";
+
+    /**
+     * The maximum number of threads fetching ranges for all the parallel downloads, in addition to the calling threads.
+     * Defaults to half the maximum number of connections of the S3 client.
+     *
+     * @since 11.5
+     */
+    public static final String DOWNLOAD_THREADS_PROPERTY = "download.threads";
+
+    /**
+     * Whether blobs without a local file are streamed to S3 while their digest is computed, instead of being written to
+     * a temporary file first.
+     *
+     * @since 11.5
+     */
+    public static final String WRITE_STREAMING_PROPERTY = "write.streaming";
+
+    /** @since 11.5 */
+    public static final long MIN_MULTIPART_UPLOAD_PART_SIZE = 5 * SizeUtils.MB;
+
+    /** @since 11.5 */
+    public static final long DEFAULT_DOWNLOAD_PARALLEL_THRESHOLD = 64 * SizeUtils.MB;
+
+    /** @since 11.5 */
+    public static final long DEFAULT_DOWNLOAD_PART_SIZE = 16 * SizeUtils.MB;
+
+    /** @since 11.5 */
+    public static final int DEFAULT_DOWNLOAD_CONCURRENCY = 8;
+
     public static final String DELIMITER = "/";
 
     /**
@@ -179,6 +266,51 @@ public class S3BlobStoreConfiguration extends CloudBlobStoreConfiguration {
      */
     public final ObjectLockRetentionMode retentionMode;
 
+    /**
+     * The size above which downloads are done with parallel ranged GETs, or 0 if parallel downloads are disabled.
+     *
+     * @since 11.5
+     */
+    public final long downloadParallelThreshold;
+
+    /**
+     * The size of the ranges of a parallel download.
+     *
+     * @since 11.5
+     */
+    public final long downloadPartSize;
+
+    /**
+     * The maximum number of concurrent ranged GETs for one parallel download.
+     *
+     * @since 11.5
+     */
+    public final int downloadConcurrency;
+
+    /**
+     * The executor running the ranged GETs of parallel downloads, or {@code null} if parallel downloads are disabled.
+     * <p>
+     * It is shared by all the downloads and has at most {@value #DOWNLOAD_THREADS_PROPERTY} threads. A task submitted
+     * while all of them are busy is rejected, and the download then uses fewer parallel ranges.
+     *
+     * @since 11.5
+     */
+    public final ExecutorService downloadExecutor;
+
+    /**
+     * The minimum size of the parts of a multipart upload.
+     *
+     * @since 11.5
+     */
+    public final long multipartUploadPartSize;
+
+    /**
+     * Whether blobs without a local file are streamed to S3 instead of being written to a temporary file first.
+     *
+     * @since 11.5
+     */
+    public final boolean writeStreaming;
+
     public S3BlobStoreConfiguration(Map<String, String> properties) throws IOException {
         super(SYSTEM_PROPERTY_PREFIX, properties);
         cloudFront = new CloudFrontConfiguration(SYSTEM_PROPERTY_PREFIX, properties);
@@ -225,7 +357,29 @@ public class S3BlobStoreConfiguration extends CloudBlobStoreConfiguration {
         bucketRetentionMode = computeBucketRetentionMode();
         retentionMode = bucketRetentionMode == null ? DEFAULT_RETENTION_MODE : bucketRetentionMode;
 
+        // AWS SDK default = 5 MB, which is also the minimum allowed by S3
+        multipartUploadPartSize = Math.max(MIN_MULTIPART_UPLOAD_PART_SIZE,
+                getSizeProperty(MULTIPART_UPLOAD_PART_SIZE_PROPERTY, MIN_MULTIPART_UPLOAD_PART_SIZE));
         transferManager = createTransferManager();
+        // client-side encryption needs the whole object
+        writeStreaming = getBooleanProperty(WRITE_STREAMING_PROPERTY) && !useClientSideEncryption;
+
+        downloadPartSize = Math.max(1, getSizeProperty(DOWNLOAD_PART_SIZE_PROPERTY, DEFAULT_DOWNLOAD_PART_SIZE));
+        int concurrency = getIntProperty(DOWNLOAD_CONCURRENCY_PROPERTY);
+        downloadConcurrency = concurrency > 0 ? concurrency : DEFAULT_DOWNLOAD_CONCURRENCY;
+        long threshold = getSizeProperty(DOWNLOAD_PARALLEL_THRESHOLD_PROPERTY, DEFAULT_DOWNLOAD_PARALLEL_THRESHOLD);
+        if (threshold > 0 && downloadConcurrency > 1 && !useClientSideEncryption) {
+            // ranged GETs can't be decrypted independently with client-side encryption
+            downloadParallelThreshold = threshold;
+            int threads = getIntProperty(DOWNLOAD_THREADS_PROPERTY);
+            // the ranges share the connection pool of the client with all the other requests
+            int maxThreads = threads > 0 ? threads : Math.max(1, clientConfiguration.getMaxConnections() / 2);
+            downloadExecutor = new ThreadPoolExecutor(0, maxThreads, 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+                    newThreadFactory("Nuxeo-S3-Download-" + bucketName));
+        } else {
+            downloadParallelThreshold = 0;
+            downloadExecutor = null;
+        }
 
         abortOldUploads();
     }
@@ -239,6 +393,37 @@ public class S3BlobStoreConfiguration extends CloudBlobStoreConfiguration {
 
     public void close() {
         transferManager.shutdownNow();
+        if (downloadExecutor != null) {
+            downloadExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Gets a size property (with optional KB, MB, GB suffix), or the given default if undefined or invalid.
+     *
+     * @since 11.5
+     */
+    protected long getSizeProperty(String key, long defaultValue) {
+        String value = getProperty(key);
+        if (isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return SizeUtils.parseSizeInBytes(value.trim());
+        } catch (NumberFormatException e) {
+            log.error("Cannot parse size {}: {}", key, value);
+            return defaultValue;
+        }
+    }
+
+    /** @since 11.5 */
+    protected static ThreadFactory newThreadFactory(String prefix) {
+        AtomicInteger count = new AtomicInteger();
+        return r -> {
+            Thread thread = new Thread(r, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
     }
 
     @Override
@@ -417,9 +602,10 @@ public class S3BlobStoreConfiguration extends CloudBlobStoreConfiguration {
     }
 
     protected TransferManager createTransferManager() {
-        long minimumUploadPartSize = 5L * 1024 * 1024; // AWS SDK default = 5 MB
-        long multipartUploadThreshold = 16L * 1024 * 1024; // AWS SDK default = 16 MB
-        long multipartCopyThreshold = 5L * 1024 * 1024 * 1024; // AWS SDK default = 5 GB
+        // AWS SDK default = 16 MB
+        long multipartUploadThreshold = getSizeProperty(MULTIPART_UPLOAD_THRESHOLD_PROPERTY, 16L * 1024 * 1024);
+        // AWS SDK default = 5 GB
+        long multipartCopyThreshold = getSizeProperty(MULTIPART_COPY_THRESHOLD_PROPERTY, 5L * 1024 * 1024 * 1024);
         long multipartCopyPartSize = 100L * 1024 * 1024; // AWS SDK default = 100 MB
         ConfigurationService configurationService = Framework.getService(ConfigurationService.class);
         if (configurationService != null) {
@@ -430,14 +616,29 @@ public class S3BlobStoreConfiguration extends CloudBlobStoreConfiguration {
         boolean alwaysCalculateMultipartMd5 = bucketRetentionMode != null;
         return TransferManagerBuilder.standard()
                                      .withS3Client(amazonS3)
-                                     .withMinimumUploadPartSize(Long.valueOf(minimumUploadPartSize))
+                                     .withMinimumUploadPartSize(Long.valueOf(multipartUploadPartSize))
                                      .withMultipartUploadThreshold(Long.valueOf(multipartUploadThreshold))
                                      .withMultipartCopyThreshold(Long.valueOf(multipartCopyThreshold))
                                      .withMultipartCopyPartSize(Long.valueOf(multipartCopyPartSize))
                                      .withAlwaysCalculateMultipartMd5(alwaysCalculateMultipartMd5)
+                                     .withExecutorFactory(getTransferExecutorFactory())
                                      .build();
     }
 
+    /**
+     * Gets the factory of the executor used by the transfer manager, or {@code null} for the AWS SDK default.
+     *
+     * @since 11.5
+     */
+    protected ExecutorFactory getTransferExecutorFactory() {
+        int transferThreads = getIntProperty(TRANSFER_THREADS_PROPERTY);
+        if (transferThreads <= 0) {
+            return null;
+        }
+        return () -> Executors.newFixedThreadPool(transferThreads,
+                newThreadFactory("Nuxeo-S3-Transfer-" + bucketName));
+    }
+
     /** @deprecated since 11.4, unused */
     @Deprecated
     protected ObjectLockRetentionMode getRetentionMode() {
@@ -26,6 +26,7 @@ import static com.amazonaws.SDKGlobalConfiguration.AWS_SESSION_TOKEN_ENV_VAR;
 import static com.amazonaws.SDKGlobalConfiguration.SECRET_KEY_ENV_VAR;
 import static org.apache.commons.lang3.StringUtils.defaultIfBlank;
 import static org.apache.commons.lang3.StringUtils.isNoneBlank;
+import static org.apache.commons.lang3.StringUtils.isNotBlank;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
@@ -37,6 +38,8 @@ import static org.nuxeo.ecm.blob.s3.S3BlobStoreConfiguration.AWS_SESSION_TOKEN_P
 import static org.nuxeo.ecm.blob.s3.S3BlobStoreConfiguration.BUCKET_NAME_PROPERTY;
 import static org.nuxeo.ecm.blob.s3.S3BlobStoreConfiguration.BUCKET_PREFIX_PROPERTY;
 import static org.nuxeo.ecm.blob.s3.S3BlobStoreConfiguration.BUCKET_REGION_PROPERTY;
+import static org.nuxeo.ecm.blob.s3.S3BlobStoreConfiguration.ENDPOINT_PROPERTY;
+import static org.nuxeo.ecm.blob.s3.S3BlobStoreConfiguration.PATHSTYLEACCESS_PROPERTY;
 
 import java.io.IOException;
 import java.util.HashMap;
@@ -54,6 +57,14 @@ import org.nuxeo.ecm.core.blob.TestAbstractBlobStore;
 
 public abstract class TestS3BlobStoreAbstract extends TestAbstractBlobStore {
 
+    /**
+     * Environment variable defining the endpoint of a local S3-compatible server to use instead of AWS, with path-style
+     * access.
+     *
+     * @since 11.5
+     */
+    public static final String S3_ENDPOINT_ENV_VAR = "AWS_ENDPOINT_URL_S3";
+
     protected static boolean propertiesSet;
 
     @BeforeClass
@@ -98,6 +109,11 @@ public abstract class TestS3BlobStoreAbstract extends TestAbstractBlobStore {
         properties.put(BUCKET_REGION_PROPERTY, envRegion);
         properties.put(BUCKET_NAME_PROPERTY, bucketName);
         properties.put(BUCKET_PREFIX_PROPERTY, bucketPrefix);
+        String endpoint = System.getenv(S3_ENDPOINT_ENV_VAR);
+        if (isNotBlank(endpoint)) {
+            properties.put(ENDPOINT_PROPERTY, endpoint);
+            properties.put(PATHSTYLEACCESS_PROPERTY, "true");
+        }
         return properties;
     }
 
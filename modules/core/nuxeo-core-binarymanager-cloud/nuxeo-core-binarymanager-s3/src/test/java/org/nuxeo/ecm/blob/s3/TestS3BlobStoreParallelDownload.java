@@ -0,0 +1,66 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.blob.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.IOException;
+
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Test;
+import org.nuxeo.runtime.test.runner.Deploy;
+
+/**
+ * Runs the blob store tests with tiny download ranges, so that every read is done with parallel ranged GETs.
+ *
+ * @since 11.5
+ */
+@Deploy("org.nuxeo.ecm.core.storage.binarymanager.s3.tests:OSGI-INF/test-blob-provider-s3-parallel.xml")
+public class TestS3BlobStoreParallelDownload extends TestS3BlobStoreAbstract {
+
+    @Test
+    public void testParallelDownloadConfiguration() {
+        S3BlobStoreConfiguration config = ((S3BlobStore) bs.unwrap()).config;
+        assertNotNull(config.downloadExecutor);
+        assertEquals(1, config.downloadParallelThreshold);
+        assertEquals(2, config.downloadPartSize);
+        assertEquals(3, config.downloadConcurrency);
+    }
+
+    @Test
+    public void testParallelDownload() throws IOException {
+        // odd length, many more ranges than threads
+        String value = RandomStringUtils.randomAlphanumeric(101);
+        String key = bs.writeBlob(blobContext(ID1, value));
+        assertBlob(key, value);
+        // read directly from S3, not from the cache
+        assertBlob(bs.unwrap(), key, value);
+    }
+
+    @Test
+    public void testParallelDownloadSmall() throws IOException {
+        // fits in the first range, or has no range at all
+        for (String value : new String[] { "x", "xy", "" }) {
+            String key = bs.writeBlob(blobContext(ID1, value));
+            assertBlob(bs.unwrap(), key, value);
+        }
+    }
+
+}
@@ -0,0 +1,67 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.blob.s3;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.commons.lang3.RandomStringUtils;
+import org.junit.Test;
+import org.nuxeo.runtime.test.runner.Deploy;
+
+import com.amazonaws.services.s3.model.S3ObjectSummary;
+
+/**
+ * Runs the blob store tests with blobs streamed to S3 while their digest is computed.
+ *
+ * @since 11.5
+ */
+@Deploy("org.nuxeo.ecm.core.storage.binarymanager.s3.tests:OSGI-INF/test-blob-provider-s3-streaming.xml")
+public class TestS3BlobStoreStreamingWrite extends TestS3BlobStoreAbstract {
+
+    @Test
+    public void testStreamingConfiguration() {
+        S3BlobStoreConfiguration config = ((S3BlobStore) bs.unwrap()).config;
+        assertTrue(config.writeStreaming);
+    }
+
+    @Test
+    public void testStreamingMultipartWrite() throws IOException {
+        S3BlobStore s3BlobStore = (S3BlobStore) bs.unwrap();
+        // bigger than one part, so uploaded to a temporary key then copied
+        String value = RandomStringUtils.randomAlphanumeric((int) s3BlobStore.config.multipartUploadPartSize + 1);
+        String key = bs.writeBlob(blobContext(ID1, value));
+        assertEquals(DigestUtils.md5Hex(value), key);
+        assertBlob(key, value);
+        // write again, deduplicated
+        String key2 = bs.writeBlob(blobContext(ID2, value));
+        assertEquals(key, key2);
+        assertBlob(key2, value);
+        // no temporary key left
+        for (S3ObjectSummary summary : s3BlobStore.amazonS3.listObjects(s3BlobStore.bucketName,
+                s3BlobStore.bucketPrefix).getObjectSummaries()) {
+            assertFalse(summary.getKey(), summary.getKey().contains(S3BlobStore.TMP_KEY_PREFIX));
+        }
+    }
+
+}
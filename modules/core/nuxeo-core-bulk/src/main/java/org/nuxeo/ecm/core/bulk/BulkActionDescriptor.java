@@ -75,6 +75,10 @@ public class BulkActionDescriptor {
     @XNode("@defaultQueryLimit")
     public Long defaultQueryLimit;
 
+    // @since 11.5 the number of partitions of the document set scrolled concurrently
+    @XNode("@scrollPartitions")
+    public Integer scrollPartitions;
+
     public String getId() {
         return name;
     }
@@ -92,6 +96,11 @@ public class BulkActionDescriptor {
         return defaultQueryLimit;
     }
 
+    // @since 11.5
+    public int getScrollPartitions() {
+        return scrollPartitions == null || scrollPartitions.intValue() < 1 ? 1 : scrollPartitions.intValue();
+    }
+
     /**
      * @since 10.10
      */
@@ -51,6 +51,13 @@ public interface BulkAdminService {
      */
     String getDefaultScroller(String action);
 
+    /**
+     * Returns the number of partitions of the document set scrolled concurrently for the bulk action.
+     *
+     * @since 11.5
+     */
+    int getScrollPartitions(String action);
+
     /**
      * @since 11.1
      */
@@ -36,6 +36,9 @@ public class BulkAdminServiceImpl implements BulkAdminService {
 
     public static final String SCROLLER_NAME = "bulk/scroller";
 
+    // @since 11.5
+    public static final String PARTITION_SCROLLER_NAME = "bulk/partitionScroller";
+
     public static final String STATUS_NAME = "bulk/status";
 
     public static final String BULK_SERVICE_PROCESSOR_NAME = "bulkServiceProcessor";
@@ -108,6 +111,11 @@ public class BulkAdminServiceImpl implements BulkAdminService {
         return descriptors.get(action).getDefaultScroller();
     }
 
+    @Override
+    public int getScrollPartitions(String action) {
+        return descriptors.get(action).getScrollPartitions();
+    }
+
     @Override
     public String getInputStream(String action) {
         return descriptors.get(action).getInputStream();
@@ -85,6 +85,9 @@ public class BulkServiceImpl implements BulkService {
     // @since 11.1
     public static final Name DONE_STREAM_NAME = Name.ofUrn(DONE_STREAM);
 
+    // @since 11.5
+    public static final String SCROLL_PARTITION_STREAM = "bulk/scrollPartition";
+
     public static final String COMMAND_PREFIX = "command:";
 
     // @deprecated since 11.4 not needed anymore
@@ -147,6 +150,12 @@ public class BulkServiceImpl implements BulkService {
             }
         }
         checkIfScrollerExists(command);
+        if (adminService.isSequentialCommands(command.getAction())) {
+            // partitions are scrolled concurrently, which would break the order a sequential action relies on
+            command.setScrollPartitions(1);
+        } else if (command.getScrollPartitions() == 0) {
+            command.setScrollPartitions(adminService.getScrollPartitions(command.getAction()));
+        }
 
         // store the bulk command and status in the key/value store
         BulkStatus status = new BulkStatus(command.getId());
@@ -27,10 +27,12 @@ import static org.nuxeo.ecm.core.bulk.BulkAdminServiceImpl.DEFAULT_PRODUCE_IMMED
 import static org.nuxeo.ecm.core.bulk.BulkAdminServiceImpl.DEFAULT_SCROLL_KEEP_ALIVE;
 import static org.nuxeo.ecm.core.bulk.BulkAdminServiceImpl.DEFAULT_SCROLL_SIZE;
 import static org.nuxeo.ecm.core.bulk.BulkAdminServiceImpl.DEFAULT_SCROLL_TRANSACTION_TIMEOUT;
+import static org.nuxeo.ecm.core.bulk.BulkAdminServiceImpl.PARTITION_SCROLLER_NAME;
 import static org.nuxeo.ecm.core.bulk.BulkAdminServiceImpl.SCROLLER_NAME;
 import static org.nuxeo.ecm.core.bulk.BulkAdminServiceImpl.STATUS_NAME;
 import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.COMMAND_STREAM;
 import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.DONE_STREAM;
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.SCROLL_PARTITION_STREAM;
 import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
 import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
 import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
@@ -55,16 +57,36 @@ public class BulkServiceProcessor implements StreamProcessorTopology {
 
     @Override
     public Topology getTopology(Map<String, String> options) {
-        List<String> mapping = new ArrayList<>();
-        mapping.add(INPUT_1 + ":" + COMMAND_STREAM);
         BulkAdminService actionService = Framework.getService(BulkAdminService.class);
         List<String> actions = actionService.getActions();
+        List<String> outputs = new ArrayList<>();
         int i = 1;
         for (String action : actions) {
-            mapping.add(String.format("o%s:%s", i, actionService.getInputStream(action)));
+            outputs.add(String.format("o%s:%s", i, actionService.getInputStream(action)));
             i++;
         }
-        mapping.add(String.format("o%s:%s", i, STATUS_STREAM));
+        outputs.add(String.format("o%s:%s", i, STATUS_STREAM));
+        i++;
+        List<String> mapping = new ArrayList<>();
+        mapping.add(INPUT_1 + ":" + COMMAND_STREAM);
+        mapping.addAll(outputs);
+        mapping.add(String.format("o%s:%s", i, SCROLL_PARTITION_STREAM));
+        // the partitions of a command are scrolled by another computation, as a computation cannot write to its input
+        List<String> partitionMapping = new ArrayList<>();
+        partitionMapping.add(INPUT_1 + ":" + SCROLL_PARTITION_STREAM);
+        partitionMapping.addAll(outputs);
+        return Topology.builder()
+                       .addComputation(() -> newScroller(SCROLLER_NAME, actions.size() + 2), mapping)
+                       .addComputation(() -> newScroller(PARTITION_SCROLLER_NAME, actions.size() + 1),
+                               partitionMapping)
+                       .addComputation(() -> new BulkStatusComputation(STATUS_NAME),
+                               Arrays.asList(INPUT_1 + ":" + STATUS_STREAM, //
+                                       OUTPUT_1 + ":" + DONE_STREAM))
+                       .build();
+    }
+
+    /** @since 11.5 */
+    protected BulkScrollerComputation newScroller(String name, int nbOutputStreams) {
         ConfigurationService confService = Framework.getService(ConfigurationService.class);
         int scrollBatchSize = confService.getInteger(BULK_SCROLL_SIZE_PROPERTY, DEFAULT_SCROLL_SIZE);
         int scrollKeepAlive = confService.getInteger(BULK_SCROLL_KEEP_ALIVE_PROPERTY, DEFAULT_SCROLL_KEEP_ALIVE);
@@ -74,20 +96,12 @@ public class BulkServiceProcessor implements StreamProcessorTopology {
         boolean scrollProduceImmediate = confService.isBooleanTrue(BULK_SCROLL_PRODUCE_IMMEDIATE_PROPERTY);
         int scrollProduceImmediateThreshold = confService.getInteger(BULK_SCROLL_PRODUCE_IMMEDIATE_THRESHOLD_PROPERTY)
                                                          .orElse(DEFAULT_PRODUCE_IMMEDIATE_THRESHOLD_PROPERTY);
-        return Topology.builder()
-                       .addComputation(
-                               () -> BulkScrollerComputation.builder(SCROLLER_NAME, actions.size() + 1)
-                                                            .setScrollBatchSize(scrollBatchSize)
-                                                            .setScrollKeepAliveSeconds(scrollKeepAlive)
-                                                            .setTransactionTimeout(transactionTimeout)
-                                                            .setProduceImmediate(scrollProduceImmediate)
-                                                            .setProduceImmediateThreshold(
-                                                                    scrollProduceImmediateThreshold)
-                                                            .build(),
-                               mapping)
-                       .addComputation(() -> new BulkStatusComputation(STATUS_NAME),
-                               Arrays.asList(INPUT_1 + ":" + STATUS_STREAM, //
-                                       OUTPUT_1 + ":" + DONE_STREAM))
-                       .build();
+        return BulkScrollerComputation.builder(name, nbOutputStreams)
+                                      .setScrollBatchSize(scrollBatchSize)
+                                      .setScrollKeepAliveSeconds(scrollKeepAlive)
+                                      .setTransactionTimeout(transactionTimeout)
+                                      .setProduceImmediate(scrollProduceImmediate)
+                                      .setProduceImmediateThreshold(scrollProduceImmediateThreshold)
+                                      .build();
     }
 }
@@ -20,6 +20,7 @@
 package org.nuxeo.ecm.core.bulk.computation;
 
 import static java.lang.Math.min;
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.SCROLL_PARTITION_STREAM;
 import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
 import static org.nuxeo.ecm.core.bulk.message.BulkStatus.State.ABORTED;
 import static org.nuxeo.ecm.core.bulk.message.BulkStatus.State.COMPLETED;
@@ -48,6 +49,7 @@ import org.nuxeo.ecm.core.query.QueryParseException;
 import org.nuxeo.ecm.core.scroll.DocumentScrollRequest;
 import org.nuxeo.ecm.core.scroll.EmptyScrollRequest;
 import org.nuxeo.ecm.core.scroll.GenericScrollRequest;
+import org.nuxeo.lib.stream.codec.Codec;
 import org.nuxeo.lib.stream.computation.AbstractComputation;
 import org.nuxeo.lib.stream.computation.ComputationContext;
 import org.nuxeo.lib.stream.computation.Record;
@@ -59,15 +61,21 @@ import org.nuxeo.runtime.transaction.TransactionRuntimeException;
 /**
  * Materializes the document set for a command if scroller is not external.
  * <p>
+ * When a command using a document scroller has more than one scroll partition, it is split into partition commands
+ * produced to the scroll partition stream, each one scrolling a disjoint part of the document set, so that the
+ * partitions are scrolled concurrently by another instance of this computation. The command is running once all its
+ * partitions have been scrolled.
+ * <p>
  * Inputs:
  * <ul>
- * <li>i1: Reads a stream of {@link BulkCommand} sharded by action</li>
+ * <li>i1: Reads a stream of {@link BulkCommand} sharded by action, or of partition commands</li>
  * </ul>
  * <p>
  * Outputs:
  * <ul>
  * <li>- "actionName": Writes {@link BulkBucket} into the action stream</li>
  * <li>- "status": Writes {@link BulkStatus} into the action stream</li>
+ * <li>- "bulk/scrollPartition": Writes partition commands, only when reading the command stream</li>
  * </ul>
  *
  * @since 10.2
@@ -97,6 +105,9 @@ public class BulkScrollerComputation extends AbstractComputation {
 
     protected String actionStream;
 
+    // @since 11.5 the partition of the command being scrolled, null if not a partition command
+    protected Integer scrollPartition;
+
     public static Builder builder(String name, int nbOutputStreams) {
         return new Builder(name, nbOutputStreams);
     }
@@ -158,11 +169,20 @@ public class BulkScrollerComputation extends AbstractComputation {
     protected void processRecord(ComputationContext context, Record record) {
         BulkCommand command = null;
         String commandId = null;
+        scrollPartition = null;
         try {
             command = BulkCodecs.getCommandCodec().decode(record.getData());
             commandId = command.getId();
             getCommandConfiguration(command);
-            updateStatusAsScrolling(context, commandId);
+            scrollPartition = command.getScrollPartition();
+            if (scrollPartition == null) {
+                if (isPartitionedCommand(command)) {
+                    submitPartitions(context, command);
+                    context.askForCheckpoint();
+                    return;
+                }
+                updateStatusAsScrolling(context, commandId);
+            }
 
             long documentCount = 0;
             long bucketNumber = 1;
@@ -227,6 +247,53 @@ public class BulkScrollerComputation extends AbstractComputation {
         return limit;
     }
 
+    /**
+     * Returns true if the document set of the command must be scrolled by concurrent partitions.
+     * <p>
+     * A command with a query limit is scrolled with a single cursor, as partitions hold uneven numbers of documents. So
+     * is a command whose document scroller cannot scroll a partition of the result set.
+     *
+     * @since 11.5
+     */
+    protected boolean isPartitionedCommand(BulkCommand command) {
+        Long limit = command.getQueryLimit();
+        if (command.useExternalScroller() || command.useGenericScroller() || command.getScrollPartitions() <= 1
+                || (limit != null && limit > 0)) {
+            return false;
+        }
+        ScrollRequest request = DocumentScrollRequest.builder(command.getQuery()).name(command.getScroller()).build();
+        if (!Framework.getService(ScrollService.class).supportsPartitions(request)) {
+            log.debug("Scroller: {} does not support partitions, scroll command: {} with a single cursor",
+                    command.getScroller(), command.getId());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Produces a partition command to the scroll partition stream for each scroll partition of the command.
+     *
+     * @since 11.5
+     */
+    protected void submitPartitions(ComputationContext context, BulkCommand command) {
+        String commandId = command.getId();
+        int partitions = command.getScrollPartitions();
+        BulkStatus delta = BulkStatus.deltaOf(commandId);
+        delta.setState(SCROLLING_RUNNING);
+        delta.setScrollStartTime(Instant.now());
+        delta.setScrollPartitions(partitions);
+        ((ComputationContextImpl) context).produceRecordImmediate(STATUS_STREAM, commandId,
+                BulkCodecs.getStatusCodec().encode(delta));
+        Codec<BulkCommand> codec = BulkCodecs.getCommandCodec();
+        for (int partition = 0; partition < partitions; partition++) {
+            BulkCommand partitionCommand = codec.decode(codec.encode(command));
+            partitionCommand.setScrollPartition(Integer.valueOf(partition));
+            String key = commandId + ":" + partition;
+            log.debug("Submit partition: {}/{} of command: {}", partition, partitions, commandId);
+            context.produceRecord(SCROLL_PARTITION_STREAM, key, codec.encode(partitionCommand));
+        }
+    }
+
     protected Scroll buildScroll(BulkCommand command) {
         ScrollRequest request;
         String query = command.getQuery();
@@ -241,13 +308,16 @@ public class BulkScrollerComputation extends AbstractComputation {
                                           .build();
 
         } else {
-            request = DocumentScrollRequest.builder(query)
-                                           .username(command.getUsername())
-                                           .repository(command.getRepository())
-                                           .size(scrollSize)
-                                           .timeout(Duration.ofSeconds(scrollKeepAliveSeconds))
-                                           .name(command.getScroller())
-                                           .build();
+            DocumentScrollRequest.Builder builder = DocumentScrollRequest.builder(query);
+            builder.username(command.getUsername())
+                   .repository(command.getRepository())
+                   .size(scrollSize)
+                   .timeout(Duration.ofSeconds(scrollKeepAliveSeconds))
+                   .name(command.getScroller());
+            if (command.getScrollPartition() != null) {
+                builder.partition(command.getScrollPartition().intValue(), command.getScrollPartitions());
+            }
+            request = builder.build();
         }
         ScrollService service = Framework.getService(ScrollService.class);
         return service.scroll(request);
@@ -299,7 +369,10 @@ public class BulkScrollerComputation extends AbstractComputation {
         if (errorMessage != null) {
             delta.inError(errorMessage);
         }
-        if (documentCount == 0) {
+        if (scrollPartition != null) {
+            // the state is updated when all the partitions have been scrolled
+            delta.setScrolledPartitions(1);
+        } else if (documentCount == 0) {
             delta.setState(COMPLETED);
             delta.setCompletedTime(Instant.now());
         } else {
@@ -319,7 +392,8 @@ public class BulkScrollerComputation extends AbstractComputation {
             long documentCount) {
         List<String> ids = documentIds.subList(0, min(bucketSize, documentIds.size()));
         BulkBucket bucket = new BulkBucket(commandId, ids);
-        String key = commandId + ":" + Long.toString(bucketNumber);
+        String key = scrollPartition == null ? commandId + ":" + Long.toString(bucketNumber)
+                : commandId + ":" + scrollPartition + ":" + Long.toString(bucketNumber);
         Record record = Record.of(key, BulkCodecs.getBucketCodec().encode(bucket));
         if (produceImmediate || (produceImmediateThreshold > 0 && documentCount > produceImmediateThreshold)) {
             ComputationContextImpl contextImpl = (ComputationContextImpl) context;
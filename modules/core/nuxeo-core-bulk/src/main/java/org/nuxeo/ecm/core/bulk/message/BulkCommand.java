@@ -74,6 +74,14 @@ public class BulkCommand implements Serializable {
     @AvroDefault("false")
     protected boolean externalScroller;
 
+    // @since 11.5
+    @AvroDefault("0")
+    protected int scrollPartitions;
+
+    // @since 11.5
+    @Nullable
+    protected Integer scrollPartition;
+
     @AvroEncode(using = MapAsJsonAsStringEncoding.class)
     protected Map<String, Serializable> params;
 
@@ -94,6 +102,7 @@ public class BulkCommand implements Serializable {
         this.scroller = builder.scroller;
         this.genericScroller = BooleanUtils.toBoolean(builder.genericScroller);
         this.externalScroller = BooleanUtils.toBoolean(builder.externalScroller);
+        this.scrollPartitions = builder.scrollPartitions;
     }
 
     public String getUsername() {
@@ -164,6 +173,24 @@ public class BulkCommand implements Serializable {
         return queryLimit;
     }
 
+    /**
+     * The number of partitions of the document set scrolled concurrently, 0 to use the action configuration.
+     *
+     * @since 11.5
+     */
+    public int getScrollPartitions() {
+        return scrollPartitions;
+    }
+
+    /**
+     * The partition of the document set scrolled by this command, or {@code null} if this is not a partition command.
+     *
+     * @since 11.5
+     */
+    public Integer getScrollPartition() {
+        return scrollPartition;
+    }
+
     @Override
     public int hashCode() {
         return HashCodeBuilder.reflectionHashCode(this);
@@ -199,6 +226,20 @@ public class BulkCommand implements Serializable {
         this.scroller = scrollerName;
     }
 
+    /**
+     * @since 11.5
+     */
+    public void setScrollPartitions(int scrollPartitions) {
+        this.scrollPartitions = scrollPartitions;
+    }
+
+    /**
+     * @since 11.5
+     */
+    public void setScrollPartition(Integer scrollPartition) {
+        this.scrollPartition = scrollPartition;
+    }
+
     public static class Builder {
         protected final String action;
 
@@ -220,6 +261,8 @@ public class BulkCommand implements Serializable {
 
         protected Boolean externalScroller;
 
+        protected int scrollPartitions;
+
         protected Map<String, Serializable> params = new HashMap<>();
 
         /**
@@ -370,6 +413,21 @@ public class BulkCommand implements Serializable {
             return this;
         }
 
+        /**
+         * The number of partitions of the document set scrolled concurrently. Only used with a document scroller
+         * supporting partitions.
+         *
+         * @since 11.5
+         */
+        public Builder scrollPartitions(int partitions) {
+            if (partitions <= 0) {
+                throw new IllegalArgumentException(
+                        String.format("Invalid scroll partitions: %d, must be > 0", partitions));
+            }
+            this.scrollPartitions = partitions;
+            return this;
+        }
+
         /**
          * Uses a generic scroller, the query syntax depends on scroller implementation.
          *
@@ -115,6 +115,14 @@ public class BulkStatus implements AsyncStatus<String> {
     @AvroDefault("false")
     protected boolean queryLimitReached;
 
+    // @since 11.5
+    @AvroDefault("0")
+    protected int scrollPartitions;
+
+    // @since 11.5
+    @AvroDefault("0")
+    protected int scrolledPartitions;
+
     @Nullable
     @AvroEncode(using = MapAsJsonAsStringEncoding.class)
     protected Map<String, Serializable> result = new HashMap<>();
@@ -194,7 +202,22 @@ public class BulkStatus implements AsyncStatus<String> {
         if (update.completedTime != null) {
             completedTime = update.completedTime;
         }
-        if (update.total != null) {
+        if (update.scrollPartitions > 0) {
+            scrollPartitions = update.scrollPartitions;
+        }
+        if (update.scrolledPartitions > 0) {
+            // each partition reports its own count
+            scrolledPartitions += update.scrolledPartitions;
+            setTotal(getTotal() + update.getTotal());
+            if (isScrollCompleted() && getState() != State.ABORTED) {
+                if (getTotal() == 0) {
+                    setState(State.COMPLETED);
+                    setCompletedTime(Instant.now());
+                } else {
+                    setState(State.RUNNING);
+                }
+            }
+        } else if (update.total != null) {
             setTotal(update.getTotal());
         }
         if (update.getAction() != null && getAction() == null) {
@@ -219,7 +242,7 @@ public class BulkStatus implements AsyncStatus<String> {
     }
 
     protected void checkForCompletedState() {
-        if (!isDelta() && getTotal() > 0 && getProcessed() >= getTotal()) {
+        if (!isDelta() && isScrollCompleted() && getTotal() > 0 && getProcessed() >= getTotal()) {
             if (getState() != State.COMPLETED && getState() != State.ABORTED) {
                 setState(State.COMPLETED);
                 setCompletedTime(Instant.now());
@@ -329,6 +352,49 @@ public class BulkStatus implements AsyncStatus<String> {
         this.queryLimitReached = queryLimitReached;
     }
 
+    /**
+     * Gets the number of partitions of the document set scrolled concurrently, 0 if the scroll is not partitioned.
+     *
+     * @since 11.5
+     */
+    public int getScrollPartitions() {
+        return scrollPartitions;
+    }
+
+    /**
+     * @since 11.5
+     */
+    public void setScrollPartitions(int scrollPartitions) {
+        this.scrollPartitions = scrollPartitions;
+    }
+
+    /**
+     * Gets the number of partitions whose scroll is completed. For a delta this is a relative value that is aggregated
+     * during {@link #merge(BulkStatus)} operation.
+     *
+     * @since 11.5
+     */
+    public int getScrolledPartitions() {
+        return scrolledPartitions;
+    }
+
+    /**
+     * @since 11.5
+     */
+    public void setScrolledPartitions(int scrolledPartitions) {
+        this.scrolledPartitions = scrolledPartitions;
+    }
+
+    /**
+     * Returns true if all the partitions of the document set have been scrolled, always true if the scroll is not
+     * partitioned.
+     *
+     * @since 11.5
+     */
+    public boolean isScrollCompleted() {
+        return scrolledPartitions >= scrollPartitions;
+    }
+
     @Override
     public boolean isCompleted() {
         return getState() == State.COMPLETED;
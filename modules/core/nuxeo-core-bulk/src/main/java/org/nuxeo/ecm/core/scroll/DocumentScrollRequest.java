@@ -48,6 +48,11 @@ public class DocumentScrollRequest implements ScrollRequest {
 
     protected final String username;
 
+    // @since 11.5
+    protected final int partition;
+
+    // @since 11.5
+    protected final int partitions;
 
     protected DocumentScrollRequest(Builder builder) {
         this.name = builder.getName();
@@ -56,6 +61,8 @@ public class DocumentScrollRequest implements ScrollRequest {
         this.size = builder.getSize();
         this.username = builder.getUsername();
         this.repository = builder.getRepository();
+        this.partition = builder.getPartition();
+        this.partitions = builder.getPartitions();
     }
 
     @Override
@@ -89,11 +96,36 @@ public class DocumentScrollRequest implements ScrollRequest {
         return repository;
     }
 
+    /**
+     * The partition of the documents to scroll, from 0 to {@link #getPartitions()} - 1.
+     *
+     * @since 11.5
+     */
+    public int getPartition() {
+        return partition;
+    }
+
+    /**
+     * The number of partitions of the documents, 1 when the scroll is not partitioned.
+     *
+     * @since 11.5
+     */
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * @since 11.5
+     */
+    public boolean isPartitioned() {
+        return partitions > 1;
+    }
+
     @Override
     public String toString() {
         return "DocumentScrollRequest{" + "name='" + name + '\'' + ", query='" + query + '\'' + ", repository='"
                 + repository + '\'' + ", timeout=" + timeout + ", size=" + size + ", username='" + username + '\''
-                + '}';
+                + ", partition=" + partition + ", partitions=" + partitions + '}';
     }
 
     /**
@@ -117,6 +149,10 @@ public class DocumentScrollRequest implements ScrollRequest {
 
         protected int size;
 
+        protected int partition;
+
+        protected int partitions = 1;
+
         public static final String UNKNOWN = "unknown";
 
         public static final int DEFAULT_SCROLL_SIZE = 50;
@@ -154,6 +190,22 @@ public class DocumentScrollRequest implements ScrollRequest {
             return this;
         }
 
+        /**
+         * Restricts the scroll to a partition of the documents. The partitions are disjoint and together cover all the
+         * documents matching the query, so that they can be scrolled concurrently.
+         *
+         * @since 11.5
+         */
+        public Builder partition(int partition, int partitions) {
+            if (partitions <= 0 || partition < 0 || partition >= partitions) {
+                throw new IllegalArgumentException(
+                        String.format("Invalid partition: %d, must be >= 0 and < %d", partition, partitions));
+            }
+            this.partition = partition;
+            this.partitions = partitions;
+            return this;
+        }
+
         /**
          * The repository to execute the NXQL request.
          */
@@ -190,6 +242,14 @@ public class DocumentScrollRequest implements ScrollRequest {
             return username == null ? UNKNOWN : username;
         }
 
+        public int getPartition() {
+            return partition;
+        }
+
+        public int getPartitions() {
+            return partitions;
+        }
+
         public String getRepository() {
             if (isEmpty(repository)) {
                 RepositoryManager repoManager = Framework.getService(RepositoryManager.class);
@@ -85,8 +85,13 @@ public class RepositoryScroll implements Scroll {
 
     protected boolean fetch() {
         if (repoScroller == null) {
-            repoScroller = session.scroll(request.getQuery(), request.getSize(),
-                    (int) request.getTimeout().toSeconds());
+            int keepAliveSeconds = (int) request.getTimeout().toSeconds();
+            if (request.isPartitioned()) {
+                repoScroller = session.scroll(request.getQuery(), request.getSize(), keepAliveSeconds,
+                        request.getPartition(), request.getPartitions());
+            } else {
+                repoScroller = session.scroll(request.getQuery(), request.getSize(), keepAliveSeconds);
+            }
         } else {
             repoScroller = session.scroll(repoScroller.getScrollId());
         }
@@ -53,6 +53,12 @@ public class ScrollDescriptor {
     @XNode("@default")
     protected boolean isDefault;
 
+    /**
+     * @since 11.5
+     */
+    @XNode("@supportsPartitions")
+    protected boolean supportsPartitions;
+
     @XNode("@class")
     protected Class<? extends Scroll> scrollClass;
 
@@ -89,6 +95,15 @@ public class ScrollDescriptor {
         return isDefault;
     }
 
+    /**
+     * Returns {@code true} if the scroll implementation can scroll a partition of a {@link DocumentScrollRequest}.
+     *
+     * @since 11.5
+     */
+    public boolean supportsPartitions() {
+        return supportsPartitions;
+    }
+
     public Map<String, String> getOptions() {
         if (optionsReadOnly == null) {
             optionsReadOnly = Collections.unmodifiableMap(options);
@@ -83,4 +83,13 @@ public class ScrollServiceImpl implements ScrollService {
         }
         return descriptors.containsKey(getKey(request));
     }
+
+    @Override
+    public boolean supportsPartitions(ScrollRequest request) {
+        if (request == null) {
+            return false;
+        }
+        ScrollDescriptor descriptor = descriptors.get(getKey(request));
+        return descriptor != null && descriptor.supportsPartitions();
+    }
 }
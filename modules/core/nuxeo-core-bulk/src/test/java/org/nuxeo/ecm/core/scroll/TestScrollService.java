@@ -65,6 +65,10 @@ public class TestScrollService {
         // explicit
         assertTrue(scrollService.exists(DocumentScrollRequest.builder("").name("repository").build()));
         assertFalse(scrollService.exists(DocumentScrollRequest.builder("").name("unknown").build()));
+        // partitions
+        assertTrue(scrollService.supportsPartitions(DocumentScrollRequest.builder("").build()));
+        assertFalse(scrollService.supportsPartitions(StaticScrollRequest.builder("").build()));
+        assertFalse(scrollService.supportsPartitions(DocumentScrollRequest.builder("").name("unknown").build()));
     }
 
     @Test
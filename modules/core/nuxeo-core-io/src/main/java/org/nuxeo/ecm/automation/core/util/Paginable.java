@@ -24,6 +24,7 @@ import java.util.Map;
 import org.nuxeo.ecm.platform.query.api.Aggregate;
 import org.nuxeo.ecm.platform.query.api.Bucket;
 import org.nuxeo.ecm.platform.query.api.QuickFilter;
+import org.nuxeo.ecm.platform.query.api.ResultsCountKind;
 
 /**
  * @author <a href="mailto:tdelprat@nuxeo.com">Tiry</a>
@@ -129,4 +130,13 @@ public interface Paginable<T> extends List<T> {
      */
     long getResultsCountLimit();
 
+    /**
+     * Returns how {@link #getResultsCount()} was computed.
+     *
+     * @since 11.5
+     */
+    default ResultsCountKind getResultsCountKind() {
+        return ResultsCountKind.EXACT;
+    }
+
 }
@@ -27,6 +27,7 @@ import org.nuxeo.ecm.platform.query.api.Aggregate;
 import org.nuxeo.ecm.platform.query.api.Bucket;
 import org.nuxeo.ecm.platform.query.api.PageProvider;
 import org.nuxeo.ecm.platform.query.api.QuickFilter;
+import org.nuxeo.ecm.platform.query.api.ResultsCountKind;
 
 /**
  * Wraps a {@link org.nuxeo.ecm.platform.query.api.PageProvider}.
@@ -133,4 +134,9 @@ public class PaginablePageProvider<T> extends ArrayList<T> implements Paginable<
     public long getResultsCountLimit() {
         return pageProvider.getResultsCountLimit();
     }
+
+    @Override
+    public ResultsCountKind getResultsCountKind() {
+        return pageProvider.getResultsCountKind();
+    }
 }
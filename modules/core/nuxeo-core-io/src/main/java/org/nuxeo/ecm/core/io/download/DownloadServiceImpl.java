@@ -28,6 +28,11 @@ import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Calendar;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -38,6 +43,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.Supplier;
 import java.util.regex.Pattern;
@@ -90,11 +96,16 @@ import org.nuxeo.ecm.core.io.NginxConstants;
 import org.nuxeo.ecm.core.transientstore.api.TransientStore;
 import org.nuxeo.ecm.core.transientstore.api.TransientStoreService;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.model.ComponentContext;
 import org.nuxeo.runtime.model.DefaultComponent;
 import org.nuxeo.runtime.services.config.ConfigurationService;
 import org.nuxeo.runtime.transaction.TransactionHelper;
 
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+
 /**
  * This service allows the download of blobs to a HTTP response.
  *
@@ -119,6 +130,42 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
     /** @since 11.1 */
     public static final String DOWNLOAD_URL_FOLLOW_REDIRECT = "org.nuxeo.download.url.follow.redirect";
 
+    /**
+     * Configuration property enabling the transfer of blobs backed by a local file through a file channel or the
+     * container's sendfile support, instead of through their stream.
+     *
+     * @since 11.5
+     */
+    public static final String DOWNLOAD_ZERO_COPY_ENABLED = "org.nuxeo.download.zerocopy.enabled";
+
+    /**
+     * Request attribute set by Tomcat when the connector supports sendfile.
+     *
+     * @since 11.5
+     */
+    protected static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+
+    /** @since 11.5 */
+    protected static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+
+    /** @since 11.5 */
+    protected static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+
+    /** @since 11.5 */
+    protected static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    /** @since 11.5 */
+    protected static final String TRANSFER_SENDFILE = "sendfile";
+
+    /** @since 11.5 */
+    protected static final String TRANSFER_FILE = "file";
+
+    /** @since 11.5 */
+    protected static final String TRANSFER_STREAM = "stream";
+
+    /** @since 11.5 */
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
     private static final String RUN_FUNCTION = "run";
 
     private static final Pattern FILENAME_SANITIZATION_REGEX = Pattern.compile(";\\w+=.*");
@@ -569,7 +616,7 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         Consumer<ByteRange> blobTransferer = context.getBlobTransferer();
         if (blobTransferer == null) {
             Blob fblob = blob;
-            blobTransferer = byteRange -> transferBlobWithByteRange(fblob, byteRange, response);
+            blobTransferer = byteRange -> transferBlobWithByteRange(fblob, byteRange, request, response);
         }
         Calendar lastModified = context.getLastModified();
         if (lastModified == null && doc != null) {
@@ -786,6 +833,30 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         }
     }
 
+    /**
+     * Transfers the blob to the response, letting the container send the file itself if the blob is backed by a
+     * persistent local file and the container supports it.
+     *
+     * @since 11.5
+     */
+    protected void transferBlobWithByteRange(Blob blob, ByteRange byteRange, HttpServletRequest request,
+            HttpServletResponse response) {
+        if (blob instanceof ManagedBlob && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            // the container sends the file after the request, so it must not be evicted from a cache meanwhile
+            Path path = getLocalPath(blob);
+            if (path != null && isPermanentFile((ManagedBlob) blob, path)) {
+                long start = byteRange == null ? 0 : byteRange.getStart();
+                long length = byteRange == null ? blob.getLength() : byteRange.getLength();
+                request.setAttribute(SENDFILE_FILENAME_ATTR, path.toAbsolutePath().toString());
+                request.setAttribute(SENDFILE_START_ATTR, Long.valueOf(start));
+                request.setAttribute(SENDFILE_END_ATTR, Long.valueOf(start + length)); // exclusive
+                registry.meter(getTransferMetricName(TRANSFER_SENDFILE, "bytes")).mark(length);
+                return;
+            }
+        }
+        transferBlobWithByteRange(blob, byteRange, response);
+    }
+
     protected void transferBlobWithByteRange(Blob blob, ByteRange byteRange, HttpServletResponse response) {
         transferBlobWithByteRange(blob, byteRange, () -> {
             try {
@@ -803,6 +874,15 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
 
     @Override
     public void transferBlobWithByteRange(Blob blob, ByteRange byteRange, Supplier<OutputStream> outputStreamSupplier) {
+        long length = byteRange == null ? blob.getLength() : byteRange.getLength();
+        Path path = getLocalPath(blob);
+        if (path != null) {
+            long t0 = System.nanoTime();
+            transferFileWithByteRange(path, byteRange, length, outputStreamSupplier);
+            transferred(TRANSFER_FILE, length, System.nanoTime() - t0);
+            return;
+        }
+        long t0 = System.nanoTime();
         try (InputStream in = blob.getStream()) {
             @SuppressWarnings("resource")
             OutputStream out = outputStreamSupplier.get(); // not ours to close
@@ -820,6 +900,93 @@ public class DownloadServiceImpl extends DefaultComponent implements DownloadSer
         } catch (IOException e) {
             throw new UncheckedIOException(e);
         }
+        transferred(TRANSFER_STREAM, length, System.nanoTime() - t0);
+    }
+
+    /**
+     * Gets the local file backing a blob, if the file can be used instead of the blob stream.
+     *
+     * @return the file path, or {@code null} if the blob stream must be used
+     * @since 11.5
+     */
+    protected Path getLocalPath(Blob blob) {
+        if (!Framework.getService(ConfigurationService.class).isBooleanTrue(DOWNLOAD_ZERO_COPY_ENABLED)) {
+            return null;
+        }
+        File file = blob.getFile();
+        // the file may hold something else than the blob bytes, for instance if the blob store encrypts them
+        if (file == null || file.length() != blob.getLength()) {
+            return null;
+        }
+        return file.toPath();
+    }
+
+    /**
+     * Checks if a blob's file belongs to the storage directory of a local blob provider, and therefore stays in place
+     * until the blob is deleted. This is not the case for the files of a caching blob store, which can be evicted at
+     * any time, or for the files of a transactional blob store that are not yet committed.
+     *
+     * @since 11.5
+     */
+    protected boolean isPermanentFile(ManagedBlob blob, Path path) {
+        BlobProvider blobProvider = Framework.getService(BlobManager.class).getBlobProvider(blob);
+        Path storageDir;
+        if (blobProvider instanceof LocalBlobProvider) {
+            storageDir = ((LocalBlobProvider) blobProvider).getStorageDir();
+        } else if (blobProvider != null && blobProvider.getBinaryManager() instanceof DefaultBinaryManager) {
+            storageDir = ((DefaultBinaryManager) blobProvider.getBinaryManager()).getStorageDir().toPath();
+        } else {
+            return false;
+        }
+        return path.toAbsolutePath().normalize().startsWith(storageDir.toAbsolutePath().normalize());
+    }
+
+    /**
+     * Transfers a byte range of a file through a file channel, which reads from the requested position without going
+     * through the bytes before it.
+     * <p>
+     * The servlet API only gives access to an output stream, so the bytes are still copied through the buffer of the
+     * channel wrapping it. Only the container's sendfile support avoids this copy.
+     *
+     * @since 11.5
+     */
+    protected void transferFileWithByteRange(Path path, ByteRange byteRange, long length,
+            Supplier<OutputStream> outputStreamSupplier) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            @SuppressWarnings("resource")
+            OutputStream out = outputStreamSupplier.get(); // not ours to close
+            BufferingServletOutputStream.stopBuffering(out);
+            @SuppressWarnings("resource") // closing it would close the output stream
+            WritableByteChannel target = Channels.newChannel(out);
+            long position = byteRange == null ? 0 : byteRange.getStart();
+            long remaining = length;
+            while (remaining > 0) {
+                long n = channel.transferTo(position, remaining, target);
+                if (n <= 0) {
+                    throw new IOException("Unexpected end of file: " + path);
+                }
+                position += n;
+                remaining -= n;
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /** @since 11.5 */
+    protected MetricName getTransferMetricName(String path, String name) {
+        return MetricName.build("nuxeo", "download", "transfer", name).tagged("path", path);
+    }
+
+    /**
+     * Records the throughput of a transfer path.
+     *
+     * @since 11.5
+     */
+    protected void transferred(String path, long bytes, long durationNanos) {
+        registry.meter(getTransferMetricName(path, "bytes")).mark(bytes);
+        registry.timer(getTransferMetricName(path, "timer")).update(durationNanos, TimeUnit.NANOSECONDS);
     }
 
     protected String fixXPath(String xpath) {
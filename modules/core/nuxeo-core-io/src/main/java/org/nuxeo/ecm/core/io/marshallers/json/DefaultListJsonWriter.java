@@ -137,6 +137,7 @@ public abstract class DefaultListJsonWriter<EntityType> extends AbstractJsonWrit
             jg.writeNumberField("pageSize", paginable.getPageSize());
             jg.writeNumberField("maxPageSize", paginable.getMaxPageSize());
             jg.writeNumberField("resultsCountLimit", paginable.getResultsCountLimit());
+            jg.writeStringField("resultsCountKind", paginable.getResultsCountKind().toString());
             jg.writeNumberField("currentPageSize", paginable.getCurrentPageSize());
             jg.writeNumberField("currentPageIndex", paginable.getCurrentPageIndex());
             jg.writeNumberField("currentPageOffset", paginable.getCurrentPageOffset());
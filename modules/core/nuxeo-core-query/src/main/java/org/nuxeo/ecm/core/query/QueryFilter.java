@@ -55,11 +55,24 @@ public class QueryFilter implements org.nuxeo.ecm.core.api.query.QueryFilter<SQL
 
     protected final long offset;
 
+    /** @since 11.5 */
+    protected final String[] readAclIds;
+
     /**
      * Constructs a query filter.
      */
     public QueryFilter(NuxeoPrincipal principal, String[] principals, String[] permissions, FacetFilter facetFilter,
             Collection<SQLQuery.Transformer> queryTransformers, long limit, long offset) {
+        this(principal, principals, permissions, facetFilter, queryTransformers, limit, offset, null);
+    }
+
+    /**
+     * Constructs a query filter with the ids of the read ACLs of the principals, already resolved.
+     *
+     * @since 11.5
+     */
+    public QueryFilter(NuxeoPrincipal principal, String[] principals, String[] permissions, FacetFilter facetFilter,
+            Collection<SQLQuery.Transformer> queryTransformers, long limit, long offset, String[] readAclIds) {
         this.principal = principal;
         this.principals = principals;
         this.permissions = permissions;
@@ -67,6 +80,7 @@ public class QueryFilter implements org.nuxeo.ecm.core.api.query.QueryFilter<SQL
         this.queryTransformers = queryTransformers;
         this.limit = limit;
         this.offset = offset;
+        this.readAclIds = readAclIds;
     }
 
     public static QueryFilter withoutLimitOffset(QueryFilter other) {
@@ -76,7 +90,26 @@ public class QueryFilter implements org.nuxeo.ecm.core.api.query.QueryFilter<SQL
                 other.permissions, //
                 other.facetFilter, //
                 other.queryTransformers, //
-                0, 0);
+                0, 0, //
+                other.readAclIds);
+    }
+
+    /**
+     * Returns a copy of the given filter with the ids of the read ACLs of its principals, so that the storage can check
+     * them without its own per-user cache.
+     *
+     * @since 11.5
+     */
+    public static QueryFilter withReadAclIds(QueryFilter other, String[] readAclIds) {
+        return new QueryFilter( //
+                other.principal, //
+                other.principals, //
+                other.permissions, //
+                other.facetFilter, //
+                other.queryTransformers, //
+                other.limit, //
+                other.offset, //
+                readAclIds);
     }
 
     @Override
@@ -114,6 +147,16 @@ public class QueryFilter implements org.nuxeo.ecm.core.api.query.QueryFilter<SQL
         return offset;
     }
 
+    /**
+     * Gets the ids of the read ACLs of the principals, if already resolved.
+     *
+     * @return the read ACL ids, or {@code null} if not resolved
+     * @since 11.5
+     */
+    public String[] getReadAclIds() {
+        return readAclIds;
+    }
+
     @Override
     public String toString() {
         return String.format("QueryFilter(principal=%s, limit=%d, offset=%d)", principal, limit, offset);
@@ -0,0 +1,166 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.query.sql.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.query.QueryParseException;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+
+/**
+ * Transforms a query to only return the documents sorted after a given row, for keyset ("search after") pagination.
+ * <p>
+ * The sort keys are the ones of the ORDER BY clause of the query, to which {@code ecm:uuid} is appended if it is not
+ * already the last one, so that the order is total. The values are the ones of the sort keys for the last row of the
+ * previous page, in the same order. For sort keys {@code a, b DESC, ecm:uuid} the added predicate is:
+ *
+ * <pre>
+ * a &gt; va OR (a = va AND b &lt; vb) OR (a = va AND b = vb AND ecm:uuid &gt; vid)
+ * </pre>
+ *
+ * which any backend can evaluate as a range on an index of the sort keys, whatever the page number.
+ * <p>
+ * A NULL value cannot be compared, so {@code IS NULL} and {@code IS NOT NULL} are used for it, according to whether the
+ * backend sorts NULL values first or last in each direction. For instance if NULL values come last in ascending order,
+ * the rows after a non-null value {@code va} of a sort key {@code a} are the ones with {@code a > va OR a IS NULL},
+ * and {@code a IS NULL} is used for equality to a NULL value, after which no non-null value comes.
+ *
+ * @since 11.5
+ */
+public class KeysetTransformer implements SQLQuery.Transformer {
+
+    protected final List<Serializable> values;
+
+    protected final boolean nullsFirstAscending;
+
+    protected final boolean nullsFirstDescending;
+
+    /**
+     * Constructs a transformer returning the rows after the given sort key values, for a backend sorting NULL values
+     * as smaller than any value.
+     *
+     * @param values the sort key values of the last row of the previous page
+     */
+    public KeysetTransformer(List<? extends Serializable> values) {
+        this(values, true, false);
+    }
+
+    /**
+     * Constructs a transformer returning the rows after the given sort key values.
+     *
+     * @param values the sort key values of the last row of the previous page, the last one ({@code ecm:uuid}) being
+     *            non-null
+     * @param nullsFirstAscending whether the backend sorts NULL values first in ascending order
+     * @param nullsFirstDescending whether the backend sorts NULL values first in descending order
+     */
+    public KeysetTransformer(List<? extends Serializable> values, boolean nullsFirstAscending,
+            boolean nullsFirstDescending) {
+        if (values == null || values.isEmpty() || values.get(values.size() - 1) == null) {
+            throw new IllegalArgumentException("Invalid keyset values: " + values);
+        }
+        this.values = new ArrayList<>(values);
+        this.nullsFirstAscending = nullsFirstAscending;
+        this.nullsFirstDescending = nullsFirstDescending;
+    }
+
+    /**
+     * Gets the sort keys used for keyset pagination of the given query, including the final {@code ecm:uuid}.
+     */
+    public static List<OrderByExpr> getKeys(SQLQuery query) {
+        List<OrderByExpr> keys = new ArrayList<>();
+        if (query.orderBy != null) {
+            keys.addAll(query.orderBy.elements);
+        }
+        if (keys.isEmpty() || !NXQL.ECM_UUID.equals(keys.get(keys.size() - 1).reference.name)) {
+            keys.add(new OrderByExpr(new Reference(NXQL.ECM_UUID), false));
+        }
+        return keys;
+    }
+
+    /**
+     * Gets the predicate restricting the rows to the ones sorted after the values.
+     */
+    public Predicate getPredicate(List<OrderByExpr> keys) {
+        if (keys.size() != values.size()) {
+            throw new QueryParseException("Keyset values " + values + " do not match sort keys " + keys);
+        }
+        Predicate predicate = null;
+        for (int i = keys.size() - 1; i >= 0; i--) {
+            OrderByExpr key = keys.get(i);
+            Serializable value = values.get(i);
+            boolean nullsLast = !(key.isDescending ? nullsFirstDescending : nullsFirstAscending);
+            Predicate after;
+            Predicate equal;
+            if (value == null) {
+                // only non-null values come after NULL, if NULL values are sorted first
+                after = nullsLast ? null : new Predicate(key.reference, Operator.ISNOTNULL, null);
+                equal = new Predicate(key.reference, Operator.ISNULL, null);
+            } else {
+                Literal literal = toLiteral(value);
+                Operator operator = key.isDescending ? Operator.LT : Operator.GT;
+                after = new Predicate(key.reference, operator, literal);
+                if (nullsLast) {
+                    after = Predicates.or(after, new Predicate(key.reference, Operator.ISNULL, null));
+                }
+                equal = new Predicate(key.reference, Operator.EQ, literal);
+            }
+            if (predicate == null) {
+                // last key, never null
+                predicate = after;
+            } else if (after == null) {
+                predicate = Predicates.and(equal, predicate);
+            } else {
+                // after this key, or equal on this key and after on the next ones
+                predicate = Predicates.or(after, Predicates.and(equal, predicate));
+            }
+        }
+        return predicate;
+    }
+
+    protected static Literal toLiteral(Serializable value) {
+        if (value instanceof Boolean) {
+            // booleans are compared as integers in NXQL
+            return new IntegerLiteral(((Boolean) value).booleanValue() ? 1 : 0);
+        }
+        return Literals.toLiteral(value);
+    }
+
+    @Override
+    public SQLQuery transform(NuxeoPrincipal principal, SQLQuery query) {
+        List<OrderByExpr> keys = getKeys(query);
+        Predicate predicate = getPredicate(keys);
+        if (query.where != null && query.where.predicate != null) {
+            predicate = Predicates.and(query.where.predicate, predicate);
+        }
+        OrderByClause orderBy = new OrderByClause(new OrderByList(keys));
+        return new SQLQuery(query.select, query.from, new WhereClause(predicate), query.groupBy, query.having, orderBy,
+                query.limit, query.offset);
+    }
+
+    @Override
+    public String toString() {
+        // the values are part of the string, as query translation caches use it as a key
+        return getClass().getSimpleName() + values + "(nullsFirst=" + nullsFirstAscending + "," + nullsFirstDescending
+                + ")";
+    }
+
+}
@@ -0,0 +1,148 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.query.sql.model;
+
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+
+/**
+ * Transforms a query to restrict it to a partition of the document id space.
+ * <p>
+ * This only applies to random ids whose leading hexadecimal digits are uniformly distributed, like UUIDs. The id space
+ * is split into contiguous ranges of the first 16 bits of the ids, and the bounds are built from a template id (the
+ * lowest possible one) by replacing its first 4 characters. The first partition has no lower bound and the last
+ * partition has no upper bound, so that the partitions are disjoint and cover all the documents.
+ * <p>
+ * Ids that are not random, like sequences, cannot be partitioned this way: the caller must scroll them with a single
+ * partition.
+ *
+ * @since 11.5
+ */
+public class PartitionTransformer implements SQLQuery.Transformer {
+
+    /** Template for random UUIDs. */
+    public static final String UUID_TEMPLATE = "00000000-0000-0000-0000-000000000000";
+
+    protected static final long PREFIX_RANGE = 1 << 16;
+
+    protected static final int PREFIX_LENGTH = 4;
+
+    protected final int partition;
+
+    protected final int partitions;
+
+    protected final String idTemplate;
+
+    /**
+     * Constructs a transformer for the given partition of random UUIDs.
+     *
+     * @param partition the partition, from 0 to {@code partitions - 1}
+     * @param partitions the number of partitions
+     */
+    public PartitionTransformer(int partition, int partitions) {
+        this(partition, partitions, UUID_TEMPLATE);
+    }
+
+    /**
+     * Constructs a transformer for the given partition.
+     *
+     * @param partition the partition, from 0 to {@code partitions - 1}
+     * @param partitions the number of partitions
+     * @param idTemplate the lowest possible id, whose first 4 characters are hexadecimal digits
+     */
+    public PartitionTransformer(int partition, int partitions, String idTemplate) {
+        if (partitions < 1 || partition < 0 || partition >= partitions) {
+            throw new IllegalArgumentException("Invalid partition: " + partition + "/" + partitions);
+        }
+        if (idTemplate == null || idTemplate.length() < PREFIX_LENGTH) {
+            throw new IllegalArgumentException("Invalid id template: " + idTemplate);
+        }
+        this.partition = partition;
+        this.partitions = partitions;
+        this.idTemplate = idTemplate;
+    }
+
+    /**
+     * Gets the inclusive lower bound of the UUIDs of a partition, or {@code null} if there is none.
+     */
+    public static String getLowerBound(int partition, int partitions) {
+        return getLowerBound(partition, partitions, UUID_TEMPLATE);
+    }
+
+    /**
+     * Gets the inclusive lower bound of the ids of a partition, or {@code null} if there is none.
+     */
+    public static String getLowerBound(int partition, int partitions, String idTemplate) {
+        if (partition == 0) {
+            return null;
+        }
+        String prefix = String.format("%04x", partition * PREFIX_RANGE / partitions);
+        return prefix + idTemplate.substring(PREFIX_LENGTH);
+    }
+
+    /**
+     * Gets the exclusive upper bound of the UUIDs of a partition, or {@code null} if there is none.
+     */
+    public static String getUpperBound(int partition, int partitions) {
+        return getUpperBound(partition, partitions, UUID_TEMPLATE);
+    }
+
+    /**
+     * Gets the exclusive upper bound of the ids of a partition, or {@code null} if there is none.
+     */
+    public static String getUpperBound(int partition, int partitions, String idTemplate) {
+        if (partition == partitions - 1) {
+            return null;
+        }
+        return getLowerBound(partition + 1, partitions, idTemplate);
+    }
+
+    /**
+     * Gets the predicate restricting the ids to the partition, or {@code null} if there is no restriction.
+     */
+    public Predicate getPredicate() {
+        String lower = getLowerBound(partition, partitions, idTemplate);
+        String upper = getUpperBound(partition, partitions, idTemplate);
+        if (lower == null) {
+            return upper == null ? null : Predicates.lt(NXQL.ECM_UUID, upper);
+        } else if (upper == null) {
+            return Predicates.gte(NXQL.ECM_UUID, lower);
+        } else {
+            return Predicates.and(Predicates.gte(NXQL.ECM_UUID, lower), Predicates.lt(NXQL.ECM_UUID, upper));
+        }
+    }
+
+    @Override
+    public SQLQuery transform(NuxeoPrincipal principal, SQLQuery query) {
+        Predicate predicate = getPredicate();
+        if (predicate == null) {
+            return query;
+        }
+        if (query.where != null && query.where.predicate != null) {
+            predicate = Predicates.and(query.where.predicate, predicate);
+        }
+        return query.withPredicate(predicate);
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(" + partition + "/" + partitions + ")";
+    }
+
+}
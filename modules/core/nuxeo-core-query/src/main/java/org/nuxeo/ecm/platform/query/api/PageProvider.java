@@ -473,4 +473,14 @@ public interface PageProvider<T> extends Serializable {
      * @since 9.3
      */
     long getResultsCountLimit();
+
+    /**
+     * Returns how {@link #getResultsCount()} was computed.
+     *
+     * @since 11.5
+     */
+    default ResultsCountKind getResultsCountKind() {
+        return ResultsCountKind.EXACT;
+    }
+
 }
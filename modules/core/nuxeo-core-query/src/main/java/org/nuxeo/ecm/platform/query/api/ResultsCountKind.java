@@ -0,0 +1,54 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.platform.query.api;
+
+/**
+ * How the results count of a page provider is computed, which is also the strategy used to compute it.
+ *
+ * @since 11.5
+ */
+public enum ResultsCountKind {
+
+    /** The results are fully counted. */
+    EXACT,
+
+    /** The results are counted up to a limit, beyond which the count is unknown. */
+    CAPPED,
+
+    /** The count is estimated from the backend statistics, without counting the results. */
+    ESTIMATED,
+
+    /** The count was computed by a previous identical query, and may be stale. */
+    CACHED;
+
+    /**
+     * Gets the kind from its case-insensitive name.
+     *
+     * @throws IllegalArgumentException if the name is not a valid kind
+     */
+    public static ResultsCountKind of(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    @Override
+    public String toString() {
+        return name().toLowerCase();
+    }
+
+}
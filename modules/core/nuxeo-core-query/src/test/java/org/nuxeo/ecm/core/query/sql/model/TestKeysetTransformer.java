@@ -0,0 +1,112 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.query.sql.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.QueryParseException;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+
+public class TestKeysetTransformer {
+
+    @Test
+    public void testKeys() {
+        SQLQuery query = SQLQueryParser.parse("SELECT * FROM Document");
+        assertEquals("[ecm:uuid]", KeysetTransformer.getKeys(query).toString());
+        query = SQLQueryParser.parse("SELECT * FROM Document ORDER BY dc:title DESC");
+        assertEquals("[dc:title DESC, ecm:uuid]", KeysetTransformer.getKeys(query).toString());
+        query = SQLQueryParser.parse("SELECT * FROM Document ORDER BY dc:title, ecm:uuid DESC");
+        assertEquals("[dc:title, ecm:uuid DESC]", KeysetTransformer.getKeys(query).toString());
+    }
+
+    @Test
+    public void testTransformNoOrderBy() {
+        SQLQuery query = SQLQueryParser.parse("SELECT * FROM Document WHERE dc:title = 'foo'");
+        SQLQuery after = new KeysetTransformer(Collections.singletonList("id1")).transform(null, query);
+        assertEquals("((dc:title = 'foo') AND (ecm:uuid > 'id1'))", after.where.predicate.toString());
+        assertEquals("ecm:uuid", after.orderBy.toString());
+    }
+
+    @Test
+    public void testTransform() {
+        SQLQuery query = SQLQueryParser.parse("SELECT * FROM Document ORDER BY dc:title, my:count DESC");
+        // nulls sorted first in both directions
+        SQLQuery after = new KeysetTransformer(Arrays.asList("foo", Long.valueOf(3), "id1"), true, true).transform(
+                null, query);
+        assertEquals("((dc:title > 'foo') OR ((dc:title = 'foo') AND ((my:count < 3) OR ((my:count = 3)"
+                + " AND (ecm:uuid > 'id1')))))", after.where.predicate.toString());
+        assertEquals("dc:title, my:count DESC, ecm:uuid", after.orderBy.toString());
+    }
+
+    @Test
+    public void testBoolean() {
+        SQLQuery query = SQLQueryParser.parse("SELECT * FROM Document ORDER BY my:flag");
+        SQLQuery after = new KeysetTransformer(Arrays.asList(Boolean.TRUE, "id1")).transform(null, query);
+        assertEquals("((my:flag > 1) OR ((my:flag = 1) AND (ecm:uuid > 'id1')))", after.where.predicate.toString());
+    }
+
+    @Test
+    public void testNullsFirst() {
+        SQLQuery query = SQLQueryParser.parse("SELECT * FROM Document ORDER BY dc:title, my:count DESC");
+        // nulls sorted as smallest, so last in descending order
+        SQLQuery after = new KeysetTransformer(Arrays.asList("foo", Long.valueOf(3), "id1")).transform(null, query);
+        assertEquals("((dc:title > 'foo') OR ((dc:title = 'foo') AND (((my:count < 3) OR my:count IS NULL)"
+                + " OR ((my:count = 3) AND (ecm:uuid > 'id1')))))", after.where.predicate.toString());
+        after = new KeysetTransformer(Arrays.asList(null, null, "id1")).transform(null, query);
+        assertEquals("(dc:title IS NOT NULL OR (dc:title IS NULL AND (my:count IS NULL AND (ecm:uuid > 'id1'))))",
+                after.where.predicate.toString());
+    }
+
+    @Test
+    public void testNullsLast() {
+        SQLQuery query = SQLQueryParser.parse("SELECT * FROM Document ORDER BY dc:title, my:count DESC");
+        // nulls last in both directions
+        SQLQuery after = new KeysetTransformer(Arrays.asList("foo", Long.valueOf(3), "id1"), false, false).transform(
+                null, query);
+        assertEquals("(((dc:title > 'foo') OR dc:title IS NULL) OR ((dc:title = 'foo') AND (((my:count < 3)"
+                + " OR my:count IS NULL) OR ((my:count = 3) AND (ecm:uuid > 'id1')))))",
+                after.where.predicate.toString());
+        after = new KeysetTransformer(Arrays.asList(null, null, "id1"), false, false).transform(null, query);
+        assertEquals("(dc:title IS NULL AND (my:count IS NULL AND (ecm:uuid > 'id1')))",
+                after.where.predicate.toString());
+    }
+
+    @Test
+    public void testInvalidValues() {
+        try {
+            new KeysetTransformer(Arrays.asList("foo", null));
+            fail();
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+        SQLQuery query = SQLQueryParser.parse("SELECT * FROM Document ORDER BY dc:title");
+        try {
+            new KeysetTransformer(Collections.singletonList("id1")).transform(null, query);
+            fail();
+        } catch (QueryParseException e) {
+            // ok
+        }
+    }
+
+}
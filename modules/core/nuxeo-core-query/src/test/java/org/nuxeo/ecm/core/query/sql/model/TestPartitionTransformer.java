@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.query.sql.model;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Random;
+import java.util.UUID;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+
+public class TestPartitionTransformer {
+
+    @Test
+    public void testBounds() {
+        assertNull(PartitionTransformer.getLowerBound(0, 4));
+        assertEquals("40000000-0000-0000-0000-000000000000", PartitionTransformer.getUpperBound(0, 4));
+        assertEquals("40000000-0000-0000-0000-000000000000", PartitionTransformer.getLowerBound(1, 4));
+        assertEquals("c0000000-0000-0000-0000-000000000000", PartitionTransformer.getLowerBound(3, 4));
+        assertNull(PartitionTransformer.getUpperBound(3, 4));
+        assertEquals("55550000-0000-0000-0000-000000000000", PartitionTransformer.getLowerBound(1, 3));
+    }
+
+    @Test
+    public void testPartitionsCoverAllIds() {
+        int partitions = 7;
+        for (int i = 0; i < 1000; i++) {
+            String id = UUID.randomUUID().toString();
+            int found = 0;
+            for (int p = 0; p < partitions; p++) {
+                String lower = PartitionTransformer.getLowerBound(p, partitions);
+                String upper = PartitionTransformer.getUpperBound(p, partitions);
+                if ((lower == null || id.compareTo(lower) >= 0) && (upper == null || id.compareTo(upper) < 0)) {
+                    found++;
+                }
+            }
+            assertEquals(id, 1, found);
+        }
+    }
+
+    @Test
+    public void testBoundsHexIds() {
+        // pseudo-random hex sequence ids
+        String template = "0000000000000000";
+        assertEquals("4000000000000000", PartitionTransformer.getUpperBound(0, 4, template));
+        assertEquals("c000000000000000", PartitionTransformer.getLowerBound(3, 4, template));
+        int partitions = 5;
+        Random random = new Random(1234);
+        for (int i = 0; i < 1000; i++) {
+            String id = String.format("%016x", random.nextLong());
+            int found = 0;
+            for (int p = 0; p < partitions; p++) {
+                String lower = PartitionTransformer.getLowerBound(p, partitions, template);
+                String upper = PartitionTransformer.getUpperBound(p, partitions, template);
+                if ((lower == null || id.compareTo(lower) >= 0) && (upper == null || id.compareTo(upper) < 0)) {
+                    found++;
+                }
+            }
+            assertEquals(id, 1, found);
+        }
+    }
+
+    @Test
+    public void testTransform() {
+        SQLQuery query = SQLQueryParser.parse("SELECT * FROM Document WHERE dc:title = 'foo'");
+        SQLQuery single = new PartitionTransformer(0, 1).transform(null, query);
+        assertSame(query, single);
+        SQLQuery first = new PartitionTransformer(0, 2).transform(null, query);
+        assertEquals("((dc:title = 'foo') AND (ecm:uuid < '80000000-0000-0000-0000-000000000000'))",
+                first.where.predicate.toString());
+        SQLQuery last = new PartitionTransformer(1, 2).transform(null, query);
+        assertEquals("((dc:title = 'foo') AND (ecm:uuid >= '80000000-0000-0000-0000-000000000000'))",
+                last.where.predicate.toString());
+        SQLQuery middle = new PartitionTransformer(1, 4).transform(null, query);
+        assertEquals("((dc:title = 'foo') AND ((ecm:uuid >= '40000000-0000-0000-0000-000000000000')"
+                + " AND (ecm:uuid < '80000000-0000-0000-0000-000000000000')))", middle.where.predicate.toString());
+    }
+
+    @Test
+    public void testInvalidPartition() {
+        try {
+            new PartitionTransformer(2, 2);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid partition: 2/2", e.getMessage());
+        }
+        try {
+            new PartitionTransformer(0, 2, null);
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("Invalid id template: null", e.getMessage());
+        }
+    }
+
+}
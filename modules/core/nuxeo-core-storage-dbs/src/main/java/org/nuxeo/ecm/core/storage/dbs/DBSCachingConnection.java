@@ -25,6 +25,7 @@ import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,6 +37,7 @@ import org.nuxeo.ecm.core.api.ScrollResult;
 import org.nuxeo.ecm.core.query.sql.model.OrderByClause;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.dbs.DBSChildrenIndex.Children;
 import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
 
 import com.google.common.cache.Cache;
@@ -52,7 +54,7 @@ public class DBSCachingConnection implements DBSConnection {
 
     private final Cache<String, State> cache;
 
-    private final Cache<String, String> childCache;
+    private final DBSChildrenIndex childrenIndex;
 
     /**
      * The local invalidations, due to writes to this connection, that should be propagated to other connections (and
@@ -89,11 +91,11 @@ public class DBSCachingConnection implements DBSConnection {
         if (repository.supportsTransactions()) {
             // connection-local cache
             cache = repository.newCache(false);
-            childCache = repository.newChildCache(false);
+            childrenIndex = repository.newChildrenIndex(false);
         } else {
             // no transaction, use a repository-wide cache
             cache = repository.getCache();
-            childCache = repository.getChildCache();
+            childrenIndex = repository.getChildrenIndex();
         }
         // local invalidations
         invalidationsPropagator = repository.getInvalidationsPropagator();
@@ -123,7 +125,7 @@ public class DBSCachingConnection implements DBSConnection {
         if (cache != null) {
             // Clear caches
             cache.invalidateAll();
-            childCache.invalidateAll();
+            childrenIndex.invalidateAll();
         }
         // Send invalidations
         if (clusterInvalidator != null) {
@@ -185,18 +187,69 @@ public class DBSCachingConnection implements DBSConnection {
     public void createState(State state) {
         connection.createState(state);
         // don't cache new state, it is inefficient on mass import
+        childAdded(state);
     }
 
     @Override
     public void createStates(List<State> states) {
         connection.createStates(states);
         // don't cache new states, it is inefficient on mass import
+        states.forEach(this::childAdded);
     }
 
     @Override
     public void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
+        String parentId = getNewParentId(id, diff);
         connection.updateState(id, diff, changeTokenUpdater);
+        updated(id, diff, parentId);
+    }
+
+    @Override
+    public void updateStates(List<StateUpdate> updates) {
+        List<String> parentIds = new ArrayList<>(updates.size());
+        for (StateUpdate update : updates) {
+            parentIds.add(getNewParentId(update.id, update.diff));
+        }
+        connection.updateStates(updates);
+        for (int i = 0; i < updates.size(); i++) {
+            StateUpdate update = updates.get(i);
+            updated(update.id, update.diff, parentIds.get(i));
+        }
+    }
+
+    protected boolean isChildrenChanged(StateDiff diff) {
+        return diff.containsKey(KEY_PARENT_ID) || diff.containsKey(KEY_NAME);
+    }
+
+    /**
+     * Finds from the diff or the cache the parent of a document being moved or renamed, before invalidating it.
+     */
+    protected String getNewParentId(String id, StateDiff diff) {
+        if (!isChildrenChanged(diff)) {
+            return null;
+        }
+        String parentId = (String) diff.get(KEY_PARENT_ID);
+        if (parentId == null) {
+            State state = cache.getIfPresent(id);
+            parentId = state == null ? null : (String) state.get(KEY_PARENT_ID);
+        }
+        return parentId;
+    }
+
+    /**
+     * Invalidates what's needed after a document update.
+     */
+    protected void updated(String id, StateDiff diff, String parentId) {
         invalidate(id);
+        if (isChildrenChanged(diff)) {
+            if (parentId == null) {
+                State state = connection.readPartialState(id, Collections.singleton(KEY_PARENT_ID));
+                parentId = state == null ? null : (String) state.get(KEY_PARENT_ID);
+            }
+            if (parentId != null) {
+                invalidateChildren(parentId);
+            }
+        }
     }
 
     @Override
@@ -209,19 +262,19 @@ public class DBSCachingConnection implements DBSConnection {
     public State readChildState(String parentId, String name, Set<String> ignored) {
         processReceivedInvalidations();
 
-        String childCacheKey = computeChildCacheKey(parentId, name);
-        String stateId = childCache.getIfPresent(childCacheKey);
-        if (stateId != null) {
-            State state = cache.getIfPresent(stateId);
-            if (state != null) {
-                // As we don't have invalidation for childCache we need to check if retrieved state is the right one
-                // and not a previous document which was moved or renamed
-                if (parentId.equals(state.get(KEY_PARENT_ID)) && name.equals(state.get(KEY_NAME))) {
+        Children children = childrenIndex.getChildren(parentId, connection);
+        if (children.isComplete()) {
+            String id = children.getChildId(name);
+            if (id == null) {
+                return null;
+            }
+            if (!ignored.contains(id)) {
+                State state = readState(id);
+                if (isChild(state, parentId, name)) {
                     return state;
-                } else {
-                    // We can invalidate the entry in cache as the document seemed to be moved or renamed
-                    childCache.invalidate(childCacheKey);
                 }
+                // the child was moved, renamed or removed
+                childrenIndex.invalidate(parentId);
             }
         }
         State state = connection.readChildState(parentId, name, ignored);
@@ -229,19 +282,56 @@ public class DBSCachingConnection implements DBSConnection {
         return state;
     }
 
+    @Override
+    public boolean hasChild(String parentId, String name, Set<String> ignored) {
+        processReceivedInvalidations();
+
+        Children children = childrenIndex.getChildren(parentId, connection);
+        if (children.isComplete()) {
+            String id = children.getChildId(name);
+            if (id == null) {
+                return false;
+            }
+            if (!ignored.contains(id)) {
+                if (isChild(readState(id), parentId, name)) {
+                    return true;
+                }
+                // the child was moved, renamed or removed
+                childrenIndex.invalidate(parentId);
+            }
+        }
+        return connection.hasChild(parentId, name, ignored);
+    }
+
+    /**
+     * Checks that an indexed child is still the child with the given name, as there is no invalidation of the old
+     * parent when a document is moved or removed.
+     */
+    private boolean isChild(State state, String parentId, String name) {
+        return state != null && parentId.equals(state.get(KEY_PARENT_ID)) && name.equals(state.get(KEY_NAME));
+    }
+
     private void putInCache(State state) {
         if (state != null) {
-            String stateId = state.get(KEY_ID).toString();
-            cache.put(stateId, state);
-            Object stateParentId = state.get(KEY_PARENT_ID);
-            if (stateParentId != null) {
-                childCache.put(computeChildCacheKey(stateParentId.toString(), state.get(KEY_NAME).toString()), stateId);
+            cache.put(state.get(KEY_ID).toString(), state);
+        }
+    }
+
+    private void childAdded(State state) {
+        String parentId = (String) state.get(KEY_PARENT_ID);
+        if (parentId != null) {
+            childrenIndex.addChild(parentId, (String) state.get(KEY_NAME), (String) state.get(KEY_ID));
+            if (invalidations != null) {
+                invalidations.addParent(parentId);
             }
         }
     }
 
-    private String computeChildCacheKey(String parentId, String name) {
-        return parentId + '_' + name;
+    private void invalidateChildren(String parentId) {
+        childrenIndex.invalidate(parentId);
+        if (invalidations != null) {
+            invalidations.addParent(parentId);
+        }
     }
 
     private void invalidate(String id) {
@@ -294,9 +384,14 @@ public class DBSCachingConnection implements DBSConnection {
         if (invals != null && !invals.isEmpty()) {
             if (invals.all) {
                 cache.invalidateAll();
-                childCache.invalidateAll();
-            } else if (invals.ids != null) {
-                cache.invalidateAll(invals.ids);
+                childrenIndex.invalidateAll();
+            } else {
+                if (invals.ids != null) {
+                    cache.invalidateAll(invals.ids);
+                }
+                if (invals.parentIds != null) {
+                    childrenIndex.invalidateAll(invals.parentIds);
+                }
             }
         }
     }
@@ -311,11 +406,6 @@ public class DBSCachingConnection implements DBSConnection {
         return connection.generateNewId();
     }
 
-    @Override
-    public boolean hasChild(String parentId, String name, Set<String> ignored) {
-        return connection.hasChild(parentId, name, ignored);
-    }
-
     @Override
     public List<State> queryKeyValue(String key, Object value, Set<String> ignored) {
         return connection.queryKeyValue(key, value, ignored);
@@ -336,6 +426,17 @@ public class DBSCachingConnection implements DBSConnection {
         return connection.getDescendants(id, keys, limit);
     }
 
+    @Override
+    public Stream<State> getChildren(String parentId, Set<String> keys, int limit) {
+        return connection.getChildren(parentId, keys, limit);
+    }
+
+    @Override
+    public Stream<State> getDescendantStates(String id, int limit) {
+        // bypass caches, as a whole subtree would trash them
+        return connection.getDescendantStates(id, limit);
+    }
+
     @Override
     public boolean queryKeyValuePresence(String key, String value, Set<String> ignored) {
         return connection.queryKeyValuePresence(key, value, ignored);
@@ -347,6 +448,17 @@ public class DBSCachingConnection implements DBSConnection {
         return connection.queryAndFetch(evaluator, orderByClause, distinctDocuments, limit, offset, countUpTo);
     }
 
+    @Override
+    public long queryEstimatedCount(DBSExpressionEvaluator evaluator) {
+        return connection.queryEstimatedCount(evaluator);
+    }
+
+    @Override
+    public Stream<Map<String, Serializable>> queryAndFetchStream(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments, int limit, int offset, int batchSize) {
+        return connection.queryAndFetchStream(evaluator, orderByClause, distinctDocuments, limit, offset, batchSize);
+    }
+
     @Override
     public ScrollResult<String> scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
         return connection.scroll(evaluator, batchSize, keepAliveSeconds);
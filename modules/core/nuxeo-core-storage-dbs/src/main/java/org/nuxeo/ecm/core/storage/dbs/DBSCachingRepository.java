@@ -19,6 +19,52 @@
  */
 package org.nuxeo.ecm.core.storage.dbs;
 
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACE_BEGIN;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACE_CREATOR;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACE_END;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACE_GRANT;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACE_PERMISSION;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACE_STATUS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACE_USER;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACL;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACL_NAME;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ACP;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ANCESTOR_IDS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BASE_VERSION_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BLOB_DATA;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BLOB_DIGEST;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BLOB_ENCODING;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BLOB_LENGTH;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_BLOB_MIME_TYPE;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_CHANGE_TOKEN;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_FULLTEXT_BINARY;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_FULLTEXT_JOBID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_FULLTEXT_SIMPLE;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_CHECKED_IN;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_LATEST_MAJOR_VERSION;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_LATEST_VERSION;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_PROXY;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_TRASHED;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_IS_VERSION;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LIFECYCLE_POLICY;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_LIFECYCLE_STATE;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_MAJOR_VERSION;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_MINOR_VERSION;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_MIXIN_TYPES;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_POS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PRIMARY_TYPE;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PROXY_IDS;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_READ_ACL;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_SYS_CHANGE_TOKEN;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_CREATED;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_LABEL;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_VERSION_SERIES_ID;
+
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.logging.Log;
@@ -29,7 +75,10 @@ import org.nuxeo.ecm.core.api.lock.LockManager;
 import org.nuxeo.ecm.core.api.repository.FulltextConfiguration;
 import org.nuxeo.ecm.core.blob.BlobManager;
 import org.nuxeo.ecm.core.model.Session;
+import org.nuxeo.ecm.core.schema.SchemaManager;
 import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.StateCodec;
+import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase.IdType;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.cluster.ClusterService;
 import org.nuxeo.runtime.metrics.MetricsService;
@@ -54,11 +103,35 @@ public class DBSCachingRepository implements DBSRepository {
 
     protected static final String METRIC_CHILD_CACHE_NAME = "nuxeo.repositories.repository.childCache";
 
+    /** @since 11.5 */
+    protected static final long DEFAULT_CACHE_MAX_BYTES = 256 * 1024 * 1024;
+
+    /** @since 11.5 */
+    protected static final long DEFAULT_CHILDREN_MAX_SIZE = 100_000;
+
+    /** @since 11.5 */
+    protected static final int DEFAULT_CHILDREN_MAX_PER_PARENT = 1_000;
+
+    /**
+     * System keys added to the schema fields in the dictionary of the off-heap cache codec.
+     *
+     * @since 11.5
+     */
+    protected static final List<String> CODEC_SYSTEM_KEYS = Arrays.asList(KEY_ID, KEY_PARENT_ID, KEY_ANCESTOR_IDS,
+            KEY_PRIMARY_TYPE, KEY_MIXIN_TYPES, KEY_NAME, KEY_POS, KEY_ACP, KEY_ACL_NAME, KEY_ACL, KEY_ACE_USER,
+            KEY_ACE_PERMISSION, KEY_ACE_GRANT, KEY_ACE_CREATOR, KEY_ACE_BEGIN, KEY_ACE_END, KEY_ACE_STATUS,
+            KEY_READ_ACL, KEY_IS_CHECKED_IN, KEY_IS_VERSION, KEY_IS_LATEST_VERSION, KEY_IS_LATEST_MAJOR_VERSION,
+            KEY_MAJOR_VERSION, KEY_MINOR_VERSION, KEY_VERSION_SERIES_ID, KEY_VERSION_CREATED, KEY_VERSION_LABEL,
+            KEY_BASE_VERSION_ID, KEY_IS_PROXY, KEY_PROXY_IDS, KEY_LIFECYCLE_POLICY, KEY_LIFECYCLE_STATE,
+            KEY_IS_TRASHED, KEY_SYS_CHANGE_TOKEN, KEY_CHANGE_TOKEN, KEY_BLOB_MIME_TYPE, KEY_BLOB_ENCODING,
+            KEY_BLOB_DIGEST, KEY_BLOB_LENGTH, KEY_BLOB_DATA, KEY_FULLTEXT_SIMPLE, KEY_FULLTEXT_BINARY,
+            KEY_FULLTEXT_JOBID);
+
     private final DBSRepository repository;
 
     protected final Cache<String, State> cache;
 
-    protected final Cache<String, String> childCache;
+    protected final DBSChildrenIndex childrenIndex;
 
     protected final DBSRepositoryDescriptor descriptor;
 
@@ -75,14 +148,15 @@ public class DBSCachingRepository implements DBSRepository {
         if (supportsTransactions()) {
             // each connection will have its own cache
             cache = null;
-            childCache = null;
+            childrenIndex = null;
         } else {
             // one global cache held by the repository
             cache = newCache(true);
-            childCache = newChildCache(true);
+            childrenIndex = newChildrenIndex(true);
         }
         if (log.isInfoEnabled()) {
-            log.info(String.format("DBS cache activated on '%s' repository", getName()));
+            log.info(String.format("DBS cache activated on '%s' repository%s", getName(),
+                    descriptor.isCacheOffHeap() ? " (off-heap)" : ""));
         }
         invalidationsPropagator = initInvalidationsPropagator();
         clusterInvalidator = initClusterInvalidator(descriptor);
@@ -92,8 +166,9 @@ public class DBSCachingRepository implements DBSRepository {
         return cache;
     }
 
-    protected Cache<String, String> getChildCache() {
-        return childCache;
+    /** @since 11.5 */
+    protected DBSChildrenIndex getChildrenIndex() {
+        return childrenIndex;
     }
 
     protected DBSInvalidationsPropagator getInvalidationsPropagator() {
@@ -105,7 +180,7 @@ public class DBSCachingRepository implements DBSRepository {
     }
 
     protected Cache<String, State> newCache(boolean metrics) {
-        Cache<String, State> c = newCache(descriptor);
+        Cache<String, State> c = descriptor.isCacheOffHeap() ? newOffHeapCache(descriptor) : newCache(descriptor);
         if (metrics) {
             registry.registerAll(GuavaCacheMetric.of(c,
                     MetricName.build(METRIC_CACHE_NAME).tagged("repository", repository.getName())));
@@ -113,13 +188,19 @@ public class DBSCachingRepository implements DBSRepository {
         return c;
     }
 
-    protected Cache<String, String> newChildCache(boolean metrics) {
-        Cache<String, String> c = newCache(descriptor);
+    /** @since 11.5 */
+    protected DBSChildrenIndex newChildrenIndex(boolean metrics) {
+        long maxSize = descriptor.cacheChildrenMaxSize == null ? DEFAULT_CHILDREN_MAX_SIZE
+                : descriptor.cacheChildrenMaxSize.longValue();
+        int maxPerParent = descriptor.cacheChildrenMaxPerParent == null ? DEFAULT_CHILDREN_MAX_PER_PARENT
+                : descriptor.cacheChildrenMaxPerParent.intValue();
+        DBSChildrenIndex index = new DBSChildrenIndex(maxSize, maxPerParent, descriptor.cacheTTL,
+                descriptor.cacheConcurrencyLevel);
         if (metrics) {
-            registry.registerAll(GuavaCacheMetric.of(c,
+            registry.registerAll(GuavaCacheMetric.of(index.getCache(),
                     MetricName.build(METRIC_CHILD_CACHE_NAME).tagged("repository", repository.getName())));
         }
-        return c;
+        return index;
     }
 
     protected void removeCacheMetrics() {
@@ -139,6 +220,18 @@ public class DBSCachingRepository implements DBSRepository {
         return builder.build();
     }
 
+    /**
+     * Creates a states cache keeping serialized states in direct memory, bounded by a number of bytes.
+     *
+     * @since 11.5
+     */
+    protected Cache<String, State> newOffHeapCache(DBSRepositoryDescriptor descriptor) {
+        long maxBytes = descriptor.cacheMaxBytes == null ? DEFAULT_CACHE_MAX_BYTES
+                : descriptor.cacheMaxBytes.longValue();
+        StateCodec codec = StateCodec.of(Framework.getService(SchemaManager.class), CODEC_SYSTEM_KEYS);
+        return new OffHeapStateCache(codec, maxBytes, descriptor.cacheTTL, descriptor.cacheConcurrencyLevel);
+    }
+
     /**
      * Invalidations need to be propagated between connection caches only if there is such a cache, which is the case
      * only if transactions are used.
@@ -182,7 +275,7 @@ public class DBSCachingRepository implements DBSRepository {
         if (cache != null) {
             // Clear caches
             cache.invalidateAll();
-            childCache.invalidateAll();
+            childrenIndex.invalidateAll();
         }
         removeCacheMetrics();
         if (log.isInfoEnabled()) {
@@ -212,6 +305,11 @@ public class DBSCachingRepository implements DBSRepository {
         return repository.getFulltextConfiguration();
     }
 
+    @Override
+    public IdType getIdType() {
+        return repository.getIdType();
+    }
+
     @Override
     public boolean isFulltextDisabled() {
         return repository.isFulltextDisabled();
@@ -232,6 +330,11 @@ public class DBSCachingRepository implements DBSRepository {
         return repository.isChangeTokenEnabled();
     }
 
+    @Override
+    public int getUpdateBatchSize() {
+        return repository.getUpdateBatchSize();
+    }
+
     @Override
     public LockManager getLockManager() {
         return repository.getLockManager();
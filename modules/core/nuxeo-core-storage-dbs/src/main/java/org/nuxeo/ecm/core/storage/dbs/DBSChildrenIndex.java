@@ -0,0 +1,255 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.nuxeo.ecm.core.storage.State;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+
+/**
+ * An index of the names of the children of a document, used to answer child lookups by name in memory.
+ * <p>
+ * For each indexed parent, the names of all its children are known, so both positive and negative lookups can be
+ * answered. Parents with too many children are marked as such and always looked up in the repository. The total
+ * number of indexed names is bounded.
+ * <p>
+ * Local creations update the index in place. Other changes are signaled by invalidating the parent (see
+ * {@link DBSInvalidations#parentIds}). As there is no invalidation of the old parent when a document is moved or
+ * removed, positive answers must be checked against the state of the returned child.
+ *
+ * @since 11.5
+ */
+public class DBSChildrenIndex {
+
+    protected static final Set<String> KEYS = Set.of(KEY_ID, KEY_NAME);
+
+    protected static final int STRIPES = 64;
+
+    /**
+     * The indexed children of a parent.
+     */
+    public static class Children {
+
+        /** The ids of the children by name, or {@code null} if there are too many children to index. */
+        protected final Map<String, String> ids;
+
+        protected Children(Map<String, String> ids) {
+            this.ids = ids;
+        }
+
+        /**
+         * Checks if the children are indexed. If not, the repository must be queried.
+         */
+        public boolean isComplete() {
+            return ids != null;
+        }
+
+        /**
+         * Gets the id of the child with the given name, or {@code null} if there is none.
+         */
+        public String getChildId(String name) {
+            return ids.get(name);
+        }
+
+        protected int size() {
+            return ids == null ? 0 : ids.size();
+        }
+    }
+
+    protected static final Children TOO_MANY = new Children(null);
+
+    /**
+     * A load of the children of a parent in progress, recording the modifications done meanwhile.
+     */
+    protected static class Load {
+
+        /** The children added during the load, that the load may have missed. */
+        protected final Map<String, String> added = new HashMap<>();
+
+        /** Whether the parent was invalidated during the load, in which case the load cannot be used. */
+        protected boolean invalidated;
+    }
+
+    protected final Cache<String, Children> cache;
+
+    protected final int maxChildrenPerParent;
+
+    /** Locks guarding the modifications, striped by parent id. */
+    protected final Object[] locks = new Object[STRIPES];
+
+    /** The loads in progress, by parent id. The lists are guarded by the lock of their parent id. */
+    protected final Map<String, List<Load>> loads = new ConcurrentHashMap<>();
+
+    /**
+     * Constructs a children index.
+     *
+     * @param maxSize the maximum total number of children names indexed
+     * @param maxChildrenPerParent the maximum number of children names indexed for a single parent
+     * @param ttl the time-to-live of the entries, in minutes, or {@code null} for no expiration
+     * @param concurrencyLevel the concurrency level, or {@code null} for the default
+     */
+    public DBSChildrenIndex(long maxSize, int maxChildrenPerParent, Long ttl, Integer concurrencyLevel) {
+        this.maxChildrenPerParent = maxChildrenPerParent;
+        for (int i = 0; i < STRIPES; i++) {
+            locks[i] = new Object();
+        }
+        Weigher<String, Children> weigher = (key, children) -> 1 + children.size();
+        CacheBuilder<String, Children> builder = CacheBuilder.newBuilder()
+                                                             .maximumWeight(maxSize)
+                                                             .weigher(weigher)
+                                                             .recordStats();
+        if (ttl != null) {
+            builder = builder.expireAfterWrite(ttl.longValue(), TimeUnit.MINUTES);
+        }
+        if (concurrencyLevel != null) {
+            builder = builder.concurrencyLevel(concurrencyLevel.intValue());
+        }
+        cache = builder.build();
+    }
+
+    /**
+     * Gets the underlying cache, for metrics.
+     */
+    public Cache<String, Children> getCache() {
+        return cache;
+    }
+
+    protected int getStripe(String parentId) {
+        return (parentId.hashCode() & Integer.MAX_VALUE) % STRIPES;
+    }
+
+    /**
+     * Gets the indexed children of a parent, loading them from the repository if needed.
+     *
+     * @param parentId the parent id
+     * @param connection the connection used to load the children
+     * @return the children, which may not be complete if there are too many of them
+     */
+    public Children getChildren(String parentId, DBSConnection connection) {
+        Children children = cache.getIfPresent(parentId);
+        if (children != null) {
+            return children;
+        }
+        Object lock = locks[getStripe(parentId)];
+        Load load = new Load();
+        synchronized (lock) {
+            loads.computeIfAbsent(parentId, k -> new ArrayList<>(1)).add(load);
+        }
+        Map<String, String> ids = new ConcurrentHashMap<>();
+        try (Stream<State> states = connection.getChildren(parentId, KEYS, maxChildrenPerParent + 1)) {
+            states.forEach(state -> ids.put((String) state.get(KEY_NAME), (String) state.get(KEY_ID)));
+        } catch (RuntimeException e) {
+            synchronized (lock) {
+                removeLoad(parentId, load);
+            }
+            throw e;
+        }
+        synchronized (lock) {
+            removeLoad(parentId, load);
+            if (load.invalidated) {
+                // concurrent move, rename or removal that we may have missed, don't use what we loaded
+                return TOO_MANY;
+            }
+            // children created concurrently may have been missed by the load
+            ids.putAll(load.added);
+            children = ids.size() > maxChildrenPerParent ? TOO_MANY : new Children(ids);
+            cache.put(parentId, children);
+            return children;
+        }
+    }
+
+    protected void removeLoad(String parentId, Load load) {
+        List<Load> parentLoads = loads.get(parentId);
+        parentLoads.remove(load);
+        if (parentLoads.isEmpty()) {
+            loads.remove(parentId);
+        }
+    }
+
+    /**
+     * Records a new child for a parent.
+     */
+    public void addChild(String parentId, String name, String id) {
+        synchronized (locks[getStripe(parentId)]) {
+            List<Load> parentLoads = loads.get(parentId);
+            if (parentLoads != null) {
+                parentLoads.forEach(load -> load.added.put(name, id));
+            }
+            Children children = cache.getIfPresent(parentId);
+            if (children != null && children.isComplete()) {
+                children.ids.put(name, id);
+                // put again to recompute the weight
+                cache.put(parentId, children.size() > maxChildrenPerParent ? TOO_MANY : children);
+            }
+        }
+    }
+
+    /**
+     * Invalidates the children of a parent.
+     */
+    public void invalidate(String parentId) {
+        synchronized (locks[getStripe(parentId)]) {
+            markInvalidated(parentId);
+            cache.invalidate(parentId);
+        }
+    }
+
+    protected void markInvalidated(String parentId) {
+        List<Load> parentLoads = loads.get(parentId);
+        if (parentLoads != null) {
+            parentLoads.forEach(load -> load.invalidated = true);
+        }
+    }
+
+    /**
+     * Invalidates the children of some parents.
+     */
+    public void invalidateAll(Collection<String> parentIds) {
+        parentIds.forEach(this::invalidate);
+    }
+
+    /**
+     * Invalidates all the children.
+     */
+    public void invalidateAll() {
+        // loads registered after this see the changes that caused the invalidation
+        for (String parentId : loads.keySet()) {
+            synchronized (locks[getStripe(parentId)]) {
+                markInvalidated(parentId);
+            }
+        }
+        cache.invalidateAll();
+    }
+
+}
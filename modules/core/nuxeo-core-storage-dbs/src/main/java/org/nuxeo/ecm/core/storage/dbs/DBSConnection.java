@@ -18,11 +18,16 @@
  */
 package org.nuxeo.ecm.core.storage.dbs;
 
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_PARENT_ID;
+
 import java.io.Serializable;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 import org.nuxeo.ecm.core.api.PartialList;
@@ -40,6 +45,38 @@ import org.nuxeo.ecm.core.storage.dbs.DBSTransactionState.ChangeTokenUpdater;
  */
 public interface DBSConnection extends AutoCloseable, LockManager {
 
+    /**
+     * An update to a document, to be done as part of a batch of updates.
+     *
+     * @since 11.5
+     */
+    class StateUpdate {
+
+        public final String id;
+
+        public final StateDiff diff;
+
+        public final ChangeTokenUpdater changeTokenUpdater;
+
+        /**
+         * Constructs an update.
+         *
+         * @param id the document id
+         * @param diff the diff to apply
+         * @param changeTokenUpdater how to get and update the change token (may be {@code null})
+         */
+        public StateUpdate(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
+            this.id = id;
+            this.diff = diff;
+            this.changeTokenUpdater = changeTokenUpdater;
+        }
+
+        @Override
+        public String toString() {
+            return getClass().getSimpleName() + "(" + id + "," + diff + ")";
+        }
+    }
+
     /**
      * Closes this connection.
      */
@@ -116,6 +153,20 @@ public interface DBSConnection extends AutoCloseable, LockManager {
      */
     void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater);
 
+    /**
+     * Updates several documents.
+     * <p>
+     * The updates are grouped into as few database writes as possible. If a change token condition fails, a
+     * {@link org.nuxeo.ecm.core.api.ConcurrentUpdateException ConcurrentUpdateException} is thrown, but other updates
+     * of the batch may have been done.
+     *
+     * @param updates the updates, for distinct documents
+     * @since 11.5
+     */
+    default void updateStates(List<StateUpdate> updates) {
+        updates.forEach(update -> updateState(update.id, update.diff, update.changeTokenUpdater));
+    }
+
     /**
      * Deletes a set of document.
      *
@@ -210,6 +261,43 @@ public interface DBSConnection extends AutoCloseable, LockManager {
         return getDescendants(id, keys);
     }
 
+    /**
+     * Returns a stream of the full states of the descendants of a given root document, in no particular order. This
+     * does not include the root document itself.
+     * <p>
+     * THE STREAM MUST BE CLOSED WHEN DONE to release resources.
+     *
+     * @param id the root document id
+     * @param limit the maximum number of descendants to return, or {@code 0} for no limit
+     * @return a stream of {@link State}s; THE STREAM MUST BE CLOSED WHEN DONE
+     * @since 11.5
+     */
+    default Stream<State> getDescendantStates(String id, int limit) {
+        // by default, read the ids then the states in one batch, override to do it with a single query
+        List<String> ids;
+        try (Stream<State> states = getDescendants(id, Collections.emptySet(), limit)) {
+            ids = states.map(state -> (String) state.get(KEY_ID)).collect(Collectors.toList());
+        }
+        return readStates(ids).stream();
+    }
+
+    /**
+     * Returns a stream of the children of a given parent document, in no particular order.
+     * <p>
+     * THE STREAM MUST BE CLOSED WHEN DONE to release resources.
+     *
+     * @param parentId the parent document id
+     * @param keys what to fetch in the returned states, in addition to the id
+     * @param limit the maximum number of children to return, or {@code 0} for no limit
+     * @return a stream of {@link State}s; THE STREAM MUST BE CLOSED WHEN DONE
+     * @since 11.5
+     */
+    default Stream<State> getChildren(String parentId, Set<String> keys, int limit) {
+        // keys unused by default, override for a more efficient implementation
+        Stream<State> stream = queryKeyValue(KEY_PARENT_ID, parentId, Collections.emptySet()).stream();
+        return limit == 0 ? stream : stream.limit(limit);
+    }
+
     /**
      * Queries the repository to check if there are documents having key = value.
      *
@@ -238,6 +326,38 @@ public interface DBSConnection extends AutoCloseable, LockManager {
     PartialList<Map<String, Serializable>> queryAndFetch(DBSExpressionEvaluator evaluator, OrderByClause orderByClause,
             boolean distinctDocuments, int limit, int offset, int countUpTo);
 
+    /**
+     * Estimates the number of documents matching a NXQL query from the repository statistics, without executing it.
+     *
+     * @param evaluator the map-based evaluator for the query
+     * @return the estimated number of documents, or {@code -1} if the repository cannot estimate it
+     * @since 11.5
+     */
+    default long queryEstimatedCount(DBSExpressionEvaluator evaluator) {
+        return -1;
+    }
+
+    /**
+     * Queries the repository for documents matching a NXQL query, and returns a projection of the documents as a
+     * stream, lazily fetched from the database.
+     * <p>
+     * The returned stream MUST be closed when no more needed, to release the underlying cursor. The default
+     * implementation fetches all the projections in memory.
+     *
+     * @param evaluator the map-based evaluator for the query
+     * @param orderByClause an ORDER BY clause
+     * @param distinctDocuments {@code true} if the projection should return a maximum of one row per document
+     * @param limit the limit on the number of documents to return
+     * @param offset the offset in the list of documents to return
+     * @param batchSize the number of documents fetched from the database at a time, or {@code 0} for the default
+     * @return a stream of maps containing the NXQL projections requested
+     * @since 11.5
+     */
+    default Stream<Map<String, Serializable>> queryAndFetchStream(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments, int limit, int offset, int batchSize) {
+        return queryAndFetch(evaluator, orderByClause, distinctDocuments, limit, offset, 0).stream();
+    }
+
     /**
      * Executes the given query and returns the first batch of results containing id of documents, next batch must be
      * requested within the {@code keepAliveSeconds} delay.
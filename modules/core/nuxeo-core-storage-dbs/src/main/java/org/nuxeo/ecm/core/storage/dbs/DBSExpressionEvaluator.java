@@ -282,6 +282,14 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
     // which reference index is being visited, reset / updated during each pass
     protected int refCount;
 
+    /**
+     * The compiled WHERE expression, whose references are bound to their value infos, or {@code null} to interpret the
+     * expression at each evaluation.
+     *
+     * @since 11.5
+     */
+    protected CompiledOperand compiledExpression;
+
     public DBSExpressionEvaluator(DBSSession session, SQLQuery query, String[] principals,
             boolean fulltextSearchDisabled) {
         super(new DBSPathResolver(session), principals, fulltextSearchDisabled);
@@ -341,9 +349,20 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
         // we do parsing using the ExpressionEvaluator to be sure that references
         // are visited in the same order as when we'll do actual expression evaluation
         parsing = true;
-        walkAll();
+        walkSelectClauseAndOrderBy(selectClause, orderByClause);
+        int expressionRefStart = referenceValueInfos.size();
+        walkExpression(expression);
         parsing = false;
 
+        // compile the expression, its references are visited in the same order as when parsing
+        // so each one is bound to the value info parsed for it
+        refCount = expressionRefStart;
+        compiledExpression = compileExpression(expression);
+        if (refCount != referenceValueInfos.size()) {
+            throw new IllegalStateException("Compiled " + (refCount - expressionRefStart) + " references instead of "
+                    + (referenceValueInfos.size() - expressionRefStart) + " for: " + expression);
+        }
+
         // we use all iterators in reversed ordered to increment them lexicographically from the end
         Collections.reverse(allIterInfos);
     }
@@ -401,7 +420,7 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
     protected Map<String, Serializable> walkAll() {
         refCount = 0;
         Map<String, Serializable> projection = walkSelectClauseAndOrderBy(selectClause, orderByClause);
-        Object res = walkExpression(expression);
+        Object res = compiledExpression == null ? walkExpression(expression) : compiledExpression.eval();
         if (TRUE.equals(res)) {
             // returns one match
             return projection;
@@ -477,6 +496,16 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
         return walkReferenceGetValueInfo(ref).getValueForEvaluation();
     }
 
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The reference is bound to its value info, which must have been parsed.
+     */
+    @Override
+    public CompiledOperand compileReference(Reference ref) {
+        return walkReferenceGetValueInfo(ref)::getValueForEvaluation;
+    }
+
     protected ValueInfo walkReferenceGetValueInfo(Reference ref) {
         if (parsing) {
             ValueInfo valueInfo = parseReference(ref);
@@ -831,9 +860,25 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
         if (parsing) {
             return null;
         }
-        /*
-         * Primary types that match.
-         */
+        return matchMixinTypes(getMatchPrimaryTypes(mixins, include), getMatchMixinTypes(mixins), include);
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The matching primary types and instance mixins are computed once.
+     */
+    @Override
+    public CompiledOperand compileMixinTypes(List<String> mixins, boolean include) {
+        Set<String> matchPrimaryTypes = getMatchPrimaryTypes(mixins, include);
+        Set<String> matchMixinTypes = getMatchMixinTypes(mixins);
+        return () -> matchMixinTypes(matchPrimaryTypes, matchMixinTypes, include);
+    }
+
+    /**
+     * Gets the primary types that match.
+     */
+    protected Set<String> getMatchPrimaryTypes(List<String> mixins, boolean include) {
         Set<String> matchPrimaryTypes;
         if (include) {
             matchPrimaryTypes = new HashSet<>();
@@ -846,38 +891,40 @@ public class DBSExpressionEvaluator extends ExpressionEvaluator {
                 matchPrimaryTypes.removeAll(getMixinDocumentTypes(mixin));
             }
         }
-        /*
-         * Instance mixins that match.
-         */
+        return matchPrimaryTypes;
+    }
+
+    /**
+     * Gets the instance mixins that match.
+     */
+    protected Set<String> getMatchMixinTypes(List<String> mixins) {
         Set<String> matchMixinTypes = new HashSet<>();
         for (String mixin : mixins) {
             if (!isNeverPerInstanceMixin(mixin)) {
                 matchMixinTypes.add(mixin);
             }
         }
-        /*
-         * Evaluation.
-         */
-        String primaryType = (String) state.get(KEY_PRIMARY_TYPE);
-        Object[] mixinTypesArray = (Object[]) state.get(KEY_MIXIN_TYPES);
-        List<Object> mixinTypes = mixinTypesArray == null ? Collections.emptyList() : Arrays.asList(mixinTypesArray);
-        if (include) {
-            // primary types
-            if (matchPrimaryTypes.contains(primaryType)) {
-                return TRUE;
-            }
-            // mixin types
-            matchMixinTypes.retainAll(mixinTypes); // intersection
-            return Boolean.valueOf(!matchMixinTypes.isEmpty());
-        } else {
-            // primary types
-            if (!matchPrimaryTypes.contains(primaryType)) {
-                return FALSE;
+        return matchMixinTypes;
+    }
+
+    protected Boolean matchMixinTypes(Set<String> matchPrimaryTypes, Set<String> matchMixinTypes, boolean include) {
+        // primary types
+        boolean primaryTypeMatch = matchPrimaryTypes.contains(state.get(KEY_PRIMARY_TYPE));
+        if (primaryTypeMatch == include) {
+            return Boolean.valueOf(include);
+        }
+        // mixin types, non-empty intersection
+        boolean mixinTypeMatch = false;
+        Object[] mixinTypes = (Object[]) state.get(KEY_MIXIN_TYPES);
+        if (mixinTypes != null) {
+            for (Object mixinType : mixinTypes) {
+                if (matchMixinTypes.contains(mixinType)) {
+                    mixinTypeMatch = true;
+                    break;
+                }
             }
-            // mixin types
-            matchMixinTypes.retainAll(mixinTypes); // intersection
-            return Boolean.valueOf(matchMixinTypes.isEmpty());
         }
+        return Boolean.valueOf(mixinTypeMatch == include);
     }
 
     @Override
@@ -53,6 +53,13 @@ public class DBSInvalidations implements SerializableAccumulableInvalidations {
     /** null when empty */
     public Set<String> ids;
 
+    /**
+     * Ids of documents whose list of children changed (child created, moved in or renamed). Null when empty.
+     *
+     * @since 11.5
+     */
+    public Set<String> parentIds;
+
     public DBSInvalidations() {
     }
 
@@ -62,21 +69,23 @@ public class DBSInvalidations implements SerializableAccumulableInvalidations {
 
     @Override
     public boolean isEmpty() {
-        return ids == null && !all;
+        return ids == null && parentIds == null && !all;
     }
 
     public void clear() {
         all = false;
         ids = null;
+        parentIds = null;
     }
 
     protected void setAll() {
         all = true;
         ids = null;
+        parentIds = null;
     }
 
     protected void checkMaxSize() {
-        if (ids != null && ids.size() > MAX_SIZE) {
+        if ((ids == null ? 0 : ids.size()) + (parentIds == null ? 0 : parentIds.size()) > MAX_SIZE) {
             setAll();
         }
     }
@@ -100,6 +109,12 @@ public class DBSInvalidations implements SerializableAccumulableInvalidations {
             }
             ids.addAll(other.ids);
         }
+        if (other.parentIds != null) {
+            if (parentIds == null) {
+                parentIds = new HashSet<>();
+            }
+            parentIds.addAll(other.parentIds);
+        }
         checkMaxSize();
     }
 
@@ -126,20 +141,47 @@ public class DBSInvalidations implements SerializableAccumulableInvalidations {
         checkMaxSize();
     }
 
+    /** @since 11.5 */
+    public void addParent(String parentId) {
+        if (all) {
+            return;
+        }
+        if (parentIds == null) {
+            parentIds = new HashSet<>();
+        }
+        parentIds.add(parentId);
+        checkMaxSize();
+    }
+
     private static final String UTF_8 = "UTF-8";
 
     private static final int ALL_IDS = (byte) 'A';
 
     private static final int ID_SEP = (byte) ',';
 
+    /**
+     * Prefix of a parent id, written as an id for compatibility: nodes not knowing about parent ids just invalidate an
+     * id that doesn't exist, while the last real id of the message stays intact.
+     */
+    private static final int PARENT_ID_PREFIX = (byte) ';';
+
     @Override
     public void serialize(OutputStream out) throws IOException {
         if (all) {
             out.write(ALL_IDS);
-        } else if (ids != null) {
-            for (String id : ids) {
-                out.write(ID_SEP);
-                out.write(id.getBytes(UTF_8));
+        } else {
+            if (ids != null) {
+                for (String id : ids) {
+                    out.write(ID_SEP);
+                    out.write(id.getBytes(UTF_8));
+                }
+            }
+            if (parentIds != null) {
+                for (String id : parentIds) {
+                    out.write(ID_SEP);
+                    out.write(PARENT_ID_PREFIX);
+                    out.write(id.getBytes(UTF_8));
+                }
             }
         }
     }
@@ -161,7 +203,12 @@ public class DBSInvalidations implements SerializableAccumulableInvalidations {
             for (;;) {
                 int b = in.read(); // we read from a ByteArrayInputStream so one at a time is ok
                 if (b == ID_SEP || b == -1) {
-                    invalidations.add(baout.toString(UTF_8));
+                    String id = baout.toString(UTF_8);
+                    if (!id.isEmpty() && id.charAt(0) == PARENT_ID_PREFIX) {
+                        invalidations.addParent(id.substring(1));
+                    } else {
+                        invalidations.add(id);
+                    }
                     if (b == -1) {
                         break;
                     }
@@ -184,6 +231,13 @@ public class DBSInvalidations implements SerializableAccumulableInvalidations {
             sb.append("ids=");
             sb.append(ids);
         }
+        if (parentIds != null) {
+            if (ids != null) {
+                sb.append(',');
+            }
+            sb.append("parentIds=");
+            sb.append(parentIds);
+        }
         sb.append(')');
         return sb.toString();
     }
@@ -0,0 +1,127 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.AbstractSession;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.security.SecurityConstants;
+import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.model.Session;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+
+/**
+ * Bulk action recomputing the Read ACLs of the descendants of a document whose Read ACL changed.
+ * <p>
+ * Each batch computes the new Read ACLs from the stored Read ACL of the root document and the local ACPs of the
+ * intermediate ancestors, so the batches are independent and processed in parallel. Documents under an ACP blocking
+ * inheritance are left untouched.
+ * <p>
+ * The number of documents processed and updated, and the lag between the submission of the command and the processing
+ * of each batch, are exposed as metrics.
+ *
+ * @since 11.5
+ */
+public class DBSReadAclsAction implements StreamProcessorTopology {
+
+    public static final String ACTION_NAME = "updateReadAcls";
+
+    public static final String ACTION_FULL_NAME = "bulk/" + ACTION_NAME;
+
+    public static final String PARAM_ROOT_ID = "rootId";
+
+    public static final String PARAM_SUBMIT_TIME = "submitTime";
+
+    /**
+     * Creates the command updating the Read ACLs of the descendants of the given document.
+     */
+    public static BulkCommand newCommand(String repositoryName, String rootId) {
+        String nxql = String.format("SELECT * FROM Document WHERE ecm:ancestorId = '%s'", rootId);
+        Long submitTime = Long.valueOf(System.currentTimeMillis());
+        BulkCommand.Builder builder = new BulkCommand.Builder(ACTION_NAME, nxql, SecurityConstants.SYSTEM_USERNAME);
+        return builder.repository(repositoryName)
+                      .param(PARAM_ROOT_ID, rootId)
+                      .param(PARAM_SUBMIT_TIME, submitTime)
+                      .build();
+    }
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        return Topology.builder()
+                       .addComputation(ReadAclsComputation::new,
+                               Arrays.asList(INPUT_1 + ":" + ACTION_FULL_NAME, OUTPUT_1 + ":" + STATUS_STREAM))
+                       .build();
+    }
+
+    public static class ReadAclsComputation extends AbstractBulkComputation {
+
+        private static final Logger log = LogManager.getLogger(ReadAclsComputation.class);
+
+        protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+        public ReadAclsComputation() {
+            super(ACTION_FULL_NAME);
+        }
+
+        @Override
+        protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
+            Session internalSession = ((AbstractSession) session).getSession();
+            if (!(internalSession instanceof DBSSession)) {
+                log.warn("Cannot update Read ACLs on non-DBS repository: {}", session.getRepositoryName());
+                return;
+            }
+            String rootId = (String) properties.get(PARAM_ROOT_ID);
+            int updated = ((DBSSession) internalSession).updateDescendantsReadACLs(rootId, ids);
+
+            String repositoryName = session.getRepositoryName();
+            registry.meter(getMetricName("processed", repositoryName)).mark(ids.size());
+            registry.meter(getMetricName("updated", repositoryName)).mark(updated);
+            // may be deserialized as any number type
+            Number submitTime = (Number) properties.get(PARAM_SUBMIT_TIME);
+            if (submitTime != null) {
+                registry.timer(getMetricName("lag", repositoryName))
+                        .update(System.currentTimeMillis() - submitTime.longValue(), TimeUnit.MILLISECONDS);
+            }
+        }
+
+        protected static MetricName getMetricName(String name, String repositoryName) {
+            return MetricName.build("nuxeo", "repositories", "repository", "readacl", name)
+                             .tagged("repository", repositoryName);
+        }
+    }
+
+}
@@ -21,6 +21,7 @@ package org.nuxeo.ecm.core.storage.dbs;
 import org.nuxeo.ecm.core.api.lock.LockManager;
 import org.nuxeo.ecm.core.blob.BlobManager;
 import org.nuxeo.ecm.core.model.Repository;
+import org.nuxeo.ecm.core.storage.dbs.DBSRepositoryBase.IdType;
 
 /**
  * Interface for a {@link Repository} for Document-Based Storage.
@@ -52,6 +53,14 @@ public interface DBSRepository extends Repository, LockManager {
      */
     LockManager getLockManager();
 
+    /**
+     * Gets the type of document ids.
+     *
+     * @return the id type
+     * @since 11.5
+     */
+    IdType getIdType();
+
     /**
      * Checks if fulltext indexing (and search) is disabled.
      *
@@ -84,6 +93,14 @@ public interface DBSRepository extends Repository, LockManager {
      */
     boolean isChangeTokenEnabled();
 
+    /**
+     * Gets the maximum number of document updates sent to the database in a single batch when saving.
+     *
+     * @return the batch size, {@code 1} if updates are not batched
+     * @since 11.5
+     */
+    int getUpdateBatchSize();
+
     /**
      * Checks whether this repository supports transactions.
      *
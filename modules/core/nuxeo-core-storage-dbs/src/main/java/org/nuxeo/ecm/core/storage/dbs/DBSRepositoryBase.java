@@ -66,6 +66,9 @@ public abstract class DBSRepositoryBase implements DBSRepository {
 
     public static final String UUID_ZERO_DEBUG = "UUID_0";
 
+    /** @since 11.5 */
+    public static final int DEFAULT_UPDATE_BATCH_SIZE = 100;
+
     /**
      * Type of id to used for documents.
      *
@@ -99,6 +102,9 @@ public abstract class DBSRepositoryBase implements DBSRepository {
 
     protected final boolean changeTokenEnabled;
 
+    /** @since 11.5 */
+    protected final int updateBatchSize;
+
     /**
      * @since 7.4 : used to know if the LockManager was provided by this repository or externally
      */
@@ -126,6 +132,8 @@ public abstract class DBSRepositoryBase implements DBSRepository {
             fulltextConfiguration = FulltextConfigurationFactory.make(fulltextDescriptor);
         }
         changeTokenEnabled = descriptor.isChangeTokenEnabled();
+        Integer batchSize = descriptor.updateBatchSize;
+        updateBatchSize = batchSize == null ? DEFAULT_UPDATE_BATCH_SIZE : Math.max(batchSize.intValue(), 1);
         blobManager = Framework.getService(BlobManager.class);
         initBlobsPaths();
         initLockManager();
@@ -135,6 +143,7 @@ public abstract class DBSRepositoryBase implements DBSRepository {
     public abstract List<IdType> getAllowedIdTypes();
 
     /** @since 11.1 */
+    @Override
     public IdType getIdType() {
         return idType;
     }
@@ -301,6 +310,11 @@ public abstract class DBSRepositoryBase implements DBSRepository {
         return changeTokenEnabled;
     }
 
+    @Override
+    public int getUpdateBatchSize() {
+        return updateBatchSize;
+    }
+
     @Override
     public Session getSession() {
         return new DBSSession(this);
@@ -131,6 +131,48 @@ public class DBSRepositoryDescriptor implements Cloneable {
     @XNode("cache@concurrencyLevel")
     public Integer cacheConcurrencyLevel;
 
+    /** @since 11.5 */
+    @XNode("cache@offHeap")
+    private Boolean cacheOffHeap;
+
+    /**
+     * Whether the states cache keeps serialized states off-heap, bounded by {@link #cacheMaxBytes}.
+     *
+     * @since 11.5
+     */
+    public boolean isCacheOffHeap() {
+        return defaultFalse(cacheOffHeap);
+    }
+
+    /** @since 11.5 */
+    protected void setCacheOffHeap(boolean offHeap) {
+        cacheOffHeap = Boolean.valueOf(offHeap);
+    }
+
+    /**
+     * The maximum number of bytes used by the off-heap states cache.
+     *
+     * @since 11.5
+     */
+    @XNode("cache@maxBytes")
+    public Long cacheMaxBytes;
+
+    /**
+     * The maximum total number of children names kept in the children index.
+     *
+     * @since 11.5
+     */
+    @XNode("cache@childrenMaxSize")
+    public Long cacheChildrenMaxSize;
+
+    /**
+     * The maximum number of children names kept in the children index for a single parent.
+     *
+     * @since 11.5
+     */
+    @XNode("cache@childrenMaxPerParent")
+    public Integer cacheChildrenMaxPerParent;
+
     /** @since 8.10 */
     @XNode("clustering/invalidatorClass")
     public Class<? extends DBSClusterInvalidator> clusterInvalidatorClass;
@@ -149,6 +191,14 @@ public class DBSRepositoryDescriptor implements Cloneable {
         this.changeTokenEnabled = Boolean.valueOf(enabled);
     }
 
+    /**
+     * The maximum number of document updates sent to the database in a single batch when saving.
+     *
+     * @since 11.5
+     */
+    @XNode("updateBatchSize")
+    public Integer updateBatchSize;
+
     @XNode("pool")
     public PoolConfiguration pool;
 
@@ -197,12 +247,27 @@ public class DBSRepositoryDescriptor implements Cloneable {
         if (other.cacheConcurrencyLevel != null) {
             cacheConcurrencyLevel = other.cacheConcurrencyLevel;
         }
+        if (other.cacheOffHeap != null) {
+            cacheOffHeap = other.cacheOffHeap;
+        }
+        if (other.cacheMaxBytes != null) {
+            cacheMaxBytes = other.cacheMaxBytes;
+        }
+        if (other.cacheChildrenMaxSize != null) {
+            cacheChildrenMaxSize = other.cacheChildrenMaxSize;
+        }
+        if (other.cacheChildrenMaxPerParent != null) {
+            cacheChildrenMaxPerParent = other.cacheChildrenMaxPerParent;
+        }
         if (other.clusterInvalidatorClass != null) {
             clusterInvalidatorClass = other.clusterInvalidatorClass;
         }
         if (other.changeTokenEnabled != null) {
             changeTokenEnabled = other.changeTokenEnabled;
         }
+        if (other.updateBatchSize != null) {
+            updateBatchSize = other.updateBatchSize;
+        }
     }
 
     private static boolean defaultFalse(Boolean bool) {
@@ -735,6 +735,8 @@ public class DBSSession extends BaseSession {
             }
             // checkNotUnder(parentId, sourceId, "copy");
         }
+        // fetch the source tree in bulk, it will be walked to do the copy
+        transaction.prefetchDescendants(sourceId);
         // do the copy
         Long pos = getNextPos(parentId);
         boolean excludeSpecialChildren = true;
@@ -1312,6 +1314,18 @@ public class DBSSession extends BaseSession {
         transaction.updateReadACLs(docIds);
     }
 
+    /**
+     * Updates the Read ACLs on some descendants of a document whose Read ACL changed, bypassing transient space and
+     * caches.
+     *
+     * @return the number of documents whose Read ACL was changed
+     * @since 11.5
+     * @see DBSTransactionState#updateDescendantsReadACLs
+     */
+    public int updateDescendantsReadACLs(String rootId, Collection<String> docIds) {
+        return transaction.updateDescendantsReadACLs(rootId, docIds);
+    }
+
     @Override
     public boolean isNegativeAclAllowed() {
         return false;
@@ -1501,6 +1515,15 @@ public class DBSSession extends BaseSession {
         return new PartialList<>(docs, pl.totalSize());
     }
 
+    @Override
+    public long queryEstimatedCount(String query, String queryType, QueryFilter queryFilter) {
+        if ("NXTAG".equals(queryType)) {
+            return -1;
+        }
+        DBSQuery q = parseQuery(query, queryType, queryFilter, false, null);
+        return transaction.queryEstimatedCount(q.evaluator);
+    }
+
     @SuppressWarnings("resource") // Time.Context closed by stop()
     protected PartialList<String> doQuery(String query, String queryType, QueryFilter queryFilter, int countUpTo) {
         final Timer.Context timerContext = queryTimer.time();
@@ -1536,10 +1559,111 @@ public class DBSSession extends BaseSession {
             // and return an empty list
             return new PartialList<>(Collections.<Map<String, Serializable>> emptyList(), 0);
         }
+        DBSQuery q = parseQuery(query, queryType, queryFilter, distinctDocuments, idKeyHolder);
+        int limit = q.limit;
+        int offset = q.offset;
+
+        int repoLimit;
+        int repoOffset;
+        OrderByClause repoOrderByClause;
+        OrderByClause orderByClause = q.orderByClause;
+        boolean postFilter = isOrderByPath(orderByClause);
+        if (postFilter) {
+            // we have to merge ordering and batching between memory and
+            // repository
+            repoLimit = 0;
+            repoOffset = 0;
+            repoOrderByClause = null;
+        } else {
+            // fast case, we can use the repository query directly
+            repoLimit = limit;
+            repoOffset = offset;
+            repoOrderByClause = orderByClause;
+        }
+
+        // query the repository
+        PartialList<Map<String, Serializable>> projections = transaction.queryAndFetch(q.evaluator, repoOrderByClause,
+                q.distinctDocuments, repoLimit, repoOffset, countUpTo);
+
+        projections.forEach(q::renameTag);
+
+        if (postFilter) {
+            // ORDER BY
+            if (orderByClause != null) {
+                doOrderBy(projections, orderByClause);
+            }
+            // LIMIT / OFFSET
+            if (limit != 0) {
+                int size = projections.size();
+                int fromIndex = offset > size ? size : offset;
+                int toIndex = fromIndex + limit > size ? size : fromIndex + limit;
+                projections = projections.subList(fromIndex, toIndex);
+            }
+        }
+
+        return projections;
+    }
+
+    /**
+     * Does a query and returns the projections as a stream, lazily fetched from the repository.
+     * <p>
+     * Queries ordered by {@code ecm:path} cannot be streamed and are fully fetched in memory.
+     *
+     * @since 11.5
+     */
+    protected Stream<Map<String, Serializable>> doQueryAndFetchStream(String query, String queryType,
+            QueryFilter queryFilter, boolean distinctDocuments, int batchSize) {
+        if ("NXTAG".equals(queryType)) {
+            return Stream.empty();
+        }
+        DBSQuery q = parseQuery(query, queryType, queryFilter, distinctDocuments, null);
+        if (isOrderByPath(q.orderByClause)) {
+            return doQueryAndFetch(query, queryType, queryFilter, distinctDocuments, 0, null).stream();
+        }
+        return transaction.queryAndFetchStream(q.evaluator, q.orderByClause, q.distinctDocuments, q.limit, q.offset,
+                batchSize).map(q::renameTag);
+    }
+
+    /**
+     * A parsed NXQL query, ready to be executed.
+     *
+     * @since 11.5
+     */
+    protected static class DBSQuery {
+
+        protected DBSExpressionEvaluator evaluator;
+
+        protected OrderByClause orderByClause;
+
+        protected boolean distinctDocuments;
+
+        protected int limit;
+
+        protected int offset;
+
+        protected String ecmTag;
+
+        protected String keyTag;
+
+        /** Puts back the tag under the name used in the query. */
+        protected Map<String, Serializable> renameTag(Map<String, Serializable> projection) {
+            if (projection.containsKey(keyTag)) {
+                projection.put(ecmTag, projection.remove(keyTag));
+            }
+            return projection;
+        }
+    }
+
+    /**
+     * Parses a query and prepares its evaluator.
+     *
+     * @since 11.5
+     */
+    protected DBSQuery parseQuery(String query, String queryType, QueryFilter queryFilter, boolean distinctDocuments,
+            Mutable<String> idKeyHolder) {
         if (!NXQL.NXQL.equals(queryType)) {
             throw new NuxeoException("No QueryMaker accepts query type: " + queryType);
         }
-
         // transform the query according to the transformers defined by the
         // security policies
         SQLQuery sqlQuery = SQLQueryParser.parse(query);
@@ -1586,58 +1710,15 @@ public class DBSSession extends BaseSession {
         DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(this, sqlQuery, queryFilter.getPrincipals(),
                 fulltextSearchDisabled);
 
-        int limit = (int) queryFilter.getLimit();
-        int offset = (int) queryFilter.getOffset();
-        if (offset < 0) {
-            offset = 0;
-        }
-        if (limit < 0) {
-            limit = 0;
-        }
-
-        int repoLimit;
-        int repoOffset;
-        OrderByClause repoOrderByClause;
-        OrderByClause orderByClause = sqlQuery.orderBy;
-        boolean postFilter = isOrderByPath(orderByClause);
-        if (postFilter) {
-            // we have to merge ordering and batching between memory and
-            // repository
-            repoLimit = 0;
-            repoOffset = 0;
-            repoOrderByClause = null;
-        } else {
-            // fast case, we can use the repository query directly
-            repoLimit = limit;
-            repoOffset = offset;
-            repoOrderByClause = orderByClause;
-        }
-
-        // query the repository
-        PartialList<Map<String, Serializable>> projections = transaction.queryAndFetch(evaluator, repoOrderByClause,
-                distinctDocuments, repoLimit, repoOffset, countUpTo);
-
-        for (Map<String, Serializable> proj : projections) {
-            if (proj.containsKey(keyTag)) {
-                proj.put(ecmTag, proj.remove(keyTag));
-            }
-        }
-
-        if (postFilter) {
-            // ORDER BY
-            if (orderByClause != null) {
-                doOrderBy(projections, orderByClause);
-            }
-            // LIMIT / OFFSET
-            if (limit != 0) {
-                int size = projections.size();
-                int fromIndex = offset > size ? size : offset;
-                int toIndex = fromIndex + limit > size ? size : fromIndex + limit;
-                projections = projections.subList(fromIndex, toIndex);
-            }
-        }
-
-        return projections;
+        DBSQuery q = new DBSQuery();
+        q.evaluator = evaluator;
+        q.orderByClause = sqlQuery.orderBy;
+        q.distinctDocuments = distinctDocuments;
+        q.limit = Math.max((int) queryFilter.getLimit(), 0);
+        q.offset = Math.max((int) queryFilter.getOffset(), 0);
+        q.ecmTag = ecmTag;
+        q.keyTag = keyTag;
+        return q;
     }
 
     /** Does an ORDER BY clause include ecm:path */
@@ -1780,6 +1861,19 @@ public class DBSSession extends BaseSession {
         }
     }
 
+    @SuppressWarnings("resource") // Time.Context closed by stop()
+    @Override
+    public Stream<Map<String, Serializable>> queryProjectionStream(String query, String queryType,
+            QueryFilter queryFilter, boolean distinctDocuments, int batchSize, Object[] params) {
+        // the iteration of the stream is not measured
+        final Timer.Context timerContext = queryTimer.time();
+        try {
+            return doQueryAndFetchStream(query, queryType, queryFilter, distinctDocuments, batchSize);
+        } finally {
+            timerContext.stop();
+        }
+    }
+
     @Override
     public ScrollResult<String> scroll(String query, int batchSize, int keepAliveSeconds) {
         SQLQuery sqlQuery = SQLQueryParser.parse(query);
@@ -1809,6 +1903,23 @@ public class DBSSession extends BaseSession {
         return transaction.scroll(scrollId);
     }
 
+    @Override
+    public String getRandomIdTemplate() {
+        if (DBSRepositoryBase.DEBUG_UUIDS) {
+            return null;
+        }
+        switch (repository.getIdType()) {
+        case varchar:
+        case uuid:
+            return DBSRepositoryBase.UUID_ZERO;
+        case sequenceHexRandomized:
+            // pseudo-random, uniformly distributed
+            return "0000000000000000";
+        default:
+            return null;
+        }
+    }
+
     private String countUpToAsString(long countUpTo) {
         if (countUpTo > 0) {
             return String.format("count total results up to %d", countUpTo);
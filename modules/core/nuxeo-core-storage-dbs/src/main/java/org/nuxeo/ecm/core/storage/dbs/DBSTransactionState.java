@@ -55,6 +55,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedHashSet;
@@ -65,6 +66,9 @@ import java.util.Map.Entry;
 import java.util.Set;
 import java.util.stream.Stream;
 
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.nuxeo.ecm.core.BatchFinderWork;
@@ -80,6 +84,8 @@ import org.nuxeo.ecm.core.api.lock.LockManager;
 import org.nuxeo.ecm.core.api.model.DeltaLong;
 import org.nuxeo.ecm.core.api.repository.FulltextConfiguration;
 import org.nuxeo.ecm.core.api.repository.RepositoryManager;
+import org.nuxeo.ecm.core.bulk.BulkService;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
 import org.nuxeo.ecm.core.model.BaseSession;
 import org.nuxeo.ecm.core.model.BaseSession.VersionAclMode;
 import org.nuxeo.ecm.core.query.QueryFilter;
@@ -95,10 +101,12 @@ import org.nuxeo.ecm.core.storage.State.ListDiff;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
 import org.nuxeo.ecm.core.storage.StateHelper;
 import org.nuxeo.ecm.core.storage.dbs.DBSConnection.DBSQueryOperator;
+import org.nuxeo.ecm.core.storage.dbs.DBSConnection.StateUpdate;
 import org.nuxeo.ecm.core.work.api.Work;
 import org.nuxeo.ecm.core.work.api.WorkManager;
 import org.nuxeo.ecm.core.work.api.WorkManager.Scheduling;
 import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.transaction.TransactionHelper;
 
 /**
  * Transactional state for a session.
@@ -133,6 +141,16 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
 
     public static final String READ_ACL_ASYNC_THRESHOLD_DEFAULT = "500";
 
+    /**
+     * Maximum number of descendants fetched in bulk into the transient space before a tree operation.
+     *
+     * @since 11.5
+     */
+    public static final String PREFETCH_DESCENDANTS_MAX_PROPERTY = "nuxeo.core.dbs.descendants.prefetch.max";
+
+    /** @since 11.5 */
+    public static final String PREFETCH_DESCENDANTS_MAX_DEFAULT = "10000";
+
     protected final DBSRepository repository;
 
     protected final DBSConnection connection;
@@ -145,6 +163,29 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
     /** Ids of documents created but not yet saved. */
     protected Set<String> transientCreated = new LinkedHashSet<>();
 
+    /**
+     * States read in bulk from the repository before a tree operation, and not transient. A state leaves this cache
+     * when it becomes transient, so that saves don't have to look at the states that are only read.
+     *
+     * @since 11.5
+     */
+    protected Map<String, State> prefetchedStates = new HashMap<>();
+
+    /**
+     * Ids of the prefetched states, by parent id.
+     *
+     * @since 11.5
+     */
+    protected Map<String, List<String>> prefetchedChildren = new HashMap<>();
+
+    /**
+     * Ids of documents whose whole subtree has been prefetched, so whose children are the transient or prefetched ones
+     * and don't have to be looked up in the repository.
+     *
+     * @since 11.5
+     */
+    protected Set<String> transientSubtrees = new HashSet<>();
+
     /**
      * Document ids modified as "user changes", which means that a change token should be checked.
      *
@@ -207,6 +248,7 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         }
         DBSDocumentState docState = new DBSDocumentState(state); // copy
         transientStates.put(id, docState);
+        prefetchedStates.remove(id);
         return docState;
     }
 
@@ -220,8 +262,12 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         if (docState != null) {
             return docState;
         }
-        // fetch from repository
-        State state = connection.readState(id);
+        // check prefetched state
+        State state = prefetchedStates.get(id);
+        if (state == null) {
+            // fetch from repository
+            state = connection.readState(id);
+        }
         return newTransientState(state);
     }
 
@@ -237,6 +283,11 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         if (docState != null) {
             return docState.getState();
         }
+        // check prefetched state
+        State state = prefetchedStates.get(id);
+        if (state != null) {
+            return state;
+        }
         // fetch from repository
         return connection.readState(id);
     }
@@ -254,6 +305,12 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
             if (docState != null) {
                 continue;
             }
+            // check prefetched state
+            State state = prefetchedStates.get(id);
+            if (state != null) {
+                newTransientState(state);
+                continue;
+            }
             // will have to fetch it
             idsToFetch.add(id);
         }
@@ -290,8 +347,14 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
             }
             return docState;
         }
-        // fetch from repository
-        State state = connection.readChildState(parentId, name, Collections.emptySet());
+        State state;
+        if (transientSubtrees.contains(parentId)) {
+            // all the children are transient or prefetched
+            state = getPrefetchedChild(parentId, name);
+        } else {
+            // fetch from repository
+            state = connection.readChildState(parentId, name, Collections.emptySet());
+        }
         if (state == null) {
             return null;
         }
@@ -316,6 +379,10 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
             }
             return true;
         }
+        if (transientSubtrees.contains(parentId)) {
+            // all the children are transient or prefetched
+            return getPrefetchedChild(parentId, name) != null;
+        }
         // check repository
         return connection.hasChild(parentId, name, Collections.emptySet());
     }
@@ -345,7 +412,11 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
             seen.add(docState.getId());
         }
         List<State> states;
-        if (!excludeChildren) {
+        if (transientSubtrees.contains(parentId)) {
+            // all the children are transient or prefetched
+            states = getPrefetchedChildren(parentId, excludeSpecialChildren, excludeRegularChildren,
+                    specialChildrenTypes);
+        } else if (!excludeChildren) {
             states = connection.queryKeyValue(KEY_PARENT_ID, parentId, seen);
         } else {
             // fetch from repository
@@ -392,7 +463,11 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
             children.add(id);
         }
         List<State> states;
-        if (!excludeChildren) {
+        if (transientSubtrees.contains(parentId)) {
+            // all the children are transient or prefetched
+            states = getPrefetchedChildren(parentId, excludeSpecialChildren, excludeRegularChildren,
+                    specialChildrenTypes);
+        } else if (!excludeChildren) {
             states = connection.queryKeyValue(KEY_PARENT_ID, parentId, seen);
         } else {
             // fetch from repository depending on the filter flags
@@ -421,6 +496,10 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
             }
             return true;
         }
+        if (transientSubtrees.contains(parentId)) {
+            // all the children are transient or prefetched
+            return !getPrefetchedChildren(parentId, false, false, Collections.emptySet()).isEmpty();
+        }
         // check repository
         return connection.queryKeyValuePresence(KEY_PARENT_ID, parentId, Collections.emptySet());
     }
@@ -497,10 +576,8 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         int nadd = ancestorIds.length;
         Set<String> ids = new HashSet<>();
         ids.add(id);
-        try (Stream<State> states = getDescendants(id, Collections.emptySet(), 0)) {
-            states.forEach(state -> ids.add((String) state.get(KEY_ID)));
-        }
-        // we collect all ids first to avoid reentrancy to the repository
+        // fetch all the descendants in bulk instead of reading them one by one
+        ids.addAll(fetchDescendants(id, 0));
         for (String cid : ids) {
             // XXX TODO oneShot update, don't pollute transient space
             DBSDocumentState docState = getStateForUpdate(cid);
@@ -541,13 +618,11 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
 
         // check if we have a small enough number of descendants that we can process them synchronously
         int limit = getReadAclsAsyncThreshold();
-        Set<String> ids = new HashSet<>();
-        try (Stream<State> states = getDescendants(id, Collections.emptySet(), limit)) {
-            states.forEach(state -> ids.add((String) state.get(KEY_ID)));
-        }
+        // fetch the descendants in bulk, they will be updated synchronously if there are few enough
+        Set<String> ids = fetchDescendants(id, limit);
         if (limit == 0 || ids.size() < limit) {
-            // update all descendants synchronously
-            ids.forEach(this::updateDocumentReadAcls);
+            // update all descendants synchronously, top-down
+            updateDescendantsReadAcls(id, ids);
         } else {
             // update the direct children synchronously, the rest asynchronously
 
@@ -560,21 +635,239 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
                     new Object[0]);
             for (Map<String, Serializable> map : pl) {
                 String childId = (String) map.get(NXQL.ECM_UUID);
-                updateDocumentReadAcls(childId);
+                updateDocumentReadAclsFromParent(childId);
             }
 
-            // asynchronous work to do the whole tree
-            nxql = String.format("SELECT ecm:uuid FROM Document WHERE ecm:ancestorId = '%s'", id);
-            Work work = new FindReadAclsWork(repository.getName(), nxql, null);
-            Framework.getService(WorkManager.class).schedule(work);
+            // bulk action to do the whole tree, once the new Read ACL of the root is committed
+            BulkCommand command = DBSReadAclsAction.newCommand(repository.getName(), id);
+            if (TransactionHelper.isTransactionActiveOrMarkedRollback()) {
+                TransactionHelper.registerSynchronization(new Synchronization() {
+                    @Override
+                    public void beforeCompletion() {
+                        // nothing
+                    }
+
+                    @Override
+                    public void afterCompletion(int status) {
+                        if (status == Status.STATUS_COMMITTED) {
+                            Framework.getService(BulkService.class).submit(command);
+                        }
+                    }
+                });
+            } else {
+                Framework.getService(BulkService.class).submit(command);
+            }
         }
     }
 
+    /**
+     * Updates the Read ACLs of the given descendants of a document, whose states are already transient, by propagating
+     * the Read ACL of each parent to its children.
+     * <p>
+     * The subtrees whose local ACP blocks inheritance are skipped, as they don't depend on the ancestors.
+     *
+     * @since 11.5
+     */
+    protected void updateDescendantsReadAcls(String id, Collection<String> ids) {
+        // process parents before children
+        List<DBSDocumentState> docStates = new ArrayList<>(ids.size());
+        for (String cid : ids) {
+            docStates.add(getStateForUpdate(cid));
+        }
+        docStates.sort(Comparator.comparingInt(DBSTransactionState::getDepth));
+        Set<String> blocked = new HashSet<>();
+        for (DBSDocumentState docState : docStates) {
+            String parentId = docState.getParentId();
+            if (blocked.contains(parentId)) {
+                blocked.add(docState.getId());
+                continue;
+            }
+            Set<String> racls = new HashSet<>();
+            if (addLocalReadACL(docState.getState(), false, racls)) {
+                blocked.add(docState.getId());
+                continue;
+            }
+            addParentReadACL(parentId, racls);
+            docState.put(KEY_READ_ACL, toReadACL(racls));
+        }
+    }
+
+    protected static int getDepth(DBSDocumentState docState) {
+        Object[] ancestorIds = (Object[]) docState.get(KEY_ANCESTOR_IDS);
+        return ancestorIds == null ? 0 : ancestorIds.length;
+    }
+
+    /**
+     * Updates the Read ACLs on a document (not recursively) from its local ACP and the Read ACL of its parent.
+     *
+     * @since 11.5
+     */
+    protected void updateDocumentReadAclsFromParent(String id) {
+        DBSDocumentState docState = getStateForUpdate(id);
+        if (TRUE.equals(docState.get(KEY_IS_VERSION)) || docState.getParentId() == null) {
+            docState.put(KEY_READ_ACL, getReadACL(docState.getState()));
+            return;
+        }
+        Set<String> racls = new HashSet<>();
+        if (!addLocalReadACL(docState.getState(), false, racls)) {
+            addParentReadACL(docState.getParentId(), racls);
+        }
+        docState.put(KEY_READ_ACL, toReadACL(racls));
+    }
+
+    protected void addParentReadACL(String parentId, Set<String> racls) {
+        State parentState = parentId == null ? null : getStateForRead(parentId);
+        if (parentState == null) {
+            return;
+        }
+        Object[] parentRacl = (Object[]) parentState.get(KEY_READ_ACL);
+        if (parentRacl != null) {
+            for (Object user : parentRacl) {
+                racls.add((String) user);
+            }
+        }
+    }
+
+    /**
+     * Updates the Read ACLs on some descendants of a document, bypassing transient space and caches, after the Read
+     * ACL of this document has been changed and committed.
+     * <p>
+     * The new Read ACL of each document is computed from its local ACP, the local ACPs of its ancestors up to the root
+     * document, and the stored Read ACL of the root document. The documents under an ACP blocking inheritance are
+     * skipped, as they don't depend on the root document. Documents that are no longer under the root are fully
+     * recomputed.
+     *
+     * @param rootId the root document id
+     * @param docIds the descendants to update
+     * @return the number of documents whose Read ACL was changed
+     * @since 11.5
+     */
+    public int updateDescendantsReadACLs(String rootId, Collection<String> docIds) {
+        State rootState = connection.readPartialState(rootId, Collections.singleton(KEY_READ_ACL));
+        if (rootState == null) {
+            // root was deleted, so were its descendants
+            return 0;
+        }
+        Object[] rootRacl = (Object[]) rootState.get(KEY_READ_ACL);
+        // local ACP of the intermediate ancestors: the users granted, or null if inheritance is blocked
+        Map<String, Set<String>> localAcls = new HashMap<>();
+        List<State> states = connection.readStates(new ArrayList<>(docIds));
+        // fetch in one batch all the intermediate ancestors not part of the batch
+        Set<String> missing = new LinkedHashSet<>();
+        for (State state : states) {
+            if (state != null) {
+                localAcls.put((String) state.get(KEY_ID), getLocalReadACL(state));
+            }
+        }
+        for (State state : states) {
+            if (state != null) {
+                for (String aid : getAncestorIdsBelow(state, rootId)) {
+                    if (!localAcls.containsKey(aid)) {
+                        missing.add(aid);
+                    }
+                }
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (State state : connection.readStates(new ArrayList<>(missing))) {
+                if (state != null) {
+                    localAcls.put((String) state.get(KEY_ID), getLocalReadACL(state));
+                }
+            }
+        }
+        int batchSize = repository.getUpdateBatchSize();
+        List<StateUpdate> updates = new ArrayList<>();
+        int updated = 0;
+        for (State state : states) {
+            if (state == null) {
+                // deleted meanwhile
+                continue;
+            }
+            String id = (String) state.get(KEY_ID);
+            String[] racl;
+            List<String> ancestorIds = getAncestorIdsBelow(state, rootId);
+            if (ancestorIds == null) {
+                // moved out of the tree meanwhile, full computation
+                racl = getReadACL(state);
+            } else {
+                Set<String> racls = new HashSet<>();
+                boolean blocked = false;
+                // from the document up to the root, stop at the first ACP blocking inheritance
+                List<String> chain = new ArrayList<>(ancestorIds);
+                chain.add(id);
+                for (int i = chain.size() - 1; i >= 0; i--) {
+                    Set<String> local = localAcls.get(chain.get(i));
+                    if (local == null) {
+                        blocked = true;
+                        break;
+                    }
+                    racls.addAll(local);
+                }
+                if (blocked) {
+                    // doesn't depend on the root
+                    continue;
+                }
+                if (rootRacl != null) {
+                    for (Object user : rootRacl) {
+                        racls.add((String) user);
+                    }
+                }
+                racl = toReadACL(racls);
+            }
+            State oldState = new State(1);
+            oldState.put(KEY_READ_ACL, state.get(KEY_READ_ACL));
+            State newState = new State(1);
+            newState.put(KEY_READ_ACL, racl);
+            StateDiff diff = StateHelper.diff(oldState, newState);
+            if (!diff.isEmpty()) {
+                // no transient for state write, we write directly and just invalidate caches
+                updates.add(new StateUpdate(id, diff, null));
+                if (updates.size() >= batchSize) {
+                    flushUpdates(updates);
+                }
+                updated++;
+            }
+        }
+        flushUpdates(updates);
+        return updated;
+    }
+
+    /**
+     * Gets the users granted by the local ACP of a document, or {@code null} if it blocks inheritance.
+     */
+    protected Set<String> getLocalReadACL(State state) {
+        Set<String> racls = new HashSet<>();
+        return addLocalReadACL(state, false, racls) ? null : racls;
+    }
+
+    /**
+     * Gets the ancestors of a document strictly below the given root, top-down, or {@code null} if the document is not
+     * under the root.
+     */
+    protected static List<String> getAncestorIdsBelow(State state, String rootId) {
+        Object[] ancestorIds = (Object[]) state.get(KEY_ANCESTOR_IDS);
+        if (ancestorIds == null) {
+            return null;
+        }
+        for (int i = 0; i < ancestorIds.length; i++) {
+            if (rootId.equals(ancestorIds[i])) {
+                List<String> below = new ArrayList<>(ancestorIds.length - i - 1);
+                for (int j = i + 1; j < ancestorIds.length; j++) {
+                    below.add((String) ancestorIds[j]);
+                }
+                return below;
+            }
+        }
+        return null;
+    }
+
     /**
      * Work to find the ids of documents for which Read ACLs must be recomputed, and launch the needed update works.
      *
      * @since 9.10
+     * @deprecated since 11.5, Read ACLs of large trees are updated by the {@link DBSReadAclsAction} bulk action
      */
+    @Deprecated
     public static class FindReadAclsWork extends BatchFinderWork {
 
         private static final long serialVersionUID = 1L;
@@ -608,7 +901,9 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
      * Work to update the Read ACLs on a list of documents, without recursion.
      *
      * @since 9.10
+     * @deprecated since 11.5, Read ACLs of large trees are updated by the {@link DBSReadAclsAction} bulk action
      */
+    @Deprecated
     public static class UpdateReadAclsWork extends BatchProcessorWork {
 
         private static final long serialVersionUID = 1L;
@@ -673,6 +968,10 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         if (!diff.isEmpty()) {
             // no transient for state write, we write directly and just invalidate caches
             connection.updateState(id, diff, null);
+            State prefetchedState = prefetchedStates.get(id);
+            if (prefetchedState != null) {
+                prefetchedState.put(KEY_READ_ACL, newState.get(KEY_READ_ACL));
+            }
         }
     }
 
@@ -692,36 +991,9 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
                 }
             }
         }
-        LOOP: do {
-            @SuppressWarnings("unchecked")
-            List<Serializable> aclList = (List<Serializable>) state.get(KEY_ACP);
-            if (aclList != null) {
-                for (Serializable aclSer : aclList) {
-                    State aclMap = (State) aclSer;
-                    @SuppressWarnings("unchecked")
-                    List<Serializable> aceList = (List<Serializable>) aclMap.get(KEY_ACL);
-                    for (Serializable aceSer : aceList) {
-                        State aceMap = (State) aceSer;
-                        String username = (String) aceMap.get(KEY_ACE_USER);
-                        String permission = (String) aceMap.get(KEY_ACE_PERMISSION);
-                        Boolean granted = (Boolean) aceMap.get(KEY_ACE_GRANT);
-                        Long status = (Long) aceMap.get(KEY_ACE_STATUS);
-                        if (replaceReadVersionPermission && READ_VERSION.equals(permission)) {
-                            permission = READ;
-                        }
-                        if (TRUE.equals(granted) && browsePermissions.contains(permission)
-                                && (status == null || status == 1)) {
-                            racls.add(username);
-                        }
-                        if (FALSE.equals(granted)) {
-                            if (!EVERYONE.equals(username)) {
-                                // TODO log
-                                racls.add(UNSUPPORTED_ACL);
-                            }
-                            break LOOP;
-                        }
-                    }
-                }
+        do {
+            if (addLocalReadACL(state, replaceReadVersionPermission, racls)) {
+                break;
             }
             // get the parent; for a version the parent is the live document
             String parentKey;
@@ -735,7 +1007,52 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
             state = parentId == null ? null : getStateForRead(parentId);
         } while (state != null);
 
-        // sort to have canonical order
+        return toReadACL(racls);
+    }
+
+    /**
+     * Adds to the Read ACL the users having browse permission from the local ACP of a document (without inheritance).
+     *
+     * @return {@code true} if the local ACP blocks inheritance from the ancestors
+     * @since 11.5
+     */
+    protected boolean addLocalReadACL(State state, boolean replaceReadVersionPermission, Set<String> racls) {
+        @SuppressWarnings("unchecked")
+        List<Serializable> aclList = (List<Serializable>) state.get(KEY_ACP);
+        if (aclList == null) {
+            return false;
+        }
+        for (Serializable aclSer : aclList) {
+            State aclMap = (State) aclSer;
+            @SuppressWarnings("unchecked")
+            List<Serializable> aceList = (List<Serializable>) aclMap.get(KEY_ACL);
+            for (Serializable aceSer : aceList) {
+                State aceMap = (State) aceSer;
+                String username = (String) aceMap.get(KEY_ACE_USER);
+                String permission = (String) aceMap.get(KEY_ACE_PERMISSION);
+                Boolean granted = (Boolean) aceMap.get(KEY_ACE_GRANT);
+                Long status = (Long) aceMap.get(KEY_ACE_STATUS);
+                if (replaceReadVersionPermission && READ_VERSION.equals(permission)) {
+                    permission = READ;
+                }
+                if (TRUE.equals(granted) && browsePermissions.contains(permission)
+                        && (status == null || status == 1)) {
+                    racls.add(username);
+                }
+                if (FALSE.equals(granted)) {
+                    if (!EVERYONE.equals(username)) {
+                        // TODO log
+                        racls.add(UNSUPPORTED_ACL);
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Sorts to have canonical order. */
+    protected static String[] toReadACL(Set<String> racls) {
         List<String> racl = new ArrayList<>(racls);
         Collections.sort(racl);
         return racl.toArray(new String[racl.size()]);
@@ -745,6 +1062,96 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         return connection.getDescendants(id, keys, limit);
     }
 
+    /**
+     * Fetches in bulk the full states of the descendants of a document, so that a following tree operation (copy,
+     * move, Read ACL update) doesn't have to read them one by one.
+     * <p>
+     * If the whole subtree fits in the configured maximum, the lookups of children for the documents of the subtree
+     * are then done in memory only.
+     *
+     * @param id the root document id
+     * @since 11.5
+     */
+    public void prefetchDescendants(String id) {
+        int limit = Integer.parseInt(
+                Framework.getProperty(PREFETCH_DESCENDANTS_MAX_PROPERTY, PREFETCH_DESCENDANTS_MAX_DEFAULT));
+        if (limit < 0) {
+            // disabled
+            return;
+        }
+        Set<String> ids = fetchDescendants(id, limit);
+        if (limit == 0 || ids.size() < limit) {
+            // complete subtree, no need to ask the repository for children anymore
+            transientSubtrees.add(id);
+            transientSubtrees.addAll(ids);
+        }
+    }
+
+    /**
+     * Fetches the full states of the descendants of a document into the prefetched states, using a single repository
+     * query. States already transient or prefetched are left untouched.
+     *
+     * @param id the root document id
+     * @param limit the maximum number of descendants to fetch, or {@code 0} for no limit
+     * @return the ids of the descendants
+     * @since 11.5
+     */
+    protected Set<String> fetchDescendants(String id, int limit) {
+        Set<String> ids = new HashSet<>();
+        try (Stream<State> states = connection.getDescendantStates(id, limit)) {
+            states.forEach(state -> {
+                String cid = (String) state.get(KEY_ID);
+                ids.add(cid);
+                if (!transientStates.containsKey(cid) && !prefetchedStates.containsKey(cid)) {
+                    prefetchedStates.put(cid, state);
+                    String parentId = (String) state.get(KEY_PARENT_ID);
+                    prefetchedChildren.computeIfAbsent(parentId, k -> new ArrayList<>()).add(cid);
+                }
+            });
+        }
+        return ids;
+    }
+
+    /**
+     * Gets the prefetched states of the children of a document, excluding the transient ones.
+     *
+     * @since 11.5
+     */
+    protected List<State> getPrefetchedChildren(String parentId, boolean excludeSpecialChildren,
+            boolean excludeRegularChildren, Set<String> specialChildrenTypes) {
+        List<String> ids = prefetchedChildren.getOrDefault(parentId, Collections.emptyList());
+        List<State> states = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            State state = prefetchedStates.get(id);
+            if (state == null) {
+                // now transient or deleted
+                continue;
+            }
+            if (excludeSpecialChildren || excludeRegularChildren) {
+                boolean specialChild = specialChildrenTypes.contains(state.get(KEY_PRIMARY_TYPE));
+                if (excludeSpecialChildren && specialChild || excludeRegularChildren && !specialChild) {
+                    continue;
+                }
+            }
+            states.add(state);
+        }
+        return states;
+    }
+
+    /**
+     * Gets the prefetched state of the child of a document with the given name, excluding the transient ones.
+     *
+     * @since 11.5
+     */
+    protected State getPrefetchedChild(String parentId, String name) {
+        for (State state : getPrefetchedChildren(parentId, false, false, Collections.emptySet())) {
+            if (name.equals(state.get(KEY_NAME))) {
+                return state;
+            }
+        }
+        return null;
+    }
+
     public List<DBSDocumentState> getKeyValuedStates(String key, Object value) {
         List<DBSDocumentState> docStates = new LinkedList<>();
         Set<String> seen = new HashSet<>();
@@ -789,6 +1196,17 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         return connection.queryAndFetch(evaluator, orderByClause, distinctDocuments, limit, offset, countUpTo);
     }
 
+    /** @since 11.5 */
+    public long queryEstimatedCount(DBSExpressionEvaluator evaluator) {
+        return connection.queryEstimatedCount(evaluator);
+    }
+
+    /** @since 11.5 */
+    public Stream<Map<String, Serializable>> queryAndFetchStream(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments, int limit, int offset, int batchSize) {
+        return connection.queryAndFetchStream(evaluator, orderByClause, distinctDocuments, limit, offset, batchSize);
+    }
+
     /** @since 11.1 */
     public ScrollResult<String> scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
         return connection.scroll(evaluator, batchSize, keepAliveSeconds);
@@ -845,6 +1263,7 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         }
         for (String id : ids) {
             transientStates.remove(id);
+            prefetchedStates.remove(id);
         }
         connection.deleteStates(ids);
     }
@@ -881,6 +1300,8 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
         if (!statesToCreate.isEmpty()) {
             connection.createStates(statesToCreate);
         }
+        int batchSize = repository.getUpdateBatchSize();
+        List<StateUpdate> updates = new ArrayList<>();
         for (DBSDocumentState docState : transientStates.values()) {
             String id = docState.getId();
             if (transientCreated.contains(id)) {
@@ -910,17 +1331,38 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
                     } else {
                         changeTokenUpdater = null;
                     }
-                    connection.updateState(id, diff, changeTokenUpdater);
+                    updates.add(new StateUpdate(id, diff, changeTokenUpdater));
+                    if (updates.size() >= batchSize) {
+                        flushUpdates(updates);
+                    }
                 } finally {
                     docState.setNotDirty();
                 }
             }
         }
+        flushUpdates(updates);
         transientCreated.clear();
         userChangeIds.clear();
         scheduleWork(works);
     }
 
+    /**
+     * Sends the pending updates to the connection, and clears them.
+     *
+     * @since 11.5
+     */
+    protected void flushUpdates(List<StateUpdate> updates) {
+        if (updates.isEmpty()) {
+            return;
+        } else if (updates.size() == 1) {
+            StateUpdate update = updates.get(0);
+            connection.updateState(update.id, update.diff, update.changeTokenUpdater);
+        } else {
+            connection.updateStates(updates);
+        }
+        updates.clear();
+    }
+
     /**
      * Logic to get the conditions to use to match and update a change token.
      * <p>
@@ -1141,6 +1583,9 @@ public class DBSTransactionState implements LockManager, AutoCloseable {
     protected void clearTransient() {
         transientStates.clear();
         transientCreated.clear();
+        prefetchedStates.clear();
+        prefetchedChildren.clear();
+        transientSubtrees.clear();
     }
 
     /**
@@ -59,6 +59,9 @@ public class GuavaCacheMetric extends NuxeoMetricSet {
         metrics.putGauge(() -> cache.stats().hitRate(), "hit", "ratio");
         metrics.putGauge(() -> cache.stats().missCount(), "miss", "count");
         metrics.putGauge(() -> cache.stats().requestCount(), "read", "count");
+        if (cache instanceof OffHeapStateCache) {
+            metrics.putGauge(() -> ((OffHeapStateCache) cache).getBytes(), "bytes");
+        }
         // metrics.putGauge(() -> cache.stats().averageLoadPenalty(), "average", "load", "penalty");
         // metrics.putGauge(() -> cache.stats().loadCount(), "load", "count");
         // metrics.putGauge(() -> cache.stats().loadExceptionCount(), "load", "exception", "count");
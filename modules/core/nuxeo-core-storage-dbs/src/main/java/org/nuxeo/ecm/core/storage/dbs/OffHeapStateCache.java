@@ -0,0 +1,286 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.StateCodec;
+
+import com.google.common.cache.AbstractCache;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.Weigher;
+
+/**
+ * A {@link State} cache that keeps the serialized states outside of the Java heap, in direct memory.
+ * <p>
+ * The direct memory is allocated in a few large segments, up to the configured number of bytes, which are divided in
+ * fixed-size blocks. A serialized state is stored in as many blocks as needed, which are reused for other states when
+ * it's removed from the cache. Only the keys and the block numbers live on the heap, which keeps GC pressure low even
+ * with millions of entries. Eviction is based on the number of bytes of the blocks used, and states are deserialized
+ * only when there is a cache hit. States are serialized using a {@link StateCodec}.
+ *
+ * @since 11.5
+ */
+public class OffHeapStateCache extends AbstractCache<String, State> {
+
+    /** Size of the blocks in which the serialized states are stored. */
+    public static final int BLOCK_SIZE = 256;
+
+    /** Maximum size of a segment of direct memory. */
+    public static final int SEGMENT_SIZE = 4 * 1024 * 1024;
+
+    /** The blocks used by a serialized state. */
+    protected static final class Entry {
+
+        protected final int[] blocks;
+
+        protected final int length;
+
+        protected Entry(int[] blocks, int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+    }
+
+    protected final Cache<String, Entry> entries;
+
+    protected final AtomicLong bytes = new AtomicLong();
+
+    protected final StateCodec codec;
+
+    /** Total number of blocks, in all the segments. */
+    protected final int numBlocks;
+
+    /** Number of blocks in a segment (the last one may be smaller). */
+    protected final int segmentBlocks;
+
+    /** The segments, allocated when needed. Guarded by {@link #lock}. */
+    protected final ByteBuffer[] segments;
+
+    /** Stack of the free blocks of the allocated segments. Guarded by {@link #lock}. */
+    protected int[] freeBlocks = new int[0];
+
+    /** Number of free blocks in {@link #freeBlocks}. Guarded by {@link #lock}. */
+    protected int numFreeBlocks;
+
+    /** Number of allocated segments. Guarded by {@link #lock}. */
+    protected int numSegments;
+
+    protected final Object lock = new Object();
+
+    /**
+     * Constructs an off-heap cache.
+     *
+     * @param codec the codec used to serialize the states
+     * @param maxBytes the maximum number of bytes of direct memory used by the serialized states
+     * @param ttl the time-to-live of the entries, in minutes, or {@code null} for no expiration
+     * @param concurrencyLevel the concurrency level, or {@code null} for the default
+     */
+    public OffHeapStateCache(StateCodec codec, long maxBytes, Long ttl, Integer concurrencyLevel) {
+        this.codec = codec;
+        long blocks = maxBytes / BLOCK_SIZE;
+        if (blocks < 1 || blocks > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Invalid cache size: " + maxBytes);
+        }
+        numBlocks = (int) blocks;
+        segmentBlocks = Math.min(numBlocks, SEGMENT_SIZE / BLOCK_SIZE);
+        segments = new ByteBuffer[(numBlocks + segmentBlocks - 1) / segmentBlocks];
+        RemovalListener<String, Entry> listener = notification -> {
+            Entry entry = notification.getValue();
+            if (entry != null) {
+                free(entry.blocks);
+            }
+        };
+        Weigher<String, Entry> weigher = (key, entry) -> entry.blocks.length * BLOCK_SIZE;
+        // keep some blocks free for the states being stored, before eviction makes room for them
+        long reservedBlocks = Math.max(1, numBlocks / 16);
+        CacheBuilder<String, Entry> builder = CacheBuilder.newBuilder()
+                                                         .maximumWeight((numBlocks - reservedBlocks) * BLOCK_SIZE)
+                                                         .weigher(weigher)
+                                                         .removalListener(listener)
+                                                         .recordStats();
+        if (ttl != null) {
+            builder = builder.expireAfterWrite(ttl.longValue(), TimeUnit.MINUTES);
+        }
+        if (concurrencyLevel != null) {
+            builder = builder.concurrencyLevel(concurrencyLevel.intValue());
+        }
+        entries = builder.build();
+    }
+
+    @Override
+    public State getIfPresent(Object key) {
+        Entry entry = entries.getIfPresent(key);
+        if (entry == null) {
+            return null;
+        }
+        byte[] bytesArray = read(entry);
+        // the blocks may have been reused if the entry was removed while being read
+        if (entries.asMap().get(key) != entry) {
+            return null;
+        }
+        return decode(ByteBuffer.wrap(bytesArray));
+    }
+
+    @Override
+    public void put(String key, State state) {
+        byte[] bytesArray = encode(state);
+        int[] blocks = allocate((bytesArray.length + BLOCK_SIZE - 1) / BLOCK_SIZE);
+        if (blocks == null) {
+            // no room, don't cache this state and make sure no stale state is kept
+            entries.invalidate(key);
+            return;
+        }
+        write(blocks, bytesArray);
+        entries.put(key, new Entry(blocks, bytesArray.length));
+    }
+
+    @Override
+    public void invalidate(Object key) {
+        entries.invalidate(key);
+    }
+
+    @Override
+    public void invalidateAll(Iterable<?> keys) {
+        entries.invalidateAll(keys);
+    }
+
+    @Override
+    public void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    @Override
+    public long size() {
+        return entries.size();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return entries.stats();
+    }
+
+    @Override
+    public void cleanUp() {
+        entries.cleanUp();
+    }
+
+    /**
+     * Gets the number of bytes of the blocks used by the serialized states currently in the cache.
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    /**
+     * Gets the number of bytes of direct memory allocated for the segments.
+     */
+    public long getAllocatedBytes() {
+        synchronized (lock) {
+            long allocated = 0;
+            for (int i = 0; i < numSegments; i++) {
+                allocated += segments[i].capacity();
+            }
+            return allocated;
+        }
+    }
+
+    /**
+     * Allocates free blocks, allocating a new segment if needed.
+     *
+     * @return the blocks, or {@code null} if there are not enough free blocks
+     */
+    protected int[] allocate(int n) {
+        synchronized (lock) {
+            while (numFreeBlocks < n && numSegments < segments.length) {
+                allocateSegment();
+            }
+            if (numFreeBlocks < n) {
+                return null;
+            }
+            numFreeBlocks -= n;
+            int[] blocks = Arrays.copyOfRange(freeBlocks, numFreeBlocks, numFreeBlocks + n);
+            bytes.addAndGet((long) n * BLOCK_SIZE);
+            return blocks;
+        }
+    }
+
+    /** Allocates a new segment and makes its blocks free. Called under {@link #lock}. */
+    protected void allocateSegment() {
+        int first = numSegments * segmentBlocks;
+        int n = Math.min(segmentBlocks, numBlocks - first);
+        segments[numSegments++] = ByteBuffer.allocateDirect(n * BLOCK_SIZE);
+        freeBlocks = Arrays.copyOf(freeBlocks, numFreeBlocks + n);
+        // push in reverse order so that blocks are allocated in order
+        for (int block = first + n - 1; block >= first; block--) {
+            freeBlocks[numFreeBlocks++] = block;
+        }
+    }
+
+    protected void free(int[] blocks) {
+        synchronized (lock) {
+            if (freeBlocks.length < numFreeBlocks + blocks.length) {
+                freeBlocks = Arrays.copyOf(freeBlocks, numFreeBlocks + blocks.length);
+            }
+            for (int i = blocks.length - 1; i >= 0; i--) {
+                freeBlocks[numFreeBlocks++] = blocks[i];
+            }
+            bytes.addAndGet(-(long) blocks.length * BLOCK_SIZE);
+        }
+    }
+
+    /** Gets a view of a block, whose position is the start of the block. */
+    protected ByteBuffer getBlock(int block) {
+        ByteBuffer buffer = segments[block / segmentBlocks].duplicate();
+        buffer.position((block % segmentBlocks) * BLOCK_SIZE);
+        return buffer;
+    }
+
+    protected void write(int[] blocks, byte[] bytesArray) {
+        for (int i = 0; i < blocks.length; i++) {
+            int offset = i * BLOCK_SIZE;
+            getBlock(blocks[i]).put(bytesArray, offset, Math.min(BLOCK_SIZE, bytesArray.length - offset));
+        }
+    }
+
+    protected byte[] read(Entry entry) {
+        byte[] bytesArray = new byte[entry.length];
+        for (int i = 0; i < entry.blocks.length; i++) {
+            int offset = i * BLOCK_SIZE;
+            getBlock(entry.blocks[i]).get(bytesArray, offset, Math.min(BLOCK_SIZE, entry.length - offset));
+        }
+        return bytesArray;
+    }
+
+    protected byte[] encode(State state) {
+        return codec.encode(state);
+    }
+
+    protected State decode(ByteBuffer buffer) {
+        return codec.decodeState(buffer);
+    }
+
+}
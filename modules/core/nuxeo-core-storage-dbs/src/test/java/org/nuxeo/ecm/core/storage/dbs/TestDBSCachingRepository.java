@@ -19,11 +19,15 @@
 package org.nuxeo.ecm.core.storage.dbs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyInt;
 import static org.mockito.Matchers.anyListOf;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
@@ -35,6 +39,7 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.junit.After;
 import org.junit.Before;
@@ -42,6 +47,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nuxeo.ecm.core.storage.State;
 import org.nuxeo.ecm.core.storage.State.StateDiff;
+import org.nuxeo.ecm.core.storage.dbs.DBSConnection.StateUpdate;
 import org.nuxeo.runtime.cluster.ClusterFeature;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -50,6 +56,8 @@ import org.nuxeo.runtime.test.runner.FeaturesRunner;
 @Features(ClusterFeature.class)
 public class TestDBSCachingRepository {
 
+    private static final String CHILD_NAME = "NAME";
+
     private DBSCachingRepository repository;
 
     private DBSCachingConnection connection;
@@ -67,6 +75,11 @@ public class TestDBSCachingRepository {
                     state.setSingle(KEY_ID, id);
                     return state;
                 }).collect(Collectors.toList()));
+        // each parent has a single child named NAME
+        when(subConnection.getChildren(any(), any(), anyInt())).then(invocation -> {
+            Object parentId = invocation.getArguments()[0];
+            return Stream.of(newState(parentId.toString() + "_" + CHILD_NAME));
+        });
         when(subConnection.readChildState(any(), any(), any())).then(invocation -> {
             Object parentId = invocation.getArguments()[0];
             Object name = invocation.getArguments()[1];
@@ -138,6 +151,31 @@ public class TestDBSCachingRepository {
         verify(subConnection, times(2)).readState(eq(id));
     }
 
+    @Test
+    public void testUpdateStates() {
+        String id1 = "ID1";
+        String id2 = "ID2";
+
+        // First add the states in cache
+        connection.readState(id1);
+        connection.readState(id2);
+        verify(subConnection, times(1)).readState(eq(id1));
+        verify(subConnection, times(1)).readState(eq(id2));
+
+        // Second update these states in a single batch
+        List<StateUpdate> updates = Arrays.asList(new StateUpdate(id1, new StateDiff(), null),
+                new StateUpdate(id2, new StateDiff(), null));
+        connection.updateStates(updates);
+        verify(subConnection, times(1)).updateStates(eq(updates));
+        verify(subConnection, never()).updateState(any(), any(), any());
+
+        // Check states are no longer in cache
+        connection.readState(id1);
+        connection.readState(id2);
+        verify(subConnection, times(2)).readState(eq(id1));
+        verify(subConnection, times(2)).readState(eq(id2));
+    }
+
     @Test
     public void testDeleteStates() {
         String id = "ID";
@@ -159,27 +197,118 @@ public class TestDBSCachingRepository {
     @Test
     public void testReadChildState() {
         String parentId = "PARENT-ID";
-        String name = "NAME";
+        String name = CHILD_NAME;
         String id = parentId + "_" + name;
 
-        // First read - call sub repository
+        // First read - index the children and read the child
         State dbState = connection.readChildState(parentId, name, Collections.emptySet());
-        verify(subConnection, times(1)).readChildState(eq(parentId), eq(name), any());
+        verify(subConnection, times(1)).getChildren(eq(parentId), any(), anyInt());
+        verify(subConnection, times(1)).readState(eq(id));
+        assertEquals(id, dbState.get(KEY_ID));
 
         // Second read - call cache
         State cachedState = connection.readChildState(parentId, name, Collections.emptySet());
-        verify(subConnection, times(1)).readChildState(eq(parentId), eq(name), any());
-
+        verify(subConnection, times(1)).getChildren(eq(parentId), any(), anyInt());
+        verify(subConnection, times(1)).readState(eq(id));
         assertEquals(dbState, cachedState);
 
         // Third read cached state from cache with readState
         cachedState = connection.readState(id);
         assertEquals(dbState, cachedState);
+
+        // missing child, answered by the index
+        assertNull(connection.readChildState(parentId, "OTHER", Collections.emptySet()));
+        verify(subConnection, never()).readChildState(any(), any(), any());
+    }
+
+    @Test
+    public void testHasChild() {
+        String parentId = "PARENT-ID";
+
+        assertTrue(connection.hasChild(parentId, CHILD_NAME, Collections.emptySet()));
+        assertFalse(connection.hasChild(parentId, "OTHER", Collections.emptySet()));
+        verify(subConnection, times(1)).getChildren(eq(parentId), any(), anyInt());
+        verify(subConnection, never()).hasChild(any(), any(), any());
+
+        // child created, the index is updated without reloading
+        State state = new State();
+        state.put(KEY_ID, "NEW-ID");
+        state.put(KEY_PARENT_ID, parentId);
+        state.put(KEY_NAME, "OTHER");
+        connection.createState(state);
+        when(subConnection.readState(eq("NEW-ID"))).thenReturn(state);
+        assertTrue(connection.hasChild(parentId, "OTHER", Collections.emptySet()));
+        verify(subConnection, times(1)).getChildren(eq(parentId), any(), anyInt());
+
+        // child renamed, the parent is reindexed
+        StateDiff diff = new StateDiff();
+        diff.put(KEY_NAME, "RENAMED");
+        connection.updateState("NEW-ID", diff, null);
+        connection.hasChild(parentId, "RENAMED", Collections.emptySet());
+        verify(subConnection, times(2)).getChildren(eq(parentId), any(), anyInt());
+    }
+
+    @Test
+    public void testChildCreatedDuringLoad() {
+        String parentId = "PARENT-ID";
+        State state = new State();
+        state.put(KEY_ID, "NEW-ID");
+        state.put(KEY_PARENT_ID, parentId);
+        state.put(KEY_NAME, "OTHER");
+        when(subConnection.readState(eq("NEW-ID"))).thenReturn(state);
+        // the child is created while the children are loaded, and missed by the load
+        when(subConnection.getChildren(eq(parentId), any(), anyInt())).then(invocation -> {
+            connection.createState(state);
+            return Stream.of(newState(parentId + "_" + CHILD_NAME));
+        });
+
+        assertTrue(connection.hasChild(parentId, "OTHER", Collections.emptySet()));
+        assertTrue(connection.hasChild(parentId, CHILD_NAME, Collections.emptySet()));
+        assertFalse(connection.hasChild(parentId, "MISSING", Collections.emptySet()));
+        // the load was kept, with the created child
+        verify(subConnection, times(1)).getChildren(eq(parentId), any(), anyInt());
+        verify(subConnection, never()).hasChild(any(), any(), any());
+    }
+
+    @Test
+    public void testChildRenamedDuringLoad() {
+        String parentId = "PARENT-ID";
+        // cache the child, whose parent is then known when renaming it
+        connection.readState(parentId + "_" + CHILD_NAME);
+        // a child is renamed while the children are loaded
+        when(subConnection.getChildren(eq(parentId), any(), anyInt())).then(invocation -> {
+            StateDiff diff = new StateDiff();
+            diff.put(KEY_NAME, "RENAMED");
+            connection.updateState(parentId + "_" + CHILD_NAME, diff, null);
+            return Stream.of(newState(parentId + "_" + CHILD_NAME));
+        });
+
+        // the load is not indexed, the repository is asked
+        connection.hasChild(parentId, "RENAMED", Collections.emptySet());
+        verify(subConnection, times(1)).hasChild(eq(parentId), eq("RENAMED"), any());
+        connection.hasChild(parentId, "RENAMED", Collections.emptySet());
+        verify(subConnection, times(2)).getChildren(eq(parentId), any(), anyInt());
+    }
+
+    @Test
+    public void testHasChildIgnored() {
+        String parentId = "PARENT-ID";
+        String id = parentId + "_" + CHILD_NAME;
+
+        // ignored indexed child, ask the repository
+        connection.hasChild(parentId, CHILD_NAME, Collections.singleton(id));
+        verify(subConnection, times(1)).hasChild(eq(parentId), eq(CHILD_NAME), any());
     }
 
     private State newState(String id) {
         State state = new State();
         state.setSingle(KEY_ID, id);
+        int i = id.indexOf('_');
+        if (i > 0) {
+            // a child
+            state.setSingle(KEY_PARENT_ID, id.substring(0, i));
+            state.setSingle(KEY_NAME, id.substring(i + 1));
+        }
         return state;
     }
 
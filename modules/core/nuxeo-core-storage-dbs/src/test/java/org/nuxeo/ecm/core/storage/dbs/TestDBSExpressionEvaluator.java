@@ -45,6 +45,16 @@ import org.nuxeo.runtime.test.runner.RuntimeFeature;
 @Deploy("org.nuxeo.ecm.core.storage.dbs.tests:OSGI-INF/test-complex.xml")
 public class TestDBSExpressionEvaluator {
 
+    protected static final List<String> QUERIES = Arrays.asList( //
+            "SELECT ecm:uuid FROM D WHERE ecm:name LIKE 'doc1%' AND ecm:uuid IN ('id1', 'id3', 'id15')", //
+            "SELECT ecm:uuid FROM D WHERE cmp:addresses/*/city ILIKE 'par%' OR ecm:name = 'doc2'", //
+            "SELECT ecm:uuid FROM D WHERE NOT (cmp:addresses/*1/number BETWEEN 2 AND 5)" //
+                    + " AND ecm:name NOT IN ('doc3')", //
+            "SELECT ecm:uuid FROM D WHERE cmp:addresses/*1/street IS NULL OR ecm:name NOT LIKE 'doc%'", //
+            "SELECT ecm:uuid FROM D WHERE ecm:mixinTypes IN ('Foo', 'Bar') AND ecm:mixinTypes <> 'Baz'", //
+            "SELECT ecm:uuid, cmp:addresses/*1/street FROM D WHERE cmp:addresses/*1/city = 'Paris'" //
+                    + " AND cmp:addresses/*1/number >= 3");
+
     // always return a List<Serializable> that is Serializable
     private static final ArrayList<Object> list(Object... values) {
         return new ArrayList<>(Arrays.asList(values));
@@ -139,4 +149,106 @@ public class TestDBSExpressionEvaluator {
                 projections);
     }
 
+    protected static State newDocumentState(int i) {
+        ArrayList<Object> addresses = new ArrayList<>();
+        for (int j = 0; j < 3; j++) {
+            State address = state("city", (i + j) % 3 == 0 ? "Paris" : "London", "number", Long.valueOf((i + j) % 7));
+            if (j != 2) {
+                address.put("street", "Street " + j);
+            }
+            addresses.add(address);
+        }
+        State state = state( //
+                "ecm:id", "id" + i, //
+                "ecm:name", "doc" + i, //
+                "ecm:primaryType", "MyDoc", //
+                "cmp:addresses", addresses);
+        if (i % 2 == 0) {
+            state.put("ecm:mixinTypes", new String[] { "Foo" });
+        }
+        return state;
+    }
+
+    protected static DBSExpressionEvaluator newEvaluator(String nxql) {
+        DBSExpressionEvaluator evaluator = new DBSExpressionEvaluator(null, SQLQueryParser.parse(nxql), null, false);
+        evaluator.parse();
+        return evaluator;
+    }
+
+    @Test
+    public void testCompiledMatchesInterpreted() {
+        for (String nxql : QUERIES) {
+            DBSExpressionEvaluator compiled = newEvaluator(nxql);
+            DBSExpressionEvaluator interpreted = newEvaluator(nxql);
+            interpreted.compiledExpression = null;
+            int matching = 0;
+            for (int i = 0; i < 20; i++) {
+                List<Map<String, Serializable>> expected = interpreted.matches(newDocumentState(i));
+                assertEquals(nxql + " for doc" + i, expected, compiled.matches(newDocumentState(i)));
+                if (!expected.isEmpty()) {
+                    matching++;
+                }
+            }
+            assertTrue(nxql, matching > 0);
+        }
+    }
+
+    protected static List<String> matchingIds(String nxql, List<State> states, boolean compiled) {
+        DBSExpressionEvaluator evaluator = newEvaluator(nxql);
+        if (!compiled) {
+            evaluator.compiledExpression = null;
+        }
+        List<String> ids = new ArrayList<>();
+        for (State state : states) {
+            if (!evaluator.matches(state).isEmpty()) {
+                ids.add((String) state.get("ecm:id"));
+            }
+        }
+        return ids;
+    }
+
+    protected static void assertMatchingIds(List<String> expected, String nxql, List<State> states) {
+        assertEquals(nxql, expected, matchingIds(nxql, states, true));
+        assertEquals(nxql + " (interpreted)", expected, matchingIds(nxql, states, false));
+    }
+
+    @Test
+    public void testCompiledLike() {
+        List<State> states = Arrays.asList( //
+                state("ecm:id", "id1", "ecm:name", "50%"), //
+                state("ecm:id", "id2", "ecm:name", "50x"), //
+                state("ecm:id", "id3", "ecm:name", "a_b"), //
+                state("ecm:id", "id4", "ecm:name", "axb"), //
+                state("ecm:id", "id5", "ecm:name", "Doc.1"), //
+                state("ecm:id", "id6"), //
+                state("ecm:id", "id7", "ecm:name", "docX1"));
+        String select = "SELECT ecm:uuid FROM D WHERE ";
+        assertMatchingIds(Arrays.asList("id1", "id2"), select + "ecm:name LIKE '50%'", states);
+        assertMatchingIds(Arrays.asList("id1"), select + "ecm:name LIKE '50\\%'", states);
+        assertMatchingIds(Arrays.asList("id3", "id4"), select + "ecm:name LIKE 'a_b'", states);
+        assertMatchingIds(Arrays.asList("id3"), select + "ecm:name LIKE 'a\\_b'", states);
+        assertMatchingIds(Arrays.asList("id1", "id2", "id4", "id5", "id7"), select + "ecm:name NOT LIKE 'a\\_%'",
+                states);
+        // regex characters are literal
+        assertMatchingIds(Arrays.asList("id5"), select + "ecm:name ILIKE 'doc.%'", states);
+        assertMatchingIds(Arrays.asList("id5", "id7"), select + "ecm:name ILIKE 'doc_1'", states);
+        assertMatchingIds(Arrays.asList("id7"), select + "ecm:name LIKE 'doc%'", states);
+    }
+
+    @Test
+    public void testCompiledTernaryLogic() {
+        List<State> states = Arrays.asList( //
+                state("ecm:id", "id1", "ecm:name", "foo"), //
+                state("ecm:id", "id2", "ecm:name", "bar"), //
+                state("ecm:id", "id3"));
+        String select = "SELECT ecm:uuid FROM D WHERE ";
+        // a missing value is neither equal nor different
+        assertMatchingIds(Arrays.asList("id2"), select + "ecm:name <> 'foo'", states);
+        assertMatchingIds(Arrays.asList("id2"), select + "NOT (ecm:name = 'foo')", states);
+        assertMatchingIds(Arrays.asList("id3"), select + "ecm:name IS NULL", states);
+        assertMatchingIds(Arrays.asList("id1", "id3"), select + "ecm:name = 'foo' OR ecm:name IS NULL", states);
+        assertMatchingIds(Arrays.asList("id1"), select + "ecm:name IN ('foo', 'baz')", states);
+        assertMatchingIds(Arrays.asList("id2"), select + "ecm:name NOT IN ('foo', 'baz')", states);
+    }
+
 }
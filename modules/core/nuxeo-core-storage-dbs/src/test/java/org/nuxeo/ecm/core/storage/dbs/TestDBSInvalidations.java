@@ -19,6 +19,8 @@
 package org.nuxeo.ecm.core.storage.dbs;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
@@ -27,6 +29,7 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.commons.io.output.ByteArrayOutputStream;
 import org.junit.Test;
@@ -58,6 +61,14 @@ public class TestDBSInvalidations {
         ser = new String(baout.toByteArray());
         assertTrue(ser, Arrays.asList(",foo,bar", ",bar,foo").contains(ser)); // non-deterministic order
 
+        invals = new DBSInvalidations();
+        invals.add("foo");
+        invals.addParent("bar");
+        baout.reset();
+        invals.serialize(baout);
+        ser = new String(baout.toByteArray());
+        assertEquals(",foo,;bar", ser);
+
         invals = new DBSInvalidations();
         invals.setAll();
         baout.reset();
@@ -90,6 +101,56 @@ public class TestDBSInvalidations {
         bain = new ByteArrayInputStream(",foo,bar".getBytes());
         invals = DBSInvalidations.deserialize(bain);
         assertEquals(new HashSet<>(Arrays.asList("foo", "bar")), invals.ids);
+        assertNull(invals.parentIds);
+
+        bain = new ByteArrayInputStream(",;foo,bar,;baz".getBytes());
+        invals = DBSInvalidations.deserialize(bain);
+        assertEquals(Collections.singleton("bar"), invals.ids);
+        assertEquals(new HashSet<>(Arrays.asList("foo", "baz")), invals.parentIds);
+    }
+
+    /**
+     * Deserialization of nodes not knowing about parent ids.
+     */
+    protected static Set<String> deserializeIdsBeforeParentIds(String message) {
+        Set<String> ids = new HashSet<>();
+        if (!message.startsWith(",")) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (char c : message.substring(1).toCharArray()) {
+            if (c == ',') {
+                ids.add(sb.toString());
+                sb.setLength(0);
+            } else {
+                sb.append(c);
+            }
+        }
+        ids.add(sb.toString());
+        return ids;
+    }
+
+    @Test
+    public void testSerializationCompatibility() throws IOException {
+        DBSInvalidations invals = new DBSInvalidations();
+        invals.add("foo");
+        invals.addParent("bar");
+        @SuppressWarnings("resource")
+        ByteArrayOutputStream baout = new ByteArrayOutputStream();
+        invals.serialize(baout);
+        // nodes not knowing about parent ids still read all the ids, plus harmless unknown ids
+        Set<String> ids = deserializeIdsBeforeParentIds(new String(baout.toByteArray()));
+        assertTrue(String.valueOf(ids), ids.contains("foo"));
+        assertFalse(String.valueOf(ids), ids.contains("bar"));
+
+        // parent ids only
+        invals = new DBSInvalidations();
+        invals.addParent("bar");
+        baout.reset();
+        invals.serialize(baout);
+        ids = deserializeIdsBeforeParentIds(new String(baout.toByteArray()));
+        assertNotNull(ids);
+        assertFalse(String.valueOf(ids), ids.contains("bar"));
     }
 
 }
@@ -0,0 +1,144 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.dbs;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_ID;
+import static org.nuxeo.ecm.core.storage.dbs.DBSDocument.KEY_NAME;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.State;
+import org.nuxeo.ecm.core.storage.StateCodec;
+
+public class TestOffHeapStateCache {
+
+    protected static final StateCodec CODEC = new StateCodec(Collections.singletonList(KEY_ID));
+
+    protected static State newState(String id) {
+        State state = new State();
+        state.put(KEY_ID, id);
+        state.put(KEY_NAME, "name-" + id);
+        return state;
+    }
+
+    @Test
+    public void testPutGet() {
+        OffHeapStateCache cache = new OffHeapStateCache(CODEC, 1024 * 1024, null, null);
+        State state = newState("id1");
+        cache.put("id1", state);
+        State cached = cache.getIfPresent("id1");
+        assertNotNull(cached);
+        // deserialized copy
+        assertNotSame(state, cached);
+        assertEquals(state, cached);
+        assertNull(cache.getIfPresent("id2"));
+        assertEquals(1, cache.stats().hitCount());
+        assertEquals(1, cache.stats().missCount());
+        assertEquals(1, cache.size());
+        assertTrue(cache.getBytes() > 0);
+    }
+
+    @Test
+    public void testInvalidate() {
+        OffHeapStateCache cache = new OffHeapStateCache(CODEC, 1024 * 1024, null, null);
+        cache.put("id1", newState("id1"));
+        cache.put("id2", newState("id2"));
+        cache.put("id3", newState("id3"));
+        cache.invalidate("id1");
+        assertNull(cache.getIfPresent("id1"));
+        assertNotNull(cache.getIfPresent("id2"));
+        cache.invalidateAll(Arrays.asList("id2", "id3"));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testReplaceKeepsByteCount() {
+        OffHeapStateCache cache = new OffHeapStateCache(CODEC, 1024 * 1024, null, null);
+        cache.put("id1", newState("id1"));
+        long bytes = cache.getBytes();
+        cache.put("id1", newState("id1"));
+        assertEquals(bytes, cache.getBytes());
+        cache.invalidateAll();
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testEvictionBySize() {
+        OffHeapStateCache cache = new OffHeapStateCache(CODEC, 1024 * 1024, null, null);
+        cache.put("id0", newState("id0"));
+        long entryBytes = cache.getBytes();
+        cache.invalidateAll();
+        // room for about 10 entries
+        long maxBytes = entryBytes * 10;
+        cache = new OffHeapStateCache(CODEC, maxBytes, null, Integer.valueOf(1));
+        for (int i = 0; i < 100; i++) {
+            String id = "id" + (i % 10) + i / 10; // same serialized size for all entries
+            cache.put(id, newState(id));
+        }
+        assertTrue(String.valueOf(cache.getBytes()), cache.getBytes() <= maxBytes);
+        assertTrue(cache.size() < 100);
+        assertTrue(cache.stats().evictionCount() > 0);
+    }
+
+    @Test
+    public void testLargeState() {
+        OffHeapStateCache cache = new OffHeapStateCache(CODEC, 1024 * 1024, null, null);
+        State state = newState("id1");
+        char[] chars = new char[OffHeapStateCache.BLOCK_SIZE * 3];
+        Arrays.fill(chars, 'x');
+        state.put(KEY_NAME, new String(chars));
+        cache.put("id1", state);
+        // spans several blocks
+        assertTrue(String.valueOf(cache.getBytes()), cache.getBytes() > 3 * OffHeapStateCache.BLOCK_SIZE);
+        assertEquals(state, cache.getIfPresent("id1"));
+        // too large for the cache
+        cache = new OffHeapStateCache(CODEC, 2 * OffHeapStateCache.BLOCK_SIZE, null, null);
+        cache.put("id1", state);
+        assertNull(cache.getIfPresent("id1"));
+        assertEquals(0, cache.getBytes());
+    }
+
+    @Test
+    public void testBlocksReused() {
+        long maxBytes = 100 * OffHeapStateCache.BLOCK_SIZE;
+        OffHeapStateCache cache = new OffHeapStateCache(CODEC, maxBytes, null, Integer.valueOf(1));
+        for (int i = 0; i < 10000; i++) {
+            String id = "id" + i;
+            cache.put(id, newState(id));
+            assertEquals(newState(id), cache.getIfPresent(id));
+        }
+        // the direct memory is allocated once and the blocks of the evicted states are reused
+        assertEquals(maxBytes, cache.getAllocatedBytes());
+        assertTrue(String.valueOf(cache.getBytes()), cache.getBytes() <= maxBytes);
+        // entries still present have not been overwritten
+        assertEquals(newState("id9999"), cache.getIfPresent("id9999"));
+        cache.invalidateAll();
+        assertEquals(0, cache.getBytes());
+        assertEquals(maxBytes, cache.getAllocatedBytes());
+    }
+
+}
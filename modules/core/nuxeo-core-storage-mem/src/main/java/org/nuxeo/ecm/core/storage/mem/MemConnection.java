@@ -33,6 +33,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -188,6 +189,19 @@ public class MemConnection extends DBSConnectionBase {
         }
     }
 
+    @Override
+    public void updateStates(List<StateUpdate> updates) {
+        // check that all documents exist before updating any of them
+        for (StateUpdate update : updates) {
+            if (!states.containsKey(update.id)) {
+                throw new ConcurrentUpdateException("Missing: " + update.id);
+            }
+        }
+        for (StateUpdate update : updates) {
+            updateState(update.id, update.diff, update.changeTokenUpdater);
+        }
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         if (log.isTraceEnabled()) {
@@ -286,6 +300,12 @@ public class MemConnection extends DBSConnectionBase {
         return stream;
     }
 
+    @Override
+    public Stream<State> getDescendantStates(String rootId, int limit) {
+        // states are returned in full, this is what getDescendants already does
+        return getDescendants(rootId, Collections.emptySet(), limit);
+    }
+
     protected static boolean hasAncestor(State state, String id) {
         Object[] array = (Object[]) state.get(KEY_ANCESTOR_IDS);
         return array == null ? false : Arrays.asList(array).contains(id);
@@ -366,6 +386,31 @@ public class MemConnection extends DBSConnectionBase {
         return new PartialList<>(projections, totalSize);
     }
 
+    @Override
+    public Stream<Map<String, Serializable>> queryAndFetchStream(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments, int limit, int offset, int batchSize) {
+        if (orderByClause != null) {
+            // sorting needs all the projections in memory
+            return queryAndFetch(evaluator, orderByClause, distinctDocuments, limit, offset, 0).stream();
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("Mem: QUERY " + evaluator + " OFFSET " + offset + " LIMIT " + limit);
+        }
+        evaluator.parse();
+        Stream<Map<String, Serializable>> stream = states.values().stream().flatMap(state -> {
+            List<Map<String, Serializable>> matches = evaluator.matches(state);
+            if (distinctDocuments && !matches.isEmpty()) {
+                matches = matches.subList(0, 1);
+            }
+            return matches.stream();
+        });
+        stream = stream.skip(offset);
+        if (limit != 0) {
+            stream = stream.limit(limit);
+        }
+        return stream;
+    }
+
     @Override
     public ScrollResult<String> scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
         if (log.isTraceEnabled()) {
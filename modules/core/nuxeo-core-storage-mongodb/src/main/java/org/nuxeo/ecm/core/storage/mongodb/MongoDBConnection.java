@@ -58,6 +58,7 @@ import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
@@ -98,19 +99,24 @@ import com.mongodb.MongoBulkWriteException;
 import com.mongodb.MongoExecutionTimeoutException;
 import com.mongodb.MongoWriteException;
 import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.bulk.BulkWriteResult;
 import com.mongodb.client.ClientSession;
 import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoCursor;
 import com.mongodb.client.MongoIterable;
+import com.mongodb.client.model.BulkWriteOptions;
 import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.EstimatedDocumentCountOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Projections;
 import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOneModel;
 import com.mongodb.client.model.Updates;
+import com.mongodb.client.model.WriteModel;
 import com.mongodb.client.result.DeleteResult;
 import com.mongodb.client.result.UpdateResult;
 
@@ -439,20 +445,7 @@ public class MongoDBConnection extends DBSConnectionBase {
         try {
             insertMany(docs);
         } catch (MongoBulkWriteException mbwe) {
-            List<String> duplicates = mbwe.getWriteErrors()
-                                          .stream()
-                                          .filter(wr -> DUPLICATE_KEY.equals(fromErrorCode(wr.getCode())))
-                                          .map(BulkWriteError::getMessage)
-                                          .collect(Collectors.toList());
-            // Avoid hiding any others bulk errors
-            if (duplicates.size() == mbwe.getWriteErrors().size()) {
-                log.trace("MongoDB:    -> DUPLICATE KEY: {}", duplicates);
-                var concurrentUpdateException = new ConcurrentUpdateException("Concurrent update");
-                duplicates.forEach(concurrentUpdateException::addInfo);
-                throw concurrentUpdateException;
-            }
-
-            throw mbwe;
+            throw convertBulkWriteException(mbwe);
         }
     }
 
@@ -477,25 +470,7 @@ public class MongoDBConnection extends DBSConnectionBase {
     public void updateState(String id, StateDiff diff, ChangeTokenUpdater changeTokenUpdater) {
         List<Document> updates = converter.diffToBson(diff);
         for (Document update : updates) {
-            Document filter = new Document();
-            converter.putToBson(filter, KEY_ID, id);
-            if (changeTokenUpdater == null) {
-                log.trace("MongoDB: UPDATE {}: {}", id, update);
-            } else {
-                // assume bson is identical to dbs internals
-                // condition works even if value is null
-                Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
-                Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
-                if (update.containsKey(MONGODB_SET)) {
-                    ((Document) update.get(MONGODB_SET)).putAll(tokenUpdates);
-                } else {
-                    Document set = new Document();
-                    set.putAll(tokenUpdates);
-                    update.put(MONGODB_SET, set);
-                }
-                log.trace("MongoDB: UPDATE {}: IF {} THEN {}", id, conditions, update);
-                filter.putAll(conditions);
-            }
+            Document filter = getUpdateFilter(id, update, changeTokenUpdater);
             try {
                 UpdateResult w = updateMany(filter, update);
                 if (w.getModifiedCount() != 1) {
@@ -512,6 +487,94 @@ public class MongoDBConnection extends DBSConnectionBase {
         }
     }
 
+    /**
+     * Gets the filter for an update, adding the change token conditions and updates if needed.
+     *
+     * @since 11.5
+     */
+    protected Document getUpdateFilter(String id, Document update, ChangeTokenUpdater changeTokenUpdater) {
+        Document filter = new Document();
+        converter.putToBson(filter, KEY_ID, id);
+        if (changeTokenUpdater == null) {
+            log.trace("MongoDB: UPDATE {}: {}", id, update);
+        } else {
+            // assume bson is identical to dbs internals
+            // condition works even if value is null
+            Map<String, Serializable> conditions = changeTokenUpdater.getConditions();
+            Map<String, Serializable> tokenUpdates = changeTokenUpdater.getUpdates();
+            if (update.containsKey(MONGODB_SET)) {
+                ((Document) update.get(MONGODB_SET)).putAll(tokenUpdates);
+            } else {
+                Document set = new Document();
+                set.putAll(tokenUpdates);
+                update.put(MONGODB_SET, set);
+            }
+            log.trace("MongoDB: UPDATE {}: IF {} THEN {}", id, conditions, update);
+            filter.putAll(conditions);
+        }
+        return filter;
+    }
+
+    @Override
+    public void updateStates(List<StateUpdate> updates) {
+        List<List<Document>> bsonUpdates = new ArrayList<>(updates.size());
+        int rounds = 0;
+        for (StateUpdate update : updates) {
+            List<Document> list = converter.diffToBson(update.diff);
+            bsonUpdates.add(list);
+            rounds = Math.max(rounds, list.size());
+        }
+        // a diff may need several successive updates of the same document,
+        // so each bulk write contains at most one update per document
+        for (int round = 0; round < rounds; round++) {
+            List<WriteModel<Document>> models = new ArrayList<>(updates.size());
+            List<String> ids = new ArrayList<>(updates.size());
+            for (int i = 0; i < updates.size(); i++) {
+                List<Document> list = bsonUpdates.get(i);
+                if (round >= list.size()) {
+                    continue;
+                }
+                StateUpdate update = updates.get(i);
+                Document bsonUpdate = list.get(round);
+                Document filter = getUpdateFilter(update.id, bsonUpdate, update.changeTokenUpdater);
+                models.add(new UpdateOneModel<>(filter, bsonUpdate));
+                ids.add(update.id);
+            }
+            try {
+                BulkWriteResult w = bulkWrite(models);
+                if (w.getModifiedCount() != models.size()) {
+                    log.trace("MongoDB:    -> CONCURRENT UPDATE: {}", ids);
+                    var concurrentUpdateException = new ConcurrentUpdateException("Concurrent update");
+                    ids.forEach(concurrentUpdateException::addInfo);
+                    throw concurrentUpdateException;
+                }
+            } catch (MongoBulkWriteException mbwe) {
+                throw convertBulkWriteException(mbwe);
+            }
+        }
+    }
+
+    /**
+     * Converts a bulk write exception due only to duplicate keys into a {@link ConcurrentUpdateException}.
+     *
+     * @since 11.5
+     */
+    protected RuntimeException convertBulkWriteException(MongoBulkWriteException mbwe) {
+        List<String> duplicates = mbwe.getWriteErrors()
+                                      .stream()
+                                      .filter(wr -> DUPLICATE_KEY.equals(fromErrorCode(wr.getCode())))
+                                      .map(BulkWriteError::getMessage)
+                                      .collect(Collectors.toList());
+        // Avoid hiding any others bulk errors
+        if (duplicates.size() == mbwe.getWriteErrors().size()) {
+            log.trace("MongoDB:    -> DUPLICATE KEY: {}", duplicates);
+            var concurrentUpdateException = new ConcurrentUpdateException("Concurrent update");
+            duplicates.forEach(concurrentUpdateException::addInfo);
+            return concurrentUpdateException;
+        }
+        return mbwe;
+    }
+
     @Override
     public void deleteStates(Set<String> ids) {
         Bson filter = converter.filterIn(KEY_ID, ids);
@@ -640,6 +703,25 @@ public class MongoDBConnection extends DBSConnectionBase {
         return stream(filter, fields, limit);
     }
 
+    @Override
+    public Stream<State> getChildren(String parentId, Set<String> keys, int limit) {
+        Bson filter = converter.filterEq(KEY_PARENT_ID, parentId);
+        Document fields = new Document();
+        if (useCustomId) {
+            fields.put(MONGODB_ID, ZERO);
+        }
+        fields.put(idKey, ONE);
+        keys.forEach(key -> fields.put(converter.keyToBson(key), ONE));
+        return stream(filter, fields, limit);
+    }
+
+    @Override
+    public Stream<State> getDescendantStates(String rootId, int limit) {
+        // single query on the ancestor ids index, returning full documents
+        Bson filter = converter.filterEq(KEY_ANCESTOR_IDS, rootId);
+        return stream(filter, null, limit);
+    }
+
     @Override
     public boolean queryKeyValuePresence(String key, String value, Set<String> ignored) {
         Document filter = new Document();
@@ -734,26 +816,14 @@ public class MongoDBConnection extends DBSConnectionBase {
     @Override
     public PartialList<Map<String, Serializable>> queryAndFetch(DBSExpressionEvaluator evaluator,
             OrderByClause orderByClause, boolean distinctDocuments, int limit, int offset, int countUpTo) {
-        // orderByClause may be null and different from evaluator.getOrderByClause() in case we want to post-filter
-        MongoDBRepositoryQueryBuilder builder = new MongoDBRepositoryQueryBuilder((MongoDBRepository) repository,
-                evaluator.getExpression(), evaluator.getSelectClause(), orderByClause, evaluator.pathResolver,
-                evaluator.fulltextSearchDisabled);
-        builder.walk();
-        if (builder.hasFulltext && repository.isFulltextSearchDisabled()) {
-            throw new QueryParseException("Fulltext search disabled by configuration");
-        }
+        MongoDBRepositoryQueryBuilder builder = newQueryBuilder(evaluator, orderByClause);
         Document filter = builder.getQuery();
         addPrincipals(filter, evaluator.principals);
         Bson orderBy = builder.getOrderBy();
         Bson keys = builder.getProjection();
-        // Don't do manual projection if there are no projection wildcards, as this brings no new
-        // information and is costly. The only difference is several identical rows instead of one.
-        boolean manualProjection = !distinctDocuments && builder.hasProjectionWildcard();
+        boolean manualProjection = isManualProjection(builder, evaluator, distinctDocuments);
         if (manualProjection) {
-            // we'll do post-treatment to re-evaluate the query to get proper wildcard projections
-            // so we need the full state from the database
             keys = null;
-            evaluator.parse();
         }
 
         logQuery(filter, keys, orderBy, limit, offset);
@@ -810,6 +880,134 @@ public class MongoDBConnection extends DBSConnectionBase {
         return new PartialList<>(projections, totalSize);
     }
 
+    @Override
+    public long queryEstimatedCount(DBSExpressionEvaluator evaluator) {
+        MongoDBRepositoryQueryBuilder builder = newQueryBuilder(evaluator, null);
+        Document filter = builder.getQuery();
+        addPrincipals(filter, evaluator.principals);
+        if (!filter.isEmpty()) {
+            // only the collection size can be estimated from the metadata
+            return -1;
+        }
+        long count = coll.estimatedDocumentCount(
+                new EstimatedDocumentCountOptions().maxTime(getMaxTimeMs(), MILLISECONDS));
+        log.trace("MongoDB: ESTIMATED COUNT -> {}", count);
+        return count;
+    }
+
+    @Override
+    public Stream<Map<String, Serializable>> queryAndFetchStream(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause, boolean distinctDocuments, int limit, int offset, int batchSize) {
+        MongoDBRepositoryQueryBuilder builder = newQueryBuilder(evaluator, orderByClause);
+        Document filter = builder.getQuery();
+        addPrincipals(filter, evaluator.principals);
+        Bson orderBy = builder.getOrderBy();
+        Bson keys = builder.getProjection();
+        boolean manualProjection = isManualProjection(builder, evaluator, distinctDocuments);
+        if (manualProjection) {
+            keys = null;
+        }
+
+        logQuery(filter, keys, orderBy, limit, offset);
+
+        boolean completedAbruptly = true;
+        MongoCursor<Document> cursor = find(filter).projection(keys)
+                                                   .skip(offset)
+                                                   .limit(limit)
+                                                   .sort(orderBy)
+                                                   .batchSize(batchSize)
+                                                   .iterator();
+        try {
+            DBSStateFlattener flattener = new DBSStateFlattener(builder.propertyKeys);
+            Iterator<Document> it = translateQueryTimeout(cursor, filter);
+            Stream<State> states = StreamSupport.stream(Spliterators.spliteratorUnknownSize(it, 0), false)
+                                                .onClose(cursor::close)
+                                                .map(converter::bsonToState);
+            Stream<Map<String, Serializable>> stream;
+            if (manualProjection) {
+                stream = states.flatMap(state -> evaluator.matches(state).stream());
+            } else {
+                stream = states.map(flattener::flatten);
+            }
+            // the stream takes responsibility for closing the cursor
+            completedAbruptly = false;
+            return stream;
+        } catch (MongoExecutionTimeoutException e) {
+            throw newQueryTimeout(e, filter); // NOSONAR (cursor is not leaked)
+        } finally {
+            if (completedAbruptly) {
+                cursor.close();
+            }
+        }
+    }
+
+    /**
+     * Wraps a cursor so that a query timeout happening while fetching the next batches is reported like one happening
+     * on the first batch.
+     *
+     * @since 11.5
+     */
+    protected Iterator<Document> translateQueryTimeout(MongoCursor<Document> cursor, Bson filter) {
+        return new Iterator<Document>() {
+
+            @Override
+            public boolean hasNext() {
+                try {
+                    return cursor.hasNext();
+                } catch (MongoExecutionTimeoutException e) {
+                    throw newQueryTimeout(e, filter);
+                }
+            }
+
+            @Override
+            public Document next() {
+                try {
+                    return cursor.next();
+                } catch (MongoExecutionTimeoutException e) {
+                    throw newQueryTimeout(e, filter);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the query builder for a query, and walks the query.
+     *
+     * @param orderByClause the ORDER BY clause, which may be {@code null} and different from
+     *            {@code evaluator.getOrderByClause()} in case we want to post-filter
+     * @since 11.5
+     */
+    protected MongoDBRepositoryQueryBuilder newQueryBuilder(DBSExpressionEvaluator evaluator,
+            OrderByClause orderByClause) {
+        MongoDBRepositoryQueryBuilder builder = new MongoDBRepositoryQueryBuilder((MongoDBRepository) repository,
+                evaluator.getExpression(), evaluator.getSelectClause(), orderByClause, evaluator.pathResolver,
+                evaluator.fulltextSearchDisabled);
+        builder.walk();
+        if (builder.hasFulltext && repository.isFulltextSearchDisabled()) {
+            throw new QueryParseException("Fulltext search disabled by configuration");
+        }
+        return builder;
+    }
+
+    /**
+     * Checks if the projections must be computed from the full states by re-evaluating the query, and prepares the
+     * evaluator for that.
+     *
+     * @since 11.5
+     */
+    protected boolean isManualProjection(MongoDBRepositoryQueryBuilder builder, DBSExpressionEvaluator evaluator,
+            boolean distinctDocuments) {
+        // Don't do manual projection if there are no projection wildcards, as this brings no new
+        // information and is costly. The only difference is several identical rows instead of one.
+        boolean manualProjection = !distinctDocuments && builder.hasProjectionWildcard();
+        if (manualProjection) {
+            // we'll do post-treatment to re-evaluate the query to get proper wildcard projections
+            // so we need the full state from the database
+            evaluator.parse();
+        }
+        return manualProjection;
+    }
+
     @SuppressWarnings("resource") // cursor is being registered, must not be closed
     @Override
     public ScrollResult<String> scroll(DBSExpressionEvaluator evaluator, int batchSize, int keepAliveSeconds) {
@@ -992,6 +1190,16 @@ public class MongoDBConnection extends DBSConnectionBase {
         }
     }
 
+    /** @since 11.5 */
+    protected BulkWriteResult bulkWrite(List<WriteModel<Document>> models) {
+        BulkWriteOptions options = new BulkWriteOptions().ordered(false);
+        if (transactionStarted) {
+            return coll.bulkWrite(clientSession, models, options);
+        } else {
+            return coll.bulkWrite(models, options);
+        }
+    }
+
     protected DeleteResult deleteMany(Bson filter) {
         if (transactionStarted) {
             return coll.deleteMany(clientSession, filter);
@@ -32,6 +32,9 @@ import org.nuxeo.runtime.api.Framework;
  */
 public class SQLRepositoryStatus implements SQLRepositoryStatusMBean {
 
+    /** @since 11.5 */
+    protected static final int MAX_JDBC_STATEMENTS = 50;
+
     protected static List<RepositoryManagement> getRepositories() {
         SQLRepositoryService sqlRepositoryService = Framework.getService(SQLRepositoryService.class);
         return sqlRepositoryService.getRepositories();
@@ -80,6 +83,44 @@ public class SQLRepositoryStatus implements SQLRepositoryStatusMBean {
         return size;
     }
 
+    @Override
+    public long getReadAclsUpdatedCount() {
+        long count = 0;
+        for (RepositoryManagement repository : getRepositories()) {
+            count += repository.getReadAclsUpdatedCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getReadAclsUpdateChunkCount() {
+        long count = 0;
+        for (RepositoryManagement repository : getRepositories()) {
+            count += repository.getReadAclsUpdateChunkCount();
+        }
+        return count;
+    }
+
+    @Override
+    public long getReadAclsPendingCount() {
+        long count = 0;
+        for (RepositoryManagement repository : getRepositories()) {
+            count += repository.getReadAclsPendingCount();
+        }
+        return count;
+    }
+
+    @Override
+    public String listJDBCStatements() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("JDBC statements for SQL repositories:<br />");
+        for (RepositoryManagement repository : getRepositories()) {
+            sb.append("<b>").append(repository.getName()).append("</b>:<br />");
+            sb.append(repository.getJDBCStatementsSummary(MAX_JDBC_STATEMENTS).replace("\n", "<br />"));
+        }
+        return sb.toString();
+    }
+
     @Override
     public String listRemoteSessions() {
         StringBuilder sb = new StringBuilder();
@@ -53,6 +53,34 @@ public interface SQLRepositoryStatusMBean {
      */
     long getCachesSize();
 
+    /**
+     * Gets the number of read ACL modifications processed by incremental updates since startup.
+     *
+     * @since 11.5
+     */
+    long getReadAclsUpdatedCount();
+
+    /**
+     * Gets the number of chunks of incremental read ACL updates executed since startup.
+     *
+     * @since 11.5
+     */
+    long getReadAclsUpdateChunkCount();
+
+    /**
+     * Gets the number of read ACL modifications waiting to be processed.
+     *
+     * @since 11.5
+     */
+    long getReadAclsPendingCount();
+
+    /**
+     * Lists the most expensive JDBC statements, when the JDBC instrumentation is enabled.
+     *
+     * @since 11.5
+     */
+    String listJDBCStatements();
+
     /**
      * GC the unused binaries.
      *
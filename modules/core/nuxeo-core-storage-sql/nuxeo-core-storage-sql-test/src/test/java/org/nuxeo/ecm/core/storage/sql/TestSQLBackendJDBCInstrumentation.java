@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCInstrumentation;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCInstrumentation.StatementStats;
+
+/**
+ * All the tests of TestSQLBackend with instrumented JDBC connections, plus additional tests.
+ */
+public class TestSQLBackendJDBCInstrumentation extends TestSQLBackend {
+
+    @Override
+    protected RepositoryDescriptor newDescriptor(String name) {
+        RepositoryDescriptor descriptor = super.newDescriptor(name);
+        descriptor.setJDBCInstrumentationEnabled(true);
+        return descriptor;
+    }
+
+    @Test
+    public void testJDBCInstrumentationStats() throws Exception {
+        JDBCInstrumentation instrumentation = repository.getJDBCInstrumentation();
+        assertNotNull(instrumentation);
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        for (int i = 0; i < 5; i++) {
+            session.addChildNode(root, "doc" + i, null, "TestDoc", false);
+        }
+        session.save();
+        session.close();
+
+        List<StatementStats> list = instrumentation.getStatementsStats();
+        assertFalse(list.isEmpty());
+        assertTrue(list.stream().anyMatch(stats -> stats.sql.startsWith("INSERT") && stats.getCount() > 0));
+        assertTrue(repository.getJDBCStatementsSummary(10).contains("INSERT"));
+    }
+
+}
@@ -0,0 +1,97 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.io.Serializable;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.QueryFilter;
+
+/**
+ * All the tests of TestSQLBackend with path optimizations using a closure table, plus additional tests.
+ */
+public class TestSQLBackendPathClosure extends TestSQLBackend {
+
+    /**
+     * Only run for databases that support a closure table.
+     */
+    @BeforeClass
+    public static void assumePathClosureSupported() {
+        assumeTrue(DatabaseHelper.DATABASE instanceof DatabasePostgreSQL);
+    }
+
+    @Override
+    protected RepositoryDescriptor newDescriptor(String name) {
+        RepositoryDescriptor descriptor = super.newDescriptor(name);
+        descriptor.setPathOptimizationsEnabled(true);
+        descriptor.setPathOptimizationsVersion(RepositoryDescriptor.PATH_OPTIM_VERSION_CLOSURE);
+        return descriptor;
+    }
+
+    protected long count(Session session, String query) {
+        return session.query(query, QueryFilter.EMPTY, false).size();
+    }
+
+    @Test
+    public void testPathClosureMaintenance() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        Node r1 = session.addChildNode(root, "r1", null, "TestDoc", false);
+        Node r2 = session.addChildNode(root, "r2", null, "TestDoc", false);
+        Node a = session.addChildNode(r1, "a", null, "TestDoc", false);
+        Node b = session.addChildNode(a, "b", null, "TestDoc", false);
+        session.addChildNode(b, "c", null, "TestDoc", false);
+        session.save();
+
+        String startsWith = "SELECT * FROM TestDoc WHERE ecm:path STARTSWITH '%s'";
+        String ancestorId = "SELECT * FROM TestDoc WHERE ecm:ancestorId = '%s'";
+        assertEquals(3, count(session, String.format(startsWith, "/r1")));
+        assertEquals(2, count(session, String.format(startsWith, "/r1/a")));
+        assertEquals(0, count(session, String.format(startsWith, "/r2")));
+        assertEquals(1, count(session, String.format(ancestorId, b.getId())));
+
+        // move the subtree, only its links to its old ancestors change
+        session.move(a, r2, "a");
+        session.save();
+        assertEquals(0, count(session, String.format(startsWith, "/r1")));
+        assertEquals(3, count(session, String.format(startsWith, "/r2")));
+        assertEquals(2, count(session, String.format(startsWith, "/r2/a")));
+        assertEquals(3, count(session, String.format(ancestorId, r2.getId())));
+        assertEquals(1, count(session, String.format(ancestorId, b.getId())));
+
+        // copy the subtree
+        Node copy = session.copy(a, r1, "acopy");
+        session.save();
+        assertEquals(3, count(session, String.format(startsWith, "/r1")));
+        assertEquals(2, count(session, String.format(ancestorId, copy.getId())));
+
+        // remove the moved subtree
+        Serializable aId = a.getId();
+        session.removeNode(a);
+        session.save();
+        assertEquals(0, count(session, String.format(startsWith, "/r2")));
+        assertEquals(0, count(session, String.format(ancestorId, aId)));
+        assertEquals(3, count(session, String.format(startsWith, "/r1")));
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assume.assumeTrue;
+
+import java.util.Collections;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+
+/**
+ * All the tests of TestSQLBackend with read ACLs updated incrementally in small chunks, plus additional tests.
+ */
+public class TestSQLBackendReadAclsChunks extends TestSQLBackend {
+
+    /**
+     * Only run for databases that support chunked read ACL updates.
+     */
+    @BeforeClass
+    public static void assumeReadAclsChunksSupported() {
+        assumeTrue(DatabaseHelper.DATABASE instanceof DatabasePostgreSQL);
+    }
+
+    @Override
+    protected RepositoryDescriptor newDescriptor(String name) {
+        RepositoryDescriptor descriptor = super.newDescriptor(name);
+        descriptor.setReadAclUpdateChunkSize(2);
+        return descriptor;
+    }
+
+    protected long countReadable(Session session, String user, String query) {
+        QueryFilter qf = new QueryFilter(null, new String[] { user }, new String[] { "Read" }, null,
+                Collections.<SQLQuery.Transformer> emptyList(), 0, 0);
+        return session.query(query, qf, false).size();
+    }
+
+    @Test
+    public void testReadAclsChunkedUpdate() throws Exception {
+        Session session = repository.getConnection();
+        Node root = session.getRootNode();
+        root.getCollectionProperty(Model.ACL_PROP).setValue(new ACLRow[0]);
+        Node folder = session.addChildNode(root, "folder", null, "TestDoc", false);
+        Node sub = session.addChildNode(folder, "sub", null, "TestDoc", false);
+        for (int i = 0; i < 5; i++) {
+            session.addChildNode(sub, "doc" + i, null, "TestDoc", false);
+        }
+        session.save();
+        session.updateReadAcls();
+        assertEquals(0, session.getReadAclsPendingCount());
+
+        String query = "SELECT * FROM TestDoc WHERE ecm:path STARTSWITH '/folder'";
+        assertEquals(0, countReadable(session, "bob", query));
+
+        // more modifications than the chunk size
+        folder.getCollectionProperty(Model.ACL_PROP)
+              .setValue(new ACLRow[] { new ACLRow(0, "local", true, "Read", "bob", null) });
+        sub.getCollectionProperty(Model.ACL_PROP)
+           .setValue(new ACLRow[] { new ACLRow(0, "local", true, "Read", "bob", null),
+                   new ACLRow(1, "local", true, "Read", "steve", null) });
+        for (int i = 0; i < 3; i++) {
+            session.addChildNode(sub, "new" + i, null, "TestDoc", false);
+        }
+        session.save();
+        session.updateReadAcls();
+        assertEquals(0, session.getReadAclsPendingCount());
+        assertEquals(9, countReadable(session, "bob", query));
+        assertEquals(9, countReadable(session, "steve", query));
+
+        // removing the ACL of the subfolder only affects its subtree
+        sub.getCollectionProperty(Model.ACL_PROP).setValue(new ACLRow[0]);
+        session.save();
+        session.updateReadAcls();
+        assertEquals(9, countReadable(session, "bob", query));
+        assertEquals(0, countReadable(session, "steve", query));
+
+        session.close();
+    }
+
+}
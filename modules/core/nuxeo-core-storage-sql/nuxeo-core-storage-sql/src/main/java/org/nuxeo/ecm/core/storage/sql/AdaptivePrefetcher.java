@@ -0,0 +1,184 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+
+/**
+ * Learns which fragments are actually read after a document is fetched, per document type, so that they can be
+ * prefetched in the same batch as the fragments statically configured for the type.
+ * <p>
+ * For each type, the number of documents fetched and the number of these documents for which each fragment was read
+ * are counted. Every {@code minSamples} fetches of a type, the fragments read for at least {@code threshold} of the
+ * documents become the adaptive fragments of the type, and the counts start again. The adaptive fragments are
+ * therefore kept while they are still read, and dropped when they are not anymore.
+ *
+ * @since 11.5
+ */
+public class AdaptivePrefetcher {
+
+    private static final Logger log = LogManager.getLogger(AdaptivePrefetcher.class);
+
+    public static final double DEFAULT_THRESHOLD = 0.5;
+
+    public static final int DEFAULT_MIN_SAMPLES = 100;
+
+    protected final Model model;
+
+    protected final double threshold;
+
+    protected final long minSamples;
+
+    protected final Map<String, TypeStats> types = new ConcurrentHashMap<>();
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    /** Fragment reads served by a prefetched fragment. */
+    protected final Counter hitCount;
+
+    /** Fragment reads that had to load the fragment from the mapper. */
+    protected final Counter missCount;
+
+    /** Fragments added to a prefetch batch by this prefetcher. */
+    protected final Counter adaptiveCount;
+
+    /**
+     * The read statistics of a document type.
+     */
+    protected static class TypeStats {
+
+        protected final LongAdder fetched = new LongAdder();
+
+        protected final Map<String, LongAdder> read = new ConcurrentHashMap<>();
+
+        protected final AtomicBoolean computing = new AtomicBoolean();
+
+        protected volatile Set<String> adaptiveFragments = Collections.emptySet();
+    }
+
+    public AdaptivePrefetcher(String repositoryName, Model model, double threshold, int minSamples) {
+        this.model = model;
+        this.threshold = threshold;
+        this.minSamples = minSamples;
+        hitCount = registry.counter(getMetricName("hit", repositoryName));
+        missCount = registry.counter(getMetricName("miss", repositoryName));
+        adaptiveCount = registry.counter(getMetricName("adaptive", repositoryName));
+    }
+
+    protected static MetricName getMetricName(String name, String repositoryName) {
+        return MetricName.build("nuxeo", "repositories", "repository", "prefetch", name)
+                         .tagged("repository", repositoryName);
+    }
+
+    /**
+     * Records that a document of the given type was fetched with prefetch, and returns the fragments to prefetch for
+     * it in addition to the statically configured ones.
+     */
+    public Set<String> recordFetch(String typeName) {
+        TypeStats stats = types.computeIfAbsent(typeName, k -> new TypeStats());
+        stats.fetched.increment();
+        if (stats.fetched.sum() >= minSamples && stats.computing.compareAndSet(false, true)) {
+            try {
+                computeAdaptiveFragments(typeName, stats);
+            } finally {
+                stats.computing.set(false);
+            }
+        }
+        return stats.adaptiveFragments;
+    }
+
+    /**
+     * Records the first read of a fragment of a fetched document.
+     *
+     * @param typeName the document type
+     * @param fragmentName the fragment read
+     * @param prefetched whether the fragment was already present, or had to be loaded
+     */
+    public void recordRead(String typeName, String fragmentName, boolean prefetched) {
+        if (prefetched) {
+            hitCount.inc();
+        } else {
+            missCount.inc();
+        }
+        TypeStats stats = types.get(typeName);
+        if (stats != null) {
+            stats.read.computeIfAbsent(fragmentName, k -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * Records that fragments were added to a prefetch batch by this prefetcher.
+     */
+    public void recordAdaptive(int count) {
+        adaptiveCount.inc(count);
+    }
+
+    protected void computeAdaptiveFragments(String typeName, TypeStats stats) {
+        long fetched = stats.fetched.sumThenReset();
+        if (fetched == 0) {
+            return;
+        }
+        Set<String> staticFragments = getStaticFragments(typeName);
+        Set<String> fragments = new HashSet<>();
+        for (Entry<String, LongAdder> es : stats.read.entrySet()) {
+            String fragmentName = es.getKey();
+            long read = es.getValue().sumThenReset();
+            if (read >= threshold * fetched
+                    && (staticFragments == null || !staticFragments.contains(fragmentName))) {
+                fragments.add(fragmentName);
+            }
+        }
+        if (!fragments.equals(stats.adaptiveFragments)) {
+            log.debug("Adaptive prefetch for type: {}, fragments: {}", typeName, fragments);
+        }
+        stats.adaptiveFragments = fragments.isEmpty() ? Collections.emptySet() : Collections.unmodifiableSet(fragments);
+    }
+
+    /**
+     * Gets the fragments statically prefetched for a type.
+     */
+    protected Set<String> getStaticFragments(String typeName) {
+        return model.getTypePrefetchedFragments(typeName);
+    }
+
+    /**
+     * Gets the fragments currently prefetched adaptively for a type.
+     */
+    public Set<String> getAdaptiveFragments(String typeName) {
+        TypeStats stats = types.get(typeName);
+        return stats == null ? Collections.emptySet() : stats.adaptiveFragments;
+    }
+
+}
@@ -580,6 +580,16 @@ public class Model {
         return repositoryDescriptor;
     }
 
+    /**
+     * Gets the type of ids as seen by the VCS Java layer.
+     *
+     * @return the id type
+     * @since 11.5
+     */
+    public IdType getIdType() {
+        return idType;
+    }
+
     /**
      * Fixup an id that has been turned into a string for high-level Nuxeo APIs.
      *
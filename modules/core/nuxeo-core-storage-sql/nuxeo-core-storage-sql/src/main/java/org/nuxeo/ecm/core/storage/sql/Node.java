@@ -21,6 +21,7 @@ package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.Serializable;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
@@ -59,6 +60,16 @@ public class Node implements StateAccessor {
 
     private Boolean isVersion;
 
+    /**
+     * The adaptive prefetcher recording the fragments read, if the node was fetched with prefetch.
+     *
+     * @since 11.5
+     */
+    protected AdaptivePrefetcher prefetcher;
+
+    /** The fragments already recorded as read. */
+    private Set<String> readFragments;
+
     /**
      * Creates a Node.
      *
@@ -222,6 +233,7 @@ public class Node implements StateAccessor {
     protected SimpleProperty makeSimpleProperty(String name, ModelProperty propertyInfo) {
         String fragmentName = propertyInfo.fragmentName;
         Fragment fragment = fragments.get(fragmentName);
+        recordRead(fragmentName, fragment != null);
         if (fragment == null) {
             // lazy fragment, fetch from session
             RowId rowId = new RowId(fragmentName, getId());
@@ -255,6 +267,7 @@ public class Node implements StateAccessor {
     protected CollectionProperty makeCollectionProperty(String name, ModelProperty propertyInfo) {
         String fragmentName = propertyInfo.fragmentName;
         Fragment fragment = fragments.get(fragmentName);
+        recordRead(fragmentName, fragment != null);
         if (fragment == null) {
             // lazy fragment, fetch from session
             RowId rowId = new RowId(fragmentName, getId());
@@ -270,6 +283,23 @@ public class Node implements StateAccessor {
         }
     }
 
+    /**
+     * Records the first read of a fragment for adaptive prefetch.
+     *
+     * @since 11.5
+     */
+    protected void recordRead(String fragmentName, boolean prefetched) {
+        if (prefetcher == null || Model.HIER_TABLE_NAME.equals(fragmentName)) {
+            return;
+        }
+        if (readFragments == null) {
+            readFragments = new HashSet<>();
+        }
+        if (readFragments.add(fragmentName)) {
+            prefetcher.recordRead(getPrimaryType(), fragmentName, prefetched);
+        }
+    }
+
     protected ModelProperty getPropertyInfo(String name) {
         // check primary type
         ModelProperty propertyInfo = model.getPropertyInfo(getPrimaryType(), name);
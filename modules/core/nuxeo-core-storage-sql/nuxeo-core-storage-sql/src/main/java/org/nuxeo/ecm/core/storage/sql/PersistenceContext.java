@@ -27,6 +27,7 @@ import java.util.Deque;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
@@ -599,6 +600,21 @@ public class PersistenceContext {
         if (invalidations.all) {
             clearLocalCaches();
         }
+        if (invalidations.tables != null) {
+            for (Iterator<Entry<RowId, Fragment>> it = pristine.entrySet().iterator(); it.hasNext();) {
+                Entry<RowId, Fragment> es = it.next();
+                if (invalidations.tables.contains(es.getKey().tableName)) {
+                    it.remove();
+                    Fragment fragment = es.getValue();
+                    if (fragment != null) {
+                        fragment.setInvalidatedModified();
+                    }
+                }
+            }
+            for (SelectionContext sel : selections) {
+                sel.processReceivedTablesInvalidations(invalidations.tables);
+            }
+        }
         if (invalidations.modified != null) {
             for (RowId rowId : invalidations.modified) {
                 Fragment fragment = pristine.remove(rowId);
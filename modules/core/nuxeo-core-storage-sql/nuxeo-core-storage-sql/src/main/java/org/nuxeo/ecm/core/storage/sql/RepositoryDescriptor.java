@@ -35,6 +35,10 @@ import org.nuxeo.common.xmap.annotation.XObject;
 import org.nuxeo.ecm.core.api.repository.PoolConfiguration;
 import org.nuxeo.ecm.core.storage.FulltextDescriptor;
 import org.nuxeo.ecm.core.storage.FulltextDescriptor.FulltextIndexDescriptor;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCInstrumentation;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCRowMapper;
+import org.nuxeo.ecm.core.storage.sql.jdbc.NXQLQueryCache;
+import org.nuxeo.ecm.core.storage.sql.jdbc.ReadReplicaRouter;
 
 /**
  * Low-level VCS Repository Descriptor.
@@ -50,6 +54,13 @@ public class RepositoryDescriptor {
 
     public static final int DEFAULT_PATH_OPTIM_VERSION = 2;
 
+    /**
+     * Path optimizations version using a closure table holding one row per (descendant, ancestor) pair, for PostgreSQL.
+     *
+     * @since 11.5
+     */
+    public static final int PATH_OPTIM_VERSION_CLOSURE = 3;
+
     /** At startup, DDL changes are not detected. */
     public static final String DDL_MODE_IGNORE = "ignore";
 
@@ -356,6 +367,11 @@ public class RepositoryDescriptor {
         return pathOptimizationsVersion == null ? DEFAULT_PATH_OPTIM_VERSION : pathOptimizationsVersion.intValue();
     }
 
+    /** @since 11.5 */
+    protected void setPathOptimizationsVersion(int version) {
+        pathOptimizationsVersion = Integer.valueOf(version);
+    }
+
     @XNode("aclOptimizations@enabled")
     private Boolean aclOptimizationsEnabled;
 
@@ -375,6 +391,255 @@ public class RepositoryDescriptor {
         return readAclMaxSize == null ? 0 : readAclMaxSize.intValue();
     }
 
+    /** @since 11.5 */
+    @XNode("aclOptimizations@updateChunkSize")
+    private Integer readAclUpdateChunkSize;
+
+    /**
+     * Gets the maximum number of document modifications processed at a time when updating the read ACLs, or 0 to
+     * process them all at once.
+     *
+     * @since 11.5
+     */
+    public int getReadAclUpdateChunkSize() {
+        return readAclUpdateChunkSize == null ? 0 : readAclUpdateChunkSize.intValue();
+    }
+
+    /** @since 11.5 */
+    protected void setReadAclUpdateChunkSize(int chunkSize) {
+        readAclUpdateChunkSize = Integer.valueOf(chunkSize);
+    }
+
+    /** @since 11.5 */
+    @XNode("adaptivePrefetch@enabled")
+    private Boolean adaptivePrefetchEnabled;
+
+    /** @since 11.5 */
+    public boolean getAdaptivePrefetchEnabled() {
+        return defaultFalse(adaptivePrefetchEnabled);
+    }
+
+    /** @since 11.5 */
+    protected void setAdaptivePrefetchEnabled(boolean enabled) {
+        adaptivePrefetchEnabled = Boolean.valueOf(enabled);
+    }
+
+    /** @since 11.5 */
+    @XNode("adaptivePrefetch@threshold")
+    private Double adaptivePrefetchThreshold;
+
+    /** @since 11.5 */
+    public double getAdaptivePrefetchThreshold() {
+        return adaptivePrefetchThreshold == null ? AdaptivePrefetcher.DEFAULT_THRESHOLD
+                : adaptivePrefetchThreshold.doubleValue();
+    }
+
+    /** @since 11.5 */
+    @XNode("adaptivePrefetch@minSamples")
+    private Integer adaptivePrefetchMinSamples;
+
+    /** @since 11.5 */
+    public int getAdaptivePrefetchMinSamples() {
+        return adaptivePrefetchMinSamples == null ? AdaptivePrefetcher.DEFAULT_MIN_SAMPLES
+                : adaptivePrefetchMinSamples.intValue();
+    }
+
+    /** @since 11.5 */
+    @XNode("queryCache@enabled")
+    private Boolean queryCacheEnabled;
+
+    /** @since 11.5 */
+    public boolean getQueryCacheEnabled() {
+        return defaultFalse(queryCacheEnabled);
+    }
+
+    /** @since 11.5 */
+    protected void setQueryCacheEnabled(boolean enabled) {
+        queryCacheEnabled = Boolean.valueOf(enabled);
+    }
+
+    /** @since 11.5 */
+    @XNode("queryCache@maxSize")
+    private Integer queryCacheMaxSize;
+
+    /** @since 11.5 */
+    public int getQueryCacheMaxSize() {
+        return queryCacheMaxSize == null ? NXQLQueryCache.DEFAULT_MAX_SIZE : queryCacheMaxSize.intValue();
+    }
+
+    /** @since 11.5 */
+    @XNode("bulkInsert@enabled")
+    private Boolean bulkInsertEnabled;
+
+    /** @since 11.5 */
+    public boolean getBulkInsertEnabled() {
+        return defaultFalse(bulkInsertEnabled);
+    }
+
+    /** @since 11.5 */
+    protected void setBulkInsertEnabled(boolean enabled) {
+        bulkInsertEnabled = Boolean.valueOf(enabled);
+    }
+
+    /** @since 11.5 */
+    @XNode("bulkInsert@minRows")
+    private Integer bulkInsertMinRows;
+
+    /** @since 11.5 */
+    public int getBulkInsertMinRows() {
+        return bulkInsertMinRows == null ? JDBCRowMapper.DEFAULT_BULK_INSERT_MIN_ROWS : bulkInsertMinRows.intValue();
+    }
+
+    /** @since 11.5 */
+    @XNode("clusterInvalidations@coalesceWindow")
+    private Integer clusterInvalidationsCoalesceWindow;
+
+    /**
+     * Gets the time window in milliseconds during which invalidations sent to other cluster nodes are coalesced, or
+     * {@code 0} to send them at each commit.
+     *
+     * @since 11.5
+     */
+    public int getClusterInvalidationsCoalesceWindow() {
+        return clusterInvalidationsCoalesceWindow == null ? 0 : clusterInvalidationsCoalesceWindow.intValue();
+    }
+
+    /** @since 11.5 */
+    protected void setClusterInvalidationsCoalesceWindow(int window) {
+        clusterInvalidationsCoalesceWindow = Integer.valueOf(window);
+    }
+
+    /** @since 11.5 */
+    @XNode("clusterInvalidations@tableThreshold")
+    private Integer clusterInvalidationsTableThreshold;
+
+    /**
+     * Gets the number of invalidated rows of a table above which the whole table is invalidated, or {@code 0} for no
+     * limit.
+     *
+     * @since 11.5
+     */
+    public int getClusterInvalidationsTableThreshold() {
+        return clusterInvalidationsTableThreshold == null ? 0 : clusterInvalidationsTableThreshold.intValue();
+    }
+
+    /** @since 11.5 */
+    protected void setClusterInvalidationsTableThreshold(int threshold) {
+        clusterInvalidationsTableThreshold = Integer.valueOf(threshold);
+    }
+
+    /** @since 11.5 */
+    @XNode("jdbcInstrumentation@enabled")
+    private Boolean jdbcInstrumentationEnabled;
+
+    /** @since 11.5 */
+    public boolean getJDBCInstrumentationEnabled() {
+        return defaultFalse(jdbcInstrumentationEnabled);
+    }
+
+    /** @since 11.5 */
+    protected void setJDBCInstrumentationEnabled(boolean enabled) {
+        jdbcInstrumentationEnabled = Boolean.valueOf(enabled);
+    }
+
+    /** @since 11.5 */
+    @XNode("jdbcInstrumentation@maxStatements")
+    private Integer jdbcInstrumentationMaxStatements;
+
+    /** @since 11.5 */
+    public int getJDBCInstrumentationMaxStatements() {
+        return jdbcInstrumentationMaxStatements == null ? JDBCInstrumentation.DEFAULT_MAX_STATEMENTS
+                : jdbcInstrumentationMaxStatements.intValue();
+    }
+
+    /** @since 11.5 */
+    @XNode("jdbcInstrumentation@nPlusOneThreshold")
+    private Integer jdbcInstrumentationNPlusOneThreshold;
+
+    /** @since 11.5 */
+    public int getJDBCInstrumentationNPlusOneThreshold() {
+        return jdbcInstrumentationNPlusOneThreshold == null ? JDBCInstrumentation.DEFAULT_N_PLUS_ONE_THRESHOLD
+                : jdbcInstrumentationNPlusOneThreshold.intValue();
+    }
+
+    /** @since 11.5 */
+    protected void setJDBCInstrumentationNPlusOneThreshold(int threshold) {
+        jdbcInstrumentationNPlusOneThreshold = Integer.valueOf(threshold);
+    }
+
+    /** @since 11.5 */
+    @XNode("readReplicas@enabled")
+    private Boolean readReplicasEnabled;
+
+    /** @since 11.5 */
+    public boolean getReadReplicasEnabled() {
+        return defaultFalse(readReplicasEnabled);
+    }
+
+    /** @since 11.5 */
+    protected void setReadReplicasEnabled(boolean enabled) {
+        readReplicasEnabled = Boolean.valueOf(enabled);
+    }
+
+    /**
+     * Whether all the read-only queries may run on a read replica, or only the ones tolerating the replication lag.
+     *
+     * @since 11.5
+     */
+    @XNode("readReplicas@allQueries")
+    private Boolean readReplicasAllQueries;
+
+    /** @since 11.5 */
+    public boolean getReadReplicasAllQueries() {
+        return defaultFalse(readReplicasAllQueries);
+    }
+
+    /** @since 11.5 */
+    protected void setReadReplicasAllQueries(boolean allQueries) {
+        readReplicasAllQueries = Boolean.valueOf(allQueries);
+    }
+
+    /**
+     * Maximum replication lag in seconds above which a read replica is not used.
+     *
+     * @since 11.5
+     */
+    @XNode("readReplicas@maxLag")
+    private Integer readReplicasMaxLag;
+
+    /** @since 11.5 */
+    public int getReadReplicasMaxLag() {
+        return readReplicasMaxLag == null ? ReadReplicaRouter.DEFAULT_MAX_LAG : readReplicasMaxLag.intValue();
+    }
+
+    /** @since 11.5 */
+    @XNode("readReplicas@checkInterval")
+    private Integer readReplicasCheckInterval;
+
+    /** @since 11.5 */
+    public int getReadReplicasCheckInterval() {
+        return readReplicasCheckInterval == null ? ReadReplicaRouter.DEFAULT_CHECK_INTERVAL
+                : readReplicasCheckInterval.intValue();
+    }
+
+    /**
+     * The names of the read replica datasources.
+     *
+     * @since 11.5
+     */
+    @XNodeList(value = "readReplicas/datasource", type = ArrayList.class, componentType = String.class)
+    private List<String> readReplicaDataSources = new ArrayList<>(0);
+
+    /** @since 11.5 */
+    public List<String> getReadReplicaDataSources() {
+        return readReplicaDataSources;
+    }
+
+    /** @since 11.5 */
+    protected void setReadReplicaDataSources(List<String> dataSources) {
+        readReplicaDataSources = new ArrayList<>(dataSources);
+    }
+
     @XNode("usersSeparator@key")
     public String usersSeparatorKey;
 
@@ -424,6 +689,24 @@ public class RepositoryDescriptor {
         pathOptimizationsVersion = other.pathOptimizationsVersion;
         aclOptimizationsEnabled = other.aclOptimizationsEnabled;
         readAclMaxSize = other.readAclMaxSize;
+        readAclUpdateChunkSize = other.readAclUpdateChunkSize;
+        adaptivePrefetchEnabled = other.adaptivePrefetchEnabled;
+        adaptivePrefetchThreshold = other.adaptivePrefetchThreshold;
+        adaptivePrefetchMinSamples = other.adaptivePrefetchMinSamples;
+        queryCacheEnabled = other.queryCacheEnabled;
+        queryCacheMaxSize = other.queryCacheMaxSize;
+        bulkInsertEnabled = other.bulkInsertEnabled;
+        bulkInsertMinRows = other.bulkInsertMinRows;
+        clusterInvalidationsCoalesceWindow = other.clusterInvalidationsCoalesceWindow;
+        clusterInvalidationsTableThreshold = other.clusterInvalidationsTableThreshold;
+        jdbcInstrumentationEnabled = other.jdbcInstrumentationEnabled;
+        jdbcInstrumentationMaxStatements = other.jdbcInstrumentationMaxStatements;
+        jdbcInstrumentationNPlusOneThreshold = other.jdbcInstrumentationNPlusOneThreshold;
+        readReplicasEnabled = other.readReplicasEnabled;
+        readReplicasAllQueries = other.readReplicasAllQueries;
+        readReplicasMaxLag = other.readReplicasMaxLag;
+        readReplicasCheckInterval = other.readReplicasCheckInterval;
+        readReplicaDataSources = new ArrayList<>(other.readReplicaDataSources);
         usersSeparatorKey = other.usersSeparatorKey;
         changeTokenEnabled = other.changeTokenEnabled;
     }
@@ -516,6 +799,61 @@ public class RepositoryDescriptor {
         if (other.readAclMaxSize != null) {
             readAclMaxSize = other.readAclMaxSize;
         }
+        if (other.readAclUpdateChunkSize != null) {
+            readAclUpdateChunkSize = other.readAclUpdateChunkSize;
+        }
+        if (other.adaptivePrefetchEnabled != null) {
+            adaptivePrefetchEnabled = other.adaptivePrefetchEnabled;
+        }
+        if (other.adaptivePrefetchThreshold != null) {
+            adaptivePrefetchThreshold = other.adaptivePrefetchThreshold;
+        }
+        if (other.adaptivePrefetchMinSamples != null) {
+            adaptivePrefetchMinSamples = other.adaptivePrefetchMinSamples;
+        }
+        if (other.queryCacheEnabled != null) {
+            queryCacheEnabled = other.queryCacheEnabled;
+        }
+        if (other.queryCacheMaxSize != null) {
+            queryCacheMaxSize = other.queryCacheMaxSize;
+        }
+        if (other.bulkInsertEnabled != null) {
+            bulkInsertEnabled = other.bulkInsertEnabled;
+        }
+        if (other.bulkInsertMinRows != null) {
+            bulkInsertMinRows = other.bulkInsertMinRows;
+        }
+        if (other.clusterInvalidationsCoalesceWindow != null) {
+            clusterInvalidationsCoalesceWindow = other.clusterInvalidationsCoalesceWindow;
+        }
+        if (other.clusterInvalidationsTableThreshold != null) {
+            clusterInvalidationsTableThreshold = other.clusterInvalidationsTableThreshold;
+        }
+        if (other.jdbcInstrumentationEnabled != null) {
+            jdbcInstrumentationEnabled = other.jdbcInstrumentationEnabled;
+        }
+        if (other.jdbcInstrumentationMaxStatements != null) {
+            jdbcInstrumentationMaxStatements = other.jdbcInstrumentationMaxStatements;
+        }
+        if (other.jdbcInstrumentationNPlusOneThreshold != null) {
+            jdbcInstrumentationNPlusOneThreshold = other.jdbcInstrumentationNPlusOneThreshold;
+        }
+        if (other.readReplicasEnabled != null) {
+            readReplicasEnabled = other.readReplicasEnabled;
+        }
+        if (other.readReplicasAllQueries != null) {
+            readReplicasAllQueries = other.readReplicasAllQueries;
+        }
+        if (other.readReplicasMaxLag != null) {
+            readReplicasMaxLag = other.readReplicasMaxLag;
+        }
+        if (other.readReplicasCheckInterval != null) {
+            readReplicasCheckInterval = other.readReplicasCheckInterval;
+        }
+        if (!other.readReplicaDataSources.isEmpty()) {
+            // the replicas are replaced, not added
+            readReplicaDataSources = new ArrayList<>(other.readReplicaDataSources);
+        }
         if (other.usersSeparatorKey != null) {
             usersSeparatorKey = other.usersSeparatorKey;
         }
@@ -42,6 +42,7 @@ import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import javax.naming.NamingException;
 
@@ -51,14 +52,18 @@ import org.nuxeo.common.Environment;
 import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.lock.LockManager;
 import org.nuxeo.ecm.core.api.repository.FulltextConfiguration;
+import org.nuxeo.ecm.core.security.SecurityService;
 import org.nuxeo.ecm.core.storage.FulltextDescriptor;
 import org.nuxeo.ecm.core.storage.lock.LockManagerService;
 import org.nuxeo.ecm.core.storage.sql.Model.IdType;
 import org.nuxeo.ecm.core.storage.sql.Session.PathResolver;
 import org.nuxeo.ecm.core.storage.sql.coremodel.SQLSession;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCConnection;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCInstrumentation;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCLogger;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCMapper;
+import org.nuxeo.ecm.core.storage.sql.jdbc.NXQLQueryCache;
+import org.nuxeo.ecm.core.storage.sql.jdbc.ReadReplicaRouter;
 import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo;
 import org.nuxeo.ecm.core.storage.sql.jdbc.TableUpgrader;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Column;
@@ -82,6 +87,7 @@ import io.dropwizard.metrics5.Gauge;
 import io.dropwizard.metrics5.MetricName;
 import io.dropwizard.metrics5.MetricRegistry;
 import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
 
 /**
  * {@link Repository} implementation, to be extended by backend-specific initialization code.
@@ -111,6 +117,12 @@ public class RepositoryImpl implements Repository, org.nuxeo.ecm.core.model.Repo
 
     protected final Counter sessionCount;
 
+    /** @since 11.5 */
+    protected final Counter readAclsUpdatedCount;
+
+    /** @since 11.5 */
+    protected final Timer readAclsChunkTimer;
+
     private LockManager lockManager;
 
     /**
@@ -130,6 +142,17 @@ public class RepositoryImpl implements Repository, org.nuxeo.ecm.core.model.Repo
 
     protected SQLInfo sqlInfo;
 
+    /** @since 11.5 */
+    protected AdaptivePrefetcher adaptivePrefetcher;
+
+    protected NXQLQueryCache queryCache;
+
+    /** @since 11.5 */
+    protected JDBCInstrumentation jdbcInstrumentation;
+
+    /** @since 11.5 */
+    protected ReadReplicaRouter readReplicaRouter;
+
     public RepositoryImpl(RepositoryDescriptor repositoryDescriptor) {
         this.repositoryDescriptor = repositoryDescriptor;
         sessions = new CopyOnWriteArrayList<>();
@@ -137,6 +160,12 @@ public class RepositoryImpl implements Repository, org.nuxeo.ecm.core.model.Repo
 
         sessionCount = registry.counter(MetricName.build("nuxeo", "repositories", "repository", "sessions")
                                                   .tagged("repository", repositoryDescriptor.name));
+        readAclsUpdatedCount = registry.counter(
+                MetricName.build("nuxeo", "repositories", "repository", "aclr-update", "entries")
+                          .tagged("repository", repositoryDescriptor.name));
+        readAclsChunkTimer = registry.timer(
+                MetricName.build("nuxeo", "repositories", "repository", "aclr-update", "chunk", "timer")
+                          .tagged("repository", repositoryDescriptor.name));
         createMetricsGauges();
 
         initRepository();
@@ -225,6 +254,42 @@ public class RepositoryImpl implements Repository, org.nuxeo.ecm.core.model.Repo
         return sqlInfo;
     }
 
+    /**
+     * Gets the adaptive prefetcher, or {@code null} if adaptive prefetch is disabled.
+     *
+     * @since 11.5
+     */
+    public AdaptivePrefetcher getAdaptivePrefetcher() {
+        return adaptivePrefetcher;
+    }
+
+    /**
+     * Gets the cache of NXQL query translations, or {@code null} if the query cache is disabled.
+     *
+     * @since 11.5
+     */
+    public NXQLQueryCache getQueryCache() {
+        return queryCache;
+    }
+
+    /**
+     * Gets the instrumentation of the JDBC statements, or {@code null} if not enabled.
+     *
+     * @since 11.5
+     */
+    public JDBCInstrumentation getJDBCInstrumentation() {
+        return jdbcInstrumentation;
+    }
+
+    /**
+     * Gets the router of the queries to read replicas, or {@code null} if not enabled.
+     *
+     * @since 11.5
+     */
+    public ReadReplicaRouter getReadReplicaRouter() {
+        return readReplicaRouter;
+    }
+
     public VCSInvalidationsPropagator getInvalidationsPropagator() {
         return invalidationsPropagator;
     }
@@ -305,6 +370,32 @@ public class RepositoryImpl implements Repository, org.nuxeo.ecm.core.model.Repo
         // Model and SQLInfo
         model = new Model(modelSetup);
         sqlInfo = new SQLInfo(model, dialect, requiresClusterSQL);
+        if (repositoryDescriptor.getAdaptivePrefetchEnabled()) {
+            adaptivePrefetcher = new AdaptivePrefetcher(repositoryDescriptor.name, model,
+                    repositoryDescriptor.getAdaptivePrefetchThreshold(),
+                    repositoryDescriptor.getAdaptivePrefetchMinSamples());
+        }
+        if (repositoryDescriptor.getQueryCacheEnabled()) {
+            String repositoryName = repositoryDescriptor.name;
+            queryCache = new NXQLQueryCache(repositoryName, repositoryDescriptor.getQueryCacheMaxSize(),
+                    () -> Framework.getService(SecurityService.class).getPoliciesQueryTransformers(repositoryName));
+        }
+        if (repositoryDescriptor.getJDBCInstrumentationEnabled()) {
+            jdbcInstrumentation = new JDBCInstrumentation(repositoryDescriptor.name,
+                    repositoryDescriptor.getJDBCInstrumentationMaxStatements(),
+                    repositoryDescriptor.getJDBCInstrumentationNPlusOneThreshold());
+        }
+        if (repositoryDescriptor.getReadReplicasEnabled()) {
+            List<String> dataSourceNames = repositoryDescriptor.getReadReplicaDataSources();
+            if (dataSourceNames.isEmpty()) {
+                log.warn("Read replicas enabled without datasource for repository: " + repositoryDescriptor.name);
+            } else {
+                readReplicaRouter = new ReadReplicaRouter(repositoryDescriptor.name, dataSourceNames,
+                        dialect.getReplicaLagSql(), repositoryDescriptor.getReadReplicasMaxLag(),
+                        repositoryDescriptor.getReadReplicasCheckInterval(),
+                        repositoryDescriptor.getReadReplicasAllQueries());
+            }
+        }
 
         // DDL mode
         String ddlMode = repositoryDescriptor.getDDLMode();
@@ -514,6 +605,40 @@ public class RepositoryImpl implements Repository, org.nuxeo.ecm.core.model.Repo
         }
     }
 
+    /**
+     * Called by the mappers after each chunk of incremental read ACL updates.
+     *
+     * @param count the number of modification entries processed
+     * @param durationNanos the duration of the chunk
+     * @since 11.5
+     */
+    public void readAclsChunkUpdated(int count, long durationNanos) {
+        readAclsUpdatedCount.inc(count);
+        readAclsChunkTimer.update(durationNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public long getReadAclsUpdatedCount() {
+        return readAclsUpdatedCount.getCount();
+    }
+
+    @Override
+    public long getReadAclsUpdateChunkCount() {
+        return readAclsChunkTimer.getCount();
+    }
+
+    @Override
+    public long getReadAclsPendingCount() {
+        try (SessionImpl session = getConnection()) {
+            return session.getReadAclsPendingCount();
+        }
+    }
+
+    @Override
+    public String getJDBCStatementsSummary(int max) {
+        return jdbcInstrumentation == null ? "" : jdbcInstrumentation.getStatementsSummary(max);
+    }
+
     @Override
     public int cleanupDeletedDocuments(int max, Calendar beforeTime) {
         if (!repositoryDescriptor.getSoftDeleteEnabled()) {
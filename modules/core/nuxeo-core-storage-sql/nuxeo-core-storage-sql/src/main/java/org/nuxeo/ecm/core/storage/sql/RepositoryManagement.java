@@ -80,6 +80,36 @@ public interface RepositoryManagement {
      */
     int cleanupDeletedDocuments(int max, Calendar beforeTime);
 
+    /**
+     * Gets the number of read ACL modification entries processed by incremental updates since startup.
+     *
+     * @since 11.5
+     */
+    long getReadAclsUpdatedCount();
+
+    /**
+     * Gets the number of chunks of incremental read ACL updates executed since startup.
+     *
+     * @since 11.5
+     */
+    long getReadAclsUpdateChunkCount();
+
+    /**
+     * Gets the number of read ACL modification entries not yet processed.
+     *
+     * @since 11.5
+     */
+    long getReadAclsPendingCount();
+
+    /**
+     * Gets a summary of the most expensive JDBC statement shapes, if the JDBC instrumentation is enabled.
+     *
+     * @param max the maximum number of statement shapes to return
+     * @return the summary, one statement shape per line, or an empty string if the instrumentation is disabled
+     * @since 11.5
+     */
+    String getJDBCStatementsSummary(int max);
+
     /**
      * Gets the fulltext configuration.
      *
@@ -330,4 +330,18 @@ public class SelectionContext {
         }
     }
 
+    /**
+     * Processes the invalidations of whole tables.
+     * <p>
+     * Called pre-transaction.
+     *
+     * @since 11.5
+     */
+    public void processReceivedTablesInvalidations(Set<String> tables) {
+        if (tables.contains(selType.invalidationTableName)) {
+            softMap.clear();
+            hardMap.clear();
+        }
+    }
+
 }
@@ -460,6 +460,17 @@ public interface Session extends AutoCloseable {
      */
     PartialList<Serializable> query(String query, String queryType, QueryFilter queryFilter, long countUpTo);
 
+    /**
+     * Estimates the number of results of a query from the database statistics, without executing it.
+     *
+     * @param query the query
+     * @param queryType the query type
+     * @param queryFilter the query filter
+     * @return the estimated number of results, or {@code -1} if the database cannot estimate it
+     * @since 11.5
+     */
+    long queryEstimatedCount(String query, String queryType, QueryFilter queryFilter);
+
     /**
      * Makes a query to the database and returns an iterable (which must be closed when done).
      *
@@ -529,6 +540,13 @@ public interface Session extends AutoCloseable {
      */
     void rebuildReadAcls();
 
+    /**
+     * Gets the number of document modifications waiting for a read ACLs update.
+     *
+     * @since 11.5
+     */
+    long getReadAclsPendingCount();
+
     /**
      * Checks if fulltext extracted from the binary fields is internally stored as a blob.
      *
@@ -213,6 +213,15 @@ public class SessionImpl implements Session {
         return model;
     }
 
+    /**
+     * Checks whether NULL values come first when sorting in the given direction.
+     *
+     * @since 11.5
+     */
+    public boolean isNullSortedFirst(boolean descending) {
+        return repository.getSQLInfo().dialect.isNullSortedFirst(descending);
+    }
+
     @Override
     public Node getRootNode() {
         return getNodeById(rootNodeId);
@@ -480,6 +489,10 @@ public class SessionImpl implements Session {
             FragmentGroup fragmentGroup = fragmentGroups.get(id);
             // null if deleted/absent
             Node node = fragmentGroup == null ? null : new Node(context, fragmentGroup, paths.get(id));
+            if (node != null && prefetch) {
+                // record the fragments read after the fetch
+                node.prefetcher = repository.getAdaptivePrefetcher();
+            }
             nodes.add(node);
         }
 
@@ -510,6 +523,27 @@ public class SessionImpl implements Session {
 
         // add row id for each table name
         Serializable parentId = hierFragment.get(Model.HIER_PARENT_KEY);
+        addPrefetchedRowIds(id, parentId, tableNames, bulkRowIds);
+
+        // add row id for each table name learned from previous reads
+        AdaptivePrefetcher prefetcher = repository.getAdaptivePrefetcher();
+        if (prefetcher != null) {
+            Set<String> adaptiveTableNames = prefetcher.recordFetch(typeName);
+            if (!adaptiveTableNames.isEmpty()) {
+                int added = addPrefetchedRowIds(id, parentId, adaptiveTableNames, bulkRowIds);
+                prefetcher.recordAdaptive(added);
+            }
+        }
+    }
+
+    /**
+     * Adds the row ids of the given tables for a document, returns the number of row ids added.
+     *
+     * @since 11.5
+     */
+    protected int addPrefetchedRowIds(Serializable id, Serializable parentId, Set<String> tableNames,
+            List<RowId> bulkRowIds) {
+        int added = 0;
         for (String tableName : tableNames) {
             if (Model.HIER_TABLE_NAME.equals(tableName)) {
                 continue; // already fetched
@@ -519,7 +553,9 @@ public class SessionImpl implements Session {
                 // TODO incorrect if we have filed versions
             }
             bulkRowIds.add(new RowId(tableName, id));
+            added++;
         }
+        return added;
     }
 
     @Override
@@ -1073,6 +1109,11 @@ public class SessionImpl implements Session {
         }
     }
 
+    @Override
+    public long queryEstimatedCount(String query, String queryType, QueryFilter queryFilter) {
+        return mapper.queryEstimatedCount(query, queryType, queryFilter);
+    }
+
     private String countUpToAsString(long countUpTo) {
         if (countUpTo > 0) {
             return String.format("count total results up to %d", countUpTo);
@@ -1192,6 +1233,11 @@ public class SessionImpl implements Session {
         readAclsChanged = false;
     }
 
+    @Override
+    public long getReadAclsPendingCount() {
+        return mapper.getReadAclsPendingCount();
+    }
+
     private void computeRootNode() {
         String repositoryId = repository.getName();
         Serializable rootId = mapper.getRootId(repositoryId);
@@ -0,0 +1,546 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.storage.sql.ACLRow.ACLRowPositionComparator;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
+
+/**
+ * A {@link RowMapper} that uses a {@link SharedRowCache} common to all the sessions of a repository.
+ * <p>
+ * The shared cache only holds committed {@link Row}s. The rows written by the session during the current transaction
+ * are kept in a local overlay that takes precedence over the shared cache, so that they are never seen by other
+ * sessions. At commit time, the rows of the overlay are invalidated in the shared cache and the overlay is dropped; at
+ * rollback time the overlay is just dropped.
+ * <p>
+ * Invalidations coming from other cluster nodes are applied to the shared cache by the session receiving them.
+ * Invalidations from other local sessions are already applied to the shared cache by the committing session, and are
+ * only passed to the session's own caches through the {@link VCSInvalidationsQueue}.
+ * <p>
+ * The following caching mapper properties can be used:
+ * <ul>
+ * <li>{@code maxWeight}: the maximum estimated size in bytes of the rows in the shared cache (default 100 MB).
+ * </ul>
+ *
+ * @since 11.5
+ */
+public class SharedCachingRowMapper implements RowMapper {
+
+    public static final String MAX_WEIGHT_PROP = "maxWeight";
+
+    private static final String ABSENT = "__ABSENT__\0\0\0";
+
+    /**
+     * The shared caches, keyed by the invalidations propagator of their repository so that they go away with it.
+     */
+    private static final Map<VCSInvalidationsPropagator, SharedRowCache> SHARED_CACHES = new WeakHashMap<>();
+
+    private SharedRowCache sharedCache;
+
+    /**
+     * The rows written or invalidated by this session during the current transaction, which must not be read from or
+     * written to the shared cache. A {@code null} value means that the row has to be read from the underlying
+     * {@link RowMapper} (it will then be cached in the overlay).
+     * <p>
+     * The values are either {@link Row} for fragments present in the database, or a row with tableName
+     * {@link #ABSENT} to denote a fragment known to be absent from the database.
+     */
+    private final Map<RowId, Row> overlay;
+
+    private Model model;
+
+    /**
+     * The {@link RowMapper} to which operations that cannot be processed from the cache are delegated.
+     */
+    private RowMapper rowMapper;
+
+    /**
+     * The local invalidations due to writes through this mapper that should be propagated to other sessions at
+     * post-commit time.
+     */
+    private final VCSInvalidations localInvalidations;
+
+    /**
+     * The queue of invalidations received from other sessions or from the cluster invalidator, to process at
+     * pre-transaction time.
+     */
+    // public for unit tests
+    public final VCSInvalidationsQueue cacheQueue;
+
+    /**
+     * The propagator of invalidations to other mappers.
+     */
+    private VCSInvalidationsPropagator cachePropagator;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected Counter cacheHitCount;
+
+    protected Timer cacheGetTimer;
+
+    // sor means system of record (database access)
+    protected Counter sorRows;
+
+    protected Timer sorGetTimer;
+
+    public SharedCachingRowMapper() {
+        overlay = new HashMap<>();
+        localInvalidations = new VCSInvalidations();
+        cacheQueue = new VCSInvalidationsQueue("mapper-" + this);
+    }
+
+    public void initialize(String repositoryName, Model model, RowMapper rowMapper,
+            VCSInvalidationsPropagator cachePropagator, Map<String, String> properties) {
+        this.model = model;
+        this.rowMapper = rowMapper;
+        this.cachePropagator = cachePropagator;
+        cachePropagator.addQueue(cacheQueue);
+        synchronized (SHARED_CACHES) {
+            sharedCache = SHARED_CACHES.computeIfAbsent(cachePropagator,
+                    k -> new SharedRowCache(repositoryName, getMaxWeight(properties)));
+        }
+        setMetrics(repositoryName);
+    }
+
+    protected static long getMaxWeight(Map<String, String> properties) {
+        String value = properties == null ? null : properties.get(MAX_WEIGHT_PROP);
+        if (value == null || value.isBlank()) {
+            return SharedRowCache.DEFAULT_MAX_WEIGHT;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new NuxeoException("Invalid caching mapper property " + MAX_WEIGHT_PROP + ": " + value, e);
+        }
+    }
+
+    protected void setMetrics(String repositoryName) {
+        cacheHitCount = registry.counter(
+                MetricName.build("nuxeo", "repositories", "repository", "cache", "shared", "hit")
+                          .tagged("repository", repositoryName));
+        cacheGetTimer = registry.timer(
+                MetricName.build("nuxeo", "repositories", "repository", "cache", "shared", "timer")
+                          .tagged("repository", repositoryName));
+        sorRows = registry.counter(
+                MetricName.build("nuxeo", "repositories", "repository", "cache", "shared", "sor", "rows")
+                          .tagged("repository", repositoryName));
+        sorGetTimer = registry.timer(
+                MetricName.build("nuxeo", "repositories", "repository", "cache", "shared", "sor", "timer")
+                          .tagged("repository", repositoryName));
+    }
+
+    public void close() {
+        overlay.clear();
+        cachePropagator.removeQueue(cacheQueue);
+    }
+
+    @Override
+    public Serializable generateNewId() {
+        return rowMapper.generateNewId();
+    }
+
+    /*
+     * ----- Cache -----
+     */
+
+    protected static boolean isAbsent(Row row) {
+        return row.tableName == ABSENT; // == is ok
+    }
+
+    /**
+     * Puts a row read from the underlying mapper, or written by this session.
+     *
+     * @param gen the shared cache generation before the row was read, or -1 if the row was written by this session
+     */
+    protected void cachePut(Row row, long gen) {
+        row = row.clone();
+        // for ACL collections, make sure the order is correct
+        // (without the cache, the query to get a list of collection does an
+        // ORDER BY pos, so users of the cache must get the same behavior)
+        if (row.isCollection() && row.values.length > 0 && row.values[0] instanceof ACLRow) {
+            row.values = sortACLRows((ACLRow[]) row.values);
+        }
+        cachePutInternal(new RowId(row), row, gen);
+    }
+
+    protected void cachePutInternal(RowId rowId, Row row, long gen) {
+        if (gen == -1 || overlay.containsKey(rowId)) {
+            overlay.put(rowId, row);
+        } else {
+            sharedCache.put(rowId, row, gen);
+        }
+    }
+
+    protected ACLRow[] sortACLRows(ACLRow[] acls) {
+        List<ACLRow> list = new ArrayList<>(Arrays.asList(acls));
+        Collections.sort(list, ACLRowPositionComparator.INSTANCE);
+        ACLRow[] res = new ACLRow[acls.length];
+        return list.toArray(res);
+    }
+
+    protected void cachePutAbsent(RowId rowId, long gen) {
+        cachePutInternal(new RowId(rowId), new Row(ABSENT, (Serializable) null), gen);
+    }
+
+    protected void cachePutAbsentIfNull(RowId rowId, Row row, long gen) {
+        if (row != null) {
+            cachePut(row, gen);
+        } else {
+            cachePutAbsent(rowId, gen);
+        }
+    }
+
+    protected void cachePutAbsentIfRowId(RowId rowId, long gen) {
+        if (rowId instanceof Row) {
+            cachePut((Row) rowId, gen);
+        } else {
+            cachePutAbsent(rowId, gen);
+        }
+    }
+
+    /**
+     * Marks a row as written by this session, so that it is read from the underlying mapper until commit.
+     */
+    protected void cacheRemove(RowId rowId) {
+        overlay.put(new RowId(rowId), null);
+    }
+
+    @SuppressWarnings("resource") // Time.Context closed by stop()
+    protected Row cacheGet(RowId rowId) {
+        final Timer.Context context = cacheGetTimer.time();
+        try {
+            Row row;
+            if (overlay.containsKey(rowId)) {
+                row = overlay.get(rowId);
+            } else {
+                row = sharedCache.get(rowId);
+            }
+            if (row != null && !isAbsent(row)) {
+                row = row.clone();
+            }
+            if (row != null) {
+                cacheHitCount.inc();
+            }
+            return row;
+        } finally {
+            context.stop();
+        }
+    }
+
+    /*
+     * ----- Invalidations / Cache Management -----
+     */
+
+    @Override
+    public VCSInvalidations receiveInvalidations() {
+        // invalidations from the underlying mapper (cluster)
+        // already propagated to our invalidations queue
+        VCSInvalidations remoteInvals = rowMapper.receiveInvalidations();
+
+        VCSInvalidations invalidations = cacheQueue.getInvalidations();
+
+        if (invalidations.all || remoteInvals != null && remoteInvals.all) {
+            sharedCache.invalidateAll();
+            clearCache();
+        } else if (remoteInvals != null) {
+            // local invalidations were already applied to the shared cache by the committing session
+            invalidateShared(remoteInvals);
+        }
+
+        return invalidations.isEmpty() ? null : invalidations;
+    }
+
+    protected void invalidateShared(VCSInvalidations invalidations) {
+        if (invalidations.tables != null) {
+            sharedCache.invalidateTables(invalidations.tables);
+        }
+        if (invalidations.modified != null) {
+            sharedCache.invalidate(invalidations.modified);
+        }
+        if (invalidations.deleted != null) {
+            sharedCache.invalidate(invalidations.deleted);
+        }
+    }
+
+    // propagate invalidations
+    @Override
+    public void sendInvalidations(VCSInvalidations invalidations) {
+        // the transaction is committed, the overlay rows must now be read from the database
+        if (!overlay.isEmpty()) {
+            sharedCache.invalidate(overlay.keySet());
+            overlay.clear();
+        }
+
+        // add local invalidations
+        if (!localInvalidations.isEmpty()) {
+            if (invalidations == null) {
+                invalidations = new VCSInvalidations();
+            }
+            invalidations.add(localInvalidations);
+            localInvalidations.clear();
+        }
+
+        if (invalidations != null && !invalidations.isEmpty()) {
+            // send to underlying mapper
+            rowMapper.sendInvalidations(invalidations);
+
+            // queue to other local mappers' caches
+            cachePropagator.propagateInvalidations(invalidations, cacheQueue);
+        }
+    }
+
+    /**
+     * Clears the session's overlay. The shared cache is only cleared when receiving invalidations for everything.
+     */
+    @Override
+    public void clearCache() {
+        overlay.clear();
+        localInvalidations.clear();
+        rowMapper.clearCache();
+    }
+
+    /**
+     * Returns the size of the session's overlay. The size of the shared cache is reported by its own gauge.
+     */
+    @Override
+    public long getCacheSize() {
+        return overlay.size();
+    }
+
+    @Override
+    public void rollback() {
+        try {
+            rowMapper.rollback();
+        } finally {
+            overlay.clear();
+            localInvalidations.clear();
+        }
+    }
+
+    /*
+     * ----- Batch -----
+     */
+
+    /*
+     * Use those from the cache if available, read from the mapper for the rest.
+     */
+    @Override
+    public List<? extends RowId> read(Collection<RowId> rowIds, boolean cacheOnly) {
+        List<RowId> res = new ArrayList<>(rowIds.size());
+        // find which are in cache, and which not
+        List<RowId> todo = new LinkedList<>();
+        for (RowId rowId : rowIds) {
+            Row row = cacheGet(rowId);
+            if (row == null) {
+                if (cacheOnly) {
+                    res.add(new RowId(rowId));
+                } else {
+                    todo.add(rowId);
+                }
+            } else if (isAbsent(row)) {
+                res.add(new RowId(rowId));
+            } else {
+                res.add(row);
+            }
+        }
+        if (!todo.isEmpty()) {
+            @SuppressWarnings("resource")
+            final Timer.Context context = sorGetTimer.time();
+            try {
+                long gen = sharedCache.getGeneration();
+                // ask missing ones to underlying row mapper
+                List<? extends RowId> fetched = rowMapper.read(todo, cacheOnly);
+                // add them to the cache
+                for (RowId rowId : fetched) {
+                    cachePutAbsentIfRowId(rowId, gen);
+                }
+                // merge results
+                res.addAll(fetched);
+                sorRows.inc(fetched.size());
+            } finally {
+                context.stop();
+            }
+        }
+        return res;
+    }
+
+    /*
+     * Save in the overlay then pass all the writes to the mapper.
+     */
+    @Override
+    public void write(RowBatch batch) {
+        // we avoid gathering invalidations for a write-only table: fulltext
+        for (Row row : batch.creates) {
+            cachePut(row, -1);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(row.tableName)) {
+                // we need to send modified invalidations for created
+                // fragments because other session's ABSENT fragments have
+                // to be invalidated
+                localInvalidations.addModified(new RowId(row));
+            }
+        }
+        for (RowUpdate rowu : batch.updates) {
+            cachePut(rowu.row, -1);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(rowu.row.tableName)) {
+                localInvalidations.addModified(new RowId(rowu.row));
+            }
+        }
+        for (RowId rowId : batch.deletes) {
+            if (rowId instanceof Row) {
+                throw new AssertionError();
+            }
+            cachePutAbsent(rowId, -1);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(rowId.tableName)) {
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+        for (RowId rowId : batch.deletesDependent) {
+            if (rowId instanceof Row) {
+                throw new AssertionError();
+            }
+            cachePutAbsent(rowId, -1);
+            if (!Model.FULLTEXT_TABLE_NAME.equals(rowId.tableName)) {
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+
+        // propagate to underlying mapper
+        rowMapper.write(batch);
+    }
+
+    /*
+     * ----- Read -----
+     */
+
+    @Override
+    public Row readSimpleRow(RowId rowId) {
+        Row row = cacheGet(rowId);
+        if (row == null) {
+            long gen = sharedCache.getGeneration();
+            row = rowMapper.readSimpleRow(rowId);
+            cachePutAbsentIfNull(rowId, row, gen);
+            return row;
+        } else if (isAbsent(row)) {
+            return null;
+        } else {
+            return row;
+        }
+    }
+
+    @Override
+    public Map<String, String> getBinaryFulltext(RowId rowId) {
+        return rowMapper.getBinaryFulltext(rowId);
+    }
+
+    @Override
+    public Serializable[] readCollectionRowArray(RowId rowId) {
+        Row row = cacheGet(rowId);
+        if (row == null) {
+            long gen = sharedCache.getGeneration();
+            Serializable[] array = rowMapper.readCollectionRowArray(rowId);
+            assert array != null;
+            row = new Row(rowId.tableName, rowId.id, array);
+            cachePut(row, gen);
+            return row.values;
+        } else if (isAbsent(row)) {
+            return null;
+        } else {
+            return row.values;
+        }
+    }
+
+    @Override
+    public List<Row> readSelectionRows(SelectionType selType, Serializable selId, Serializable filter,
+            Serializable criterion, boolean limitToOne) {
+        long gen = sharedCache.getGeneration();
+        List<Row> rows = rowMapper.readSelectionRows(selType, selId, filter, criterion, limitToOne);
+        for (Row row : rows) {
+            cachePut(row, gen);
+        }
+        return rows;
+    }
+
+    @Override
+    public Set<Serializable> readSelectionsIds(SelectionType selType, List<Serializable> values) {
+        return rowMapper.readSelectionsIds(selType, values);
+    }
+
+    /*
+     * ----- Copy -----
+     */
+
+    @Override
+    public CopyResult copy(IdWithTypes source, Serializable destParentId, String destName, Row overwriteRow,
+            boolean excludeSpecialChildren, boolean excludeACL) {
+        CopyResult result = rowMapper.copy(source, destParentId, destName, overwriteRow, excludeSpecialChildren,
+                excludeACL);
+        VCSInvalidations invalidations = result.invalidations;
+        if (invalidations.modified != null) {
+            for (RowId rowId : invalidations.modified) {
+                cacheRemove(rowId);
+                localInvalidations.addModified(new RowId(rowId));
+            }
+        }
+        if (invalidations.deleted != null) {
+            for (RowId rowId : invalidations.deleted) {
+                cacheRemove(rowId);
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public List<NodeInfo> getDescendantsInfo(Serializable rootId) {
+        return rowMapper.getDescendantsInfo(rootId);
+    }
+
+    @Override
+    public void remove(Serializable rootId, List<NodeInfo> nodeInfos) {
+        rowMapper.remove(rootId, nodeInfos);
+        for (NodeInfo info : nodeInfos) {
+            for (String fragmentName : model.getTypeFragments(new IdWithTypes(info))) {
+                RowId rowId = new RowId(fragmentName, info.id);
+                cacheRemove(rowId);
+                localInvalidations.addDeleted(rowId);
+            }
+        }
+        cachePutAbsent(new RowId(Model.HIER_TABLE_NAME, rootId), -1);
+    }
+
+}
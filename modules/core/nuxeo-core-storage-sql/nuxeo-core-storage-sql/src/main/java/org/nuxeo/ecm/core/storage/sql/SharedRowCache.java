@@ -0,0 +1,172 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import java.io.Serializable;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.dropwizard.metrics5.Gauge;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+
+/**
+ * A repository-wide cache of committed {@link Row}s, bounded by the estimated size in bytes of the rows it holds.
+ * <p>
+ * A row read from the database must only be put in the cache if it was not invalidated while it was being read,
+ * otherwise a stale row could replace the invalidation. Readers therefore get the current {@link #getGeneration
+ * generation} before reading from the database, and pass it to {@link #put}.
+ *
+ * @since 11.5
+ */
+public class SharedRowCache {
+
+    public static final long DEFAULT_MAX_WEIGHT = 100 * 1024 * 1024;
+
+    /** Estimated size of an object header and reference. */
+    protected static final int OBJECT_WEIGHT = 16;
+
+    protected final Cache<RowId, Row> cache;
+
+    protected final AtomicLong generation = new AtomicLong();
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    public SharedRowCache(String repositoryName, long maxWeight) {
+        cache = CacheBuilder.newBuilder()
+                            .maximumWeight(maxWeight)
+                            .weigher((RowId rowId, Row row) -> getWeight(row))
+                            .build();
+        MetricName gaugeName = MetricName.build("nuxeo", "repositories", "repository", "cache", "shared", "size")
+                                         .tagged("repository", repositoryName);
+        registry.remove(gaugeName);
+        registry.register(gaugeName, (Gauge<Long>) cache::size);
+    }
+
+    /**
+     * Gets the current generation, to pass to {@link #put} for rows read from the database after this call.
+     */
+    public long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Gets a row from the cache.
+     */
+    public Row get(RowId rowId) {
+        return cache.getIfPresent(rowId);
+    }
+
+    /**
+     * Puts a row in the cache, unless an invalidation happened since the given generation.
+     */
+    public void put(RowId rowId, Row row, long gen) {
+        if (generation.get() != gen) {
+            return;
+        }
+        cache.put(rowId, row);
+        // an invalidation may have happened between the check and the put
+        if (generation.get() != gen) {
+            cache.invalidate(rowId);
+        }
+    }
+
+    /**
+     * Removes rows from the cache.
+     */
+    public void invalidate(Collection<RowId> rowIds) {
+        generation.incrementAndGet();
+        cache.invalidateAll(rowIds);
+    }
+
+    /**
+     * Removes all the rows of the given tables from the cache.
+     *
+     * @since 11.5
+     */
+    public void invalidateTables(Set<String> tableNames) {
+        generation.incrementAndGet();
+        cache.asMap().keySet().removeIf(rowId -> tableNames.contains(rowId.tableName));
+    }
+
+    /**
+     * Removes all the rows from the cache.
+     */
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        cache.invalidateAll();
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Estimates the size in bytes of a row.
+     */
+    protected static int getWeight(Row row) {
+        long weight = OBJECT_WEIGHT * 4 + getWeight(row.id);
+        if (row.keys != null) {
+            // keys are interned model strings, only count the references
+            weight += OBJECT_WEIGHT + 4L * row.keys.length;
+        }
+        if (row.values != null) {
+            weight += OBJECT_WEIGHT + 4L * row.values.length;
+            for (Serializable value : row.values) {
+                weight += getWeight(value);
+            }
+        }
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+
+    protected static long getWeight(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return OBJECT_WEIGHT * 2 + ((String) value).length();
+        } else if (value instanceof Calendar) {
+            return OBJECT_WEIGHT * 28;
+        } else if (value instanceof byte[]) {
+            return OBJECT_WEIGHT + ((byte[]) value).length;
+        } else if (value instanceof Object[]) {
+            long weight = OBJECT_WEIGHT + 4L * ((Object[]) value).length;
+            for (Object v : (Object[]) value) {
+                weight += getWeight(v);
+            }
+            return weight;
+        } else if (value instanceof ACLRow) {
+            ACLRow acl = (ACLRow) value;
+            return OBJECT_WEIGHT * 4 + getWeight(acl.name) + getWeight(acl.permission) + getWeight(acl.user)
+                    + getWeight(acl.group) + getWeight(acl.creator) + getWeight(acl.begin) + getWeight(acl.end)
+                    + getWeight(acl.status);
+        } else {
+            // boxed primitives and other small values
+            return OBJECT_WEIGHT;
+        }
+    }
+
+}
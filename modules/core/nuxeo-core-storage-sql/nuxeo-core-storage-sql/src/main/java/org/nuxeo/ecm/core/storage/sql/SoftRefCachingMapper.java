@@ -99,6 +99,11 @@ public class SoftRefCachingMapper extends SoftRefCachingRowMapper implements Cac
         return mapper.query(query, queryType, queryFilter, countUpTo);
     }
 
+    @Override
+    public long queryEstimatedCount(String query, String queryType, QueryFilter queryFilter) {
+        return mapper.queryEstimatedCount(query, queryType, queryFilter);
+    }
+
     @Override
     public IterableQueryResult queryAndFetch(String query, String queryType, QueryFilter queryFilter,
             boolean distinctDocuments, Object... params) {
@@ -126,6 +131,11 @@ public class SoftRefCachingMapper extends SoftRefCachingRowMapper implements Cac
         mapper.rebuildReadAcls();
     }
 
+    @Override
+    public long getReadAclsPendingCount() {
+        return mapper.getReadAclsPendingCount();
+    }
+
     @Override
     public int getClusterNodeIdType() {
         return mapper.getClusterNodeIdType();
@@ -226,6 +226,10 @@ public class SoftRefCachingRowMapper implements RowMapper {
         if (invalidations.all) {
             clearCache();
         }
+        if (invalidations.tables != null) {
+            Set<String> tables = invalidations.tables;
+            cache.keySet().removeIf(rowId -> tables.contains(rowId.tableName));
+        }
         if (invalidations.modified != null) {
             for (RowId rowId : invalidations.modified) {
                 cacheRemove(rowId);
@@ -241,6 +241,17 @@ public class UnifiedCachingRowMapper implements RowMapper {
         return false;
     }
 
+    /** @since 11.5 */
+    protected void ehCacheRemoveTables(Set<String> tables) {
+        if (useEhCache()) {
+            for (Object key : cache.getKeys()) {
+                if (key instanceof RowId && tables.contains(((RowId) key).tableName)) {
+                    cache.remove(key);
+                }
+            }
+        }
+    }
+
     protected void ehCacheRemoveAll() {
         if (useEhCache()) {
             cache.removeAll();
@@ -335,6 +346,9 @@ public class UnifiedCachingRowMapper implements RowMapper {
         if (remoteInvals != null) {
             if (!ret.all) {
                 // only handle remote invalidations, the cache is shared and transactional
+                if (remoteInvals.tables != null) {
+                    ehCacheRemoveTables(remoteInvals.tables);
+                }
                 if (remoteInvals.modified != null) {
                     for (RowId rowId : remoteInvals.modified) {
                         cacheRemove(rowId);
@@ -24,7 +24,11 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 
 import org.nuxeo.runtime.pubsub.SerializableAccumulableInvalidations;
@@ -68,6 +72,22 @@ public class VCSInvalidations implements SerializableAccumulableInvalidations {
     /** null when empty */
     public Set<RowId> deleted;
 
+    /**
+     * Tables all of whose rows are invalidated, replacing the individual rows of these tables. null when empty.
+     * <p>
+     * Nodes not knowing this field invalidate everything instead, see {@link #writeObject}.
+     *
+     * @since 11.5
+     */
+    public Set<String> tables;
+
+    /**
+     * Time at which these invalidations were sent to other nodes, or {@code 0} if not sent.
+     *
+     * @since 11.5
+     */
+    public long time;
+
     public VCSInvalidations() {
     }
 
@@ -77,19 +97,31 @@ public class VCSInvalidations implements SerializableAccumulableInvalidations {
 
     @Override
     public boolean isEmpty() {
-        return modified == null && deleted == null && !all;
+        return modified == null && deleted == null && tables == null && !all;
     }
 
     public void clear() {
         all = false;
         modified = null;
         deleted = null;
+        tables = null;
     }
 
     protected void setAll() {
         all = true;
         modified = null;
         deleted = null;
+        tables = null;
+    }
+
+    /**
+     * Gets the number of invalidated rows and tables.
+     *
+     * @since 11.5
+     */
+    public int size() {
+        return (modified == null ? 0 : modified.size()) + (deleted == null ? 0 : deleted.size())
+                + (tables == null ? 0 : tables.size());
     }
 
     protected void checkMaxSize() {
@@ -129,25 +161,100 @@ public class VCSInvalidations implements SerializableAccumulableInvalidations {
             setAll();
             return;
         }
-        if (other.modified != null) {
-            if (modified == null) {
-                modified = new HashSet<>();
+        if (other.tables != null) {
+            for (String tableName : other.tables) {
+                addTable(tableName);
             }
-            modified.addAll(other.modified);
+        }
+        if (other.modified != null) {
+            modified = addRows(modified, other.modified);
         }
         if (other.deleted != null) {
-            if (deleted == null) {
-                deleted = new HashSet<>();
-            }
-            deleted.addAll(other.deleted);
+            deleted = addRows(deleted, other.deleted);
         }
         checkMaxSize();
     }
 
-    public void addModified(RowId rowId) {
+    /** Adds the rows not already invalidated by a table invalidation, returns the set or null if still empty. */
+    protected Set<RowId> addRows(Set<RowId> set, Set<RowId> rowIds) {
+        for (RowId rowId : rowIds) {
+            if (tables == null || !tables.contains(rowId.tableName)) {
+                if (set == null) {
+                    set = new HashSet<>();
+                }
+                set.add(rowId);
+            }
+        }
+        return set;
+    }
+
+    /**
+     * Invalidates all the rows of a table.
+     *
+     * @since 11.5
+     */
+    public void addTable(String tableName) {
         if (all) {
             return;
         }
+        if (tables == null) {
+            tables = new HashSet<>();
+        }
+        if (tables.add(tableName)) {
+            removeTablesRows();
+        }
+    }
+
+    /** Removes the rows already invalidated by a table invalidation. */
+    protected void removeTablesRows() {
+        if (modified != null) {
+            modified.removeIf(rowId -> tables.contains(rowId.tableName));
+            if (modified.isEmpty()) {
+                modified = null;
+            }
+        }
+        if (deleted != null) {
+            deleted.removeIf(rowId -> tables.contains(rowId.tableName));
+            if (deleted.isEmpty()) {
+                deleted = null;
+            }
+        }
+    }
+
+    /**
+     * Replaces the invalidated rows of the tables having more than the given number of rows by an invalidation of
+     * these whole tables.
+     *
+     * @param threshold the maximum number of rows of a table, {@code 0} to never collapse
+     * @return the number of tables collapsed
+     * @since 11.5
+     */
+    public int collapseTables(int threshold) {
+        if (all || threshold <= 0 || size() <= threshold) {
+            return 0;
+        }
+        Map<String, Integer> counts = new HashMap<>();
+        for (Set<RowId> set : Arrays.asList(modified, deleted)) {
+            if (set != null) {
+                for (RowId rowId : set) {
+                    counts.merge(rowId.tableName, Integer.valueOf(1), Integer::sum);
+                }
+            }
+        }
+        int n = 0;
+        for (Entry<String, Integer> es : counts.entrySet()) {
+            if (es.getValue().intValue() > threshold) {
+                addTable(es.getKey());
+                n++;
+            }
+        }
+        return n;
+    }
+
+    public void addModified(RowId rowId) {
+        if (all || tables != null && tables.contains(rowId.tableName)) {
+            return;
+        }
         if (modified == null) {
             modified = new HashSet<>();
         }
@@ -156,7 +263,7 @@ public class VCSInvalidations implements SerializableAccumulableInvalidations {
     }
 
     public void addDeleted(RowId rowId) {
-        if (all) {
+        if (all || tables != null && tables.contains(rowId.tableName)) {
             return;
         }
         if (deleted == null) {
@@ -177,6 +284,31 @@ public class VCSInvalidations implements SerializableAccumulableInvalidations {
         checkMaxSize();
     }
 
+    /**
+     * Writes {@link #all} as {@code true} when there are table invalidations, so that nodes of a previous version,
+     * which ignore {@link #tables}, fall back to invalidating everything instead of missing these invalidations.
+     *
+     * @since 11.5
+     */
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("all", all || tables != null);
+        fields.put("modified", modified);
+        fields.put("deleted", deleted);
+        fields.put("tables", tables);
+        fields.put("time", time);
+        out.writeFields();
+    }
+
+    /** @since 11.5 */
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        if (all && tables != null) {
+            // all was only set for nodes of a previous version, tables are never kept with all
+            all = false;
+        }
+    }
+
     // TODO do a more fine-grained serialization than using ObjectOutputStream
 
     @Override
@@ -211,6 +343,13 @@ public class VCSInvalidations implements SerializableAccumulableInvalidations {
             sb.append("deleted=");
             sb.append(deleted);
         }
+        if (tables != null) {
+            if (modified != null || deleted != null) {
+                sb.append(',');
+            }
+            sb.append("tables=");
+            sb.append(tables);
+        }
         sb.append(')');
         return sb.toString();
     }
@@ -20,16 +20,76 @@ package org.nuxeo.ecm.core.storage.sql;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.runtime.metrics.MetricsService;
 import org.nuxeo.runtime.pubsub.AbstractPubSubInvalidationsAccumulator;
 
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Gauge;
+import io.dropwizard.metrics5.Histogram;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
+
 /**
  * PubSub implementation of the VCS {@link VCSClusterInvalidator}.
+ * <p>
+ * When a coalesce window is configured, the invalidations of the commits are not sent immediately but merged, and a
+ * background thread sends them once per window. The rows invalidated several times during the window are therefore
+ * sent only once, and the commits don't pay for the sending. Other nodes see the invalidations at most one window
+ * later.
+ * <p>
+ * When a table threshold is configured, the tables having more invalidated rows than the threshold are invalidated as
+ * a whole, both in the invalidations sent and in the invalidations received before they are applied.
  *
  * @since 9.1
  */
 public class VCSPubSubInvalidator extends AbstractPubSubInvalidationsAccumulator<VCSInvalidations> implements VCSClusterInvalidator {
 
+    private static final Logger log = LogManager.getLogger(VCSPubSubInvalidator.class);
+
+    /** @since 11.5 */
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    /** @since 11.5 */
+    protected String repositoryName;
+
+    /** @since 11.5 */
+    protected int coalesceWindow;
+
+    /** @since 11.5 */
+    protected int tableThreshold;
+
+    /** Invalidations waiting to be sent, guarded by {@link #pendingLock}. @since 11.5 */
+    protected VCSInvalidations pendingInvalidations;
+
+    /** Time at which the oldest pending invalidations were added. @since 11.5 */
+    protected long pendingSince;
+
+    /** @since 11.5 */
+    protected final Object pendingLock = new Object();
+
+    /** @since 11.5 */
+    protected ScheduledExecutorService sender;
+
+    /** @since 11.5 */
+    protected Timer sendLagTimer;
+
+    /** @since 11.5 */
+    protected Histogram sentSizeHistogram;
+
+    /** @since 11.5 */
+    protected Histogram receivedLagHistogram;
+
+    /** @since 11.5 */
+    protected Counter collapsedTablesCount;
+
     @Override
     public VCSInvalidations newInvalidations() {
         return new VCSInvalidations();
@@ -37,7 +97,145 @@ public class VCSPubSubInvalidator extends AbstractPubSubInvalidationsAccumulator
 
     @Override
     public void initialize(String nodeId, RepositoryImpl repository) {
-        initialize("vcs:" + repository.getName(), nodeId);
+        RepositoryDescriptor repositoryDescriptor = repository.getRepositoryDescriptor();
+        initialize(nodeId, repository.getName(), repositoryDescriptor.getClusterInvalidationsCoalesceWindow(),
+                repositoryDescriptor.getClusterInvalidationsTableThreshold());
+    }
+
+    /**
+     * Initializes the invalidator.
+     *
+     * @param coalesceWindow the coalesce window in milliseconds, or {@code 0} to send at each commit
+     * @param tableThreshold the number of rows above which a whole table is invalidated, or {@code 0} for no limit
+     * @since 11.5
+     */
+    protected void initialize(String nodeId, String repositoryName, int coalesceWindow, int tableThreshold) {
+        this.repositoryName = repositoryName;
+        this.coalesceWindow = coalesceWindow;
+        this.tableThreshold = tableThreshold;
+        initializeMetrics();
+        pendingInvalidations = newInvalidations();
+        initialize("vcs:" + repositoryName, nodeId);
+        if (coalesceWindow > 0) {
+            sender = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "Nuxeo-VCS-Invalidations-" + repositoryName);
+                thread.setDaemon(true);
+                return thread;
+            });
+            sender.scheduleWithFixedDelay(this::sendPendingInvalidations, coalesceWindow, coalesceWindow,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** @since 11.5 */
+    protected MetricName getMetricName(String... names) {
+        return MetricName.build("nuxeo", "repositories", "repository", "invalidations")
+                         .append(MetricName.build(names))
+                         .tagged("repository", repositoryName);
+    }
+
+    /** @since 11.5 */
+    protected void initializeMetrics() {
+        sendLagTimer = registry.timer(getMetricName("sent", "lag"));
+        sentSizeHistogram = registry.histogram(getMetricName("sent", "size"));
+        receivedLagHistogram = registry.histogram(getMetricName("received", "lag"));
+        collapsedTablesCount = registry.counter(getMetricName("collapsed", "tables"));
+        MetricName gaugeName = getMetricName("pending", "size");
+        registry.remove(gaugeName);
+        registry.register(gaugeName, new Gauge<Integer>() {
+            @Override
+            public Integer getValue() {
+                synchronized (pendingLock) {
+                    return Integer.valueOf(pendingInvalidations.size());
+                }
+            }
+        });
+    }
+
+    @Override
+    public void close() {
+        if (sender != null) {
+            sender.shutdown();
+            try {
+                sender.awaitTermination(coalesceWindow, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            sender = null;
+            // don't lose the last invalidations
+            sendPendingInvalidations();
+        }
+        registry.remove(getMetricName("pending", "size"));
+        super.close();
+    }
+
+    @Override
+    public void sendInvalidations(VCSInvalidations invalidations) {
+        if (sender == null) {
+            // work on a copy, the caller's invalidations are not ours to collapse
+            VCSInvalidations copy = newInvalidations();
+            copy.add(invalidations);
+            doSendInvalidations(copy, System.nanoTime());
+            return;
+        }
+        synchronized (pendingLock) {
+            if (pendingInvalidations.isEmpty()) {
+                pendingSince = System.nanoTime();
+            }
+            pendingInvalidations.add(invalidations);
+        }
+    }
+
+    /**
+     * Sends the invalidations accumulated during the coalesce window.
+     *
+     * @since 11.5
+     */
+    protected void sendPendingInvalidations() {
+        VCSInvalidations invalidations;
+        long since;
+        synchronized (pendingLock) {
+            if (pendingInvalidations.isEmpty()) {
+                return;
+            }
+            invalidations = pendingInvalidations;
+            since = pendingSince;
+            pendingInvalidations = newInvalidations();
+        }
+        try {
+            doSendInvalidations(invalidations, since);
+        } catch (RuntimeException e) {
+            // don't kill the scheduled sender
+            log.error("Failed to send invalidations for repository: {}", repositoryName, e);
+        }
+    }
+
+    /**
+     * Sends invalidations owned by this invalidator, after collapsing their large tables.
+     *
+     * @since 11.5
+     */
+    protected void doSendInvalidations(VCSInvalidations invalidations, long since) {
+        collapsedTablesCount.inc(invalidations.collapseTables(tableThreshold));
+        invalidations.time = System.currentTimeMillis();
+        sentSizeHistogram.update(invalidations.size());
+        super.sendInvalidations(invalidations);
+        sendLagTimer.update(System.nanoTime() - since, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void receivedMessage(VCSInvalidations invalidations) {
+        if (invalidations.time > 0) {
+            receivedLagHistogram.update(Math.max(0, System.currentTimeMillis() - invalidations.time));
+        }
+        super.receivedMessage(invalidations);
+    }
+
+    @Override
+    public VCSInvalidations receiveInvalidations() {
+        VCSInvalidations invalidations = super.receiveInvalidations();
+        collapsedTablesCount.inc(invalidations.collapseTables(tableThreshold));
+        return invalidations;
     }
 
     @Override
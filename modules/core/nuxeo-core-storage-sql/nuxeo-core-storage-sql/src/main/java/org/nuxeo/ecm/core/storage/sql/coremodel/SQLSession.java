@@ -56,10 +56,12 @@ import org.nuxeo.ecm.core.model.Document;
 import org.nuxeo.ecm.core.model.Repository;
 import org.nuxeo.ecm.core.query.QueryFilter;
 import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.model.PartitionTransformer;
 import org.nuxeo.ecm.core.schema.DocumentType;
 import org.nuxeo.ecm.core.schema.SchemaManager;
 import org.nuxeo.ecm.core.storage.sql.ACLRow;
 import org.nuxeo.ecm.core.storage.sql.Model;
+import org.nuxeo.ecm.core.storage.sql.Model.IdType;
 import org.nuxeo.ecm.core.storage.sql.Node;
 import org.nuxeo.ecm.core.storage.sql.SessionImpl;
 import org.nuxeo.runtime.api.Framework;
@@ -155,6 +157,17 @@ public class SQLSession extends BaseSession {
         return session.scroll(scrollId);
     }
 
+    @Override
+    public String getRandomIdTemplate() {
+        // string ids are random UUIDs, long ids come from a sequence
+        return session.getModel().getIdType() == IdType.STRING ? PartitionTransformer.UUID_TEMPLATE : null;
+    }
+
+    @Override
+    public boolean isNullSortedFirst(boolean descending) {
+        return session.isNullSortedFirst(descending);
+    }
+
     @Override
     public Document getDocumentByUUID(String uuid) throws DocumentNotFoundException {
         /*
@@ -352,6 +365,19 @@ public class SQLSession extends BaseSession {
     protected static final Pattern ORDER_BY_PATH_DESC = Pattern.compile(
             "(.*)\\s+ORDER\\s+BY\\s+" + NXQL.ECM_PATH + "\\s+DESC\\s*$", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 
+    @Override
+    public long queryEstimatedCount(String query, String queryType, QueryFilter queryFilter) {
+        // ORDER BY ecm:path is done by hand and is not needed for a count
+        Matcher matcher = ORDER_BY_PATH_ASC.matcher(query);
+        if (!matcher.matches()) {
+            matcher = ORDER_BY_PATH_DESC.matcher(query);
+        }
+        if (matcher.matches()) {
+            query = matcher.group(1);
+        }
+        return session.queryEstimatedCount(query, queryType, queryFilter);
+    }
+
     @Override
     public PartialList<Document> query(String query, String queryType, QueryFilter queryFilter, long countUpTo) {
         // do ORDER BY ecm:path by hand in SQLQueryResult as we can't
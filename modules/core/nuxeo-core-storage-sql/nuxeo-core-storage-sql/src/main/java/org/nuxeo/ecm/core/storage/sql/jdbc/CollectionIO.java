@@ -47,4 +47,11 @@ public interface CollectionIO {
     void executeInserts(PreparedStatement ps, List<RowUpdate> rowus, List<Column> columns, boolean supportsBatchUpdates,
             String sql, JDBCConnection connection) throws SQLException;
 
+    /**
+     * Gets the values of the rows that {@link #executeInserts} would insert, in the order of the columns.
+     *
+     * @since 11.5
+     */
+    List<Serializable[]> getInsertValues(List<RowUpdate> rowus, List<Column> columns);
+
 }
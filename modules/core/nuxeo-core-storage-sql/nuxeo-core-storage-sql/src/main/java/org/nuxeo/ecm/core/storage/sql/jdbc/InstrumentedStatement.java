@@ -0,0 +1,447 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLWarning;
+import java.sql.Statement;
+
+/**
+ * A statement whose executions are recorded by a {@link JDBCInstrumentation}.
+ * <p>
+ * The execution of a query is recorded when its result set has been read or closed, so that its row count is known.
+ *
+ * @since 11.5
+ */
+public class InstrumentedStatement implements Statement {
+
+    protected final InstrumentedConnection connection;
+
+    protected final Statement statement;
+
+    protected final JDBCInstrumentation instrumentation;
+
+    /** The SQL of the prepared statement, or of the last batch for a plain statement. */
+    protected String sql;
+
+    /** The SQL of the last {@code execute} whose result set has not been retrieved yet. */
+    protected String pendingSql;
+
+    protected long pendingDuration;
+
+    public InstrumentedStatement(InstrumentedConnection connection, Statement statement, String sql) {
+        this.connection = connection;
+        this.statement = statement;
+        this.sql = sql;
+        instrumentation = connection.instrumentation;
+    }
+
+    /**
+     * Records an execution returning a result set, whose row count is recorded when it has been read.
+     */
+    protected ResultSet executed(String executedSql, long start, ResultSet rs) {
+        long duration = System.nanoTime() - start;
+        recordPending();
+        if (executedSql == null || rs == null) {
+            return rs;
+        }
+        return new InstrumentedResultSet(this, rs, executedSql, duration);
+    }
+
+    /**
+     * Records an execution returning a row count.
+     */
+    protected void executed(String executedSql, long start, long rowCount) {
+        long duration = System.nanoTime() - start;
+        recordPending();
+        if (executedSql != null) {
+            instrumentation.executed(executedSql, duration, rowCount);
+        }
+    }
+
+    /**
+     * Records an {@code execute}. If it returned a result set, the execution is recorded when the result set
+     * retrieved by {@link #getResultSet} has been read.
+     */
+    protected boolean executed(String executedSql, long start, boolean hasResultSet) {
+        if (!hasResultSet) {
+            executed(executedSql, start, -1);
+            return false;
+        }
+        long duration = System.nanoTime() - start;
+        recordPending();
+        pendingSql = executedSql;
+        pendingDuration = duration;
+        return true;
+    }
+
+    /**
+     * Records the last {@code execute} if its result set was not retrieved.
+     */
+    protected void recordPending() {
+        if (pendingSql != null) {
+            instrumentation.executed(pendingSql, pendingDuration, -1);
+            pendingSql = null;
+        }
+    }
+
+    protected static long getRowCount(int[] counts) {
+        long count = 0;
+        for (int c : counts) {
+            count += Math.max(c, 0);
+        }
+        return count;
+    }
+
+    protected static long getRowCount(long[] counts) {
+        long count = 0;
+        for (long c : counts) {
+            count += Math.max(c, 0);
+        }
+        return count;
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : statement.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || statement.isWrapperFor(iface);
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return connection;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        recordPending();
+        statement.close();
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        long start = System.nanoTime();
+        return executed(sql, start, statement.executeQuery(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        long start = System.nanoTime();
+        int count = statement.executeUpdate(sql);
+        executed(sql, start, count);
+        return count;
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        long start = System.nanoTime();
+        int count = statement.executeUpdate(sql, autoGeneratedKeys);
+        executed(sql, start, count);
+        return count;
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        long start = System.nanoTime();
+        int count = statement.executeUpdate(sql, columnIndexes);
+        executed(sql, start, count);
+        return count;
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        long start = System.nanoTime();
+        int count = statement.executeUpdate(sql, columnNames);
+        executed(sql, start, count);
+        return count;
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql) throws SQLException {
+        long start = System.nanoTime();
+        long count = statement.executeLargeUpdate(sql);
+        executed(sql, start, count);
+        return count;
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        long start = System.nanoTime();
+        long count = statement.executeLargeUpdate(sql, autoGeneratedKeys);
+        executed(sql, start, count);
+        return count;
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        long start = System.nanoTime();
+        long count = statement.executeLargeUpdate(sql, columnIndexes);
+        executed(sql, start, count);
+        return count;
+    }
+
+    @Override
+    public long executeLargeUpdate(String sql, String[] columnNames) throws SQLException {
+        long start = System.nanoTime();
+        long count = statement.executeLargeUpdate(sql, columnNames);
+        executed(sql, start, count);
+        return count;
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        long start = System.nanoTime();
+        return executed(sql, start, statement.execute(sql));
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        long start = System.nanoTime();
+        return executed(sql, start, statement.execute(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        long start = System.nanoTime();
+        return executed(sql, start, statement.execute(sql, columnIndexes));
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        long start = System.nanoTime();
+        return executed(sql, start, statement.execute(sql, columnNames));
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        ResultSet rs = statement.getResultSet();
+        if (pendingSql == null || rs == null) {
+            return rs;
+        }
+        String executedSql = pendingSql;
+        pendingSql = null;
+        return new InstrumentedResultSet(this, rs, executedSql, pendingDuration);
+    }
+
+    @Override
+    public boolean getMoreResults() throws SQLException {
+        recordPending();
+        return statement.getMoreResults();
+    }
+
+    @Override
+    public boolean getMoreResults(int current) throws SQLException {
+        recordPending();
+        return statement.getMoreResults(current);
+    }
+
+    @Override
+    public void addBatch(String sql) throws SQLException {
+        statement.addBatch(sql);
+        this.sql = sql;
+    }
+
+    @Override
+    public int[] executeBatch() throws SQLException {
+        long start = System.nanoTime();
+        int[] counts = statement.executeBatch();
+        executed(sql, start, getRowCount(counts));
+        return counts;
+    }
+
+    @Override
+    public long[] executeLargeBatch() throws SQLException {
+        long start = System.nanoTime();
+        long[] counts = statement.executeLargeBatch();
+        executed(sql, start, getRowCount(counts));
+        return counts;
+    }
+
+    @Override
+    public int getMaxFieldSize() throws SQLException {
+        return statement.getMaxFieldSize();
+    }
+
+    @Override
+    public void setMaxFieldSize(int max) throws SQLException {
+        statement.setMaxFieldSize(max);
+    }
+
+    @Override
+    public int getMaxRows() throws SQLException {
+        return statement.getMaxRows();
+    }
+
+    @Override
+    public void setMaxRows(int max) throws SQLException {
+        statement.setMaxRows(max);
+    }
+
+    @Override
+    public void setEscapeProcessing(boolean enable) throws SQLException {
+        statement.setEscapeProcessing(enable);
+    }
+
+    @Override
+    public int getQueryTimeout() throws SQLException {
+        return statement.getQueryTimeout();
+    }
+
+    @Override
+    public void setQueryTimeout(int seconds) throws SQLException {
+        statement.setQueryTimeout(seconds);
+    }
+
+    @Override
+    public void cancel() throws SQLException {
+        statement.cancel();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return statement.getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        statement.clearWarnings();
+    }
+
+    @Override
+    public void setCursorName(String name) throws SQLException {
+        statement.setCursorName(name);
+    }
+
+    @Override
+    public int getUpdateCount() throws SQLException {
+        return statement.getUpdateCount();
+    }
+
+    @Override
+    public void setFetchDirection(int direction) throws SQLException {
+        statement.setFetchDirection(direction);
+    }
+
+    @Override
+    public int getFetchDirection() throws SQLException {
+        return statement.getFetchDirection();
+    }
+
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        statement.setFetchSize(rows);
+    }
+
+    @Override
+    public int getFetchSize() throws SQLException {
+        return statement.getFetchSize();
+    }
+
+    @Override
+    public int getResultSetConcurrency() throws SQLException {
+        return statement.getResultSetConcurrency();
+    }
+
+    @Override
+    public int getResultSetType() throws SQLException {
+        return statement.getResultSetType();
+    }
+
+    @Override
+    public void clearBatch() throws SQLException {
+        statement.clearBatch();
+    }
+
+    @Override
+    public ResultSet getGeneratedKeys() throws SQLException {
+        return statement.getGeneratedKeys();
+    }
+
+    @Override
+    public int getResultSetHoldability() throws SQLException {
+        return statement.getResultSetHoldability();
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return statement.isClosed();
+    }
+
+    @Override
+    public void setPoolable(boolean poolable) throws SQLException {
+        statement.setPoolable(poolable);
+    }
+
+    @Override
+    public boolean isPoolable() throws SQLException {
+        return statement.isPoolable();
+    }
+
+    @Override
+    public void closeOnCompletion() throws SQLException {
+        statement.closeOnCompletion();
+    }
+
+    @Override
+    public boolean isCloseOnCompletion() throws SQLException {
+        return statement.isCloseOnCompletion();
+    }
+
+    @Override
+    public long getLargeUpdateCount() throws SQLException {
+        return statement.getLargeUpdateCount();
+    }
+
+    @Override
+    public void setLargeMaxRows(long max) throws SQLException {
+        statement.setLargeMaxRows(max);
+    }
+
+    @Override
+    public long getLargeMaxRows() throws SQLException {
+        return statement.getLargeMaxRows();
+    }
+
+    @Override
+    public String enquoteLiteral(String val) throws SQLException {
+        return statement.enquoteLiteral(val);
+    }
+
+    @Override
+    public String enquoteIdentifier(String identifier, boolean alwaysQuote) throws SQLException {
+        return statement.enquoteIdentifier(identifier, alwaysQuote);
+    }
+
+    @Override
+    public boolean isSimpleIdentifier(String identifier) throws SQLException {
+        return statement.isSimpleIdentifier(identifier);
+    }
+
+    @Override
+    public String enquoteNCharLiteral(String val) throws SQLException {
+        return statement.enquoteNCharLiteral(val);
+    }
+
+}
@@ -77,6 +77,18 @@ public class JDBCConnection {
 
     protected boolean setClientInfo;
 
+    /** @since 11.5 */
+    protected JDBCInstrumentation instrumentation;
+
+    /** @since 11.5 */
+    protected ReadReplicaRouter readReplicaRouter;
+
+    /** The read replica of {@link #replicaConnection}. @since 11.5 */
+    protected ReadReplicaRouter.ReplicaConnection replica;
+
+    /** The connection to a read replica, opened when first needed. @since 11.5 */
+    protected Connection replicaConnection;
+
     /**
      * Creates a new Mapper.
      *
@@ -110,6 +122,113 @@ public class JDBCConnection {
         return new Identification(null, "" + instanceNumber);
     }
 
+    /**
+     * Sets the instrumentation of the statements executed by this connection.
+     *
+     * @since 11.5
+     */
+    public void setInstrumentation(JDBCInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+        if (instrumentation != null && connection != null) {
+            connection = instrumentation.wrap(connection);
+        }
+    }
+
+    /**
+     * Sets the router of the read-only queries to read replicas.
+     *
+     * @since 11.5
+     */
+    public void setReadReplicaRouter(ReadReplicaRouter readReplicaRouter) {
+        this.readReplicaRouter = readReplicaRouter;
+    }
+
+    /**
+     * Records that something is written to the primary, so that the next queries of the transaction stay on the
+     * primary.
+     *
+     * @since 11.5
+     */
+    protected void markWritten() {
+        if (readReplicaRouter != null) {
+            readReplicaRouter.markWritten();
+        }
+    }
+
+    /**
+     * Checks if the current read-only query may be routed to a read replica.
+     *
+     * @since 11.5
+     */
+    protected boolean canRouteToReplica() {
+        return readReplicaRouter != null && readReplicaRouter.canRoute();
+    }
+
+    /**
+     * Gets a connection to a read replica for a read-only query, if the query can be routed to one.
+     * <p>
+     * The connection is kept open for the next queries, but dropped once its replica lags too much.
+     *
+     * @return the replica connection, or {@code null} if the primary connection must be used
+     * @since 11.5
+     */
+    protected Connection getReplicaConnection() {
+        if (!canRouteToReplica()) {
+            return null;
+        }
+        if (replica != null && !replica.isUsable()) {
+            closeReplicaConnection();
+        }
+        if (replica == null) {
+            replica = readReplicaRouter.getConnection();
+            if (replica == null) {
+                return null;
+            }
+            replicaConnection = replica.getConnection();
+            if (instrumentation != null) {
+                replicaConnection = instrumentation.wrap(replicaConnection);
+            }
+        }
+        return replicaConnection;
+    }
+
+    /**
+     * Runs a read-only query on a read replica if it can be routed to one, otherwise on the primary connection.
+     * <p>
+     * If the query fails on the replica, the replica connection is dropped and the query is run again on the primary.
+     *
+     * @param routable whether the query may be routed to a read replica
+     * @since 11.5
+     */
+    protected <T> T runReadOnly(boolean routable, FunctionSQLException<Connection, T> query) throws SQLException {
+        Connection queryConnection = routable ? getReplicaConnection() : null;
+        if (queryConnection != null) {
+            try {
+                T result = query.apply(queryConnection);
+                readReplicaRouter.routed();
+                return result;
+            } catch (SQLException e) {
+                log.warn("Query failed on read replica: " + replica + ", using the primary: " + e);
+                log.debug(e, e);
+                closeReplicaConnection();
+            }
+        }
+        return query.apply(connection);
+    }
+
+    /** @since 11.5 */
+    protected void closeReplicaConnection() {
+        if (replicaConnection != null) {
+            try {
+                replicaConnection.close();
+            } catch (SQLException e) {
+                log.error(e, e);
+            }
+        }
+        replica = null;
+        replicaConnection = null;
+    }
+
     protected void countExecute() {
         if (countExecutes) {
             executeCount++;
@@ -129,6 +248,9 @@ public class JDBCConnection {
         try {
             String dataSourceName = getDataSourceName(getRepositoryName());
             connection = ConnectionHelper.getConnection(dataSourceName);
+            if (instrumentation != null) {
+                connection = instrumentation.wrap(connection);
+            }
             if (setClientInfo) {
                 // log the mapper number (m=123)
                 connection.setClientInfo(APPLICATION_NAME, "nuxeo m=" + instanceNumber);
@@ -141,6 +263,7 @@ public class JDBCConnection {
     }
 
     public void closeConnection() {
+        closeReplicaConnection();
         if (connection != null) {
             try {
                 try {
@@ -173,4 +296,20 @@ public class JDBCConnection {
         }
     }
 
+    /**
+     * @since 11.5
+     */
+    @FunctionalInterface
+    protected interface FunctionSQLException<T, R> {
+
+        /**
+         * Applies this function to the given argument.
+         *
+         * @param t the function argument
+         * @return the function result
+         */
+        R apply(T t) throws SQLException;
+
+    }
+
 }
@@ -0,0 +1,331 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Pattern;
+
+import javax.naming.NamingException;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.storage.sql.jdbc.dialect.Dialect;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Histogram;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import io.dropwizard.metrics5.Timer;
+
+/**
+ * Instrumentation of the JDBC statements executed by the mappers of a repository.
+ * <p>
+ * The connections of the mappers are wrapped in delegating JDBC objects so that each execution of a statement is
+ * timed and its row count recorded, per statement shape. The shape of a statement is its SQL in which lists of
+ * parameters are collapsed, so that selects by a variable number of ids share the same shape. Each shape has a timer
+ * and a row count histogram in the metrics registry, tagged with a shape id digested from its SQL;
+ * {@link #getStatementsSummary} maps the ids to their SQL.
+ * <p>
+ * The number of round-trips of each transaction is recorded in a histogram. A transaction that executes many times the
+ * same single-row select is flagged as a possible N+1 pattern, which usually means that a loop is missing a batched
+ * fetch.
+ *
+ * @since 11.5
+ */
+public class JDBCInstrumentation {
+
+    private static final Logger log = LogManager.getLogger(JDBCInstrumentation.class);
+
+    public static final int DEFAULT_MAX_STATEMENTS = 500;
+
+    public static final int DEFAULT_N_PLUS_ONE_THRESHOLD = 50;
+
+    /** Shape used for all the statements once the maximum number of shapes is reached. */
+    protected static final String OTHER_SHAPE = "(other)";
+
+    /** Lists of two or more parameters. */
+    protected static final Pattern PARAMETERS_LIST = Pattern.compile("\\?(\\s*,\\s*\\?)+");
+
+    /** Statistics about a statement shape. */
+    public static class StatementStats {
+
+        public final String id;
+
+        public final String sql;
+
+        protected final Timer timer;
+
+        protected final Histogram rows;
+
+        protected final LongAdder totalNanos = new LongAdder();
+
+        protected final LongAdder nPlusOneCount = new LongAdder();
+
+        protected final boolean select;
+
+        protected StatementStats(String id, String sql, Timer timer, Histogram rows) {
+            this.id = id;
+            this.sql = sql;
+            this.timer = timer;
+            this.rows = rows;
+            select = sql.regionMatches(true, 0, "SELECT", 0, 6);
+        }
+
+        public long getCount() {
+            return timer.getCount();
+        }
+
+        public long getTotalMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(totalNanos.sum());
+        }
+
+        public long getNPlusOneCount() {
+            return nPlusOneCount.sum();
+        }
+    }
+
+    /** Statistics about the statements executed in a transaction. */
+    protected class TransactionStats implements Synchronization {
+
+        protected int roundTrips;
+
+        protected final Map<StatementStats, int[]> singleRowSelects = new HashMap<>();
+
+        protected synchronized void executed(StatementStats stats, long rowCount) {
+            roundTrips++;
+            if (stats.select && rowCount <= 1) {
+                singleRowSelects.computeIfAbsent(stats, k -> new int[1])[0]++;
+            }
+        }
+
+        @Override
+        public void beforeCompletion() {
+            // nothing to do
+        }
+
+        @Override
+        public synchronized void afterCompletion(int status) {
+            transactionCompleted(this);
+        }
+    }
+
+    protected final String repositoryName;
+
+    protected final int maxStatements;
+
+    protected final int nPlusOneThreshold;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Histogram roundTripsHistogram;
+
+    protected final Counter nPlusOneCounter;
+
+    /** Statistics by actual SQL, bounded to avoid keeping all the variants of parameter lists. */
+    protected final Map<String, StatementStats> statsBySql = new ConcurrentHashMap<>();
+
+    protected final Map<String, StatementStats> statsByShape = new ConcurrentHashMap<>();
+
+    public JDBCInstrumentation(String repositoryName, int maxStatements, int nPlusOneThreshold) {
+        this.repositoryName = repositoryName;
+        this.maxStatements = maxStatements;
+        this.nPlusOneThreshold = nPlusOneThreshold;
+        roundTripsHistogram = registry.histogram(getMetricName("transaction", "roundtrips"));
+        nPlusOneCounter = registry.counter(getMetricName("nplusone"));
+    }
+
+    protected MetricName getMetricName(String... names) {
+        return MetricName.build("nuxeo", "repositories", "repository", "jdbc")
+                         .append(MetricName.build(names))
+                         .tagged("repository", repositoryName);
+    }
+
+    /**
+     * Gets the shape of a SQL statement.
+     */
+    protected static String getShape(String sql) {
+        return PARAMETERS_LIST.matcher(sql).replaceAll("?...");
+    }
+
+    protected StatementStats getStatementStats(String sql) {
+        StatementStats stats = statsBySql.get(sql);
+        if (stats == null) {
+            String shape = getShape(sql);
+            stats = statsByShape.get(shape);
+            if (stats == null) {
+                if (statsByShape.size() >= maxStatements) {
+                    shape = OTHER_SHAPE;
+                }
+                stats = statsByShape.computeIfAbsent(shape, this::newStatementStats);
+            }
+            if (statsBySql.size() < maxStatements * 10) {
+                statsBySql.put(sql, stats);
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Gets the id of a statement shape, a digest of its SQL.
+     */
+    protected static String getShapeId(String shape) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new NuxeoException(e);
+        }
+        return Dialect.toHexString(digest.digest(shape.getBytes(UTF_8))).substring(0, 16);
+    }
+
+    protected StatementStats newStatementStats(String shape) {
+        String id = getShapeId(shape);
+        MetricName name = getMetricName("statement").tagged("statement", id);
+        Timer timer = registry.timer(name.resolve("timer"));
+        Histogram rows = registry.histogram(name.resolve("rows"));
+        return new StatementStats(id, shape, timer, rows);
+    }
+
+    /**
+     * Records the execution of a statement.
+     *
+     * @param sql the SQL of the statement
+     * @param durationNanos the time taken by the execution
+     * @param rowCount the number of rows returned or updated, or {@code -1} if unknown
+     */
+    public void executed(String sql, long durationNanos, long rowCount) {
+        StatementStats stats = getStatementStats(sql);
+        stats.timer.update(durationNanos, TimeUnit.NANOSECONDS);
+        stats.totalNanos.add(durationNanos);
+        if (rowCount >= 0) {
+            stats.rows.update(rowCount);
+        }
+        TransactionStats transactionStats = getTransactionStats();
+        if (transactionStats != null) {
+            transactionStats.executed(stats, rowCount);
+        }
+    }
+
+    /**
+     * Gets the statistics of the current transaction, registering them if needed.
+     *
+     * @return the statistics, or {@code null} if there is no active transaction
+     */
+    protected TransactionStats getTransactionStats() {
+        TransactionSynchronizationRegistry synchronizationRegistry;
+        try {
+            synchronizationRegistry = TransactionHelper.lookupSynchronizationRegistry();
+        } catch (NamingException e) {
+            return null;
+        }
+        if (synchronizationRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+            return null;
+        }
+        TransactionStats transactionStats = (TransactionStats) synchronizationRegistry.getResource(this);
+        if (transactionStats == null) {
+            transactionStats = new TransactionStats();
+            synchronizationRegistry.putResource(this, transactionStats);
+            synchronizationRegistry.registerInterposedSynchronization(transactionStats);
+        }
+        return transactionStats;
+    }
+
+    protected void transactionCompleted(TransactionStats transactionStats) {
+        roundTripsHistogram.update(transactionStats.roundTrips);
+        if (nPlusOneThreshold <= 0) {
+            return;
+        }
+        transactionStats.singleRowSelects.forEach((stats, count) -> {
+            if (count[0] < nPlusOneThreshold) {
+                return;
+            }
+            nPlusOneCounter.inc();
+            stats.nPlusOneCount.increment();
+            if (stats.getNPlusOneCount() == 1) {
+                log.warn("Possible N+1 pattern in repository: {}, {} single-row selects in a transaction for: {}",
+                        repositoryName, count[0], stats.sql);
+            } else {
+                log.debug("Possible N+1 pattern in repository: {}, {} single-row selects in a transaction for: {}",
+                        repositoryName, count[0], stats.sql);
+            }
+        });
+    }
+
+    /**
+     * Gets the statistics of the statement shapes, by decreasing total execution time.
+     */
+    public List<StatementStats> getStatementsStats() {
+        List<StatementStats> list = new ArrayList<>(statsByShape.values());
+        list.sort(Comparator.comparingLong(StatementStats::getTotalMillis).reversed());
+        return list;
+    }
+
+    /**
+     * Gets a summary of the most expensive statement shapes, with their id, execution count, total time, mean time and
+     * mean row count.
+     */
+    public String getStatementsSummary(int max) {
+        StringBuilder sb = new StringBuilder();
+        List<StatementStats> list = getStatementsStats();
+        for (StatementStats stats : list.subList(0, Math.min(max, list.size()))) {
+            double meanMillis = stats.timer.getSnapshot().getMean() / TimeUnit.MILLISECONDS.toNanos(1);
+            sb.append(String.format("%s count=%d total=%dms mean=%.3fms rows=%.1f nplusone=%d: %s\n", stats.id,
+                    stats.getCount(), stats.getTotalMillis(), meanMillis, stats.rows.getSnapshot().getMean(),
+                    stats.getNPlusOneCount(), stats.sql));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Wraps a connection so that the statements it executes are instrumented.
+     */
+    public Connection wrap(Connection connection) {
+        return new InstrumentedConnection(connection, this);
+    }
+
+    /**
+     * Gets the actual connection wrapped by an instrumented connection.
+     *
+     * @return the wrapped connection, or the connection itself if it's not instrumented
+     */
+    public static Connection getDelegate(Connection connection) {
+        return connection instanceof InstrumentedConnection ? ((InstrumentedConnection) connection).getDelegate()
+                : connection;
+    }
+
+}
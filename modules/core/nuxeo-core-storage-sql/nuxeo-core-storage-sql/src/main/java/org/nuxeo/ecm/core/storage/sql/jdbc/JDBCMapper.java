@@ -25,6 +25,7 @@ import static org.nuxeo.ecm.core.api.ScrollResultImpl.emptyResult;
 
 import java.io.Serializable;
 import java.sql.Array;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLDataException;
@@ -56,6 +57,7 @@ import org.nuxeo.ecm.core.api.ScrollResult;
 import org.nuxeo.ecm.core.api.ScrollResultImpl;
 import org.nuxeo.ecm.core.blob.DocumentBlobManager;
 import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.core.storage.sql.ColumnType;
 import org.nuxeo.ecm.core.storage.sql.ColumnType.WrappedId;
 import org.nuxeo.ecm.core.storage.sql.Mapper;
@@ -105,6 +107,8 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         super(model, sqlInfo, clusterInvalidator, repository.getInvalidationsPropagator());
         this.pathResolver = pathResolver;
         this.repository = repository;
+        setInstrumentation(repository.getJDBCInstrumentation());
+        setReadReplicaRouter(repository.getReadReplicaRouter());
         queryMakerService = Framework.getService(QueryMakerService.class);
     }
 
@@ -376,6 +380,20 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         return null;
     }
 
+    /**
+     * Builds a query, using the query cache of the repository for NXQL queries if it is enabled.
+     *
+     * @since 11.5
+     */
+    protected QueryMaker.Query buildQuery(QueryMaker queryMaker, PathResolver pathResolver, String query,
+            QueryFilter queryFilter, Object... params) {
+        NXQLQueryCache queryCache = repository.getQueryCache();
+        if (queryCache == null || !NXQL.NXQL.equals(queryMaker.getName())) {
+            return queryMaker.buildQuery(sqlInfo, model, pathResolver, query, queryFilter, params);
+        }
+        return queryCache.buildQuery(queryMaker, sqlInfo, model, pathResolver, query, queryFilter, params);
+    }
+
     protected void prepareUserReadAcls(QueryFilter queryFilter) {
         String sql = dialect.getPrepareUserReadAclsSql();
         Serializable principals = queryFilter.getPrincipals();
@@ -397,6 +415,87 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         }
     }
 
+    /**
+     * Gets the ids of the read acls of the principals of a query filter, from the user read acls cache that must be
+     * prepared.
+     *
+     * @return the read acl ids, or {@code null} if they cannot be listed
+     * @since 11.5
+     */
+    protected String[] getUserReadAclIds(QueryFilter queryFilter) {
+        String sql = dialect.getUserReadAclIdsSql();
+        if (sql == null) {
+            return null;
+        }
+        Serializable principals = queryFilter.getPrincipals();
+        if (!dialect.supportsArrays()) {
+            principals = String.join(Dialect.ARRAY_SEP, (String[]) principals);
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            if (logger.isLogEnabled()) {
+                logger.logSQL(sql, Collections.singleton(principals));
+            }
+            setToPreparedStatement(ps, 1, principals);
+            try (ResultSet rs = ps.executeQuery()) {
+                countExecute();
+                List<String> readAclIds = new ArrayList<>();
+                while (rs.next()) {
+                    readAclIds.add(rs.getString(1));
+                }
+                return readAclIds.toArray(new String[0]);
+            }
+        } catch (SQLException e) {
+            throw new NuxeoException("Failed to get user read acls", e);
+        }
+    }
+
+    /**
+     * A read-only query, run on the primary or on a read replica.
+     *
+     * @since 11.5
+     */
+    @FunctionalInterface
+    protected interface ReadOnlyQuery<T> {
+
+        /**
+         * Runs the query.
+         *
+         * @param queryConnection the connection on which to run the query
+         * @param queryFilter the query filter to use, holding the read acl ids of its principals on a read replica
+         * @param replica whether the connection is to a read replica
+         * @return the query result
+         */
+        T run(Connection queryConnection, QueryFilter queryFilter, boolean replica) throws SQLException;
+
+    }
+
+    /**
+     * Runs a read-only query on a read replica if the query can be routed to one, otherwise on the primary connection.
+     * <p>
+     * The user read acls cache is prepared on the primary if needed. Its tables are unlogged, so they cannot be read on
+     * a replica: the ids of the read acls of the user are then listed on the primary and bound to the query run on the
+     * replica.
+     *
+     * @since 11.5
+     */
+    protected <T> T runReadOnlyQuery(QueryFilter queryFilter, ReadOnlyQuery<T> query) throws SQLException {
+        boolean routable = true;
+        QueryFilter replicaQueryFilter = queryFilter;
+        if (dialect.needsPrepareUserReadAcls() && queryFilter.getPrincipals() != null) {
+            prepareUserReadAcls(queryFilter);
+            String[] readAclIds = canRouteToReplica() ? getUserReadAclIds(queryFilter) : null;
+            if (readAclIds == null) {
+                routable = false;
+            } else {
+                replicaQueryFilter = QueryFilter.withReadAclIds(queryFilter, readAclIds);
+            }
+        }
+        QueryFilter routedQueryFilter = replicaQueryFilter;
+        return runReadOnly(routable, queryConnection -> queryConnection == connection
+                ? query.run(queryConnection, queryFilter, false)
+                : query.run(queryConnection, routedQueryFilter, true));
+    }
+
     @Override
     public PartialList<Serializable> query(String query, String queryType, QueryFilter queryFilter,
             boolean countTotal) {
@@ -415,22 +514,74 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         return result;
     }
 
+    @Override
+    public long queryEstimatedCount(String query, String queryType, QueryFilter queryFilter) {
+        QueryMaker queryMaker = findQueryMaker(queryType);
+        if (queryMaker == null) {
+            throw new NuxeoException("No QueryMaker accepts query: " + queryType + ": " + query);
+        }
+        try {
+            return runReadOnlyQuery(queryFilter, (queryConnection, filter, replica) -> Long.valueOf(
+                    doQueryEstimatedCount(queryConnection, queryMaker, query, filter))).longValue();
+        } catch (SQLException e) {
+            throw new NuxeoException("Invalid query: " + query, e, SC_BAD_REQUEST);
+        }
+    }
+
+    /** @since 11.5 */
+    protected long doQueryEstimatedCount(Connection queryConnection, QueryMaker queryMaker, String query,
+            QueryFilter queryFilter) throws SQLException {
+        QueryMaker.Query q = buildQuery(queryMaker, pathResolver, query, queryFilter);
+        if (q == null) {
+            // conflicting clauses
+            return 0;
+        }
+        String sql = dialect.getEstimatedRowCountSql(q.selectInfo.sql);
+        if (sql == null) {
+            return -1;
+        }
+        if (logger.isLogEnabled()) {
+            logger.logSQL(sql, q.selectParams);
+        }
+        try (PreparedStatement ps = queryConnection.prepareStatement(sql)) {
+            int i = 1;
+            for (Serializable object : q.selectParams) {
+                setToPreparedStatement(ps, i++, object);
+            }
+            try (ResultSet rs = ps.executeQuery()) {
+                countExecute();
+                long count = dialect.getEstimatedRowCount(rs);
+                if (logger.isLogEnabled()) {
+                    logger.log("  -> estimated " + count);
+                }
+                return count;
+            }
+        }
+    }
+
     // queryFilter used for principals and permissions
     @Override
     public IterableQueryResult queryAndFetch(String query, String queryType, QueryFilter queryFilter,
             boolean distinctDocuments, Object... params) {
-        if (dialect.needsPrepareUserReadAcls()) {
-            prepareUserReadAcls(queryFilter);
-        }
         QueryMaker queryMaker = findQueryMaker(queryType);
         if (queryMaker == null) {
             throw new NuxeoException("No QueryMaker accepts query: " + queryType + ": " + query);
         }
-        query = computeDistinctDocuments(query, distinctDocuments);
+        String distinctQuery = computeDistinctDocuments(query, distinctDocuments);
         try {
-            return new ResultSetQueryResult(queryMaker, query, queryFilter, pathResolver, this, params);
+            return runReadOnlyQuery(queryFilter, (queryConnection, filter, replica) -> {
+                if (!replica) {
+                    return new ResultSetQueryResult(queryMaker, distinctQuery, filter, pathResolver, this,
+                            queryConnection, params);
+                }
+                // fetch everything while on the replica, it may be dropped before the result is iterated
+                PartialList<Map<String, Serializable>> maps = doQueryProjection(queryConnection, queryMaker,
+                        distinctQuery, QueryFilter.withoutLimitOffset(filter), 0,
+                        (info, rs) -> info.mapMaker.makeMap(rs), params);
+                return new PartialListQueryResult(maps);
+            });
         } catch (SQLException e) {
-            throw new NuxeoException("Invalid query: " + queryType + ": " + query, e, SC_BAD_REQUEST);
+            throw new NuxeoException("Invalid query: " + queryType + ": " + distinctQuery, e, SC_BAD_REQUEST);
         }
     }
 
@@ -461,14 +612,23 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
 
     protected <T> PartialList<T> queryProjection(String query, String queryType, QueryFilter queryFilter,
             long countUpTo, BiFunctionSQLException<SQLInfoSelect, ResultSet, T> extractor, Object... params) {
-        if (dialect.needsPrepareUserReadAcls()) {
-            prepareUserReadAcls(queryFilter);
-        }
         QueryMaker queryMaker = findQueryMaker(queryType);
         if (queryMaker == null) {
             throw new NuxeoException("No QueryMaker accepts query: " + queryType + ": " + query);
         }
-        QueryMaker.Query q = queryMaker.buildQuery(sqlInfo, model, pathResolver, query, queryFilter, params);
+        try {
+            return runReadOnlyQuery(queryFilter, (queryConnection, filter, replica) -> doQueryProjection(
+                    queryConnection, queryMaker, query, filter, countUpTo, extractor, params));
+        } catch (SQLException e) {
+            throw new NuxeoException("Invalid query: " + query, e, SC_BAD_REQUEST);
+        }
+    }
+
+    /** @since 11.5 */
+    protected <T> PartialList<T> doQueryProjection(Connection queryConnection, QueryMaker queryMaker, String query,
+            QueryFilter queryFilter, long countUpTo, BiFunctionSQLException<SQLInfoSelect, ResultSet, T> extractor,
+            Object... params) throws SQLException {
+        QueryMaker.Query q = buildQuery(queryMaker, pathResolver, query, queryFilter, params);
 
         if (q == null) {
             logger.log("Query cannot return anything due to conflicting clauses");
@@ -500,7 +660,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
             sql = dialect.addPagingClause(sql, Math.max(countUpTo + 1, limit + offset), 0);
         }
 
-        try (PreparedStatement ps = connection.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE,
+        try (PreparedStatement ps = queryConnection.prepareStatement(sql, ResultSet.TYPE_SCROLL_INSENSITIVE,
                 ResultSet.CONCUR_READ_ONLY)) {
             int i = 1;
             for (Serializable object : q.selectParams) {
@@ -558,8 +718,6 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
 
                 return new PartialList<>(projections, totalSize);
             }
-        } catch (SQLException e) {
-            throw new NuxeoException("Invalid query: " + query, e, SC_BAD_REQUEST);
         }
     }
 
@@ -594,7 +752,8 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
             } else {
                 jdbcType = dialect.getJDBCTypeAndString(ColumnType.CLOB).jdbcType;
             }
-            Array array = dialect.createArrayOf(jdbcType, (Object[]) object, connection);
+            // the statement may be on a read replica
+            Array array = dialect.createArrayOf(jdbcType, (Object[]) object, ps.getConnection());
             ps.setArray(i, array);
         } else {
             ps.setObject(i, object);
@@ -614,12 +773,12 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
 
     @Override
     public ScrollResult<String> scroll(String query, QueryFilter queryFilter, int batchSize, int keepAliveSeconds) {
-        if (!dialect.supportsScroll()) {
-            return defaultScroll(query);
-        }
         if (dialect.needsPrepareUserReadAcls()) {
             prepareUserReadAcls(queryFilter);
         }
+        if (!dialect.supportsScroll()) {
+            return defaultScroll(query, queryFilter);
+        }
         checkForTimedoutScroll();
         return scrollSearch(query, queryFilter, batchSize, keepAliveSeconds);
     }
@@ -632,7 +791,7 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
     protected ScrollResult<String> scrollSearch(String query, QueryFilter queryFilter, int batchSize,
             int keepAliveSeconds) {
         QueryMaker queryMaker = findQueryMaker("NXQL");
-        QueryMaker.Query q = queryMaker.buildQuery(sqlInfo, model, pathResolver, query, queryFilter);
+        QueryMaker.Query q = buildQuery(queryMaker, pathResolver, query, queryFilter);
         if (q == null) {
             logger.log("Query cannot return anything due to conflicting clauses");
             throw new NuxeoException("Query cannot return anything due to conflicting clauses");
@@ -726,10 +885,17 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
     }
 
     protected ScrollResult<String> defaultScroll(String query) {
+        QueryFilter queryFilter = new QueryFilter(null, null, null, null, Collections.emptyList(), 0, 0);
+        return defaultScroll(query, queryFilter);
+    }
+
+    /**
+     * @since 11.5
+     */
+    protected ScrollResult<String> defaultScroll(String query, QueryFilter queryFilter) {
         // the database has no proper support for cursor just return everything in one batch
         QueryMaker queryMaker = findQueryMaker("NXQL");
         List<String> ids;
-        QueryFilter queryFilter = new QueryFilter(null, null, null, null, Collections.emptyList(), 0, 0);
         try (IterableQueryResult ret = new ResultSetQueryResult(queryMaker, query, queryFilter, pathResolver, this)) {
             ids = new ArrayList<>((int) ret.size());
             for (Map<String, Serializable> map : ret) {
@@ -887,6 +1053,12 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         if (!dialect.supportsReadAcl()) {
             return;
         }
+        int chunkSize = repository.getRepositoryDescriptor().getReadAclUpdateChunkSize();
+        String chunkSql = chunkSize > 0 ? dialect.getUpdateReadAclsChunkSql() : null;
+        if (chunkSql != null) {
+            updateReadAclsInChunks(chunkSql, chunkSize);
+            return;
+        }
         if (log.isDebugEnabled()) {
             log.debug("updateReadAcls: updating");
         }
@@ -906,6 +1078,63 @@ public class JDBCMapper extends JDBCRowMapper implements Mapper {
         }
     }
 
+    /**
+     * Updates the read acls by chunks of at most {@code chunkSize} document modifications, until there are none left
+     * that aren't being processed by a concurrent transaction.
+     *
+     * @since 11.5
+     */
+    protected void updateReadAclsInChunks(String sql, int chunkSize) {
+        if (log.isDebugEnabled()) {
+            log.debug("updateReadAcls: updating by chunks of " + chunkSize);
+        }
+        try (PreparedStatement ps = connection.prepareStatement(sql)) {
+            int processed;
+            do {
+                long start = System.nanoTime();
+                if (logger.isLogEnabled()) {
+                    logger.logSQL(sql, Collections.singletonList(Integer.valueOf(chunkSize)));
+                }
+                ps.setInt(1, chunkSize);
+                try (ResultSet rs = ps.executeQuery()) {
+                    countExecute();
+                    rs.next();
+                    processed = rs.getInt(1);
+                }
+                if (processed > 0) {
+                    repository.readAclsChunkUpdated(processed, System.nanoTime() - start);
+                }
+                // after a partial chunk, any remaining modification is being processed by another transaction
+            } while (processed == chunkSize);
+        } catch (SQLException e) {
+            checkConcurrentUpdate(e);
+            throw new NuxeoException("Failed to update read acls", e);
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("updateReadAcls: done.");
+        }
+    }
+
+    @Override
+    public long getReadAclsPendingCount() {
+        String sql = dialect.supportsReadAcl() ? dialect.getReadAclsPendingCountSql() : null;
+        if (sql == null) {
+            return 0;
+        }
+        try (Statement st = connection.createStatement()) {
+            if (logger.isLogEnabled()) {
+                logger.log(sql);
+            }
+            try (ResultSet rs = st.executeQuery(sql)) {
+                countExecute();
+                rs.next();
+                return rs.getLong(1);
+            }
+        } catch (SQLException e) {
+            throw new NuxeoException("Failed to count pending read acls updates", e);
+        }
+    }
+
     @Override
     public void rebuildReadAcls() {
         if (!dialect.supportsReadAcl()) {
@@ -53,6 +53,7 @@ import org.nuxeo.ecm.core.storage.sql.VCSInvalidations;
 import org.nuxeo.ecm.core.storage.sql.VCSInvalidationsPropagator;
 import org.nuxeo.ecm.core.storage.sql.Model;
 import org.nuxeo.ecm.core.storage.sql.PropertyType;
+import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
 import org.nuxeo.ecm.core.storage.sql.Row;
 import org.nuxeo.ecm.core.storage.sql.RowId;
 import org.nuxeo.ecm.core.storage.sql.RowMapper;
@@ -75,6 +76,9 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
 
     public static final int DEBUG_MAX_TREE = 50;
 
+    /** @since 11.5 */
+    public static final int DEFAULT_BULK_INSERT_MIN_ROWS = 100;
+
     /** Property to determine whether collection appends delete all then re-insert, or are optimized for append. */
     public static final String COLLECTION_DELETE_BEFORE_APPEND_PROP = "org.nuxeo.vcs.list-delete-before-append";
 
@@ -92,6 +96,13 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
 
     private final CollectionIO scalarCollectionIO;
 
+    /**
+     * Minimum number of rows for which an insert uses the bulk copy protocol of the database, or 0 if disabled.
+     *
+     * @since 11.5
+     */
+    private final int bulkInsertMinRows;
+
     public JDBCRowMapper(Model model, SQLInfo sqlInfo, VCSClusterInvalidator clusterInvalidator,
             VCSInvalidationsPropagator invalidationsPropagator) {
         super(model, sqlInfo);
@@ -101,6 +112,10 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         collectionDeleteBeforeAppend = configurationService.isBooleanTrue(COLLECTION_DELETE_BEFORE_APPEND_PROP);
         aclCollectionIO = new ACLCollectionIO(collectionDeleteBeforeAppend);
         scalarCollectionIO = new ScalarCollectionIO(collectionDeleteBeforeAppend);
+        RepositoryDescriptor repositoryDescriptor = model.getRepositoryDescriptor();
+        bulkInsertMinRows = repositoryDescriptor.getBulkInsertEnabled()
+                ? Math.max(1, repositoryDescriptor.getBulkInsertMinRows())
+                : 0;
     }
 
     @Override
@@ -421,6 +436,9 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
 
     @Override
     public void write(RowBatch batch) {
+        if (!batch.isEmpty()) {
+            markWritten();
+        }
         // do deletes first to avoid violating constraint of unique child name in parent
         // when replacing a complex list element
         if (!batch.deletes.isEmpty()) {
@@ -506,9 +524,21 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         if (sql == null) {
             throw new NuxeoException("Unknown table: " + tableName);
         }
+        List<Column> columns = sqlInfo.getInsertColumns(tableName);
+        if (rows.size() >= bulkInsertMinRows && isBulkInsert(columns)) {
+            Iterator<Serializable[]> values = rows.stream().map(row -> {
+                Serializable[] array = new Serializable[columns.size()];
+                for (int i = 0; i < array.length; i++) {
+                    array[i] = row.get(columns.get(i).getKey());
+                }
+                return array;
+            }).iterator();
+            if (copyRows(tableName, columns, rows.size(), values)) {
+                return;
+            }
+        }
         boolean batched = supportsBatchUpdates && rows.size() > 1;
         String loggedSql = batched ? sql + " -- BATCHED" : sql;
-        List<Column> columns = sqlInfo.getInsertColumns(tableName);
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             int batch = 0;
             for (Iterator<Row> rowIt = rows.iterator(); rowIt.hasNext();) {
@@ -555,6 +585,12 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         String sql = sqlInfo.getInsertSql(tableName);
         List<Column> columns = sqlInfo.getInsertColumns(tableName);
         CollectionIO io = getCollectionIO(tableName);
+        if (isBulkInsert(columns)) {
+            List<Serializable[]> values = io.getInsertValues(rowus, columns);
+            if (values.size() >= bulkInsertMinRows && copyRows(tableName, columns, values.size(), values.iterator())) {
+                return;
+            }
+        }
         try (PreparedStatement ps = connection.prepareStatement(sql)) {
             io.executeInserts(ps, rowus, columns, supportsBatchUpdates, sql, this);
         } catch (SQLException e) {
@@ -563,6 +599,39 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
         }
     }
 
+    /**
+     * Checks if large inserts into the given columns should use the bulk copy protocol of the database.
+     *
+     * @since 11.5
+     */
+    protected boolean isBulkInsert(List<Column> columns) {
+        return bulkInsertMinRows > 0 && dialect.supportsCopyIn(columns);
+    }
+
+    /**
+     * Inserts rows using the bulk copy protocol of the database.
+     *
+     * @return {@code true} if the rows were inserted, or {@code false} if the bulk copy protocol is not available, in
+     *         which case nothing was inserted
+     * @since 11.5
+     */
+    protected boolean copyRows(String tableName, List<Column> columns, int count, Iterator<Serializable[]> values) {
+        Table table = sqlInfo.getDatabase().getTable(tableName);
+        try {
+            if (!dialect.copyIn(connection, table, columns, values)) {
+                return false;
+            }
+            countExecute();
+            if (logger.isLogEnabled()) {
+                logger.log("COPY " + table.getQuotedName() + " -- " + count + " rows");
+            }
+            return true;
+        } catch (SQLException e) {
+            checkConcurrentUpdate(e);
+            throw new NuxeoException("Could not copy into: " + table.getQuotedName(), e);
+        }
+    }
+
     /**
      * Updates multiple simple rows, all for the same table.
      */
@@ -952,6 +1021,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
     @Override
     public CopyResult copy(IdWithTypes source, Serializable destParentId, String destName, Row overwriteRow,
             boolean excludeSpecialChildren, boolean excludeACL) {
+        markWritten();
         // assert !model.separateMainTable; // other case not implemented
         VCSInvalidations invalidations = new VCSInvalidations();
         try {
@@ -1252,6 +1322,7 @@ public class JDBCRowMapper extends JDBCConnection implements RowMapper {
 
     @Override
     public void remove(Serializable rootId, List<NodeInfo> nodeInfos) {
+        markWritten();
         if (sqlInfo.softDeleteEnabled) {
             deleteRowsSoft(nodeInfos);
         } else {
@@ -0,0 +1,558 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Supplier;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.NuxeoPrincipal;
+import org.nuxeo.ecm.core.api.impl.FacetFilter;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.QueryParseException;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.query.sql.parser.Scanner;
+import org.nuxeo.ecm.core.query.sql.parser.sym;
+import org.nuxeo.ecm.core.storage.sql.ColumnType.WrappedId;
+import org.nuxeo.ecm.core.storage.sql.Model;
+import org.nuxeo.ecm.core.storage.sql.Session.PathResolver;
+import org.nuxeo.ecm.core.storage.sql.jdbc.QueryMaker.Query;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo.SQLInfoSelect;
+import org.nuxeo.runtime.metrics.MetricsService;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Gauge;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+import java_cup.runtime.Symbol;
+
+/**
+ * A bounded cache of the translations of NXQL queries into SQL.
+ * <p>
+ * Translations are cached by query shape: the NXQL tokens, in which the string literals compared to simple properties
+ * are replaced by placeholders, together with the query maker and the shape of the query filter (principals,
+ * permissions, read acl ids, facet filter and security policy transformers). A cached translation holds the generated
+ * SQL and a binding plan telling for each SQL parameter whether it is a constant or one of the literals of the query,
+ * so that only the literals have to be bound again for a query with the same shape.
+ * <p>
+ * The binding plan of a shape is computed by translating the query a second time with sentinel values for the
+ * literals: the SQL must be identical, and each parameter must either be identical or be exactly a sentinel. Shapes for
+ * which this is not the case are cached with their actual literals instead. Queries whose translation depends on the
+ * database content, on the time or on migration states (paths, {@code NOW()}, trash and tags) are never cached, nor are
+ * queries with per-query transformers (keyset pagination, scroll partitions), which add their own literals.
+ *
+ * @since 11.5
+ */
+public class NXQLQueryCache {
+
+    private static final Logger log = LogManager.getLogger(NXQLQueryCache.class);
+
+    public static final int DEFAULT_MAX_SIZE = 1000;
+
+    /** The sentinels use control characters that cannot be found in an actual query. */
+    protected static final String SENTINEL_PREFIX = "\u0001nxql";
+
+    protected static final String SENTINEL_SUFFIX = "\u0001";
+
+    /** System properties translated into a simple column comparison, whose literals can be parameterized. */
+    protected static final Set<String> PARAMETERIZABLE_SYSTEM_PROPERTIES = Set.of(NXQL.ECM_UUID, NXQL.ECM_PARENTID,
+            NXQL.ECM_NAME, NXQL.ECM_LIFECYCLESTATE, NXQL.ECM_VERSIONLABEL, NXQL.ECM_VERSION_VERSIONABLEID,
+            NXQL.ECM_LOCK_OWNER);
+
+    protected static final String NOW_FUNCTION = "NOW";
+
+    /** Marker for a shape that is cached with its actual literals. */
+    protected static final Translation NOT_PARAMETERIZABLE = new Translation(null, null, null, null);
+
+    /** Marker for a shape that is never cached. */
+    protected static final Translation NOT_CACHEABLE = new Translation(null, null, null, null);
+
+    protected final Cache<List<Object>, Translation> cache;
+
+    /** The transformers of the security policies, the only ones that are the same for all the queries. */
+    protected final Supplier<Collection<SQLQuery.Transformer>> policyTransformers;
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Counter hitCount;
+
+    protected final Counter missCount;
+
+    public NXQLQueryCache(String repositoryName, int maxSize) {
+        this(repositoryName, maxSize, Collections::emptyList);
+    }
+
+    public NXQLQueryCache(String repositoryName, int maxSize,
+            Supplier<Collection<SQLQuery.Transformer>> policyTransformers) {
+        this.policyTransformers = policyTransformers;
+        cache = CacheBuilder.newBuilder().maximumSize(maxSize).build();
+        hitCount = registry.counter(getMetricName("hit", repositoryName));
+        missCount = registry.counter(getMetricName("miss", repositoryName));
+        MetricName gaugeName = getMetricName("size", repositoryName);
+        registry.remove(gaugeName);
+        registry.register(gaugeName, new Gauge<Long>() {
+            @Override
+            public Long getValue() {
+                return Long.valueOf(cache.size());
+            }
+        });
+        gaugeName = getMetricName("ratio", repositoryName);
+        registry.remove(gaugeName);
+        registry.register(gaugeName, new Gauge<Double>() {
+            @Override
+            public Double getValue() {
+                return Double.valueOf(getHitRatio());
+            }
+        });
+    }
+
+    protected static MetricName getMetricName(String name, String repositoryName) {
+        return MetricName.build("nuxeo", "repositories", "repository", "query", "cache", name)
+                         .tagged("repository", repositoryName);
+    }
+
+    /**
+     * Gets the ratio of the queries whose translation was found in the cache.
+     */
+    public double getHitRatio() {
+        long hits = hitCount.getCount();
+        long total = hits + missCount.getCount();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+
+    /**
+     * Gets the number of cached entries.
+     */
+    public long size() {
+        return cache.size();
+    }
+
+    /**
+     * Builds a query using the given query maker, or reuses a cached translation of the same query shape.
+     *
+     * @see QueryMaker#buildQuery
+     */
+    public Query buildQuery(QueryMaker queryMaker, SQLInfo sqlInfo, Model model, PathResolver pathResolver,
+            String query, QueryFilter queryFilter, Object... params) {
+        Shape shape = (params == null || params.length == 0) && hasOnlyPolicyTransformers(queryFilter)
+                ? Shape.parse(query)
+                : null;
+        if (shape == null) {
+            missCount.inc();
+            return queryMaker.buildQuery(sqlInfo, model, pathResolver, query, queryFilter, params);
+        }
+        List<Object> shapeKey = getKey(queryMaker, queryFilter, false, shape.key);
+        List<Object> exactKey = null;
+        Translation translation = cache.getIfPresent(shapeKey);
+        if (translation == NOT_PARAMETERIZABLE) {
+            exactKey = getKey(queryMaker, queryFilter, true, query);
+            translation = cache.getIfPresent(exactKey);
+        }
+        if (translation != null && translation != NOT_CACHEABLE) {
+            hitCount.inc();
+            return translation.bind(shape.literals);
+        }
+        missCount.inc();
+        RecordingPathResolver recordingPathResolver = new RecordingPathResolver(pathResolver);
+        Query q = queryMaker.buildQuery(sqlInfo, model, recordingPathResolver, query, queryFilter);
+        if (q == null || translation == NOT_CACHEABLE) {
+            return q;
+        }
+        if (recordingPathResolver.used) {
+            cache.put(shapeKey, NOT_CACHEABLE);
+        } else if (exactKey != null || shape.literals.isEmpty()) {
+            cache.put(exactKey != null ? exactKey : shapeKey, Translation.of(q, null, null));
+        } else {
+            translation = computeTranslation(queryMaker, sqlInfo, model, pathResolver, shape, queryFilter, q);
+            if (translation == null) {
+                log.trace("Query shape cannot be parameterized: {}", query);
+                cache.put(shapeKey, NOT_PARAMETERIZABLE);
+                cache.put(getKey(queryMaker, queryFilter, true, query), Translation.of(q, null, null));
+            } else {
+                cache.put(shapeKey, translation);
+            }
+        }
+        return q;
+    }
+
+    /**
+     * Checks that the query filter has no per-query transformer, whose translation cannot be reused.
+     */
+    protected boolean hasOnlyPolicyTransformers(QueryFilter queryFilter) {
+        Collection<SQLQuery.Transformer> transformers = queryFilter.getQueryTransformers();
+        if (transformers.isEmpty()) {
+            return true;
+        }
+        Collection<SQLQuery.Transformer> policies = policyTransformers.get();
+        for (SQLQuery.Transformer transformer : transformers) {
+            if (transformer != SQLQuery.Transformer.IDENTITY && policies.stream().noneMatch(p -> p == transformer)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    protected static List<Object> getKey(QueryMaker queryMaker, QueryFilter queryFilter, boolean exact,
+            String query) {
+        NuxeoPrincipal principal = queryFilter.getPrincipal();
+        FacetFilter facetFilter = queryFilter.getFacetFilter();
+        // the policy transformers are singletons, their class is a stable key
+        List<String> transformers = new ArrayList<>();
+        for (SQLQuery.Transformer transformer : queryFilter.getQueryTransformers()) {
+            transformers.add(transformer.getClass().getName());
+        }
+        return Arrays.asList(queryMaker.getClass().getName(), //
+                principal == null ? null : principal.getName(), //
+                nullOrList(queryFilter.getPrincipals()), //
+                nullOrList(queryFilter.getPermissions()), //
+                nullOrList(queryFilter.getReadAclIds()), //
+                facetFilter == null ? null : facetFilter.required, //
+                facetFilter == null ? null : facetFilter.excluded, //
+                facetFilter == null ? null : facetFilter.shortcut, //
+                transformers, //
+                Boolean.valueOf(exact), //
+                query);
+    }
+
+    protected static List<String> nullOrList(String[] array) {
+        return array == null ? null : Arrays.asList(array);
+    }
+
+    /**
+     * Translates the query again with sentinel literals, and derives the binding plan from the differences.
+     *
+     * @return the translation, or {@code null} if the literals cannot be parameterized
+     */
+    protected Translation computeTranslation(QueryMaker queryMaker, SQLInfo sqlInfo, Model model,
+            PathResolver pathResolver, Shape shape, QueryFilter queryFilter, Query q) {
+        QueryMaker sentinelQueryMaker;
+        try {
+            sentinelQueryMaker = queryMaker.getClass().getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new NuxeoException(e);
+        }
+        RecordingPathResolver recordingPathResolver = new RecordingPathResolver(pathResolver);
+        Query sq;
+        try {
+            sq = sentinelQueryMaker.buildQuery(sqlInfo, model, recordingPathResolver, shape.getSentinelQuery(),
+                    queryFilter);
+        } catch (RuntimeException e) {
+            // the literals are checked by the query maker
+            return null;
+        }
+        if (sq == null || recordingPathResolver.used || !q.selectInfo.sql.equals(sq.selectInfo.sql)
+                || q.selectParams.size() != sq.selectParams.size()) {
+            return null;
+        }
+        int size = q.selectParams.size();
+        Serializable[] params = q.selectParams.toArray(new Serializable[size]);
+        Serializable[] sentinelParams = sq.selectParams.toArray(new Serializable[size]);
+        int[] literalIndexes = new int[size];
+        boolean[] ids = new boolean[size];
+        BitSet bound = new BitSet();
+        for (int i = 0; i < size; i++) {
+            Serializable param = params[i];
+            Serializable sentinelParam = sentinelParams[i];
+            boolean id = sentinelParam instanceof WrappedId;
+            int index = getSentinelIndex(id ? ((WrappedId) sentinelParam).string : sentinelParam);
+            literalIndexes[i] = index;
+            ids[i] = id;
+            if (index >= 0) {
+                Serializable expected = id ? new WrappedId(shape.literals.get(index)) : shape.literals.get(index);
+                if (!paramEquals(param, expected)) {
+                    return null;
+                }
+                bound.set(index);
+            } else if (!paramEquals(param, sentinelParam)) {
+                return null;
+            }
+        }
+        if (bound.cardinality() != shape.literals.size()) {
+            // a literal was used otherwise than as a parameter
+            return null;
+        }
+        return Translation.of(q, literalIndexes, ids);
+    }
+
+    protected static String getSentinel(int index) {
+        return SENTINEL_PREFIX + index + SENTINEL_SUFFIX;
+    }
+
+    protected static int getSentinelIndex(Object value) {
+        if (!(value instanceof String)) {
+            return -1;
+        }
+        String string = (String) value;
+        if (!string.startsWith(SENTINEL_PREFIX) || !string.endsWith(SENTINEL_SUFFIX)
+                || string.length() < SENTINEL_PREFIX.length() + SENTINEL_SUFFIX.length()) {
+            return -1;
+        }
+        try {
+            return Integer.parseInt(
+                    string.substring(SENTINEL_PREFIX.length(), string.length() - SENTINEL_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    protected static boolean paramEquals(Serializable a, Serializable b) {
+        if (a instanceof WrappedId && b instanceof WrappedId) {
+            return Objects.equals(((WrappedId) a).string, ((WrappedId) b).string);
+        }
+        return Objects.deepEquals(a, b);
+    }
+
+    /**
+     * A cached translation: the SQL and the binding plan of its parameters.
+     */
+    protected static class Translation {
+
+        protected final SQLInfoSelect selectInfo;
+
+        /** The constant parameters. */
+        protected final Serializable[] params;
+
+        /** For each parameter, the index of the literal to bind, or -1 for a constant. */
+        protected final int[] literalIndexes;
+
+        /** For each parameter, whether the literal is bound as an id. */
+        protected final boolean[] ids;
+
+        protected Translation(SQLInfoSelect selectInfo, Serializable[] params, int[] literalIndexes, boolean[] ids) {
+            this.selectInfo = selectInfo;
+            this.params = params;
+            this.literalIndexes = literalIndexes;
+            this.ids = ids;
+        }
+
+        protected static Translation of(Query q, int[] literalIndexes, boolean[] ids) {
+            Serializable[] params = q.selectParams.toArray(new Serializable[0]);
+            if (literalIndexes == null) {
+                literalIndexes = new int[params.length];
+                Arrays.fill(literalIndexes, -1);
+            }
+            return new Translation(q.selectInfo, params, literalIndexes, ids);
+        }
+
+        protected Query bind(List<String> literals) {
+            Query q = new Query();
+            q.selectInfo = selectInfo;
+            for (int i = 0; i < params.length; i++) {
+                int index = literalIndexes[i];
+                if (index < 0) {
+                    q.selectParams.add(params[i]);
+                } else {
+                    String literal = literals.get(index);
+                    q.selectParams.add(ids[i] ? new WrappedId(literal) : literal);
+                }
+            }
+            return q;
+        }
+    }
+
+    /**
+     * A path resolver recording whether it was used, in which case the translation depends on the database content.
+     */
+    protected static class RecordingPathResolver implements PathResolver {
+
+        protected final PathResolver pathResolver;
+
+        protected boolean used;
+
+        protected RecordingPathResolver(PathResolver pathResolver) {
+            this.pathResolver = pathResolver;
+        }
+
+        @Override
+        public Serializable getIdForPath(String path) {
+            used = true;
+            return pathResolver.getIdForPath(path);
+        }
+    }
+
+    /**
+     * The shape of an NXQL query: its tokens with placeholders for the parameterizable string literals.
+     */
+    protected static class Shape {
+
+        protected final String query;
+
+        protected final String key;
+
+        protected final List<String> literals;
+
+        /** The positions of the opening and closing quotes of each parameterizable literal. */
+        protected final List<int[]> spans;
+
+        protected Shape(String query, String key, List<String> literals, List<int[]> spans) {
+            this.query = query;
+            this.key = key;
+            this.literals = literals;
+            this.spans = spans;
+        }
+
+        /**
+         * Parses the shape of a query.
+         *
+         * @return the shape, or {@code null} if the query must not be cached
+         */
+        protected static Shape parse(String query) {
+            List<Symbol> tokens = new ArrayList<>();
+            try {
+                Scanner scanner = new Scanner(new StringReader(query));
+                for (Symbol token = scanner.next_token(); token.sym != sym.EOF; token = scanner.next_token()) {
+                    tokens.add(token);
+                }
+            } catch (IOException | QueryParseException e) {
+                // let the query maker report the error
+                return null;
+            }
+            StringBuilder key = new StringBuilder();
+            List<String> literals = new ArrayList<>();
+            List<int[]> spans = new ArrayList<>();
+            int end = 0;
+            for (int i = 0; i < tokens.size(); i++) {
+                Symbol token = tokens.get(i);
+                String value = String.valueOf(token.value);
+                if (!isCacheable(tokens, i)) {
+                    return null;
+                }
+                key.append(token.sym).append(':');
+                if (token.sym == sym.STRING && isParameterizable(tokens, i)) {
+                    int start = end;
+                    while (Character.isWhitespace(query.charAt(start))) {
+                        start++;
+                    }
+                    literals.add(value);
+                    spans.add(new int[] { start, token.right });
+                    key.append('?');
+                } else {
+                    key.append(value.length()).append(':').append(value);
+                }
+                key.append(' ');
+                end = token.sym == sym.STRING ? token.right + 1 : token.right + value.length();
+            }
+            return new Shape(query, key.toString(), literals, spans);
+        }
+
+        protected static boolean isCacheable(List<Symbol> tokens, int i) {
+            Symbol token = tokens.get(i);
+            if (token.sym == sym.LHINT_ES) {
+                return false;
+            }
+            if (isIdentifier(token)) {
+                String name = (String) token.value;
+                if (NXQL.ECM_PATH.equals(name) || NXQL.ECM_ISTRASHED.equals(name) || name.startsWith(NXQL.ECM_TAG)) {
+                    return false;
+                }
+                if (NOW_FUNCTION.equalsIgnoreCase(name) && is(tokens, i + 1, sym.LPARA)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Checks if a string literal is the right operand of a simple comparison with a property whose translation
+         * doesn't depend on the literal.
+         */
+        protected static boolean isParameterizable(List<Symbol> tokens, int i) {
+            if (isArithmetic(tokens, i + 1)) {
+                return false;
+            }
+            int j = i - 1;
+            boolean allowNot = true;
+            if (is(tokens, j, sym.COMMA) || is(tokens, j, sym.LPARA)) {
+                // literal list
+                while (is(tokens, j, sym.COMMA) && is(tokens, j - 1, sym.STRING)) {
+                    j -= 2;
+                }
+                if (!is(tokens, j, sym.LPARA) || !is(tokens, j - 1, sym.IN)) {
+                    return false;
+                }
+                j -= 2;
+            } else if (is(tokens, j, sym.AND) && is(tokens, j - 1, sym.STRING) && is(tokens, j - 2, sym.BETWEEN)) {
+                j -= 3;
+            } else if (is(tokens, j, sym.BETWEEN) || is(tokens, j, sym.LIKE) || is(tokens, j, sym.ILIKE)) {
+                j--;
+            } else if (is(tokens, j, sym.EQ) || is(tokens, j, sym.NOTEQ) || is(tokens, j, sym.LT)
+                    || is(tokens, j, sym.GT) || is(tokens, j, sym.LTEQ) || is(tokens, j, sym.GTEQ)) {
+                j--;
+                allowNot = false;
+            } else {
+                return false;
+            }
+            if (allowNot && is(tokens, j, sym.NOT)) {
+                j--;
+            }
+            if (j < 0 || !isIdentifier(tokens.get(j)) || isArithmetic(tokens, j - 1)) {
+                return false;
+            }
+            String name = (String) tokens.get(j).value;
+            return !name.startsWith(NXQL.ECM_PREFIX) || PARAMETERIZABLE_SYSTEM_PROPERTIES.contains(name);
+        }
+
+        protected static boolean is(List<Symbol> tokens, int i, int type) {
+            return i >= 0 && i < tokens.size() && tokens.get(i).sym == type;
+        }
+
+        protected static boolean isIdentifier(Symbol token) {
+            return token.sym == sym.IDENTIFIER || token.sym == sym.PATH_IDENTIFIER;
+        }
+
+        protected static boolean isArithmetic(List<Symbol> tokens, int i) {
+            return is(tokens, i, sym.SUM) || is(tokens, i, sym.SUB) || is(tokens, i, sym.MUL)
+                    || is(tokens, i, sym.DIV);
+        }
+
+        /**
+         * Gets the query with each parameterizable literal replaced by its sentinel.
+         */
+        protected String getSentinelQuery() {
+            StringBuilder sb = new StringBuilder(query.length());
+            int pos = 0;
+            for (int i = 0; i < spans.size(); i++) {
+                int[] span = spans.get(i);
+                char quote = query.charAt(span[1]);
+                sb.append(query, pos, span[0]).append(quote).append(getSentinel(i)).append(quote);
+                pos = span[1] + 1;
+            }
+            sb.append(query, pos, query.length());
+            return sb.toString();
+        }
+    }
+
+}
@@ -602,13 +602,23 @@ public class NXQLQueryMaker implements QueryMaker {
                     // _ACLRUSERMAP.acl_id
                     // WHERE _ACLRUSERMAP.user_id = md5('bob,Everyone')
                     String racl = dialect.openQuote() + READ_ACL_ALIAS + dialect.closeQuote();
-                    String aclrum = dialect.openQuote() + READ_ACL_USER_MAP_ALIAS + dialect.closeQuote();
                     securityJoins.add(new Join(Join.INNER, Model.HIER_READ_ACL_TABLE_NAME, READ_ACL_ALIAS, null, id,
                             racl + '.' + Model.HIER_READ_ACL_ID));
-                    securityJoins.add(new Join(Join.INNER, Model.ACLR_USER_MAP_TABLE_NAME, READ_ACL_USER_MAP_ALIAS,
-                            null, racl + '.' + Model.HIER_READ_ACL_ACL_ID, aclrum + '.' + Model.ACLR_USER_MAP_ACL_ID));
-                    securityClause = dialect.getReadAclsCheckSql(aclrum + '.' + Model.ACLR_USER_MAP_USER_ID);
-                    securityParams.add(principals);
+                    String[] readAclIds = queryFilter.getReadAclIds();
+                    if (readAclIds != null) {
+                        // read acl ids already known, the user read acls cache is not needed
+                        // WHERE _RACL.acl_id = ANY(?)
+                        securityClause = dialect.getReadAclIdsCheckSql(racl + '.' + Model.HIER_READ_ACL_ACL_ID);
+                        securityParams.add(dialect.supportsArrays() ? readAclIds
+                                : StringUtils.join(readAclIds, Dialect.ARRAY_SEP));
+                    } else {
+                        String aclrum = dialect.openQuote() + READ_ACL_USER_MAP_ALIAS + dialect.closeQuote();
+                        securityJoins.add(new Join(Join.INNER, Model.ACLR_USER_MAP_TABLE_NAME,
+                                READ_ACL_USER_MAP_ALIAS, null, racl + '.' + Model.HIER_READ_ACL_ACL_ID,
+                                aclrum + '.' + Model.ACLR_USER_MAP_ACL_ID));
+                        securityClause = dialect.getReadAclsCheckSql(aclrum + '.' + Model.ACLR_USER_MAP_USER_ID);
+                        securityParams.add(principals);
+                    }
                 } else {
                     securityClause = dialect.getSecurityCheckSql(id);
                     securityParams.add(principals);
@@ -0,0 +1,100 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.io.Serializable;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+
+import org.nuxeo.ecm.core.api.IterableQueryResult;
+
+/**
+ * Iterable query result over rows already fetched, holding no database resources.
+ *
+ * @since 11.5
+ */
+public class PartialListQueryResult implements IterableQueryResult, Iterator<Map<String, Serializable>> {
+
+    protected final List<Map<String, Serializable>> maps;
+
+    protected boolean closed;
+
+    protected long pos;
+
+    public PartialListQueryResult(List<Map<String, Serializable>> maps) {
+        this.maps = maps;
+    }
+
+    @Override
+    public Iterator<Map<String, Serializable>> iterator() {
+        return this; // NOSONAR this iterable does not support multiple traversals
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        pos = -1;
+    }
+
+    @Override
+    public boolean isLife() {
+        return !closed;
+    }
+
+    @Override
+    public boolean mustBeClosed() {
+        return false; // holds no resources
+    }
+
+    @Override
+    public long size() {
+        return maps.size();
+    }
+
+    @Override
+    public long pos() {
+        return pos;
+    }
+
+    @Override
+    public void skipTo(long pos) {
+        this.pos = Math.max(0, Math.min(pos, maps.size()));
+    }
+
+    @Override
+    public boolean hasNext() {
+        return !closed && pos < maps.size();
+    }
+
+    @Override
+    public Map<String, Serializable> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        return maps.get((int) pos++);
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException();
+    }
+
+}
@@ -0,0 +1,342 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.naming.NamingException;
+import javax.transaction.Status;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.ecm.core.api.ReadReplicaHelper;
+import org.nuxeo.runtime.datasource.ConnectionHelper;
+import org.nuxeo.runtime.metrics.MetricsService;
+import org.nuxeo.runtime.transaction.TransactionHelper;
+
+import io.dropwizard.metrics5.Counter;
+import io.dropwizard.metrics5.Gauge;
+import io.dropwizard.metrics5.MetricName;
+import io.dropwizard.metrics5.MetricRegistry;
+import io.dropwizard.metrics5.SharedMetricRegistries;
+
+/**
+ * Routes the read-only queries of the mappers of a repository to a pool of read replica datasources.
+ * <p>
+ * A query may be routed to a replica if it is done in a scope tolerating the replication lag (see
+ * {@link ReadReplicaHelper}), or for all queries if so configured, and only if the current transaction didn't write
+ * anything to the repository, so that a transaction always reads its own writes.
+ * <p>
+ * The replicas are used in turn. The replication lag of a replica is checked at most once per check interval, when a
+ * connection to it is opened or when a connection kept open is used again; a replica lagging more than the maximum
+ * lag, or that cannot be reached, is not used until the next check. When no replica is usable, the queries stay on
+ * the primary.
+ *
+ * @since 11.5
+ */
+public class ReadReplicaRouter {
+
+    private static final Logger log = LogManager.getLogger(ReadReplicaRouter.class);
+
+    /** Default maximum replication lag, in seconds. */
+    public static final int DEFAULT_MAX_LAG = 10;
+
+    /** Default interval between two checks of the replication lag of a replica, in seconds. */
+    public static final int DEFAULT_CHECK_INTERVAL = 5;
+
+    /**
+     * A read replica datasource and its health.
+     */
+    protected class Replica {
+
+        protected final String dataSourceName;
+
+        /** Time of the last check, or 0 if never checked. */
+        protected final AtomicLong checkedAt = new AtomicLong();
+
+        protected volatile boolean healthy = true;
+
+        /** Last known lag, in seconds. */
+        protected volatile double lag;
+
+        protected Replica(String dataSourceName) {
+            this.dataSourceName = dataSourceName;
+        }
+
+        /**
+         * Checks if the lag of this replica is due for a check. Only one thread gets {@code true} when the check is
+         * due, the others use the last known health.
+         */
+        protected boolean isCheckDue(long now) {
+            long last = checkedAt.get();
+            return (last == 0 || now - last >= checkIntervalNanos) && checkedAt.compareAndSet(last, now);
+        }
+
+        /**
+         * Checks the lag of this replica using the given connection.
+         */
+        protected void check(Connection connection) throws SQLException {
+            lag = getLag(connection);
+            healthy = lag <= maxLag;
+            if (!healthy) {
+                log.warn("Read replica: {} of repository: {} lags by {}s, using the primary", dataSourceName,
+                        repositoryName, Double.valueOf(lag));
+            }
+        }
+
+        protected void failed(SQLException e, long now) {
+            healthy = false;
+            checkedAt.set(now);
+            log.warn("Read replica: {} of repository: {} cannot be used: {}", dataSourceName, repositoryName,
+                    e.toString());
+            log.debug(e, e);
+        }
+
+        /**
+         * Opens a connection to this replica, or returns {@code null} if the replica is not usable.
+         */
+        @SuppressWarnings("resource") // connection returned to the caller
+        protected ReplicaConnection getConnection() {
+            long now = System.nanoTime();
+            boolean check = isCheckDue(now);
+            if (!healthy && !check) {
+                return null;
+            }
+            Connection connection = null;
+            try {
+                connection = openConnection(dataSourceName);
+                if (check) {
+                    check(connection);
+                }
+            } catch (SQLException e) {
+                failed(e, now);
+            }
+            if (!healthy && connection != null) {
+                closeConnection(connection);
+                connection = null;
+            }
+            return connection == null ? null : new ReplicaConnection(this, connection);
+        }
+
+        /**
+         * Checks if a connection to this replica that is kept open can still be used, checking the lag again if due.
+         */
+        protected boolean isUsable(Connection connection) {
+            long now = System.nanoTime();
+            if (isCheckDue(now)) {
+                try {
+                    check(connection);
+                } catch (SQLException e) {
+                    failed(e, now);
+                }
+            }
+            return healthy;
+        }
+    }
+
+    /**
+     * A connection opened to a read replica.
+     */
+    public class ReplicaConnection {
+
+        protected final Replica replica;
+
+        protected final Connection connection;
+
+        protected ReplicaConnection(Replica replica, Connection connection) {
+            this.replica = replica;
+            this.connection = connection;
+        }
+
+        public Connection getConnection() {
+            return connection;
+        }
+
+        /**
+         * Checks if this connection, kept open since it was obtained, can still be used: its replica must not have
+         * started lagging since then. The lag is checked again at most once per check interval.
+         */
+        public boolean isUsable() {
+            return replica.isUsable(connection);
+        }
+
+        @Override
+        public String toString() {
+            return replica.dataSourceName;
+        }
+    }
+
+    protected final String repositoryName;
+
+    protected final List<Replica> replicas = new ArrayList<>();
+
+    /** The SQL returning the replication lag in seconds, or {@code null} if it cannot be checked. */
+    protected final String lagSql;
+
+    protected final int maxLag;
+
+    protected final long checkIntervalNanos;
+
+    protected final boolean allQueries;
+
+    protected final AtomicInteger next = new AtomicInteger();
+
+    protected final MetricRegistry registry = SharedMetricRegistries.getOrCreate(MetricsService.class.getName());
+
+    protected final Counter routedCounter;
+
+    protected final Counter fallbackCounter;
+
+    /**
+     * Constructs a router.
+     *
+     * @param repositoryName the repository name
+     * @param dataSourceNames the names of the read replica datasources
+     * @param lagSql the SQL returning the replication lag in seconds, or {@code null} if it cannot be checked
+     * @param maxLag the maximum replication lag, in seconds
+     * @param checkInterval the interval between two checks of the replication lag of a replica, in seconds
+     * @param allQueries whether all the queries may be routed, or only the ones tolerating the replication lag
+     */
+    public ReadReplicaRouter(String repositoryName, List<String> dataSourceNames, String lagSql, int maxLag,
+            int checkInterval, boolean allQueries) {
+        this.repositoryName = repositoryName;
+        this.lagSql = lagSql;
+        this.maxLag = maxLag;
+        checkIntervalNanos = TimeUnit.SECONDS.toNanos(checkInterval);
+        this.allQueries = allQueries;
+        routedCounter = registry.counter(getMetricName("routed"));
+        fallbackCounter = registry.counter(getMetricName("fallback"));
+        for (String dataSourceName : dataSourceNames) {
+            Replica replica = new Replica(dataSourceName);
+            replicas.add(replica);
+            MetricName gaugeName = getMetricName("lag").tagged("datasource", dataSourceName);
+            registry.remove(gaugeName);
+            registry.register(gaugeName, new Gauge<Double>() {
+                @Override
+                public Double getValue() {
+                    return Double.valueOf(replica.lag);
+                }
+            });
+        }
+    }
+
+    protected MetricName getMetricName(String... names) {
+        return MetricName.build("nuxeo", "repositories", "repository", "readreplicas")
+                         .append(MetricName.build(names))
+                         .tagged("repository", repositoryName);
+    }
+
+    /**
+     * Checks if the current query may be routed to a read replica.
+     */
+    public boolean canRoute() {
+        boolean lagTolerated = ReadReplicaHelper.isLagTolerated();
+        if (!allQueries && !lagTolerated) {
+            return false;
+        }
+        TransactionSynchronizationRegistry synchronizationRegistry = getActiveSynchronizationRegistry();
+        if (synchronizationRegistry == null) {
+            // without transaction we can't know what was just written, only tolerant queries are routed
+            return lagTolerated;
+        }
+        return synchronizationRegistry.getResource(this) == null;
+    }
+
+    /**
+     * Records that the current transaction wrote to the primary, so that its next queries stay on the primary.
+     */
+    public void markWritten() {
+        TransactionSynchronizationRegistry synchronizationRegistry = getActiveSynchronizationRegistry();
+        if (synchronizationRegistry != null && synchronizationRegistry.getResource(this) == null) {
+            synchronizationRegistry.putResource(this, Boolean.TRUE);
+        }
+    }
+
+    protected TransactionSynchronizationRegistry getActiveSynchronizationRegistry() {
+        TransactionSynchronizationRegistry synchronizationRegistry;
+        try {
+            synchronizationRegistry = TransactionHelper.lookupSynchronizationRegistry();
+        } catch (NamingException e) {
+            return null;
+        }
+        if (synchronizationRegistry.getTransactionStatus() != Status.STATUS_ACTIVE) {
+            return null;
+        }
+        return synchronizationRegistry;
+    }
+
+    /**
+     * Opens a connection to the next usable read replica.
+     *
+     * @return the connection, or {@code null} if no replica is usable and the primary must be used
+     */
+    public ReplicaConnection getConnection() {
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        for (int i = 0; i < size; i++) {
+            ReplicaConnection connection = replicas.get((start + i) % size).getConnection();
+            if (connection != null) {
+                return connection;
+            }
+        }
+        fallbackCounter.inc();
+        return null;
+    }
+
+    /**
+     * Records that a query was run on a read replica.
+     */
+    public void routed() {
+        routedCounter.inc();
+    }
+
+    protected Connection openConnection(String dataSourceName) throws SQLException {
+        return ConnectionHelper.getConnection(dataSourceName);
+    }
+
+    protected void closeConnection(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            log.error(e, e);
+        }
+    }
+
+    /**
+     * Gets the replication lag of a replica, in seconds.
+     */
+    protected double getLag(Connection connection) throws SQLException {
+        if (lagSql == null) {
+            return 0;
+        }
+        try (Statement st = connection.createStatement(); ResultSet rs = st.executeQuery(lagSql)) {
+            return rs.next() ? rs.getDouble(1) : 0;
+        }
+    }
+
+}
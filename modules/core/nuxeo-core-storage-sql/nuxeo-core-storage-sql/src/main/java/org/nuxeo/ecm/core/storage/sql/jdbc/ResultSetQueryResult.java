@@ -19,6 +19,7 @@
 package org.nuxeo.ecm.core.storage.sql.jdbc;
 
 import java.io.Serializable;
+import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
@@ -53,8 +54,18 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
 
     public ResultSetQueryResult(QueryMaker queryMaker, String query, QueryFilter queryFilter, PathResolver pathResolver,
             JDBCMapper mapper, Object... params) throws SQLException {
+        this(queryMaker, query, queryFilter, pathResolver, mapper, mapper.connection, params);
+    }
+
+    /**
+     * Runs the query on the given connection, which may be a read replica connection.
+     *
+     * @since 11.5
+     */
+    public ResultSetQueryResult(QueryMaker queryMaker, String query, QueryFilter queryFilter, PathResolver pathResolver,
+            JDBCMapper mapper, Connection connection, Object... params) throws SQLException {
         logger = mapper.logger;
-        q = queryMaker.buildQuery(mapper.sqlInfo, mapper.model, pathResolver, query, queryFilter, params);
+        q = mapper.buildQuery(queryMaker, pathResolver, query, queryFilter, params);
         if (q == null) {
             // no result
             size = 0;
@@ -68,7 +79,7 @@ public class ResultSetQueryResult implements IterableQueryResult, Iterator<Map<S
         if (logger.isLogEnabled()) {
             logger.logSQL(q.selectInfo.sql, q.selectParams);
         }
-        ps = mapper.connection.prepareStatement(q.selectInfo.sql, ResultSet.TYPE_SCROLL_INSENSITIVE,
+        ps = connection.prepareStatement(q.selectInfo.sql, ResultSet.TYPE_SCROLL_INSENSITIVE,
                 ResultSet.CONCUR_READ_ONLY);
         int i = 1;
         for (Serializable object : q.selectParams) {
@@ -37,6 +37,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -664,6 +665,29 @@ public abstract class Dialect {
         throw new UnsupportedOperationException("paging is not supported");
     }
 
+    /**
+     * Gets the SQL asking the database planner for its estimate of the number of rows returned by a query, without
+     * executing it.
+     *
+     * @param sql the query
+     * @return the SQL to execute, with the same parameters as the query, or {@code null} if not supported
+     * @since 11.5
+     * @see #getEstimatedRowCount
+     */
+    public String getEstimatedRowCountSql(String sql) {
+        return null;
+    }
+
+    /**
+     * Extracts the estimated number of rows from the result of the SQL returned by {@link #getEstimatedRowCountSql}.
+     *
+     * @return the estimated number of rows, or {@code -1} if unknown
+     * @since 11.5
+     */
+    public long getEstimatedRowCount(ResultSet rs) throws SQLException {
+        return -1;
+    }
+
     /**
      * Gets the type of a fulltext column has known by JDBC.
      * <p>
@@ -794,6 +818,30 @@ public abstract class Dialect {
         return false;
     }
 
+    /**
+     * True if the database sorts NULL values as greater than any non-null value, in the absence of NULLS FIRST/LAST.
+     *
+     * @since 11.5
+     */
+    public boolean sortsNullsHigh() {
+        return false;
+    }
+
+    /**
+     * Checks whether NULL values come first in a sort in the given direction, as generated by this dialect.
+     *
+     * @param descending whether the sort is descending
+     * @return {@code true} if NULL values are sorted before non-null values
+     * @since 11.5
+     */
+    public boolean isNullSortedFirst(boolean descending) {
+        if (descending) {
+            return sortsNullsHigh() && !getDescending().endsWith(" NULLS LAST");
+        } else {
+            return !sortsNullsHigh();
+        }
+    }
+
     /**
      * When using a CLOB field in an expression, is some casting required and with what pattern?
      * <p>
@@ -1121,6 +1169,30 @@ public abstract class Dialect {
         return null;
     }
 
+    /**
+     * Gets the statement to update the read acls for a bounded number of document modifications, skipping those being
+     * processed by concurrent transactions.
+     * <p>
+     * The statement takes the maximum number of modifications to process as parameter, and returns the number of
+     * modifications processed.
+     *
+     * @return the statement, or {@code null} if the read acls can only be updated all at once
+     * @since 11.5
+     */
+    public String getUpdateReadAclsChunkSql() {
+        return null;
+    }
+
+    /**
+     * Gets the statement returning the number of document modifications waiting for a read acls update.
+     *
+     * @return the statement, or {@code null} if not available
+     * @since 11.5
+     */
+    public String getReadAclsPendingCountSql() {
+        return null;
+    }
+
     /**
      * Gets the statement to rebuild the wall read acls
      */
@@ -1148,6 +1220,39 @@ public abstract class Dialect {
         return null;
     }
 
+    /**
+     * Gets the SQL listing the ids of the read acls of the principals, from the user read acls cache once prepared.
+     * This is used to check the read acls where the cache cannot be read, like on a read replica.
+     *
+     * @return an SQL query with one parameter (principals) returning the read acl ids, or {@code null} if not supported
+     * @since 11.5
+     */
+    public String getUserReadAclIdsSql() {
+        return null;
+    }
+
+    /**
+     * Gets the expression to check if access is allowed using read acls whose ids are already known. The dialect must
+     * suppportsReadAcl.
+     *
+     * @param aclIdCol the quoted name of the hierarchy_read_acl acl_id column to use
+     * @return an SQL expression with one parameter (read acl ids) that is true if access is allowed
+     * @since 11.5
+     */
+    public String getReadAclIdsCheckSql(String aclIdCol) {
+        return null;
+    }
+
+    /**
+     * Gets the SQL returning the replication lag of a read replica, in seconds.
+     *
+     * @return the SQL, or {@code null} if the lag cannot be checked
+     * @since 11.5
+     */
+    public String getReplicaLagSql() {
+        return null;
+    }
+
     /**
      * Gets the sql statements to execute after the repository init (at startup).
      * <p>
@@ -1369,6 +1474,31 @@ public abstract class Dialect {
         return true;
     }
 
+    /**
+     * Checks if rows with the given columns can be inserted using {@link #copyIn}.
+     *
+     * @since 11.5
+     */
+    public boolean supportsCopyIn(List<Column> columns) {
+        return false;
+    }
+
+    /**
+     * Inserts rows using the bulk copy protocol of the database.
+     *
+     * @param connection the connection
+     * @param table the table
+     * @param columns the columns to insert
+     * @param rows the values of the rows to insert, in the order of the columns
+     * @return {@code true} if the rows were inserted, or {@code false} if the connection does not support the bulk copy
+     *         protocol, in which case nothing was inserted
+     * @since 11.5
+     */
+    public boolean copyIn(Connection connection, Table table, List<Column> columns, Iterator<Serializable[]> rows)
+            throws SQLException {
+        return false;
+    }
+
     /**
      * Registers return parameters.
      * <p>
@@ -195,6 +195,11 @@ public class DialectDB2 extends Dialect {
         return false;
     }
 
+    @Override
+    public boolean sortsNullsHigh() {
+        return true;
+    }
+
     @Override
     public boolean supportsPaging() {
         return false;
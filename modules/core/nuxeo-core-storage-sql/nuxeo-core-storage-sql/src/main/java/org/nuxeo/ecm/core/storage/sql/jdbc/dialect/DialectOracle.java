@@ -61,6 +61,7 @@ import org.nuxeo.ecm.core.storage.FulltextQueryAnalyzer.FulltextQuery;
 import org.nuxeo.ecm.core.storage.sql.ColumnType;
 import org.nuxeo.ecm.core.storage.sql.Model;
 import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCInstrumentation;
 import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCLogger;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Column;
 import org.nuxeo.ecm.core.storage.sql.jdbc.db.Database;
@@ -835,7 +836,7 @@ public class DialectOracle extends Dialect {
         default:
             throw new AssertionError("Unknown type: " + type);
         }
-        Connection unwrappedConnection = ConnectionHelper.unwrap(connection);
+        Connection unwrappedConnection = ConnectionHelper.unwrap(JDBCInstrumentation.getDelegate(connection));
         try {
             Object arrayDescriptor = arrayDescriptorConstructor.newInstance(typeName, unwrappedConnection);
             return (Array) arrayConstructor.newInstance(arrayDescriptor, unwrappedConnection, elements);
@@ -1020,6 +1021,11 @@ public class DialectOracle extends Dialect {
         return true;
     }
 
+    @Override
+    public boolean sortsNullsHigh() {
+        return true;
+    }
+
     @Override
     public String getDateCast() {
         // CAST(%s AS DATE) doesn't work, it doesn't compare exactly to DATE
@@ -19,7 +19,11 @@
  */
 package org.nuxeo.ecm.core.storage.sql.jdbc.dialect;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.io.Serializable;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
 import java.sql.Array;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
@@ -31,9 +35,11 @@ import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Calendar;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -88,6 +94,8 @@ public class DialectPostgreSQL extends Dialect {
 
     private static final String PREFIX_REPL = PREFIX_SEARCH + "$2";
 
+    protected static final Pattern EXPLAIN_ROWS_PATTERN = Pattern.compile(" rows=(\\d+) ");
+
     private static final String[] RESERVED_COLUMN_NAMES = { "xmin", "xmax", "cmin", "cmax", "ctid", "oid", "tableoid" };
 
     private static final String UNLOGGED_KEYWORD = "UNLOGGED";
@@ -100,6 +108,13 @@ public class DialectPostgreSQL extends Dialect {
 
     protected boolean pathOptimizationsEnabled;
 
+    /**
+     * Whether the path optimizations use the {@code hierarchy_closure} table instead of the {@code ancestors} table.
+     *
+     * @since 11.5
+     */
+    protected boolean pathClosureEnabled;
+
     protected final boolean arrayColumnsEnabled;
 
     protected final boolean childNameUniqueConstraintEnabled;
@@ -126,8 +141,11 @@ public class DialectPostgreSQL extends Dialect {
                 : repositoryDescriptor.getFulltextAnalyzer() == null ? DEFAULT_FULLTEXT_ANALYZER
                         : repositoryDescriptor.getFulltextAnalyzer();
         pathOptimizationsEnabled = repositoryDescriptor != null && repositoryDescriptor.getPathOptimizationsEnabled();
+        pathClosureEnabled = pathOptimizationsEnabled && repositoryDescriptor.getPathOptimizationsVersion() //
+                == RepositoryDescriptor.PATH_OPTIM_VERSION_CLOSURE;
         if (repositoryDescriptor != null) {
-            log.info("Path optimizations " + (pathOptimizationsEnabled ? "enabled" : "disabled"));
+            log.info("Path optimizations " + (pathOptimizationsEnabled ? "enabled" : "disabled")
+                    + (pathClosureEnabled ? " using closure table" : ""));
         }
         arrayColumnsEnabled = repositoryDescriptor != null && repositoryDescriptor.getArrayColumns();
         childNameUniqueConstraintEnabled = repositoryDescriptor != null
@@ -827,6 +845,24 @@ public class DialectPostgreSQL extends Dialect {
         return "SELECT nx_prepare_user_read_acls(?)";
     }
 
+    @Override
+    public String getUserReadAclIdsSql() {
+        return String.format("SELECT acl_id FROM aclr_user_map WHERE user_id = md5(array_to_string(?, '%s'))",
+                getUsersSeparator());
+    }
+
+    @Override
+    public String getReadAclIdsCheckSql(String aclIdCol) {
+        return String.format("%s = ANY(?)", aclIdCol);
+    }
+
+    @Override
+    public String getReplicaLagSql() {
+        // no lag when all that was received was replayed, even if the primary had no recent transaction
+        return "SELECT CASE WHEN pg_last_wal_receive_lsn() = pg_last_wal_replay_lsn() THEN 0"
+                + " ELSE COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) END";
+    }
+
     @Override
     public String getReadAclsCheckSql(String userIdCol) {
         return String.format("%s = md5(array_to_string(?, '%s'))", userIdCol, getUsersSeparator());
@@ -837,6 +873,16 @@ public class DialectPostgreSQL extends Dialect {
         return "SELECT nx_update_read_acls();";
     }
 
+    @Override
+    public String getUpdateReadAclsChunkSql() {
+        return "SELECT nx_update_read_acls_chunk(?)";
+    }
+
+    @Override
+    public String getReadAclsPendingCountSql() {
+        return "SELECT COUNT(*) FROM aclr_modified";
+    }
+
     @Override
     public String getRebuildReadAclsSql() {
         return "SELECT nx_rebuild_read_acls();";
@@ -866,6 +912,10 @@ public class DialectPostgreSQL extends Dialect {
             // discard query with invalid id
             return null;
         }
+        if (pathClosureEnabled) {
+            return String.format("%s IN (SELECT id FROM hierarchy_closure WHERE ancestor = ?%s)", idColumnName,
+                    cast);
+        }
         if (pathOptimizationsEnabled) {
             return String.format("EXISTS(SELECT 1 FROM ancestors WHERE id = %s AND ARRAY[?]%s <@ ancestors)",
                     idColumnName, getCastForArray(cast));
@@ -996,6 +1046,224 @@ public class DialectPostgreSQL extends Dialect {
         return true;
     }
 
+    /**
+     * The COPY protocol is used in text format, so that the PostgreSQL input functions parse the values exactly as for
+     * a regular insert. Columns needing a custom free variable setter are not supported.
+     *
+     * @since 11.5
+     */
+    @Override
+    public boolean supportsCopyIn(List<Column> columns) {
+        for (Column column : columns) {
+            if (!"?".equals(column.getFreeVariableSetter())) {
+                return false;
+            }
+            switch (column.getJdbcType()) {
+            case Types.VARCHAR:
+            case Types.CLOB:
+            case Types.BIT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+            case Types.BIGINT:
+            case Types.DOUBLE:
+            case Types.TIMESTAMP:
+            case Types.ARRAY:
+            case Types.BINARY:
+                break;
+            case Types.OTHER:
+                if (!column.getType().isId()) {
+                    return false;
+                }
+                break;
+            default:
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Uses the CopyManager of the PostgreSQL driver, accessed through reflection as the driver is only available at
+     * runtime.
+     *
+     * @since 11.5
+     */
+    @Override
+    public boolean copyIn(Connection connection, Table table, List<Column> columns, Iterator<Serializable[]> rows)
+            throws SQLException {
+        Object copyManager;
+        Method copyIn;
+        try {
+            Class<?> pgConnectionClass = Class.forName("org.postgresql.PGConnection");
+            if (!connection.isWrapperFor(pgConnectionClass)) {
+                return false;
+            }
+            Object pgConnection = connection.unwrap(pgConnectionClass);
+            copyManager = pgConnectionClass.getMethod("getCopyAPI").invoke(pgConnection);
+            copyIn = copyManager.getClass().getMethod("copyIn", String.class, Reader.class);
+        } catch (ReflectiveOperationException e) {
+            log.debug("Cannot use COPY: " + e);
+            return false;
+        }
+        String sql = String.format("COPY %s (%s) FROM STDIN", table.getQuotedName(),
+                columns.stream().map(Column::getQuotedName).collect(Collectors.joining(", ")));
+        try {
+            copyIn.invoke(copyManager, sql, new CopyReader(columns, rows));
+        } catch (IllegalAccessException e) {
+            throw new SQLException(e);
+        } catch (InvocationTargetException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            }
+            throw new SQLException(cause);
+        }
+        return true;
+    }
+
+    /**
+     * Reader encoding rows in the PostgreSQL COPY text format, one row at a time.
+     *
+     * @since 11.5
+     */
+    protected class CopyReader extends Reader {
+
+        protected final List<Column> columns;
+
+        protected final Iterator<Serializable[]> rows;
+
+        protected final StringBuilder buf = new StringBuilder();
+
+        protected int pos;
+
+        protected CopyReader(List<Column> columns, Iterator<Serializable[]> rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (pos == buf.length()) {
+                if (!rows.hasNext()) {
+                    return -1;
+                }
+                buf.setLength(0);
+                pos = 0;
+                try {
+                    appendCopyRow(buf, columns, rows.next());
+                } catch (RuntimeException e) {
+                    // makes the driver cancel the copy
+                    throw new IOException(e);
+                }
+            }
+            int n = Math.min(len, buf.length() - pos);
+            buf.getChars(pos, pos + n, cbuf, off);
+            pos += n;
+            return n;
+        }
+
+        @Override
+        public void close() {
+            // nothing to close
+        }
+    }
+
+    /**
+     * Appends a row in the PostgreSQL COPY text format.
+     *
+     * @since 11.5
+     */
+    protected void appendCopyRow(StringBuilder sb, List<Column> columns, Serializable[] row) {
+        for (int i = 0; i < columns.size(); i++) {
+            if (i > 0) {
+                sb.append('\t');
+            }
+            Serializable value = row[i];
+            if (value == null) {
+                sb.append("\\N");
+            } else {
+                appendCopyEscaped(sb, getCopyValue(value, columns.get(i)));
+            }
+        }
+        sb.append('\n');
+    }
+
+    /**
+     * Gets the text representation of a non-null value, as parsed by the PostgreSQL input function of the column type.
+     *
+     * @since 11.5
+     */
+    protected String getCopyValue(Serializable value, Column column) {
+        switch (column.getJdbcType()) {
+        case Types.BIT:
+            return ((Boolean) value).booleanValue() ? "t" : "f";
+        case Types.TIMESTAMP:
+            return getTimestampFromCalendar((Calendar) value).toString(); // default timezone
+        case Types.ARRAY:
+            Object[] array = (Object[]) value;
+            if (column.getJdbcBaseType() == Types.TIMESTAMP) {
+                array = getTimestampFromCalendar((Serializable[]) value);
+            }
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < array.length; i++) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                Object element = array[i];
+                if (element == null) {
+                    sb.append("NULL");
+                } else {
+                    sb.append('"');
+                    String string = element.toString();
+                    for (int j = 0; j < string.length(); j++) {
+                        char c = string.charAt(j);
+                        if (c == '"' || c == '\\') {
+                            sb.append('\\');
+                        }
+                        sb.append(c);
+                    }
+                    sb.append('"');
+                }
+            }
+            return sb.append('}').toString();
+        case Types.BINARY:
+            byte[] bytes = (byte[]) value;
+            StringBuilder hex = new StringBuilder(2 + 2 * bytes.length).append("\\x");
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        default:
+            // strings, numbers, ids
+            return value.toString();
+        }
+    }
+
+    protected static void appendCopyEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '\\':
+                sb.append("\\\\");
+                break;
+            case '\t':
+                sb.append("\\t");
+                break;
+            case '\n':
+                sb.append("\\n");
+                break;
+            case '\r':
+                sb.append("\\r");
+                break;
+            default:
+                sb.append(c);
+            }
+        }
+    }
+
     public static class ArraySubQueryPostgreSQL extends ArraySubQuery {
 
         protected Dialect dialect = null;
@@ -1203,7 +1471,9 @@ public class DialectPostgreSQL extends Dialect {
             properties.put("idSequenceName", idSequenceName);
         }
         properties.put("aclOptimizationsEnabled", Boolean.valueOf(aclOptimizationsEnabled));
-        properties.put("pathOptimizationsEnabled", Boolean.valueOf(pathOptimizationsEnabled));
+        // the ancestors table is only used if the closure table isn't
+        properties.put("pathOptimizationsEnabled", Boolean.valueOf(pathOptimizationsEnabled && !pathClosureEnabled));
+        properties.put("pathClosureEnabled", Boolean.valueOf(pathClosureEnabled));
         properties.put("fulltextAnalyzer", fulltextAnalyzer);
         properties.put("fulltextEnabled", Boolean.valueOf(!fulltextDisabled));
         properties.put("fulltextSearchEnabled", Boolean.valueOf(!fulltextSearchDisabled));
@@ -1308,6 +1578,21 @@ public class DialectPostgreSQL extends Dialect {
         return sql + String.format(" LIMIT %d OFFSET %d", limit, offset);
     }
 
+    @Override
+    public String getEstimatedRowCountSql(String sql) {
+        return "EXPLAIN " + sql;
+    }
+
+    @Override
+    public long getEstimatedRowCount(ResultSet rs) throws SQLException {
+        // the first line of the plan is the top node, like "Hash Join  (cost=1.23..4.56 rows=789 width=37)"
+        if (!rs.next()) {
+            return -1;
+        }
+        Matcher m = EXPLAIN_ROWS_PATTERN.matcher(rs.getString(1));
+        return m.find() ? Long.parseLong(m.group(1)) : -1;
+    }
+
     @Override
     public boolean supportsWith() {
         return false; // don't activate until proven useful
@@ -1369,6 +1654,11 @@ public class DialectPostgreSQL extends Dialect {
         return true;
     }
 
+    @Override
+    public boolean sortsNullsHigh() {
+        return true;
+    }
+
     @Override
     public String getDateCast() {
         // this is more amenable to being indexed than a CAST
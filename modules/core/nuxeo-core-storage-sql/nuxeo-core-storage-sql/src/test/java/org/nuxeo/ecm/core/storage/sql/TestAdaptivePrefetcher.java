@@ -0,0 +1,89 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestAdaptivePrefetcher {
+
+    protected static final String TYPE = "File";
+
+    protected static final int MIN_SAMPLES = 10;
+
+    protected AdaptivePrefetcher prefetcher;
+
+    @Before
+    public void setUp() {
+        prefetcher = new AdaptivePrefetcher("test", null, 0.5, MIN_SAMPLES) {
+            @Override
+            protected Set<String> getStaticFragments(String typeName) {
+                return Collections.singleton("dublincore");
+            }
+        };
+    }
+
+    /**
+     * Fetches a window of documents, reading the given fragment for the given number of them.
+     */
+    protected void fetchWindow(String fragmentName, int reads) {
+        for (int i = 0; i < MIN_SAMPLES; i++) {
+            // the last fetch of the window computes the adaptive fragments
+            if (i == MIN_SAMPLES - 1) {
+                for (int j = 0; j < reads; j++) {
+                    prefetcher.recordRead(TYPE, fragmentName, false);
+                }
+            }
+            prefetcher.recordFetch(TYPE);
+        }
+    }
+
+    @Test
+    public void testLearnAndForget() {
+        assertTrue(prefetcher.getAdaptiveFragments(TYPE).isEmpty());
+        // fragment read by few documents
+        fetchWindow("common", 2);
+        assertTrue(prefetcher.getAdaptiveFragments(TYPE).isEmpty());
+        // fragment read by most documents
+        fetchWindow("common", 8);
+        assertEquals(Collections.singleton("common"), prefetcher.getAdaptiveFragments(TYPE));
+        // not read anymore
+        fetchWindow("common", 0);
+        assertTrue(prefetcher.getAdaptiveFragments(TYPE).isEmpty());
+    }
+
+    @Test
+    public void testStaticFragmentsIgnored() {
+        fetchWindow("dublincore", MIN_SAMPLES);
+        assertTrue(prefetcher.getAdaptiveFragments(TYPE).isEmpty());
+    }
+
+    @Test
+    public void testUnknownType() {
+        prefetcher.recordRead("Unknown", "common", false);
+        assertTrue(prefetcher.getAdaptiveFragments("Unknown").isEmpty());
+    }
+
+}
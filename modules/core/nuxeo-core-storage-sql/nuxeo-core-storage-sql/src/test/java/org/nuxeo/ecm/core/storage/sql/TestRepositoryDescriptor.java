@@ -66,6 +66,95 @@ public class TestRepositoryDescriptor {
         testBasic();
     }
 
+    @Test
+    public void testAdaptivePrefetch() throws Exception {
+        assertTrue(desc.getAdaptivePrefetchEnabled());
+        assertEquals(0.25, desc.getAdaptivePrefetchThreshold(), 0);
+        assertEquals(500, desc.getAdaptivePrefetchMinSamples());
+    }
+
+    @Test
+    public void testAdaptivePrefetchCopy() throws Exception {
+        desc = new RepositoryDescriptor(desc);
+        testAdaptivePrefetch();
+    }
+
+    @Test
+    public void testQueryCache() throws Exception {
+        assertTrue(desc.getQueryCacheEnabled());
+        assertEquals(200, desc.getQueryCacheMaxSize());
+    }
+
+    @Test
+    public void testQueryCacheCopy() throws Exception {
+        desc = new RepositoryDescriptor(desc);
+        testQueryCache();
+    }
+
+    @Test
+    public void testBulkInsert() throws Exception {
+        assertTrue(desc.getBulkInsertEnabled());
+        assertEquals(500, desc.getBulkInsertMinRows());
+    }
+
+    @Test
+    public void testBulkInsertCopy() throws Exception {
+        desc = new RepositoryDescriptor(desc);
+        testBulkInsert();
+    }
+
+    @Test
+    public void testAclOptimizations() throws Exception {
+        assertTrue(desc.getAclOptimizationsEnabled());
+        assertEquals(1000, desc.getReadAclUpdateChunkSize());
+    }
+
+    @Test
+    public void testAclOptimizationsCopy() throws Exception {
+        desc = new RepositoryDescriptor(desc);
+        testAclOptimizations();
+    }
+
+    @Test
+    public void testClusterInvalidations() throws Exception {
+        assertEquals(200, desc.getClusterInvalidationsCoalesceWindow());
+        assertEquals(1000, desc.getClusterInvalidationsTableThreshold());
+    }
+
+    @Test
+    public void testClusterInvalidationsCopy() throws Exception {
+        desc = new RepositoryDescriptor(desc);
+        testClusterInvalidations();
+    }
+
+    @Test
+    public void testJDBCInstrumentation() throws Exception {
+        assertTrue(desc.getJDBCInstrumentationEnabled());
+        assertEquals(100, desc.getJDBCInstrumentationMaxStatements());
+        assertEquals(20, desc.getJDBCInstrumentationNPlusOneThreshold());
+    }
+
+    @Test
+    public void testJDBCInstrumentationCopy() throws Exception {
+        desc = new RepositoryDescriptor(desc);
+        testJDBCInstrumentation();
+    }
+
+    @Test
+    public void testReadReplicas() throws Exception {
+        assertTrue(desc.getReadReplicasEnabled());
+        assertTrue(desc.getReadReplicasAllQueries());
+        assertEquals(30, desc.getReadReplicasMaxLag());
+        assertEquals(2, desc.getReadReplicasCheckInterval());
+        assertEquals(Arrays.asList("jdbc/replica1", "jdbc/replica2"), desc.getReadReplicaDataSources());
+    }
+
+    @Test
+    public void testReadReplicasCopy() throws Exception {
+        desc = new RepositoryDescriptor(desc);
+        testReadReplicas();
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     public void testFulltext() throws Exception {
@@ -0,0 +1,246 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.RowMapper.RowBatch;
+import org.nuxeo.ecm.core.storage.sql.RowMapper.RowUpdate;
+
+public class TestSharedCachingRowMapper {
+
+    protected static final RowId ROW_ID = new RowId("dublincore", "id1");
+
+    protected MemoryRowMapper database;
+
+    protected VCSInvalidationsPropagator propagator;
+
+    protected String repositoryName;
+
+    /**
+     * Row mapper storing committed rows in memory.
+     */
+    protected static class MemoryRowMapper implements RowMapper {
+
+        protected final Map<RowId, Row> rows = new ConcurrentHashMap<>();
+
+        protected int reads;
+
+        @Override
+        public Serializable generateNewId() {
+            return UUID.randomUUID().toString();
+        }
+
+        @Override
+        public List<? extends RowId> read(Collection<RowId> rowIds, boolean cacheOnly) {
+            return rowIds.stream().map(rowId -> {
+                Row row = readSimpleRow(rowId);
+                return row == null ? new RowId(rowId) : row;
+            }).collect(Collectors.toList());
+        }
+
+        @Override
+        public void write(RowBatch batch) {
+            batch.creates.forEach(row -> rows.put(new RowId(row), row.clone()));
+            batch.updates.forEach(rowu -> rows.put(new RowId(rowu.row), rowu.row.clone()));
+            batch.deletes.forEach(rows::remove);
+        }
+
+        @Override
+        public Row readSimpleRow(RowId rowId) {
+            reads++;
+            Row row = rows.get(rowId);
+            return row == null ? null : row.clone();
+        }
+
+        @Override
+        public Map<String, String> getBinaryFulltext(RowId rowId) {
+            return null;
+        }
+
+        @Override
+        public Serializable[] readCollectionRowArray(RowId rowId) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<Row> readSelectionRows(SelectionType selType, Serializable selId, Serializable filter,
+                Serializable criterion, boolean limitToOne) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public Set<Serializable> readSelectionsIds(SelectionType selType, List<Serializable> values) {
+            return Collections.emptySet();
+        }
+
+        @Override
+        public CopyResult copy(IdWithTypes source, Serializable destParentId, String destName, Row overwriteRow,
+                boolean excludeSpecialChildren, boolean excludeACL) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public List<NodeInfo> getDescendantsInfo(Serializable rootId) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public void remove(Serializable rootId, List<NodeInfo> nodeInfos) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public VCSInvalidations receiveInvalidations() {
+            return null;
+        }
+
+        @Override
+        public void sendInvalidations(VCSInvalidations invalidations) {
+        }
+
+        @Override
+        public void clearCache() {
+        }
+
+        @Override
+        public long getCacheSize() {
+            return 0;
+        }
+
+        @Override
+        public void rollback() {
+        }
+    }
+
+    @Before
+    public void setUp() {
+        database = new MemoryRowMapper();
+        database.rows.put(ROW_ID, newRow("foo"));
+        propagator = new VCSInvalidationsPropagator();
+        // unique repository name to get fresh metrics
+        repositoryName = UUID.randomUUID().toString();
+    }
+
+    protected static Row newRow(String title) {
+        Row row = new Row(ROW_ID.tableName, ROW_ID.id);
+        row.put("title", title);
+        return row;
+    }
+
+    protected SharedCachingRowMapper newMapper() {
+        SharedCachingRowMapper mapper = new SharedCachingRowMapper();
+        mapper.initialize(repositoryName, null, database, propagator, Collections.emptyMap());
+        return mapper;
+    }
+
+    protected static void update(RowMapper mapper, String title) {
+        RowBatch batch = new RowBatch();
+        batch.updates.add(new RowUpdate(newRow(title), Collections.singleton("title")));
+        mapper.write(batch);
+    }
+
+    protected static String readTitle(RowMapper mapper) {
+        return (String) mapper.readSimpleRow(ROW_ID).get("title");
+    }
+
+    @Test
+    public void testSharedBetweenSessions() {
+        SharedCachingRowMapper mapper1 = newMapper();
+        SharedCachingRowMapper mapper2 = newMapper();
+        assertEquals("foo", readTitle(mapper1));
+        assertEquals("foo", readTitle(mapper2));
+        assertEquals(1, database.reads);
+        assertEquals(1, mapper1.cacheHitCount.getCount());
+    }
+
+    @Test
+    public void testUncommittedWritesNotShared() {
+        SharedCachingRowMapper mapper1 = newMapper();
+        SharedCachingRowMapper mapper2 = newMapper();
+        assertEquals("foo", readTitle(mapper2));
+        update(mapper1, "bar");
+        assertEquals("bar", readTitle(mapper1));
+        assertEquals(1, mapper1.getCacheSize());
+        // other session still sees the committed row
+        assertEquals("foo", readTitle(mapper2));
+        // commit
+        mapper1.sendInvalidations(null);
+        assertEquals(0, mapper1.getCacheSize());
+        assertEquals("bar", readTitle(mapper2));
+        // the other session's caches are invalidated too
+        VCSInvalidations invalidations = mapper2.receiveInvalidations();
+        assertNotNull(invalidations);
+        assertEquals(Collections.singleton(ROW_ID), invalidations.modified);
+    }
+
+    @Test
+    public void testRollback() {
+        SharedCachingRowMapper mapper = newMapper();
+        update(mapper, "bar");
+        assertEquals("bar", readTitle(mapper));
+        // simulate the database rollback
+        database.rows.put(ROW_ID, newRow("foo"));
+        mapper.rollback();
+        assertEquals("foo", readTitle(mapper));
+    }
+
+    @Test
+    public void testStalePutIgnored() {
+        SharedRowCache cache = new SharedRowCache(repositoryName, SharedRowCache.DEFAULT_MAX_WEIGHT);
+        long gen = cache.getGeneration();
+        // concurrent commit
+        cache.invalidate(Collections.singleton(ROW_ID));
+        cache.put(ROW_ID, newRow("foo"), gen);
+        assertNull(cache.get(ROW_ID));
+        cache.put(ROW_ID, newRow("foo"), cache.getGeneration());
+        assertNotNull(cache.get(ROW_ID));
+    }
+
+    @Test
+    public void testWeightBound() {
+        Row row = newRow("foo");
+        int weight = SharedRowCache.getWeight(row);
+        // room for about 10 rows
+        SharedRowCache cache = new SharedRowCache(repositoryName, 10L * weight);
+        for (int i = 0; i < 100; i++) {
+            Row r = row.clone();
+            r.id = "id" + i;
+            cache.put(new RowId(r), r, cache.getGeneration());
+        }
+        long size = cache.size();
+        assertTrue(String.valueOf(size), size > 0 && size <= 10);
+    }
+
+}
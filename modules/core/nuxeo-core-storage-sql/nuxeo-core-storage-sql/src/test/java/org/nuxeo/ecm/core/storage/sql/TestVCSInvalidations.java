@@ -0,0 +1,115 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TestVCSInvalidations {
+
+    @Test
+    public void testCollapseTables() {
+        VCSInvalidations invalidations = new VCSInvalidations();
+        for (int i = 0; i < 5; i++) {
+            invalidations.addModified(new RowId("hierarchy", "id" + i));
+        }
+        invalidations.addDeleted(new RowId("hierarchy", "id9"));
+        invalidations.addModified(new RowId("dublincore", "id0"));
+        assertEquals(7, invalidations.size());
+
+        // below the threshold
+        assertEquals(0, invalidations.collapseTables(6));
+        assertEquals(7, invalidations.size());
+        // no threshold
+        assertEquals(0, invalidations.collapseTables(0));
+
+        assertEquals(1, invalidations.collapseTables(5));
+        assertEquals(Collections.singleton("hierarchy"), invalidations.tables);
+        assertEquals(Collections.singleton(new RowId("dublincore", "id0")), invalidations.modified);
+        assertNull(invalidations.deleted);
+        assertEquals(2, invalidations.size());
+        assertFalse(invalidations.isEmpty());
+
+        // rows of an invalidated table are not kept
+        invalidations.addModified(new RowId("hierarchy", "id10"));
+        invalidations.addDeleted(new RowId("hierarchy", "id11"));
+        assertEquals(2, invalidations.size());
+    }
+
+    @Test
+    public void testAddWithTables() {
+        VCSInvalidations invalidations = new VCSInvalidations();
+        invalidations.addModified(new RowId("hierarchy", "id1"));
+        invalidations.addModified(new RowId("dublincore", "id1"));
+
+        VCSInvalidations other = new VCSInvalidations();
+        other.addTable("hierarchy");
+        invalidations.add(other);
+        assertEquals(Collections.singleton("hierarchy"), invalidations.tables);
+        assertEquals(Collections.singleton(new RowId("dublincore", "id1")), invalidations.modified);
+
+        other = new VCSInvalidations();
+        other.addModified(new RowId("hierarchy", "id2"));
+        other.addDeleted(new RowId("hierarchy", "id3"));
+        invalidations.add(other);
+        assertEquals(Collections.singleton(new RowId("dublincore", "id1")), invalidations.modified);
+        assertNull(invalidations.deleted);
+
+        invalidations.add(new VCSInvalidations(true));
+        assertTrue(invalidations.all);
+        assertNull(invalidations.tables);
+    }
+
+    @Test
+    public void testSerialization() throws Exception {
+        VCSInvalidations invalidations = new VCSInvalidations();
+        invalidations.addModified(new RowId("dublincore", "id1"));
+        invalidations.addTable("hierarchy");
+        invalidations.time = 123;
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        invalidations.serialize(out);
+        VCSInvalidations read = VCSInvalidations.deserialize(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(invalidations.toString(), read.toString());
+        assertEquals(Collections.singleton("hierarchy"), read.tables);
+        assertEquals(123, read.time);
+    }
+
+    @Test
+    public void testSerializationCompatibility() throws Exception {
+        VCSInvalidations invalidations = new VCSInvalidations();
+        invalidations.addTable("hierarchy");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        invalidations.serialize(out);
+        // all is written for nodes of a previous version, which ignore the tables, but not read back
+        VCSInvalidations read = VCSInvalidations.deserialize(new ByteArrayInputStream(out.toByteArray()));
+        assertFalse(read.all);
+        assertEquals(Collections.singleton("hierarchy"), read.tables);
+        // the sender's invalidations are unchanged
+        assertFalse(invalidations.all);
+    }
+
+}
@@ -0,0 +1,109 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.RuntimeFeature;
+
+/**
+ * @since 11.5
+ */
+@RunWith(FeaturesRunner.class)
+@Features(RuntimeFeature.class)
+@Deploy("org.nuxeo.runtime.pubsub")
+public class TestVCSPubSubInvalidator {
+
+    protected static final String REPOSITORY = "test";
+
+    protected VCSPubSubInvalidator receiver;
+
+    @Before
+    public void setUp() {
+        receiver = new VCSPubSubInvalidator();
+        receiver.initialize("node2", REPOSITORY, 0, 0);
+    }
+
+    @After
+    public void tearDown() {
+        receiver.close();
+    }
+
+    protected static VCSInvalidations modified(String... tableNamesAndIds) {
+        VCSInvalidations invalidations = new VCSInvalidations();
+        for (int i = 0; i < tableNamesAndIds.length; i += 2) {
+            invalidations.addModified(new RowId(tableNamesAndIds[i], tableNamesAndIds[i + 1]));
+        }
+        return invalidations;
+    }
+
+    @Test
+    public void testCoalesce() {
+        VCSPubSubInvalidator sender = new VCSPubSubInvalidator();
+        // a window long enough for nothing to be sent before close
+        sender.initialize("node1", REPOSITORY, 3_600_000, 0);
+        try {
+            sender.sendInvalidations(modified("hierarchy", "id1"));
+            sender.sendInvalidations(modified("hierarchy", "id1", "dublincore", "id2"));
+            assertTrue(receiver.receiveInvalidations().isEmpty());
+        } finally {
+            // sends the pending invalidations
+            sender.close();
+        }
+        VCSInvalidations invalidations = receiver.receiveInvalidations();
+        assertEquals(new HashSet<>(Arrays.asList(new RowId("hierarchy", "id1"), new RowId("dublincore", "id2"))),
+                invalidations.modified);
+        assertTrue(invalidations.time > 0);
+        assertTrue(receiver.receiveInvalidations().isEmpty());
+    }
+
+    @Test
+    public void testCollapseDoesNotChangeCallerInvalidations() {
+        VCSPubSubInvalidator sender = new VCSPubSubInvalidator();
+        sender.initialize("node1", REPOSITORY, 0, 1);
+        VCSInvalidations sent = modified("hierarchy", "id1", "hierarchy", "id2");
+        try {
+            sender.sendInvalidations(sent);
+        } finally {
+            sender.close();
+        }
+        assertNull(sent.tables);
+        assertEquals(2, sent.modified.size());
+        assertEquals(0, sent.time);
+        VCSInvalidations invalidations = receiver.receiveInvalidations();
+        assertFalse(invalidations.all);
+        assertEquals(Collections.singleton("hierarchy"), invalidations.tables);
+        assertNull(invalidations.modified);
+    }
+
+}
@@ -0,0 +1,159 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.util.List;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.storage.sql.jdbc.JDBCInstrumentation.StatementStats;
+
+public class TestJDBCInstrumentation {
+
+    protected static final String SELECT = "SELECT \"id\" FROM \"hierarchy\" WHERE \"id\" IN (%s)";
+
+    protected static final String UPDATE = "UPDATE \"hierarchy\" SET \"name\" = ? WHERE \"id\" = ?";
+
+    /** A fake result set returning {@code rows} rows. */
+    protected static ResultSet newResultSet(int rows) {
+        int[] n = new int[1];
+        return (ResultSet) Proxy.newProxyInstance(TestJDBCInstrumentation.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class },
+                (proxy, method, args) -> method.getName().equals("next") ? Boolean.valueOf(n[0]++ < rows) : null);
+    }
+
+    /** A fake connection whose queries return {@code rows} rows and whose updates return {@code rows}. */
+    protected static Connection newConnection(int rows) {
+        PreparedStatement ps = (PreparedStatement) Proxy.newProxyInstance(
+                TestJDBCInstrumentation.class.getClassLoader(), new Class<?>[] { PreparedStatement.class },
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "executeQuery":
+                        return newResultSet(rows);
+                    case "executeUpdate":
+                        return Integer.valueOf(rows);
+                    case "execute":
+                        return Boolean.TRUE;
+                    case "getResultSet":
+                        return newResultSet(rows);
+                    default:
+                        return null;
+                    }
+                });
+        return (Connection) Proxy.newProxyInstance(TestJDBCInstrumentation.class.getClassLoader(),
+                new Class<?>[] { Connection.class },
+                (proxy, method, args) -> method.getName().equals("prepareStatement") ? ps : null);
+    }
+
+    @Test
+    public void testShape() {
+        assertEquals(String.format(SELECT, "?..."), JDBCInstrumentation.getShape(String.format(SELECT, "?, ?,?")));
+        assertEquals(String.format(SELECT, "?"), JDBCInstrumentation.getShape(String.format(SELECT, "?")));
+        assertEquals(UPDATE, JDBCInstrumentation.getShape(UPDATE));
+    }
+
+    @Test
+    public void testShapeId() {
+        String id = JDBCInstrumentation.getShapeId(UPDATE);
+        assertTrue(id, id.matches("[0-9a-f]{16}"));
+        assertEquals(id, JDBCInstrumentation.getShapeId(UPDATE));
+        assertNotEquals(id, JDBCInstrumentation.getShapeId(String.format(SELECT, "?")));
+    }
+
+    @Test
+    public void testStatements() throws Exception {
+        JDBCInstrumentation instrumentation = new JDBCInstrumentation("testStatements", 100, 0);
+        Connection raw = newConnection(2);
+        Connection connection = instrumentation.wrap(raw);
+        assertSame(raw, JDBCInstrumentation.getDelegate(connection));
+        assertSame(raw, JDBCInstrumentation.getDelegate(raw));
+
+        for (String params : new String[] { "?", "?, ?", "?, ?, ?" }) {
+            try (PreparedStatement ps = connection.prepareStatement(String.format(SELECT, params));
+                    ResultSet rs = ps.executeQuery()) {
+                while (rs.next()) {
+                    // read all rows
+                }
+            }
+        }
+        try (PreparedStatement ps = connection.prepareStatement(UPDATE)) {
+            ps.executeUpdate();
+            ps.executeUpdate();
+        }
+
+        List<StatementStats> list = instrumentation.getStatementsStats();
+        assertEquals(3, list.size());
+        StatementStats select = getStats(list, String.format(SELECT, "?..."));
+        assertEquals(2, select.getCount());
+        assertEquals(2, select.rows.getSnapshot().getMax());
+        StatementStats update = getStats(list, UPDATE);
+        assertEquals(2, update.getCount());
+        assertEquals(2, update.rows.getSnapshot().getMax());
+        assertTrue(instrumentation.getStatementsSummary(10).contains(UPDATE));
+    }
+
+    @Test
+    public void testMaxStatements() throws Exception {
+        JDBCInstrumentation instrumentation = new JDBCInstrumentation("testMaxStatements", 1, 0);
+        Connection connection = instrumentation.wrap(newConnection(1));
+        try (PreparedStatement ps = connection.prepareStatement(UPDATE)) {
+            ps.executeUpdate();
+        }
+        try (PreparedStatement ps = connection.prepareStatement(String.format(SELECT, "?"));
+                ResultSet rs = ps.executeQuery()) {
+            rs.next();
+        }
+        List<StatementStats> list = instrumentation.getStatementsStats();
+        assertEquals(2, list.size());
+        assertEquals(1, getStats(list, UPDATE).getCount());
+        assertEquals(1, getStats(list, JDBCInstrumentation.OTHER_SHAPE).getCount());
+    }
+
+    @Test
+    public void testExecuteWithResultSet() throws Exception {
+        JDBCInstrumentation instrumentation = new JDBCInstrumentation("testExecuteWithResultSet", 100, 0);
+        Connection connection = instrumentation.wrap(newConnection(3));
+        try (PreparedStatement ps = connection.prepareStatement(String.format(SELECT, "?"))) {
+            assertTrue(ps.execute());
+            try (ResultSet rs = ps.getResultSet()) {
+                while (rs.next()) {
+                    // read all rows
+                }
+            }
+        }
+        List<StatementStats> list = instrumentation.getStatementsStats();
+        assertEquals(1, list.size());
+        StatementStats select = getStats(list, String.format(SELECT, "?"));
+        assertEquals(1, select.getCount());
+        assertEquals(3, select.rows.getSnapshot().getMax());
+    }
+
+    protected static StatementStats getStats(List<StatementStats> list, String sql) {
+        return list.stream().filter(stats -> stats.sql.equals(sql)).findFirst().orElseThrow(AssertionError::new);
+    }
+
+}
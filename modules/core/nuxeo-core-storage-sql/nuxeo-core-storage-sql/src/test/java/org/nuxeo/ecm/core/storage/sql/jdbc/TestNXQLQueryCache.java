@@ -0,0 +1,229 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.nuxeo.ecm.core.query.QueryFilter;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.DefaultQueryVisitor;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
+import org.nuxeo.ecm.core.query.sql.model.StringLiteral;
+import org.nuxeo.ecm.core.storage.sql.Model;
+import org.nuxeo.ecm.core.storage.sql.Session.PathResolver;
+import org.nuxeo.ecm.core.storage.sql.jdbc.NXQLQueryCache.Shape;
+import org.nuxeo.ecm.core.storage.sql.jdbc.SQLInfo.SQLInfoSelect;
+
+public class TestNXQLQueryCache {
+
+    protected static final PathResolver PATH_RESOLVER = path -> "id" + path;
+
+    protected NXQLQueryCache cache;
+
+    /**
+     * Query maker passing the string literals as parameters.
+     */
+    public static class LiteralQueryMaker implements QueryMaker {
+
+        @Override
+        public String getName() {
+            return NXQL.NXQL;
+        }
+
+        @Override
+        public boolean accepts(String queryType) {
+            return NXQL.NXQL.equals(queryType);
+        }
+
+        @Override
+        public Query buildQuery(SQLInfo sqlInfo, Model model, PathResolver pathResolver, String query,
+                QueryFilter queryFilter, Object... params) {
+            Query q = new Query();
+            SQLQueryParser.parse(query).accept(new DefaultQueryVisitor() {
+                @Override
+                public void visitStringLiteral(StringLiteral node) {
+                    q.selectParams.add(convert(node.value, pathResolver));
+                }
+            });
+            q.selectInfo = new SQLInfoSelect("SELECT " + q.selectParams.size(), null);
+            return q;
+        }
+
+        protected Serializable convert(String value, PathResolver pathResolver) {
+            return value;
+        }
+    }
+
+    /**
+     * Query maker transforming the string literals.
+     */
+    public static class UpperCaseQueryMaker extends LiteralQueryMaker {
+
+        @Override
+        protected Serializable convert(String value, PathResolver pathResolver) {
+            return value.toUpperCase();
+        }
+    }
+
+    /**
+     * Query maker resolving the string literals as paths.
+     */
+    public static class PathQueryMaker extends LiteralQueryMaker {
+
+        @Override
+        protected Serializable convert(String value, PathResolver pathResolver) {
+            return pathResolver.getIdForPath(value);
+        }
+    }
+
+    /**
+     * Query maker binding the read acl ids of the query filter after the string literals.
+     */
+    public static class ReadAclQueryMaker extends LiteralQueryMaker {
+
+        @Override
+        public Query buildQuery(SQLInfo sqlInfo, Model model, PathResolver pathResolver, String query,
+                QueryFilter queryFilter, Object... params) {
+            Query q = super.buildQuery(sqlInfo, model, pathResolver, query, queryFilter, params);
+            if (queryFilter.getReadAclIds() != null) {
+                q.selectParams.add(queryFilter.getReadAclIds());
+            }
+            return q;
+        }
+    }
+
+    @Before
+    public void setUp() {
+        // unique repository name to get fresh metrics
+        cache = new NXQLQueryCache(UUID.randomUUID().toString(), 100);
+    }
+
+    protected List<Serializable> build(QueryMaker queryMaker, String query) {
+        return cache.buildQuery(queryMaker, null, null, PATH_RESOLVER, query, QueryFilter.EMPTY).selectParams;
+    }
+
+    @Test
+    public void testShape() {
+        Shape shape1 = Shape.parse("SELECT * FROM Document WHERE dc:title = 'foo' AND ecm:primaryType = 'File'");
+        Shape shape2 = Shape.parse("SELECT * FROM Document WHERE dc:title = \"bar\" AND ecm:primaryType = 'File'");
+        Shape shape3 = Shape.parse("SELECT * FROM Document WHERE dc:title = 'foo' AND ecm:primaryType = 'Note'");
+        assertEquals(shape1.key, shape2.key);
+        assertNotEquals(shape1.key, shape3.key);
+        assertEquals(Collections.singletonList("foo"), shape1.literals);
+        assertEquals(Collections.singletonList("bar"), shape2.literals);
+        assertEquals("SELECT * FROM Document WHERE dc:title = '" + NXQLQueryCache.getSentinel(0)
+                + "' AND ecm:primaryType = 'File'", shape1.getSentinelQuery());
+
+        Shape shape = Shape.parse("SELECT * FROM Document WHERE dc:subjects NOT IN ('a', 'b')"
+                + " AND dc:title BETWEEN 'c' AND 'd' AND dc:description LIKE 'e%' AND 'f' = dc:source");
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e%"), shape.literals);
+
+        assertNull(Shape.parse("SELECT * FROM Document WHERE ecm:path = '/foo'"));
+        assertNull(Shape.parse("SELECT * FROM Document WHERE ecm:isTrashed = 0"));
+        assertNull(Shape.parse("SELECT * FROM Document WHERE dc:modified > NOW('-P1D')"));
+    }
+
+    @Test
+    public void testParameterized() {
+        QueryMaker queryMaker = new LiteralQueryMaker();
+        assertEquals(Arrays.asList("foo", "x"), build(queryMaker, "SELECT * FROM Document WHERE dc:title = 'foo'"
+                + " AND ecm:uuid <> 'x'"));
+        assertEquals(0, cache.hitCount.getCount());
+        assertEquals(Arrays.asList("bar", "y"), build(queryMaker, "SELECT * FROM Document WHERE dc:title = 'bar'"
+                + " AND ecm:uuid <> 'y'"));
+        assertEquals(1, cache.hitCount.getCount());
+        assertEquals(1, cache.size());
+        assertEquals(0.5, cache.getHitRatio(), 0);
+    }
+
+    @Test
+    public void testNotParameterizable() {
+        QueryMaker queryMaker = new UpperCaseQueryMaker();
+        assertEquals(Arrays.asList("FOO"), build(queryMaker, "SELECT * FROM Document WHERE dc:title = 'foo'"));
+        assertEquals(Arrays.asList("BAR"), build(queryMaker, "SELECT * FROM Document WHERE dc:title = 'bar'"));
+        assertEquals(0, cache.hitCount.getCount());
+        // cached with its literals
+        assertEquals(Arrays.asList("BAR"), build(queryMaker, "SELECT * FROM Document WHERE dc:title = 'bar'"));
+        assertEquals(1, cache.hitCount.getCount());
+    }
+
+    @Test
+    public void testPathNotCached() {
+        QueryMaker queryMaker = new PathQueryMaker();
+        assertEquals(Arrays.asList("id/foo"), build(queryMaker, "SELECT * FROM Document WHERE dc:title = '/foo'"));
+        assertEquals(Arrays.asList("id/foo"), build(queryMaker, "SELECT * FROM Document WHERE dc:title = '/foo'"));
+        assertEquals(0, cache.hitCount.getCount());
+        assertEquals(2, cache.missCount.getCount());
+    }
+
+    @Test
+    public void testReadAclIds() {
+        QueryMaker queryMaker = new ReadAclQueryMaker();
+        String[] aclIds1 = { "acl1" };
+        String[] aclIds2 = { "acl1", "acl2" };
+        QueryFilter filter1 = QueryFilter.withReadAclIds(QueryFilter.EMPTY, aclIds1);
+        QueryFilter filter2 = QueryFilter.withReadAclIds(QueryFilter.EMPTY, aclIds2);
+        String query = "SELECT * FROM Document WHERE dc:title = 'foo'";
+        assertEquals(Arrays.asList("foo", aclIds1),
+                cache.buildQuery(queryMaker, null, null, PATH_RESOLVER, query, filter1).selectParams);
+        // the read acl ids are not reused from another translation
+        assertEquals(Arrays.asList("foo", aclIds2),
+                cache.buildQuery(queryMaker, null, null, PATH_RESOLVER, query, filter2).selectParams);
+        assertEquals(0, cache.hitCount.getCount());
+        assertEquals(Arrays.asList("foo", aclIds1),
+                cache.buildQuery(queryMaker, null, null, PATH_RESOLVER, query, filter1).selectParams);
+        assertEquals(1, cache.hitCount.getCount());
+    }
+
+    @Test
+    public void testTransformers() {
+        SQLQuery.Transformer policyTransformer = (principal, query) -> query;
+        cache = new NXQLQueryCache(UUID.randomUUID().toString(), 100, () -> List.of(policyTransformer));
+        QueryMaker queryMaker = new LiteralQueryMaker();
+        String query = "SELECT * FROM Document WHERE dc:title = 'foo'";
+        // the translation is reused with the transformers of the security policies
+        QueryFilter policyFilter = new QueryFilter(null, null, null, null, List.of(policyTransformer), 0, 0);
+        cache.buildQuery(queryMaker, null, null, PATH_RESOLVER, query, policyFilter);
+        cache.buildQuery(queryMaker, null, null, PATH_RESOLVER, query, policyFilter);
+        assertEquals(1, cache.hitCount.getCount());
+        assertEquals(1, cache.size());
+        // but not with a per-query transformer
+        for (int i = 0; i < 2; i++) {
+            SQLQuery.Transformer queryTransformer = (principal, q) -> q;
+            QueryFilter filter = new QueryFilter(null, null, null, null,
+                    List.of(policyTransformer, queryTransformer), 0, 0);
+            assertEquals(Arrays.asList("foo"),
+                    cache.buildQuery(queryMaker, null, null, PATH_RESOLVER, query, filter).selectParams);
+        }
+        assertEquals(1, cache.hitCount.getCount());
+        assertEquals(1, cache.size());
+    }
+
+}
@@ -0,0 +1,223 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.ReadReplicaHelper;
+
+public class TestReadReplicaRouter {
+
+    /**
+     * A router whose replicas are fake connections returning the configured lag, named after their datasource.
+     */
+    protected static class FakeRouter extends ReadReplicaRouter {
+
+        protected final Map<String, Double> lags = new HashMap<>();
+
+        protected final List<String> opened = new ArrayList<>();
+
+        protected FakeRouter(String repositoryName, int checkInterval, boolean allQueries, String... dataSourceNames) {
+            super(repositoryName, Arrays.asList(dataSourceNames), "SELECT lag", 10, checkInterval, allQueries);
+        }
+
+        @Override
+        protected Connection openConnection(String dataSourceName) throws SQLException {
+            if (!lags.containsKey(dataSourceName)) {
+                throw new SQLException("Connection refused");
+            }
+            opened.add(dataSourceName);
+            return fakeConnection(dataSourceName, () -> lags.get(dataSourceName));
+        }
+    }
+
+    /**
+     * A fake connection whose statements return the given lag, or fail if it is {@code null}.
+     */
+    protected static Connection fakeConnection(String name, Supplier<Double> lag) {
+        ResultSet rs = (ResultSet) Proxy.newProxyInstance(TestReadReplicaRouter.class.getClassLoader(),
+                new Class<?>[] { ResultSet.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "next":
+                        return Boolean.TRUE;
+                    case "getDouble":
+                        return lag.get();
+                    default:
+                        return null;
+                    }
+                });
+        Statement st = (Statement) Proxy.newProxyInstance(TestReadReplicaRouter.class.getClassLoader(),
+                new Class<?>[] { Statement.class }, (proxy, method, args) -> {
+                    if (!method.getName().equals("executeQuery")) {
+                        return null;
+                    }
+                    if (lag.get() == null) {
+                        throw new SQLException("Connection lost");
+                    }
+                    return rs;
+                });
+        return (Connection) Proxy.newProxyInstance(TestReadReplicaRouter.class.getClassLoader(),
+                new Class<?>[] { Connection.class }, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                    case "createStatement":
+                        return st;
+                    case "toString":
+                        return name;
+                    default:
+                        return null;
+                    }
+                });
+    }
+
+    protected static JDBCConnection newJDBCConnection(ReadReplicaRouter router) {
+        JDBCConnection jdbcConnection = new JDBCConnection();
+        jdbcConnection.connection = fakeConnection("primary", () -> Double.valueOf(0));
+        jdbcConnection.setReadReplicaRouter(router);
+        return jdbcConnection;
+    }
+
+    /**
+     * Runs a query returning the name of the connection it ran on, failing on the given connection.
+     */
+    protected static String runReadOnly(JDBCConnection jdbcConnection, boolean routable, String failingOn) {
+        return ReadReplicaHelper.runLagTolerant(() -> {
+            try {
+                return jdbcConnection.runReadOnly(routable, connection -> {
+                    if (connection.toString().equals(failingOn)) {
+                        throw new SQLException("Failed on " + failingOn);
+                    }
+                    return connection.toString();
+                });
+            } catch (SQLException e) {
+                throw new NuxeoException(e);
+            }
+        });
+    }
+
+    @Test
+    public void testRoundRobin() {
+        FakeRouter router = new FakeRouter("testRoundRobin", 0, true, "r1", "r2");
+        router.lags.put("r1", Double.valueOf(0));
+        router.lags.put("r2", Double.valueOf(1));
+        for (int i = 0; i < 4; i++) {
+            router.getConnection();
+        }
+        assertEquals(Arrays.asList("r1", "r2", "r1", "r2"), router.opened);
+    }
+
+    @Test
+    public void testLaggingReplicaSkipped() {
+        FakeRouter router = new FakeRouter("testLaggingReplicaSkipped", 0, true, "r1", "r2");
+        router.lags.put("r1", Double.valueOf(60));
+        router.lags.put("r2", Double.valueOf(1));
+        for (int i = 0; i < 4; i++) {
+            assertEquals("r2", router.getConnection().toString());
+        }
+        // replica caught up, used again at the next check
+        router.lags.put("r1", Double.valueOf(0));
+        router.opened.clear();
+        router.getConnection();
+        router.getConnection();
+        assertTrue(router.opened.contains("r1"));
+    }
+
+    @Test
+    public void testFallbackToPrimary() {
+        FakeRouter router = new FakeRouter("testFallbackToPrimary", 3600, true, "r1", "r2");
+        // r1 unreachable, r2 lagging
+        router.lags.put("r2", Double.valueOf(60));
+        assertNull(router.getConnection());
+        // unhealthy replicas are not retried before the next check
+        router.lags.put("r1", Double.valueOf(0));
+        router.lags.put("r2", Double.valueOf(0));
+        router.opened.clear();
+        assertNull(router.getConnection());
+        assertTrue(router.opened.isEmpty());
+    }
+
+    @Test
+    public void testCanRoute() {
+        // outside a transaction only the lag tolerant queries are routed
+        FakeRouter router = new FakeRouter("testCanRoute", 0, true, "r1");
+        assertFalse(router.canRoute());
+        assertTrue(ReadReplicaHelper.runLagTolerant(router::canRoute).booleanValue());
+        FakeRouter tolerantOnly = new FakeRouter("testCanRouteTolerantOnly", 0, false, "r1");
+        assertFalse(tolerantOnly.canRoute());
+        assertTrue(ReadReplicaHelper.runLagTolerant(tolerantOnly::canRoute).booleanValue());
+        assertFalse(ReadReplicaHelper.isLagTolerated());
+    }
+
+    @Test
+    public void testKeptConnectionDroppedWhenLagging() {
+        FakeRouter router = new FakeRouter("testKeptConnectionDroppedWhenLagging", 0, true, "r1", "r2");
+        router.lags.put("r1", Double.valueOf(0));
+        router.lags.put("r2", Double.valueOf(60));
+        JDBCConnection jdbcConnection = newJDBCConnection(router);
+        assertEquals("r1", runReadOnly(jdbcConnection, true, null));
+        // the connection is kept while its replica doesn't lag
+        assertEquals("r1", runReadOnly(jdbcConnection, true, null));
+        assertEquals(Arrays.asList("r1"), router.opened);
+        // the replica starts lagging, its connection is dropped
+        router.lags.put("r1", Double.valueOf(60));
+        router.lags.put("r2", Double.valueOf(0));
+        assertEquals("r2", runReadOnly(jdbcConnection, true, null));
+        assertEquals("r2", jdbcConnection.replica.toString());
+    }
+
+    @Test
+    public void testReplicaFailureFallsBackToPrimary() {
+        FakeRouter router = new FakeRouter("testReplicaFailureFallsBackToPrimary", 3600, true, "r1");
+        router.lags.put("r1", Double.valueOf(0));
+        JDBCConnection jdbcConnection = newJDBCConnection(router);
+        assertEquals("primary", runReadOnly(jdbcConnection, true, "r1"));
+        // the failed connection is dropped, a new one is opened for the next query
+        assertNull(jdbcConnection.replicaConnection);
+        assertEquals("r1", runReadOnly(jdbcConnection, true, null));
+        assertEquals(Arrays.asList("r1", "r1"), router.opened);
+    }
+
+    @Test
+    public void testReadAclsQueryStaysOnPrimary() {
+        // with read acl optimizations, the queries checking the user read acls are not routable
+        FakeRouter router = new FakeRouter("testReadAclsQueryStaysOnPrimary", 0, true, "r1");
+        router.lags.put("r1", Double.valueOf(0));
+        JDBCConnection jdbcConnection = newJDBCConnection(router);
+        assertEquals("primary", runReadOnly(jdbcConnection, false, null));
+        assertTrue(router.opened.isEmpty());
+        assertEquals("r1", runReadOnly(jdbcConnection, true, null));
+    }
+
+}
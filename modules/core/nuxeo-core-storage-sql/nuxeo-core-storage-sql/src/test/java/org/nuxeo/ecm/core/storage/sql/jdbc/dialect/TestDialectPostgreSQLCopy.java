@@ -0,0 +1,117 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage.sql.jdbc.dialect;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.jmock.integration.junit4.JMock;
+import org.jmock.integration.junit4.JUnit4Mockery;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.storage.sql.ColumnType;
+import org.nuxeo.ecm.core.storage.sql.RepositoryDescriptor;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.Column;
+import org.nuxeo.ecm.core.storage.sql.jdbc.db.TableImpl;
+
+@RunWith(JMock.class)
+public class TestDialectPostgreSQLCopy {
+
+    protected Mockery jmcontext = new JUnit4Mockery();
+
+    protected DialectPostgreSQL dialect;
+
+    protected TableImpl table;
+
+    @Before
+    public void setUp() throws SQLException {
+        DatabaseMetaData metadata = jmcontext.mock(DatabaseMetaData.class);
+        ResultSet rs = jmcontext.mock(ResultSet.class);
+        jmcontext.checking(new Expectations() {
+            {
+                allowing(metadata).storesUpperCaseIdentifiers();
+                will(returnValue(false));
+                allowing(metadata).getDatabaseMajorVersion();
+                will(returnValue(13));
+                allowing(metadata).getDatabaseMinorVersion();
+                will(returnValue(0));
+                allowing(metadata).getColumns(with(aNull(String.class)), with(aNull(String.class)),
+                        with(any(String.class)), with(any(String.class)));
+                will(returnValue(rs));
+                allowing(rs).next();
+                will(returnValue(false));
+                allowing(rs).close();
+            }
+        });
+        dialect = new DialectPostgreSQL(metadata, new RepositoryDescriptor());
+        table = new TableImpl(dialect, "foo", "foo");
+    }
+
+    protected String copyRow(List<Column> columns, Serializable... values) {
+        StringBuilder sb = new StringBuilder();
+        dialect.appendCopyRow(sb, columns, values);
+        return sb.toString();
+    }
+
+    @Test
+    public void testSupportsCopyIn() {
+        Column id = table.addColumn("id", ColumnType.NODEID, "id", null);
+        Column title = table.addColumn("title", ColumnType.STRING, "title", null);
+        Column subjects = table.addColumn("subjects", ColumnType.ARRAY_STRING, "subjects", null);
+        assertTrue(dialect.supportsCopyIn(Arrays.asList(id, title, subjects)));
+        // tsvector columns of the compatibility fulltext table are set through a function
+        dialect.compatibilityFulltextTable = true;
+        Column fulltext = table.addColumn("fulltext", ColumnType.FTSTORED, "fulltext", null);
+        assertFalse(dialect.supportsCopyIn(Arrays.asList(id, fulltext)));
+    }
+
+    @Test
+    public void testCopyRow() {
+        Column id = table.addColumn("id", ColumnType.NODEID, "id", null);
+        Column title = table.addColumn("title", ColumnType.STRING, "title", null);
+        Column flag = table.addColumn("flag", ColumnType.BOOLEAN, "flag", null);
+        Column size = table.addColumn("size", ColumnType.LONG, "size", null);
+        Column subjects = table.addColumn("subjects", ColumnType.ARRAY_STRING, "subjects", null);
+        List<Column> columns = Arrays.asList(id, title, flag, size, subjects);
+        assertEquals("123\ta\\tb\\\\c\\nd\tt\t42\t{\"x\",\"y\\\\\"z\",NULL}\n",
+                copyRow(columns, "123", "a\tb\\c\nd", Boolean.TRUE, Long.valueOf(42),
+                        new String[] { "x", "y\"z", null }));
+        assertEquals("123\t\\N\tf\t\\N\t{}\n",
+                copyRow(columns, "123", null, Boolean.FALSE, null, new String[0]));
+    }
+
+    @Test
+    public void testCopyRowBinary() {
+        Column data = table.addColumn("data", ColumnType.BLOB, "data", null);
+        assertEquals("\\\\x00ff10\n", copyRow(Collections.singletonList(data), new byte[] { 0, -1, 16 }));
+    }
+
+}
@@ -33,6 +33,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Set;
+import java.util.function.IntPredicate;
 import java.util.regex.Pattern;
 
 import org.apache.commons.lang3.CharUtils;
@@ -778,6 +779,511 @@ public abstract class ExpressionEvaluator {
      */
     public abstract Boolean walkMixinTypes(List<String> mixins, boolean include);
 
+    /*
+     * ----- compilation -----
+     */
+
+    /**
+     * A compiled expression or operand, evaluated against the current context.
+     * <p>
+     * Operators, constants, patterns and resolved paths are computed once at compilation time, so that evaluation only
+     * has to fetch the referenced values and apply the operators.
+     *
+     * @since 11.5
+     */
+    @FunctionalInterface
+    public interface CompiledOperand {
+
+        /**
+         * Evaluates this operand against the current context.
+         */
+        Object eval();
+    }
+
+    /**
+     * Compiles an expression into a tree of {@link CompiledOperand}s.
+     * <p>
+     * References are compiled through {@link #compileReference} in the same order as they are visited by
+     * {@link #walkExpression}. Unlike {@link #walkExpression}, evaluation of a compiled expression short-circuits
+     * boolean operators, as compiled references don't depend on the order in which they are evaluated.
+     *
+     * @since 11.5
+     */
+    public CompiledOperand compileExpression(Expression expr) {
+        Operator op = expr.operator;
+        Operand lvalue = expr.lvalue;
+        Operand rvalue = expr.rvalue;
+        Reference ref = lvalue instanceof Reference ? (Reference) lvalue : null;
+        String name = ref != null ? ref.name : null;
+        String cast = ref != null ? ref.cast : null;
+        if (DATE_CAST.equals(cast)) {
+            checkDateLiteralForCast(rvalue, name);
+        }
+        if (op == Operator.STARTSWITH) {
+            return compileStartsWith(lvalue, rvalue);
+        } else if (NXQL.ECM_PATH.equals(name)) {
+            return compileEcmPath(op, rvalue);
+        } else if (NXQL.ECM_ANCESTORID.equals(name)) {
+            return compileAncestorId(op, rvalue);
+        } else if (NXQL.ECM_ISTRASHED.equals(name)) {
+            return compileIsTrashed(op, rvalue);
+        } else if (name != null && name.startsWith(NXQL.ECM_FULLTEXT) && !NXQL.ECM_FULLTEXT_JOBID.equals(name)) {
+            return compileEcmFulltext(name, op, rvalue);
+        } else if (op == Operator.SUM) {
+            throw new UnsupportedOperationException("SUM");
+        } else if (op == Operator.SUB) {
+            throw new UnsupportedOperationException("SUB");
+        } else if (op == Operator.MUL) {
+            throw new UnsupportedOperationException("MUL");
+        } else if (op == Operator.DIV) {
+            throw new UnsupportedOperationException("DIV");
+        } else if (op == Operator.LT) {
+            return compileCmp(lvalue, rvalue, cmp -> cmp < 0);
+        } else if (op == Operator.GT) {
+            return compileCmp(lvalue, rvalue, cmp -> cmp > 0);
+        } else if (op == Operator.EQ) {
+            return compileEq(lvalue, rvalue);
+        } else if (op == Operator.NOTEQ) {
+            return compileNotEq(lvalue, rvalue);
+        } else if (op == Operator.LTEQ) {
+            return compileCmp(lvalue, rvalue, cmp -> cmp <= 0);
+        } else if (op == Operator.GTEQ) {
+            return compileCmp(lvalue, rvalue, cmp -> cmp >= 0);
+        } else if (op == Operator.AND) {
+            if (expr instanceof MultiExpression) {
+                return compileMultiExpression((MultiExpression) expr);
+            } else {
+                return compileAnd(lvalue, rvalue);
+            }
+        } else if (op == Operator.NOT) {
+            CompiledOperand value = compileOperand(lvalue);
+            return () -> not(bool(value.eval()));
+        } else if (op == Operator.OR) {
+            if (expr instanceof MultiExpression) {
+                return compileMultiExpression((MultiExpression) expr);
+            } else {
+                return compileOr(lvalue, rvalue);
+            }
+        } else if (op == Operator.LIKE) {
+            return compileLike(lvalue, rvalue, true, false);
+        } else if (op == Operator.ILIKE) {
+            return compileLike(lvalue, rvalue, true, true);
+        } else if (op == Operator.NOTLIKE) {
+            return compileLike(lvalue, rvalue, false, false);
+        } else if (op == Operator.NOTILIKE) {
+            return compileLike(lvalue, rvalue, false, true);
+        } else if (op == Operator.IN) {
+            return compileIn(lvalue, rvalue, true);
+        } else if (op == Operator.NOTIN) {
+            return compileIn(lvalue, rvalue, false);
+        } else if (op == Operator.ISNULL) {
+            CompiledOperand value = compileOperand(lvalue);
+            return () -> value.eval() == null ? TRUE : FALSE;
+        } else if (op == Operator.ISNOTNULL) {
+            CompiledOperand value = compileOperand(lvalue);
+            return () -> value.eval() != null ? TRUE : FALSE;
+        } else if (op == Operator.BETWEEN) {
+            return compileBetween(lvalue, rvalue, true);
+        } else if (op == Operator.NOTBETWEEN) {
+            return compileBetween(lvalue, rvalue, false);
+        } else {
+            throw new QueryParseException("Unknown operator: " + op);
+        }
+    }
+
+    protected CompiledOperand compileEcmPath(Operator op, Operand rvalue) {
+        if (op != Operator.EQ && op != Operator.NOTEQ) {
+            throw new QueryParseException(NXQL.ECM_PATH + " requires = or <> operator");
+        }
+        if (!(rvalue instanceof StringLiteral)) {
+            throw new QueryParseException(NXQL.ECM_PATH + " requires literal path as right argument");
+        }
+        String path = ((StringLiteral) rvalue).value;
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        String id = pathResolver.getIdForPath(path);
+        CompiledOperand right = compileReference(new Reference(NXQL.ECM_UUID));
+        if (id == null) {
+            return () -> FALSE;
+        }
+        boolean positive = op == Operator.EQ;
+        return () -> {
+            Boolean eq = eq(id, right.eval());
+            return positive ? eq : not(eq);
+        };
+    }
+
+    protected CompiledOperand compileAncestorId(Operator op, Operand rvalue) {
+        if (op != Operator.EQ && op != Operator.NOTEQ) {
+            throw new QueryParseException(NXQL.ECM_ANCESTORID + " requires = or <> operator");
+        }
+        if (!(rvalue instanceof StringLiteral)) {
+            throw new QueryParseException(NXQL.ECM_ANCESTORID + " requires literal id as right argument");
+        }
+        String ancestorId = ((StringLiteral) rvalue).value;
+        CompiledOperand ancestorIds = compileReference(new Reference(NXQL_ECM_ANCESTOR_IDS));
+        boolean eq = op == Operator.EQ;
+        return () -> hasAncestor((Object[]) ancestorIds.eval(), ancestorId) == eq ? TRUE : FALSE;
+    }
+
+    protected static boolean hasAncestor(Object[] ancestorIds, String ancestorId) {
+        if (ancestorIds == null) {
+            // placeless
+            return false;
+        }
+        for (Object id : ancestorIds) {
+            if (ancestorId.equals(id)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    protected CompiledOperand compileEcmFulltext(String name, Operator op, Operand rvalue) {
+        if (op != Operator.EQ && op != Operator.LIKE) {
+            throw new QueryParseException(NXQL.ECM_FULLTEXT + " requires = or LIKE operator");
+        }
+        if (!(rvalue instanceof StringLiteral)) {
+            throw new QueryParseException(NXQL.ECM_FULLTEXT + " requires literal string as right argument");
+        }
+        if (fulltextSearchDisabled) {
+            throw new QueryParseException("Fulltext search disabled by configuration");
+        }
+        String query = ((StringLiteral) rvalue).value;
+        if (name.equals(NXQL.ECM_FULLTEXT)) {
+            // standard fulltext query
+            hasFulltext = true;
+            CompiledOperand simple = compileReference(new Reference(NXQL_ECM_FULLTEXT_SIMPLE));
+            CompiledOperand binary = compileReference(new Reference(NXQL_ECM_FULLTEXT_BINARY));
+            return () -> fulltext((String) simple.eval(), (String) binary.eval(), query);
+        } else {
+            // secondary index match with explicit field
+            // do a regexp on the field
+            if (name.charAt(NXQL.ECM_FULLTEXT.length()) != '.') {
+                throw new QueryParseException(name + " has incorrect syntax for a secondary fulltext index");
+            }
+            String prop = name.substring(NXQL.ECM_FULLTEXT.length() + 1);
+            String ft = query.replace(" ", "%");
+            return compileLike(new Reference(prop), new StringLiteral(ft), true, true);
+        }
+    }
+
+    protected CompiledOperand compileIsTrashed(Operator op, Operand rvalue) {
+        if (op != Operator.EQ && op != Operator.NOTEQ) {
+            throw new QueryParseException(NXQL.ECM_ISTRASHED + " requires = or <> operator");
+        }
+        TrashService trashService = Framework.getService(TrashService.class);
+        if (trashService.hasFeature(TRASHED_STATE_IS_DEDUCED_FROM_LIFECYCLE)) {
+            return compileIsTrashed(new Reference(NXQL.ECM_LIFECYCLESTATE), op, rvalue,
+                    new StringLiteral(LifeCycleConstants.DELETED_STATE));
+        } else if (trashService.hasFeature(TRASHED_STATE_IN_MIGRATION)) {
+            CompiledOperand lifeCycleTrashed = compileIsTrashed(new Reference(NXQL.ECM_LIFECYCLESTATE), op, rvalue,
+                    new StringLiteral(LifeCycleConstants.DELETED_STATE));
+            CompiledOperand propertyTrashed = compileIsTrashed(new Reference(NXQL.ECM_ISTRASHED), op, rvalue,
+                    new IntegerLiteral(1L));
+            return () -> or(bool(lifeCycleTrashed.eval()), bool(propertyTrashed.eval()));
+        } else if (trashService.hasFeature(TRASHED_STATE_IS_DEDICATED_PROPERTY)) {
+            return compileIsTrashed(new Reference(NXQL.ECM_ISTRASHED), op, rvalue, new IntegerLiteral(1L));
+        } else {
+            throw new UnsupportedOperationException("TrashService is in an unknown state");
+        }
+    }
+
+    protected CompiledOperand compileIsTrashed(Reference ref, Operator op, Operand initialRvalue,
+            Literal deletedRvalue) {
+        long v;
+        if (!(initialRvalue instanceof IntegerLiteral)
+                || ((v = ((IntegerLiteral) initialRvalue).value) != 0 && v != 1)) {
+            throw new QueryParseException(NXQL.ECM_ISTRASHED + " requires literal 0 or 1 as right argument");
+        }
+        boolean equalsDeleted = op == Operator.EQ ^ v == 0;
+        if (equalsDeleted) {
+            return compileEq(ref, deletedRvalue);
+        } else {
+            return compileNotEq(ref, deletedRvalue);
+        }
+    }
+
+    // ternary logic, short-circuits once the result is known
+    protected CompiledOperand compileMultiExpression(MultiExpression expr) {
+        boolean and = expr.operator == Operator.AND;
+        CompiledOperand[] predicates = new CompiledOperand[expr.predicates.size()];
+        for (int i = 0; i < predicates.length; i++) {
+            predicates[i] = compileExpression(expr.predicates.get(i));
+        }
+        if (and) {
+            return () -> {
+                Boolean res = TRUE;
+                for (CompiledOperand predicate : predicates) {
+                    res = bool(predicate.eval());
+                    if (!TRUE.equals(res)) {
+                        return res;
+                    }
+                }
+                return res;
+            };
+        } else {
+            return () -> {
+                Boolean res = FALSE;
+                for (CompiledOperand predicate : predicates) {
+                    res = bool(predicate.eval());
+                    if (TRUE.equals(res)) {
+                        return res;
+                    }
+                }
+                return res;
+            };
+        }
+    }
+
+    // ternary logic, short-circuits once the result is known
+    protected CompiledOperand compileAnd(Operand lvalue, Operand rvalue) {
+        CompiledOperand left = compileOperand(lvalue);
+        CompiledOperand right = compileOperand(rvalue);
+        return () -> {
+            Boolean l = bool(left.eval());
+            return TRUE.equals(l) ? bool(right.eval()) : l;
+        };
+    }
+
+    // ternary logic, short-circuits once the result is known
+    protected CompiledOperand compileOr(Operand lvalue, Operand rvalue) {
+        CompiledOperand left = compileOperand(lvalue);
+        CompiledOperand right = compileOperand(rvalue);
+        return () -> {
+            Boolean l = bool(left.eval());
+            return TRUE.equals(l) ? l : bool(right.eval());
+        };
+    }
+
+    protected CompiledOperand compileEq(Operand lvalue, Operand rvalue) {
+        CompiledOperand right = compileOperand(rvalue);
+        if (isMixinTypes(lvalue)) {
+            Object mixin = right.eval();
+            if (!(mixin instanceof String)) {
+                throw new QueryParseException("Invalid EQ rhs: " + rvalue);
+            }
+            return compileMixinTypes(Collections.singletonList((String) mixin), true);
+        }
+        CompiledOperand left = compileOperand(lvalue);
+        return () -> eqMaybeList(left.eval(), right.eval());
+    }
+
+    protected CompiledOperand compileNotEq(Operand lvalue, Operand rvalue) {
+        if (isMixinTypes(lvalue)) {
+            Object mixin = compileOperand(rvalue).eval();
+            if (!(mixin instanceof String)) {
+                throw new QueryParseException("Invalid NE rhs: " + rvalue);
+            }
+            return compileMixinTypes(Collections.singletonList((String) mixin), false);
+        }
+        CompiledOperand eq = compileEq(lvalue, rvalue);
+        return () -> not((Boolean) eq.eval());
+    }
+
+    protected CompiledOperand compileCmp(Operand lvalue, Operand rvalue, IntPredicate test) {
+        CompiledOperand left = compileOperand(lvalue);
+        CompiledOperand right = compileOperand(rvalue);
+        return () -> {
+            Integer cmp = cmp(left.eval(), right.eval());
+            return cmp == null ? null : Boolean.valueOf(test.test(cmp.intValue()));
+        };
+    }
+
+    protected CompiledOperand compileBetween(Operand lvalue, Operand rvalue, boolean positive) {
+        LiteralList l = (LiteralList) rvalue;
+        Predicate va = new Predicate(lvalue, Operator.GTEQ, l.get(0));
+        Predicate vb = new Predicate(lvalue, Operator.LTEQ, l.get(1));
+        Predicate pred = new Predicate(va, Operator.AND, vb);
+        if (!positive) {
+            pred = new Predicate(pred, Operator.NOT, null);
+        }
+        return compileExpression(pred);
+    }
+
+    @SuppressWarnings("unchecked")
+    protected CompiledOperand compileIn(Operand lvalue, Operand rvalue, boolean positive) {
+        Object right = compileOperand(rvalue).eval();
+        if (!(right instanceof List)) {
+            throw new QueryParseException("Invalid IN rhs: " + rvalue);
+        }
+        if (isMixinTypes(lvalue)) {
+            return compileMixinTypes((List<String>) right, positive);
+        }
+        CompiledOperand left = compileOperand(lvalue);
+        // hash lookup instead of a scan of the list
+        Set<Object> set = new HashSet<>((List<Object>) right);
+        boolean hasNull = set.remove(null);
+        return () -> {
+            Boolean in = inMaybeList(left.eval(), set, hasNull);
+            return positive ? in : not(in);
+        };
+    }
+
+    protected CompiledOperand compileLike(Operand lvalue, Operand rvalue, boolean positive, boolean caseInsensitive) {
+        CompiledOperand left = compileOperand(lvalue);
+        CompiledOperand right = compileOperand(rvalue);
+        if (rvalue instanceof StringLiteral) {
+            Pattern pattern = likeToPattern(((StringLiteral) rvalue).value, caseInsensitive);
+            return () -> likeMaybeList(left.eval(), pattern, positive, caseInsensitive);
+        }
+        return () -> {
+            Object r = right.eval();
+            if (!(r instanceof String)) {
+                throw new QueryParseException("Invalid LIKE rhs: " + rvalue);
+            }
+            return likeMaybeList(left.eval(), (String) r, positive, caseInsensitive);
+        };
+    }
+
+    protected CompiledOperand compileStartsWith(Operand lvalue, Operand rvalue) {
+        if (!(lvalue instanceof Reference)) {
+            throw new QueryParseException("Invalid STARTSWITH query, left hand side must be a property: " + lvalue);
+        }
+        String name = ((Reference) lvalue).name;
+        if (!(rvalue instanceof StringLiteral)) {
+            throw new QueryParseException(
+                    "Invalid STARTSWITH query, right hand side must be a literal path: " + rvalue);
+        }
+        String path = ((StringLiteral) rvalue).value;
+        if (path.length() > 1 && path.endsWith("/")) {
+            path = path.substring(0, path.length() - 1);
+        }
+        if (NXQL.ECM_PATH.equals(name)) {
+            // resolve path once
+            String ancestorId = pathResolver.getIdForPath(path);
+            CompiledOperand ancestorIds = compileReference(new Reference(NXQL_ECM_ANCESTOR_IDS));
+            if (ancestorId == null) {
+                // no such path
+                return () -> FALSE;
+            }
+            return () -> hasAncestor((Object[]) ancestorIds.eval(), ancestorId) ? TRUE : FALSE;
+        } else {
+            CompiledOperand left = compileReference((Reference) lvalue);
+            String exact = path;
+            // prefix match TODO escape % chars
+            Pattern pattern = likeToPattern(path + "/%", false);
+            return () -> {
+                Object l = left.eval();
+                if (TRUE.equals(eqMaybeList(l, exact))) {
+                    return TRUE;
+                }
+                return likeMaybeList(l, pattern, true, false);
+            };
+        }
+    }
+
+    public CompiledOperand compileOperand(Operand op) {
+        if (op instanceof Literal) {
+            Object value = walkLiteral((Literal) op);
+            return () -> value;
+        } else if (op instanceof LiteralList) {
+            List<Object> value = walkLiteralList((LiteralList) op);
+            return () -> value;
+        } else if (op instanceof Function) {
+            return compileFunction((Function) op);
+        } else if (op instanceof Expression) {
+            return compileExpression((Expression) op);
+        } else if (op instanceof Reference) {
+            return compileReference((Reference) op);
+        } else {
+            throw new QueryParseException("Unknown operand: " + op);
+        }
+    }
+
+    public CompiledOperand compileFunction(Function func) {
+        throw new UnsupportedOperationException("Function");
+    }
+
+    /**
+     * Compiles a reference to be evaluated over the context state.
+     * <p>
+     * The default implementation delegates to {@link #walkReference} at evaluation time.
+     *
+     * @param ref the reference
+     * @since 11.5
+     */
+    public CompiledOperand compileReference(Reference ref) {
+        return () -> walkReference(ref);
+    }
+
+    /**
+     * Compiles the matching of the mixin types against a list of values.
+     * <p>
+     * The default implementation delegates to {@link #walkMixinTypes} at evaluation time.
+     *
+     * @param mixins the mixin(s) to match
+     * @param include {@code true} for = and IN
+     * @since 11.5
+     */
+    public CompiledOperand compileMixinTypes(List<String> mixins, boolean include) {
+        return () -> walkMixinTypes(mixins, include);
+    }
+
+    /**
+     * Turns a NXQL LIKE pattern into a compiled regex.
+     *
+     * @since 11.5
+     */
+    protected static Pattern likeToPattern(String like, boolean caseInsensitive) {
+        return Pattern.compile(likeToRegex(caseInsensitive ? like.toLowerCase() : like));
+    }
+
+    // ternary logic
+    protected Boolean like(Object left, Pattern pattern, boolean caseInsensitive) {
+        if (left == null) {
+            return null; // NOSONAR
+        }
+        if (!(left instanceof String)) {
+            throw new QueryParseException("Invalid LIKE lhs: " + left);
+        }
+        String value = (String) left;
+        if (caseInsensitive) {
+            value = value.toLowerCase();
+        }
+        return Boolean.valueOf(pattern.matcher(value).matches());
+    }
+
+    protected Boolean likeMaybeList(Object left, Pattern pattern, boolean positive, boolean caseInsensitive) {
+        if (left instanceof Object[]) {
+            for (Object l : ((Object[]) left)) {
+                Boolean like = like(l, pattern, caseInsensitive);
+                if (TRUE.equals(like)) {
+                    return Boolean.valueOf(positive);
+                }
+            }
+            return Boolean.valueOf(!positive);
+        } else {
+            Boolean like = like(left, pattern, caseInsensitive);
+            return positive ? like : not(like);
+        }
+    }
+
+    // ternary logic
+    protected Boolean in(Object left, Set<Object> right, boolean rightHasNull) {
+        if (left == null) {
+            return null; // NOSONAR
+        }
+        if (right.contains(left)) {
+            return TRUE;
+        }
+        return rightHasNull ? null : FALSE;
+    }
+
+    protected Boolean inMaybeList(Object left, Set<Object> right, boolean rightHasNull) {
+        if (left instanceof Object[]) {
+            for (Object l : ((Object[]) left)) {
+                if (TRUE.equals(in(l, right, rightHasNull))) {
+                    return TRUE;
+                }
+            }
+            return FALSE;
+        } else {
+            return in(left, right, rightHasNull);
+        }
+    }
+
     /*
      * ----- simple parsing, don't try to be exhaustive -----
      */
@@ -0,0 +1,680 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.nuxeo.ecm.core.storage.State.NOP;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.TreeSet;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.model.DeltaLong;
+import org.nuxeo.ecm.core.schema.SchemaManager;
+import org.nuxeo.ecm.core.schema.types.ComplexType;
+import org.nuxeo.ecm.core.schema.types.Field;
+import org.nuxeo.ecm.core.schema.types.ListType;
+import org.nuxeo.ecm.core.schema.types.Schema;
+import org.nuxeo.ecm.core.schema.types.Type;
+import org.nuxeo.ecm.core.storage.State.ListDiff;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+
+/**
+ * Compact binary encoding for {@link State}, {@link StateDiff} and {@link ListDiff}, and the values they hold.
+ * <p>
+ * Compared to Java serialization, the encoding:
+ * <ul>
+ * <li>refers to keys known in advance (usually all the fields of the schemas) by their index in a dictionary,
+ * <li>refers to other keys by a back-reference after their first occurrence in a given message,
+ * <li>uses variable-length integers for lengths, sizes and longs,
+ * <li>stores arrays of longs, doubles and booleans packed, without a per-element type tag.
+ * </ul>
+ * Values that are not known by the codec are written using Java serialization.
+ * <p>
+ * A message can only be decoded by a codec having the same dictionary, which is checked when decoding.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @since 11.5
+ */
+public class StateCodec {
+
+    protected static final byte VERSION = 1;
+
+    protected static final byte NULL = 0;
+
+    protected static final byte STRING = 1;
+
+    protected static final byte LONG = 2;
+
+    protected static final byte DOUBLE = 3;
+
+    protected static final byte TRUE = 4;
+
+    protected static final byte FALSE = 5;
+
+    protected static final byte CALENDAR = 6;
+
+    protected static final byte DELTA_LONG = 7;
+
+    protected static final byte STATE = 8;
+
+    protected static final byte STATE_DIFF = 9;
+
+    protected static final byte LIST = 10;
+
+    protected static final byte LIST_DIFF = 11;
+
+    protected static final byte NOP_VALUE = 12;
+
+    protected static final byte ARRAY_STRING = 13;
+
+    protected static final byte ARRAY_LONG = 14;
+
+    protected static final byte ARRAY_DOUBLE = 15;
+
+    protected static final byte ARRAY_BOOLEAN = 16;
+
+    protected static final byte ARRAY = 17;
+
+    protected static final byte SERIALIZED = 18;
+
+    /** Component types for generic {@link #ARRAY}. */
+    protected static final List<Class<?>> ARRAY_COMPONENT_TYPES = Arrays.asList(Object.class, String.class,
+            Long.class, Double.class, Boolean.class, Calendar.class);
+
+    protected static final int HEADER_SIZE = 5;
+
+    protected static final int INITIAL_BUFFER_SIZE = 256;
+
+    protected final String[] keys;
+
+    protected final Map<String, Integer> keyIndex;
+
+    protected final int fingerprint;
+
+    /**
+     * Constructs a codec for the given dictionary of keys.
+     * <p>
+     * The order of the keys matters, two codecs must be constructed with the same keys in the same order to be able to
+     * decode each other's messages.
+     */
+    public StateCodec(Collection<String> keys) {
+        this.keys = keys.toArray(new String[0]);
+        keyIndex = new HashMap<>(this.keys.length * 2);
+        for (int i = 0; i < this.keys.length; i++) {
+            keyIndex.putIfAbsent(this.keys[i], Integer.valueOf(i));
+        }
+        fingerprint = Arrays.hashCode(this.keys);
+    }
+
+    /**
+     * Constructs a codec whose dictionary contains all the fields of the schemas.
+     *
+     * @param schemaManager the schema manager, or {@code null} for an empty dictionary
+     */
+    public static StateCodec of(SchemaManager schemaManager) {
+        return of(schemaManager, Collections.emptyList());
+    }
+
+    /**
+     * Constructs a codec whose dictionary contains all the fields of the schemas, and additional keys.
+     *
+     * @param schemaManager the schema manager, or {@code null} to only use the additional keys
+     * @param additionalKeys additional keys, for instance system keys
+     */
+    public static StateCodec of(SchemaManager schemaManager, Collection<String> additionalKeys) {
+        Set<String> keys = new TreeSet<>(additionalKeys);
+        if (schemaManager != null) {
+            Set<String> seenTypes = new HashSet<>();
+            for (Schema schema : schemaManager.getSchemas()) {
+                collectKeys(schema, keys, seenTypes);
+            }
+        }
+        return new StateCodec(keys);
+    }
+
+    protected static void collectKeys(ComplexType complexType, Set<String> keys, Set<String> seenTypes) {
+        if (!seenTypes.add(complexType.getName())) {
+            return;
+        }
+        for (Field field : complexType.getFields()) {
+            keys.add(field.getName().getPrefixedName());
+            Type type = field.getType();
+            if (type.isListType()) {
+                type = ((ListType) type).getFieldType();
+            }
+            if (type.isComplexType()) {
+                collectKeys((ComplexType) type, keys, seenTypes);
+            }
+        }
+    }
+
+    /**
+     * Encodes a {@link State}, {@link StateDiff}, {@link ListDiff} or any other value that can be held in one of them.
+     */
+    public byte[] encode(Serializable value) {
+        Output out = new Output(INITIAL_BUFFER_SIZE);
+        out.writeByte(VERSION);
+        out.writeFixedInt(fingerprint);
+        writeValue(out, value);
+        return out.toByteArray();
+    }
+
+    /**
+     * Decodes a value encoded by {@link #encode}.
+     */
+    public Serializable decode(byte[] bytes) {
+        return decode(ByteBuffer.wrap(bytes));
+    }
+
+    /**
+     * Decodes a value encoded by {@link #encode}, reading from the buffer's position to its limit.
+     * <p>
+     * The buffer's position is not changed.
+     */
+    public Serializable decode(ByteBuffer buffer) {
+        Input in = new Input(buffer);
+        if (buffer.remaining() < HEADER_SIZE) {
+            throw new NuxeoException("Invalid encoded state: too short");
+        }
+        int version = in.readByte();
+        if (version != VERSION) {
+            throw new NuxeoException("Invalid encoded state: unknown version " + version);
+        }
+        int fp = in.readFixedInt();
+        if (fp != fingerprint) {
+            throw new NuxeoException("Invalid encoded state: encoded with a different key dictionary");
+        }
+        return readValue(in);
+    }
+
+    /**
+     * Decodes a {@link State} (or {@link StateDiff}) encoded by {@link #encode}.
+     */
+    public State decodeState(byte[] bytes) {
+        return (State) decode(bytes);
+    }
+
+    /**
+     * Decodes a {@link State} (or {@link StateDiff}) encoded by {@link #encode}.
+     */
+    public State decodeState(ByteBuffer buffer) {
+        return (State) decode(buffer);
+    }
+
+    protected void writeValue(Output out, Object value) {
+        if (value == null) {
+            out.writeByte(NULL);
+        } else if (value instanceof String) {
+            out.writeByte(STRING);
+            out.writeString((String) value);
+        } else if (value instanceof Long) {
+            out.writeByte(LONG);
+            out.writeZigZagLong(((Long) value).longValue());
+        } else if (value instanceof Double) {
+            out.writeByte(DOUBLE);
+            out.writeFixedLong(Double.doubleToRawLongBits(((Double) value).doubleValue()));
+        } else if (value instanceof Boolean) {
+            out.writeByte(((Boolean) value).booleanValue() ? TRUE : FALSE);
+        } else if (value.getClass() == GregorianCalendar.class) {
+            out.writeByte(CALENDAR);
+            writeCalendar(out, (Calendar) value);
+        } else if (value.getClass() == DeltaLong.class) {
+            DeltaLong delta = (DeltaLong) value;
+            out.writeByte(DELTA_LONG);
+            writeValue(out, delta.getBase());
+            out.writeZigZagLong(delta.getDelta());
+        } else if (value instanceof StateDiff) {
+            out.writeByte(STATE_DIFF);
+            writeState(out, (State) value);
+        } else if (value.getClass() == State.class) {
+            out.writeByte(STATE);
+            writeState(out, (State) value);
+        } else if (value instanceof ListDiff) {
+            ListDiff listDiff = (ListDiff) value;
+            out.writeByte(LIST_DIFF);
+            out.writeByte(listDiff.isArray ? TRUE : FALSE);
+            writeValue(out, listDiff.diff);
+            writeValue(out, listDiff.rpush);
+            writeValue(out, listDiff.pull);
+        } else if (value == NOP) {
+            out.writeByte(NOP_VALUE);
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            out.writeByte(LIST);
+            out.writeVarInt(list.size());
+            for (Object v : list) {
+                writeValue(out, v);
+            }
+        } else if (value instanceof Object[]) {
+            writeArray(out, (Object[]) value);
+        } else if (value instanceof Serializable) {
+            writeSerialized(out, (Serializable) value);
+        } else {
+            throw new NuxeoException("Cannot encode value of class: " + value.getClass().getName());
+        }
+    }
+
+    protected void writeState(Output out, State state) {
+        out.writeVarInt(state.size());
+        for (Entry<String, Serializable> en : state.entrySet()) {
+            writeKey(out, en.getKey());
+            writeValue(out, en.getValue());
+        }
+    }
+
+    protected void writeKey(Output out, String key) {
+        Integer index = keyIndex.get(key);
+        if (index != null) {
+            out.writeVarInt(index.intValue() + 1);
+            return;
+        }
+        if (out.localKeys == null) {
+            out.localKeys = new HashMap<>();
+        }
+        Integer localIndex = out.localKeys.get(key);
+        if (localIndex != null) {
+            out.writeVarInt(keys.length + 1 + localIndex.intValue());
+            return;
+        }
+        out.localKeys.put(key, Integer.valueOf(out.localKeys.size()));
+        out.writeVarInt(0);
+        out.writeString(key);
+    }
+
+    protected void writeCalendar(Output out, Calendar calendar) {
+        out.writeZigZagLong(calendar.getTimeInMillis());
+        // time zone ids are few and repeated, intern them like keys
+        writeKey(out, calendar.getTimeZone().getID());
+    }
+
+    protected void writeArray(Output out, Object[] array) {
+        Class<?> componentType = array.getClass().getComponentType();
+        boolean hasNull = false;
+        for (Object v : array) {
+            if (v == null) {
+                hasNull = true;
+                break;
+            }
+        }
+        if (componentType == String.class) {
+            out.writeByte(ARRAY_STRING);
+            out.writeVarInt(array.length);
+            for (Object v : array) {
+                out.writeNullableString((String) v);
+            }
+        } else if (componentType == Long.class && !hasNull) {
+            out.writeByte(ARRAY_LONG);
+            out.writeVarInt(array.length);
+            for (Object v : array) {
+                out.writeZigZagLong(((Long) v).longValue());
+            }
+        } else if (componentType == Double.class && !hasNull) {
+            out.writeByte(ARRAY_DOUBLE);
+            out.writeVarInt(array.length);
+            for (Object v : array) {
+                out.writeFixedLong(Double.doubleToRawLongBits(((Double) v).doubleValue()));
+            }
+        } else if (componentType == Boolean.class && !hasNull) {
+            out.writeByte(ARRAY_BOOLEAN);
+            out.writeVarInt(array.length);
+            for (Object v : array) {
+                out.writeByte(((Boolean) v).booleanValue() ? 1 : 0);
+            }
+        } else {
+            int component = ARRAY_COMPONENT_TYPES.indexOf(componentType);
+            if (component < 0) {
+                writeSerialized(out, array);
+                return;
+            }
+            out.writeByte(ARRAY);
+            out.writeByte(component);
+            out.writeVarInt(array.length);
+            for (Object v : array) {
+                writeValue(out, v);
+            }
+        }
+    }
+
+    protected void writeSerialized(Output out, Serializable value) {
+        byte[] bytes = SerializationUtils.serialize(value);
+        out.writeByte(SERIALIZED);
+        out.writeVarInt(bytes.length);
+        out.writeBytes(bytes);
+    }
+
+    protected Serializable readValue(Input in) {
+        int tag = in.readByte();
+        switch (tag) {
+        case NULL:
+            return null;
+        case STRING:
+            return in.readString();
+        case LONG:
+            return Long.valueOf(in.readZigZagLong());
+        case DOUBLE:
+            return Double.valueOf(Double.longBitsToDouble(in.readFixedLong()));
+        case TRUE:
+            return Boolean.TRUE;
+        case FALSE:
+            return Boolean.FALSE;
+        case CALENDAR:
+            return readCalendar(in);
+        case DELTA_LONG:
+            Long base = (Long) readValue(in);
+            return new DeltaLong(base, in.readZigZagLong());
+        case STATE:
+            return readState(in, new State());
+        case STATE_DIFF:
+            return readState(in, new StateDiff());
+        case LIST_DIFF:
+            ListDiff listDiff = new ListDiff();
+            listDiff.isArray = in.readByte() == TRUE;
+            listDiff.diff = readList(in);
+            listDiff.rpush = readList(in);
+            listDiff.pull = readList(in);
+            return listDiff;
+        case NOP_VALUE:
+            return NOP;
+        case LIST:
+            int size = in.readVarInt();
+            ArrayList<Serializable> list = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                list.add(readValue(in));
+            }
+            return list;
+        case ARRAY_STRING:
+            String[] strings = new String[in.readVarInt()];
+            for (int i = 0; i < strings.length; i++) {
+                strings[i] = in.readNullableString();
+            }
+            return strings;
+        case ARRAY_LONG:
+            Long[] longs = new Long[in.readVarInt()];
+            for (int i = 0; i < longs.length; i++) {
+                longs[i] = Long.valueOf(in.readZigZagLong());
+            }
+            return longs;
+        case ARRAY_DOUBLE:
+            Double[] doubles = new Double[in.readVarInt()];
+            for (int i = 0; i < doubles.length; i++) {
+                doubles[i] = Double.valueOf(Double.longBitsToDouble(in.readFixedLong()));
+            }
+            return doubles;
+        case ARRAY_BOOLEAN:
+            Boolean[] booleans = new Boolean[in.readVarInt()];
+            for (int i = 0; i < booleans.length; i++) {
+                booleans[i] = Boolean.valueOf(in.readByte() != 0);
+            }
+            return booleans;
+        case ARRAY:
+            Class<?> componentType = ARRAY_COMPONENT_TYPES.get(in.readByte());
+            Object[] array = (Object[]) Array.newInstance(componentType, in.readVarInt());
+            for (int i = 0; i < array.length; i++) {
+                array[i] = readValue(in);
+            }
+            return array;
+        case SERIALIZED:
+            byte[] bytes = in.readBytes(in.readVarInt());
+            return SerializationUtils.deserialize(bytes);
+        default:
+            throw new NuxeoException("Invalid encoded state: unknown tag " + tag);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    protected List<Object> readList(Input in) {
+        return (List<Object>) readValue(in);
+    }
+
+    protected State readState(Input in, State state) {
+        int size = in.readVarInt();
+        for (int i = 0; i < size; i++) {
+            String key = readKey(in);
+            state.put(key, readValue(in));
+        }
+        return state;
+    }
+
+    protected String readKey(Input in) {
+        int code = in.readVarInt();
+        if (code == 0) {
+            String key = in.readString();
+            if (in.localKeys == null) {
+                in.localKeys = new ArrayList<>();
+            }
+            in.localKeys.add(key);
+            return key;
+        }
+        int index = code - 1;
+        if (index < keys.length) {
+            return keys[index];
+        }
+        return in.localKeys.get(index - keys.length);
+    }
+
+    protected Calendar readCalendar(Input in) {
+        long millis = in.readZigZagLong();
+        Calendar calendar = new GregorianCalendar(TimeZone.getTimeZone(readKey(in)));
+        calendar.setTimeInMillis(millis);
+        return calendar;
+    }
+
+    /**
+     * Growable output buffer.
+     */
+    protected static class Output {
+
+        protected byte[] buf;
+
+        protected int pos;
+
+        /** Keys not in the dictionary already written in this message, with their local index. */
+        protected Map<String, Integer> localKeys;
+
+        protected Output(int size) {
+            buf = new byte[size];
+        }
+
+        protected void ensureCapacity(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length * 2, pos + n));
+            }
+        }
+
+        protected void writeByte(int b) {
+            ensureCapacity(1);
+            buf[pos++] = (byte) b;
+        }
+
+        protected void writeBytes(byte[] bytes) {
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        protected void writeVarInt(int v) {
+            ensureCapacity(5);
+            while ((v & ~0x7F) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        protected void writeVarLong(long v) {
+            ensureCapacity(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        protected void writeZigZagLong(long v) {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+
+        protected void writeFixedInt(int v) {
+            ensureCapacity(4);
+            for (int shift = 24; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        protected void writeFixedLong(long v) {
+            ensureCapacity(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                buf[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        protected void writeString(String s) {
+            byte[] bytes = s.getBytes(UTF_8);
+            writeVarInt(bytes.length);
+            writeBytes(bytes);
+        }
+
+        protected void writeNullableString(String s) {
+            if (s == null) {
+                writeVarInt(0);
+            } else {
+                byte[] bytes = s.getBytes(UTF_8);
+                writeVarInt(bytes.length + 1);
+                writeBytes(bytes);
+            }
+        }
+
+        protected byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    /**
+     * Input over a heap or direct buffer, using absolute reads.
+     */
+    protected static class Input {
+
+        protected final ByteBuffer buf;
+
+        protected int pos;
+
+        /** Keys not in the dictionary read in this message, by local index. */
+        protected List<String> localKeys;
+
+        protected Input(ByteBuffer buf) {
+            this.buf = buf;
+            pos = buf.position();
+        }
+
+        protected int readByte() {
+            return buf.get(pos++);
+        }
+
+        protected byte[] readBytes(int length) {
+            byte[] bytes = new byte[length];
+            if (buf.hasArray()) {
+                System.arraycopy(buf.array(), buf.arrayOffset() + pos, bytes, 0, length);
+                pos += length;
+            } else {
+                for (int i = 0; i < length; i++) {
+                    bytes[i] = buf.get(pos++);
+                }
+            }
+            return bytes;
+        }
+
+        protected int readVarInt() {
+            int v = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = buf.get(pos++);
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return v;
+                }
+            }
+        }
+
+        protected long readVarLong() {
+            long v = 0;
+            for (int shift = 0;; shift += 7) {
+                byte b = buf.get(pos++);
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return v;
+                }
+            }
+        }
+
+        protected long readZigZagLong() {
+            long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        protected int readFixedInt() {
+            int v = buf.getInt(pos);
+            pos += 4;
+            return v;
+        }
+
+        protected long readFixedLong() {
+            long v = buf.getLong(pos);
+            pos += 8;
+            return v;
+        }
+
+        protected String readString() {
+            return readStringBytes(readVarInt());
+        }
+
+        protected String readNullableString() {
+            int length = readVarInt();
+            return length == 0 ? null : readStringBytes(length - 1);
+        }
+
+        protected String readStringBytes(int length) {
+            String s;
+            if (buf.hasArray()) {
+                s = new String(buf.array(), buf.arrayOffset() + pos, length, UTF_8);
+                pos += length;
+            } else {
+                s = new String(readBytes(length), UTF_8);
+            }
+            return s;
+        }
+    }
+
+}
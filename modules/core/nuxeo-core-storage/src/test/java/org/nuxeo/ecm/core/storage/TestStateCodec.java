@@ -0,0 +1,203 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.storage;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.nuxeo.ecm.core.storage.State.NOP;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.GregorianCalendar;
+import java.util.List;
+import java.util.TimeZone;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.model.DeltaLong;
+import org.nuxeo.ecm.core.storage.State.ListDiff;
+import org.nuxeo.ecm.core.storage.State.StateDiff;
+
+public class TestStateCodec {
+
+    protected static final List<String> KEYS = Arrays.asList("ecm:id", "ecm:name", "ecm:parentId",
+            "ecm:primaryType", "ecm:racl", "dc:title", "dc:created", "dc:contributors", "files:files", "file",
+            "name", "length", "digest");
+
+    protected static final StateCodec CODEC = new StateCodec(KEYS);
+
+    protected static Serializable roundTrip(Serializable value) {
+        return CODEC.decode(CODEC.encode(value));
+    }
+
+    protected static State newDocumentState(int i) {
+        State state = new State();
+        state.put("ecm:id", "00000000-0000-0000-0000-" + String.format("%012d", i));
+        state.put("ecm:name", "doc" + i);
+        state.put("ecm:parentId", "00000000-0000-0000-0000-000000000000");
+        state.put("ecm:primaryType", "File");
+        state.put("ecm:racl", new String[] { "Administrator", "members" });
+        state.put("ecm:majorVersion", Long.valueOf(i));
+        state.put("dc:title", "Document " + i);
+        Calendar created = new GregorianCalendar(TimeZone.getTimeZone("UTC"));
+        created.setTimeInMillis(1600000000000L + i);
+        state.put("dc:created", created);
+        state.put("dc:contributors", new String[] { "bob", "jack" });
+        ArrayList<Serializable> files = new ArrayList<>();
+        for (int j = 0; j < 3; j++) {
+            State blob = new State();
+            blob.put("name", "file" + j + ".txt");
+            blob.put("length", Long.valueOf(1000 + j));
+            blob.put("digest", "d41d8cd98f00b204e9800998ecf8427" + j);
+            State file = new State();
+            file.put("file", blob);
+            files.add(file);
+        }
+        state.put("files:files", files);
+        return state;
+    }
+
+    @Test
+    public void testScalars() {
+        assertNull(roundTrip(null));
+        assertEquals("foo", roundTrip("foo"));
+        assertEquals("", roundTrip(""));
+        assertEquals("caf\u00e9 \u6771\u4eac", roundTrip("caf\u00e9 \u6771\u4eac"));
+        for (long v : new long[] { 0, 1, -1, 127, 128, -129, Integer.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE }) {
+            assertEquals(Long.valueOf(v), roundTrip(Long.valueOf(v)));
+        }
+        assertEquals(Double.valueOf(123.456), roundTrip(Double.valueOf(123.456)));
+        assertEquals(Boolean.TRUE, roundTrip(Boolean.TRUE));
+        assertEquals(Boolean.FALSE, roundTrip(Boolean.FALSE));
+        assertEquals(DeltaLong.valueOf(Long.valueOf(5), 3), roundTrip(DeltaLong.valueOf(Long.valueOf(5), 3)));
+        assertEquals(new DeltaLong((Long) null, -3), roundTrip(new DeltaLong((Long) null, -3)));
+        assertSame(NOP, roundTrip(NOP));
+    }
+
+    @Test
+    public void testCalendar() {
+        Calendar cal = new GregorianCalendar(TimeZone.getTimeZone("Europe/Paris"));
+        cal.setTimeInMillis(1234567890123L);
+        Calendar decoded = (Calendar) roundTrip(cal);
+        assertEquals(cal.getTimeInMillis(), decoded.getTimeInMillis());
+        assertEquals(cal.getTimeZone().getID(), decoded.getTimeZone().getID());
+    }
+
+    @Test
+    public void testArrays() {
+        assertArrayEquals(new String[] { "a", null, "c" }, (Object[]) roundTrip(new String[] { "a", null, "c" }));
+        assertArrayEquals(new Long[] { 1L, -2L, 3L }, (Object[]) roundTrip(new Long[] { 1L, -2L, 3L }));
+        assertArrayEquals(new Double[] { 1.5, -2.5 }, (Object[]) roundTrip(new Double[] { 1.5, -2.5 }));
+        assertArrayEquals(new Boolean[] { true, false }, (Object[]) roundTrip(new Boolean[] { true, false }));
+        // nulls in arrays of longs are not packed
+        Object[] longs = (Object[]) roundTrip(new Long[] { 1L, null });
+        assertEquals(Long[].class, longs.getClass());
+        assertArrayEquals(new Long[] { 1L, null }, longs);
+        Object[] objects = (Object[]) roundTrip(new Object[] { "a", 1L });
+        assertEquals(Object[].class, objects.getClass());
+        assertArrayEquals(new Object[] { "a", 1L }, objects);
+        // component type is kept
+        assertEquals(String[].class, roundTrip(new String[0]).getClass());
+    }
+
+    @Test
+    public void testState() {
+        State state = newDocumentState(1);
+        // unknown key, written inline then back-referenced
+        State sub = new State();
+        sub.put("unknown:key", "bar");
+        state.put("unknown:key", sub);
+        State decoded = (State) roundTrip(state);
+        assertEquals(State.class, decoded.getClass());
+        assertTrue(StateHelper.equalsStrict(state, decoded));
+    }
+
+    @Test
+    public void testStateDiff() {
+        StateDiff diff = new StateDiff();
+        diff.put("dc:title", "new title");
+        diff.put("dc:description", null);
+        ListDiff listDiff = new ListDiff();
+        listDiff.isArray = false;
+        StateDiff elemDiff = new StateDiff();
+        elemDiff.put("name", "renamed.txt");
+        listDiff.diff = new ArrayList<>(Arrays.<Object> asList(NOP, elemDiff));
+        listDiff.rpush = new ArrayList<>(Collections.singletonList(new State()));
+        diff.put("files:files", listDiff);
+        ListDiff arrayDiff = new ListDiff();
+        arrayDiff.isArray = true;
+        arrayDiff.pull = new ArrayList<>(Collections.singletonList("members"));
+        diff.put("ecm:racl", arrayDiff);
+
+        StateDiff decoded = (StateDiff) roundTrip(diff);
+        assertEquals(4, decoded.size());
+        assertEquals("new title", decoded.get("dc:title"));
+        assertTrue(decoded.containsKey("dc:description"));
+        assertNull(decoded.get("dc:description"));
+        ListDiff decodedListDiff = (ListDiff) decoded.get("files:files");
+        assertEquals(listDiff.toString(), decodedListDiff.toString());
+        assertSame(NOP, decodedListDiff.diff.get(0));
+        assertEquals(StateDiff.class, decodedListDiff.diff.get(1).getClass());
+        assertNull(decodedListDiff.pull);
+        ListDiff decodedArrayDiff = (ListDiff) decoded.get("ecm:racl");
+        assertTrue(decodedArrayDiff.isArray);
+        assertEquals(arrayDiff.pull, decodedArrayDiff.pull);
+    }
+
+    @Test
+    public void testDirectBuffer() {
+        State state = newDocumentState(2);
+        byte[] bytes = CODEC.encode(state);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        assertTrue(StateHelper.equalsStrict(state, CODEC.decodeState(buffer)));
+        // position unchanged, can be decoded again
+        assertTrue(StateHelper.equalsStrict(state, CODEC.decodeState(buffer)));
+    }
+
+    @Test
+    public void testDifferentDictionary() {
+        byte[] bytes = CODEC.encode(newDocumentState(3));
+        StateCodec other = new StateCodec(Collections.singletonList("ecm:id"));
+        try {
+            other.decode(bytes);
+            fail();
+        } catch (NuxeoException e) {
+            assertEquals("Invalid encoded state: encoded with a different key dictionary", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testSmallerThanJavaSerialization() {
+        State state = newDocumentState(4);
+        int codecSize = CODEC.encode(state).length;
+        int javaSize = SerializationUtils.serialize(state).length;
+        assertTrue(codecSize + " >= " + javaSize, codecSize < javaSize);
+    }
+
+}
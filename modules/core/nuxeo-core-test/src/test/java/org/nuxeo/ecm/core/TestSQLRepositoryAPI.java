@@ -2741,6 +2741,38 @@ public class TestSQLRepositoryAPI {
         session.cancel();
     }
 
+    @Test
+    public void testCopyFolderThenBrowseSource() {
+        DocumentModel folder = session.createDocument(session.createDocumentModel("/", "folder", "Folder"));
+        DocumentModel sub = session.createDocument(session.createDocumentModel("/folder", "sub", "Folder"));
+        DocumentModel doc = session.createDocument(session.createDocumentModel("/folder/sub", "doc", "File"));
+        session.save();
+
+        // the source tree is fetched in bulk by the copy, lookups in it must still see its changes
+        DocumentModel copy = session.copy(folder.getRef(), session.getRootDocument().getRef(), "copy");
+        assertTrue(session.exists(new PathRef("/copy/sub/doc")));
+        assertTrue(session.hasChildren(folder.getRef()));
+        assertEquals(sub.getId(), session.getChild(folder.getRef(), "sub").getId());
+        assertTrue(session.hasChild(sub.getRef(), "doc"));
+        assertTrue(session.exists(new PathRef("/folder/sub/doc")));
+
+        // a new document is a child too
+        DocumentModel doc2 = session.createDocument(session.createDocumentModel("/folder/sub", "doc2", "File"));
+        assertTrue(session.hasChild(sub.getRef(), "doc2"));
+        assertEquals(2, session.getChildren(sub.getRef()).size());
+
+        session.removeDocument(doc.getRef());
+        assertFalse(session.hasChild(sub.getRef(), "doc"));
+        assertFalse(session.exists(new PathRef("/folder/sub/doc")));
+        assertEquals(Collections.singletonList(doc2.getId()),
+                session.getChildren(sub.getRef()).stream().map(DocumentModel::getId).collect(Collectors.toList()));
+
+        session.move(doc2.getRef(), copy.getRef(), "moved");
+        assertFalse(session.hasChildren(sub.getRef()));
+        assertTrue(session.exists(new PathRef("/copy/moved")));
+        session.save();
+    }
+
     @Test
     public void testMove() {
         DocumentModel root = session.getRootDocument();
@@ -55,6 +55,7 @@ import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import javax.inject.Inject;
 
@@ -1801,6 +1802,24 @@ public class TestSQLRepositoryQuery {
         assertEquals(whole.get(1).get(NXQL.ECM_UUID), secondPage.get(0).get(NXQL.ECM_UUID));
     }
 
+    @Test
+    public void testQueryProjectionStream() {
+        createDocs();
+        String query = "SELECT ecm:uuid, dc:title FROM Document ORDER BY dc:title, ecm:uuid";
+        PartialList<Map<String, Serializable>> expected = session.queryProjection(query, 0, 0);
+        assertTrue(expected.size() >= 5);
+        List<Map<String, Serializable>> streamed;
+        // small batch size to check the fetching of several batches
+        try (Stream<Map<String, Serializable>> stream = session.queryProjectionStream(query, NXQL.NXQL, false, 2)) {
+            streamed = stream.collect(Collectors.toList());
+        }
+        assertEquals(expected, streamed);
+        // partial consumption
+        try (Stream<Map<String, Serializable>> stream = session.queryProjectionStream(query, NXQL.NXQL, false, 2)) {
+            assertEquals(expected.get(0), stream.findFirst().get());
+        }
+    }
+
     @Test
     public void testQueryPrimaryTypeOptimization() {
         // check these queries in the logs
@@ -3609,6 +3628,37 @@ public class TestSQLRepositoryQuery {
         assertFalse(ret.hasResults());
     }
 
+    @Test
+    public void testScrollApiPartitions() {
+        final int nbDocs = 127;
+        final int partitions = 4;
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < nbDocs; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            expected.add(session.createDocument(doc).getId());
+        }
+        session.save();
+        // sequence ids cannot be partitioned, then the first partition holds all the documents
+        boolean randomIds = ((AbstractSession) session).getSession().getRandomIdTemplate() != null;
+
+        Set<String> all = new HashSet<>();
+        for (int partition = 0; partition < partitions; partition++) {
+            int count = 0;
+            ScrollResult<String> ret = session.scroll("SELECT * FROM File", 13, 10, partition, partitions);
+            while (ret.hasResults()) {
+                for (String id : ret.getResults()) {
+                    assertTrue("Duplicate id: " + id, all.add(id));
+                    count++;
+                }
+                ret = session.scroll(ret.getScrollId());
+            }
+            if (!randomIds && partition > 0) {
+                assertEquals(0, count);
+            }
+        }
+        assertEquals(expected, all);
+    }
+
     @Test
     @LogCaptureFeature.FilterOn(logLevel = "WARN")
     public void testScrollApiEmtpy() throws Exception {
@@ -822,19 +822,28 @@ public class TestSQLRepositorySecurity {
 
     @Test
     public void testReadAclOnLargeTree() {
+        doTestReadAclOnLargeTree(-1);
+    }
+
+    @Test
+    public void testReadAclOnLargeTreeWithBlockedInheritance() {
+        doTestReadAclOnLargeTree(5);
+    }
+
+    protected void doTestReadAclOnLargeTree(int blockedLevel) {
         String enabledProp = "nuxeo.core.readacl.async.enabled";
         String thresholdProp = "nuxeo.core.readacl.async.threshold";
         Framework.getProperties().put(enabledProp, "true");
         Framework.getProperties().put(thresholdProp, "10");
         try {
-            doTestReadAclOnLargeTree();
+            doTestReadAclOnLargeTreeWithBlockedLevel(blockedLevel);
         } finally {
             Framework.getProperties().remove(enabledProp);
             Framework.getProperties().remove(thresholdProp);
         }
     }
 
-    protected void doTestReadAclOnLargeTree() {
+    protected void doTestReadAclOnLargeTreeWithBlockedLevel(int blockedLevel) {
         DocumentModel rootFolder = session.createDocumentModel("/", "folder", "Folder");
         rootFolder = session.createDocument(rootFolder);
         String firstUser = "mickey";
@@ -848,9 +857,21 @@ public class TestSQLRepositorySecurity {
         int nbLevels = 10;
         int nbPerLevel = 10;
         DocumentModel parent = rootFolder;
+        int nbBlocked = 0;
         for (int level = 0; level < nbLevels; level++) {
             DocumentModel folder = session.createDocumentModel(parent.getPathAsString(), "folder-" + level, "Folder");
             folder = session.createDocument(folder);
+            if (level == blockedLevel) {
+                // only first user, no inheritance
+                ACP blockingAcp = new ACPImpl();
+                ACL blockingAcl = blockingAcp.getOrCreateACL();
+                blockingAcl.add(new ACE(firstUser, READ, true));
+                blockingAcl.add(ACE.BLOCK);
+                folder.setACP(blockingAcp, true);
+            }
+            if (blockedLevel >= 0 && level >= blockedLevel) {
+                nbBlocked += nbPerLevel + 1;
+            }
             for (int i = 0; i < nbPerLevel; i++) {
                 DocumentModel doc = session.createDocumentModel(folder.getPathAsString(), "doc-" + level + "-" + i,
                         "File");
@@ -871,13 +892,11 @@ public class TestSQLRepositorySecurity {
         session.save();
 
         // wait for asynchronous stuff to finish
-        TransactionHelper.commitOrRollbackTransaction();
-        TransactionHelper.startTransaction();
-        eventService.waitForAsyncCompletion();
+        coreFeature.waitForAsyncCompletion();
 
-        // check that both users now have access to everything
+        // check that both users now have access to everything, except the subtree blocking inheritance
         assertEquals(nbDocs, numberOfReadableDocuments(firstUser));
-        assertEquals(nbDocs, numberOfReadableDocuments(secondUser));
+        assertEquals(nbDocs - nbBlocked, numberOfReadableDocuments(secondUser));
     }
 
     protected int numberOfReadableDocuments(String username) {
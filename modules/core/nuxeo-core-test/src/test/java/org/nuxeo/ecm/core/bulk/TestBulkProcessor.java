@@ -296,6 +296,59 @@ public class TestBulkProcessor {
         }
     }
 
+    @Test
+    public void testPartitionedScroller() {
+        final int nbDocs = 50;
+        for (int i = 0; i < nbDocs; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            session.createDocument(doc);
+        }
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        String nxql = "SELECT * FROM File";
+        String commandId = service.submit(
+                new BulkCommand.Builder(SetPropertiesAction.ACTION_NAME, nxql, "Administrator").param("dc:description",
+                        "partitioned").bucket(5).batch(5).scrollPartitions(4).build());
+        assertTrue("Bulk action didn't finish", service.await(Duration.ofSeconds(60)));
+        BulkStatus status = service.getStatus(commandId);
+        assertEquals(COMPLETED, status.getState());
+        assertEquals(4, status.getScrollPartitions());
+        assertEquals(4, status.getScrolledPartitions());
+        assertEquals(nbDocs, status.getTotal());
+        assertEquals(nbDocs, status.getProcessed());
+        assertFalse(status.hasError());
+        session.query(nxql).forEach(doc -> assertEquals("partitioned", doc.getPropertyValue("dc:description")));
+    }
+
+    @Test
+    @Deploy("org.nuxeo.ecm.core.test.tests:OSGI-INF/bulk-unpartitioned-scroll-contrib.xml")
+    public void testPartitionsWithUnpartitionedScroller() {
+        final int nbDocs = 20;
+        for (int i = 0; i < nbDocs; i++) {
+            DocumentModel doc = session.createDocumentModel("/", "doc" + i, "File");
+            session.createDocument(doc);
+        }
+        TransactionHelper.commitOrRollbackTransaction();
+        TransactionHelper.startTransaction();
+
+        // the scroller rejects partitioned requests, the command is scrolled with a single cursor
+        String nxql = "SELECT * FROM File";
+        String commandId = service.submit(new BulkCommand.Builder(SetPropertiesAction.ACTION_NAME, nxql,
+                "Administrator").param("dc:description", "unpartitioned")
+                                .scroller("unpartitioned")
+                                .scrollPartitions(4)
+                                .build());
+        assertTrue("Bulk action didn't finish", service.await(Duration.ofSeconds(60)));
+        BulkStatus status = service.getStatus(commandId);
+        assertEquals(COMPLETED, status.getState());
+        assertEquals(0, status.getScrollPartitions());
+        assertEquals(nbDocs, status.getTotal());
+        assertEquals(nbDocs, status.getProcessed());
+        assertFalse(status.hasError());
+        session.query(nxql).forEach(doc -> assertEquals("unpartitioned", doc.getPropertyValue("dc:description")));
+    }
+
     /**
      * Tests the external scroller in the case it completes its scrolling after the processing.
      */
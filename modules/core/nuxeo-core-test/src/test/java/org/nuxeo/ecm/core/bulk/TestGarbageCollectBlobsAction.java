@@ -0,0 +1,128 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.ACTION_NAME;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.PARAM_DRY_RUN;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.PHASE_DONE;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.QUERY;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.RESULT_NUM_BINARIES;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.RESULT_NUM_BINARIES_GC;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.RESULT_PHASE;
+import static org.nuxeo.ecm.core.bulk.message.BulkStatus.State.COMPLETED;
+
+import java.io.Serializable;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobStore;
+import org.nuxeo.ecm.core.blob.BlobStoreBlobProvider;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.bulk.message.BulkStatus;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+
+/**
+ * @since 11.5
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ CoreFeature.class, CoreBulkFeature.class })
+@Deploy("org.nuxeo.ecm.core.test.tests:OSGI-INF/test-blob-gc-action.xml")
+public class TestGarbageCollectBlobsAction {
+
+    @Inject
+    protected TransactionalFeature txFeature;
+
+    @Inject
+    protected BulkService service;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected BlobManager blobManager;
+
+    protected BulkStatus runGarbageCollection(boolean dryRun) {
+        BulkCommand command = new BulkCommand.Builder(ACTION_NAME, QUERY, session.getPrincipal().getName()).repository(
+                session.getRepositoryName()).param(PARAM_DRY_RUN, dryRun).build();
+        String commandId = service.submit(command);
+        txFeature.nextTransaction();
+        BulkStatus status = service.getStatus(commandId);
+        assertEquals(COMPLETED, status.getState());
+        assertEquals(PHASE_DONE, status.getResult().get(RESULT_PHASE));
+        return status;
+    }
+
+    @Test
+    public void testGarbageCollect() throws Exception {
+        DocumentModel doc = session.createDocumentModel("/", "doc", "File");
+        doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob("foo"));
+        session.createDocument(doc);
+        txFeature.nextTransaction();
+
+        // an unreferenced blob, older than the collection
+        BlobStoreBlobProvider blobProvider = (BlobStoreBlobProvider) blobManager.getBlobProvider("gc");
+        BlobStore store = blobProvider.store;
+        String key = blobProvider.writeBlob(Blobs.createBlob("bar"));
+        String referencedKey = "acbd18db4cc2f85cedef654fccc4a4d8"; // MD5 of foo
+        Thread.sleep(10); // NOSONAR
+
+        // dry run only counts
+        BulkStatus status = runGarbageCollection(true);
+        assertEquals(Long.valueOf(2), status.getResult().get(RESULT_NUM_BINARIES));
+        assertEquals(Long.valueOf(1), status.getResult().get(RESULT_NUM_BINARIES_GC));
+        assertTrue(store.getFile(key).isPresent());
+
+        status = runGarbageCollection(false);
+        assertEquals(Long.valueOf(1), status.getResult().get(RESULT_NUM_BINARIES_GC));
+        assertFalse(store.getFile(key).isPresent());
+        assertTrue(store.getFile(referencedKey).isPresent());
+
+        // nothing left to collect
+        status = runGarbageCollection(false);
+        assertEquals(Long.valueOf(1), status.getResult().get(RESULT_NUM_BINARIES));
+        assertEquals(Long.valueOf(0), status.getResult().get(RESULT_NUM_BINARIES_GC));
+    }
+
+    @Test
+    public void testPartialQueryRejected() {
+        BulkCommand command = new BulkCommand.Builder(ACTION_NAME, "SELECT * FROM File",
+                session.getPrincipal().getName()).repository(session.getRepositoryName()).build();
+        try {
+            service.submit(command);
+            fail("should not accept a partial query");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("The query must be: " + QUERY));
+        }
+    }
+
+}
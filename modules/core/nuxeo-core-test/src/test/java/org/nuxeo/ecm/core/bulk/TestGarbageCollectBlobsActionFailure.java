@@ -0,0 +1,130 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.bulk;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.ACTION_FULL_NAME;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.ACTION_NAME;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.QUERY;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.SWEEP_NAME;
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
+import static org.nuxeo.ecm.core.bulk.message.BulkStatus.State.ABORTED;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_2;
+
+import java.io.Serializable;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import javax.inject.Inject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.nuxeo.ecm.core.action.GarbageCollectBlobsAction;
+import org.nuxeo.ecm.core.api.Blobs;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobStoreBlobProvider;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.bulk.message.BulkStatus;
+import org.nuxeo.ecm.core.test.CoreFeature;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.runtime.test.runner.Deploy;
+import org.nuxeo.runtime.test.runner.Features;
+import org.nuxeo.runtime.test.runner.FeaturesRunner;
+import org.nuxeo.runtime.test.runner.TransactionalFeature;
+
+/**
+ * @since 11.5
+ */
+@RunWith(FeaturesRunner.class)
+@Features({ CoreFeature.class, CoreBulkFeature.class })
+@Deploy("org.nuxeo.ecm.core.test.tests:OSGI-INF/test-blob-gc-action.xml")
+@Deploy("org.nuxeo.ecm.core.test.tests:OSGI-INF/test-blob-gc-action-failure.xml")
+public class TestGarbageCollectBlobsActionFailure {
+
+    /**
+     * Garbage collection whose mark computation always fails.
+     */
+    public static class FailingGarbageCollectBlobsAction extends GarbageCollectBlobsAction {
+
+        @Override
+        public Topology getTopology(Map<String, String> options) {
+            return Topology.builder()
+                           .addComputation(FailingMarkComputation::new,
+                                   Arrays.asList(INPUT_1 + ":" + ACTION_FULL_NAME, OUTPUT_1 + ":" + SWEEP_NAME,
+                                           OUTPUT_2 + ":" + STATUS_STREAM))
+                           .addComputation(() -> new SweepComputation(1),
+                                   Arrays.asList(INPUT_1 + ":" + SWEEP_NAME, OUTPUT_1 + ":" + STATUS_STREAM))
+                           .build();
+        }
+    }
+
+    public static class FailingMarkComputation extends GarbageCollectBlobsAction.MarkComputation {
+
+        @Override
+        protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
+            throw new NuxeoException("Cannot mark");
+        }
+    }
+
+    @Inject
+    protected TransactionalFeature txFeature;
+
+    @Inject
+    protected BulkService service;
+
+    @Inject
+    protected CoreSession session;
+
+    @Inject
+    protected BlobManager blobManager;
+
+    @Test
+    public void testMarkFailureAbortsCommand() throws Exception {
+        DocumentModel doc = session.createDocumentModel("/", "doc", "File");
+        doc.setPropertyValue("file:content", (Serializable) Blobs.createBlob("foo"));
+        session.createDocument(doc);
+        txFeature.nextTransaction();
+
+        // an unreferenced blob, older than the collection
+        BlobStoreBlobProvider blobProvider = (BlobStoreBlobProvider) blobManager.getBlobProvider("gc");
+        String key = blobProvider.writeBlob(Blobs.createBlob("bar"));
+        Thread.sleep(10); // NOSONAR
+
+        BulkCommand command = new BulkCommand.Builder(ACTION_NAME, QUERY, session.getPrincipal().getName()).repository(
+                session.getRepositoryName()).build();
+        String commandId = service.submit(command);
+        txFeature.nextTransaction();
+        assertTrue(service.await(commandId, Duration.ofSeconds(60)));
+
+        // the command is aborted with an error, and nothing is collected
+        BulkStatus status = service.getStatus(commandId);
+        assertEquals(ABORTED, status.getState());
+        assertTrue(status.hasError());
+        assertTrue(blobProvider.store.getFile(key).isPresent());
+    }
+
+}
@@ -0,0 +1,41 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.bulk;
+
+import java.util.Map;
+
+import org.nuxeo.ecm.core.api.scroll.ScrollRequest;
+import org.nuxeo.ecm.core.scroll.DocumentScrollRequest;
+import org.nuxeo.ecm.core.scroll.RepositoryScroll;
+
+/**
+ * A document scroller that, like external search scrollers, cannot scroll a partition of the result set.
+ *
+ * @since 11.5
+ */
+public class UnpartitionedScroll extends RepositoryScroll {
+
+    @Override
+    public void init(ScrollRequest request, Map<String, String> options) {
+        if (request instanceof DocumentScrollRequest && ((DocumentScrollRequest) request).isPartitioned()) {
+            throw new IllegalArgumentException("Partitioned scroll is not supported: " + request);
+        }
+        super.init(request, options);
+    }
+}
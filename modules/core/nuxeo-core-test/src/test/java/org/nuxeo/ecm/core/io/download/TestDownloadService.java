@@ -24,6 +24,7 @@ import static java.lang.Boolean.TRUE;
 import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
@@ -76,6 +77,9 @@ import org.nuxeo.ecm.core.api.NuxeoException;
 import org.nuxeo.ecm.core.api.NuxeoPrincipal;
 import org.nuxeo.ecm.core.api.impl.UserPrincipal;
 import org.nuxeo.ecm.core.api.impl.blob.FileBlob;
+import org.nuxeo.ecm.core.blob.BlobInfo;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
 import org.nuxeo.ecm.core.blob.binary.Binary;
 import org.nuxeo.ecm.core.blob.binary.BinaryBlob;
 import org.nuxeo.ecm.core.blob.binary.DefaultBinaryManager;
@@ -863,6 +867,101 @@ public class TestDownloadService {
         }
     }
 
+    @Test
+    public void testDownloadFileByteRange() throws IOException {
+        // a FileBlob is transferred from its file
+        Blob blob = new FileBlob(new ByteArrayInputStream("Hello World".getBytes("UTF-8")));
+        blob.setFilename("myFile.txt");
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getMethod()).thenReturn("GET");
+        when(req.getHeader("Range")).thenReturn("bytes=6-9");
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        ServletOutputStream sos = new DummyServletOutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+        };
+        when(resp.getOutputStream()).thenReturn(sos);
+
+        DownloadContext context = DownloadContext.builder(req, resp).blob(blob).build();
+        downloadService.downloadBlob(context);
+
+        verify(resp).setHeader(eq("Content-Range"), eq("bytes 6-9/11"));
+        verify(resp).setContentLengthLong(eq(4L));
+        assertEquals("Worl", out.toString("UTF-8"));
+    }
+
+    @Test
+    @Deploy("org.nuxeo.ecm.core.api.tests:OSGI-INF/test-default-blob-provider.xml")
+    public void testDownloadWithSendfile() throws IOException {
+        DefaultBinaryManager binaryManager = new DefaultBinaryManager();
+        binaryManager.initialize("repo", Collections.emptyMap());
+        Blob source = new FileBlob(new ByteArrayInputStream(CONTENT.getBytes("UTF-8")));
+        Binary binary = binaryManager.getBinary(source);
+        String digest = binary.getDigest();
+        long length = binary.getFile().length();
+        Blob blob = new BinaryBlob(binary, digest, "cafe.txt", "text/plain", "utf-8", digest, length);
+
+        // the container supports sendfile
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getMethod()).thenReturn("GET");
+        when(req.getHeader("Range")).thenReturn("bytes=2-5");
+        when(req.getAttribute(DownloadServiceImpl.SENDFILE_SUPPORT_ATTR)).thenReturn(TRUE);
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        ServletOutputStream sos = new DummyServletOutputStream() {
+            @Override
+            public void write(int b) {
+                throw new NuxeoException("Not supposed to write to response");
+            }
+        };
+        when(resp.getOutputStream()).thenReturn(sos);
+
+        DownloadContext context = DownloadContext.builder(req, resp).blob(blob).reason("test").build();
+        downloadService.downloadBlob(context);
+
+        // the container will send the file range itself
+        verify(resp).setContentLengthLong(eq(4L));
+        verify(req).setAttribute(eq(DownloadServiceImpl.SENDFILE_FILENAME_ATTR),
+                eq(binary.getFile().getAbsolutePath()));
+        verify(req).setAttribute(eq(DownloadServiceImpl.SENDFILE_START_ATTR), eq(Long.valueOf(2)));
+        verify(req).setAttribute(eq(DownloadServiceImpl.SENDFILE_END_ATTR), eq(Long.valueOf(6)));
+    }
+
+    @Test
+    @Deploy("org.nuxeo.ecm.core.api.tests:OSGI-INF/test-blob-provider-inmemory-caching.xml")
+    public void testDownloadCachedFileWithoutSendfile() throws IOException {
+        BlobProvider blobProvider = Framework.getService(BlobManager.class).getBlobProvider("test");
+        BlobInfo blobInfo = new BlobInfo();
+        blobInfo.key = blobProvider.writeBlob(Blobs.createBlob(CONTENT));
+        Blob blob = blobProvider.readBlob(blobInfo);
+        assertNotNull(blob.getFile()); // the file of the caching blob store
+
+        // the container supports sendfile
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        HttpServletRequest req = mock(HttpServletRequest.class);
+        when(req.getMethod()).thenReturn("GET");
+        when(req.getHeader("Range")).thenReturn("bytes=2-5");
+        when(req.getAttribute(DownloadServiceImpl.SENDFILE_SUPPORT_ATTR)).thenReturn(TRUE);
+        HttpServletResponse resp = mock(HttpServletResponse.class);
+        ServletOutputStream sos = new DummyServletOutputStream() {
+            @Override
+            public void write(int b) {
+                out.write(b);
+            }
+        };
+        when(resp.getOutputStream()).thenReturn(sos);
+
+        DownloadContext context = DownloadContext.builder(req, resp).blob(blob).reason("test").build();
+        downloadService.downloadBlob(context);
+
+        // the cache file may be evicted after the request, so it is sent before
+        verify(req, never()).setAttribute(eq(DownloadServiceImpl.SENDFILE_FILENAME_ATTR), any());
+        assertEquals("is i", out.toString("UTF-8"));
+    }
+
     @Test
     @Deploy("org.nuxeo.ecm.core.api.tests:OSGI-INF/test-default-blob-provider.xml")
     public void testDownloadWithNginxAccel() throws IOException {
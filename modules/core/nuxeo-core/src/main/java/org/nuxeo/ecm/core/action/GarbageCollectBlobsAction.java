@@ -0,0 +1,866 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.action;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.APPEND;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static org.nuxeo.ecm.core.blob.KeyStrategy.VER_SEP;
+import static org.nuxeo.ecm.core.bulk.BulkServiceImpl.STATUS_STREAM;
+import static org.nuxeo.ecm.core.bulk.message.BulkStatus.State.ABORTED;
+import static org.nuxeo.ecm.core.bulk.message.BulkStatus.State.COMPLETED;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.INPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_1;
+import static org.nuxeo.lib.stream.computation.AbstractComputation.OUTPUT_2;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Serializable;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.nuxeo.common.Environment;
+import org.nuxeo.ecm.core.api.AbstractSession;
+import org.nuxeo.ecm.core.api.Blob;
+import org.nuxeo.ecm.core.api.CoreSession;
+import org.nuxeo.ecm.core.api.DocumentNotFoundException;
+import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.blob.BlobManager;
+import org.nuxeo.ecm.core.blob.BlobProvider;
+import org.nuxeo.ecm.core.blob.DocumentBlobManager;
+import org.nuxeo.ecm.core.blob.ManagedBlob;
+import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
+import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
+import org.nuxeo.ecm.core.blob.binary.ListableBinaryGarbageCollector;
+import org.nuxeo.ecm.core.bulk.BulkCodecs;
+import org.nuxeo.ecm.core.bulk.BulkService;
+import org.nuxeo.ecm.core.bulk.action.computation.AbstractBulkComputation;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.ecm.core.bulk.message.BulkStatus;
+import org.nuxeo.ecm.core.bulk.message.DataBucket;
+import org.nuxeo.ecm.core.model.Document;
+import org.nuxeo.ecm.core.model.Session;
+import org.nuxeo.lib.stream.codec.Codec;
+import org.nuxeo.lib.stream.computation.AbstractComputation;
+import org.nuxeo.lib.stream.computation.ComputationContext;
+import org.nuxeo.lib.stream.computation.Record;
+import org.nuxeo.lib.stream.computation.Topology;
+import org.nuxeo.lib.stream.computation.internals.ComputationContextImpl;
+import org.nuxeo.runtime.api.Framework;
+import org.nuxeo.runtime.stream.StreamProcessorTopology;
+
+import com.google.code.externalsorting.ExternalSort;
+
+/**
+ * Bulk Action to garbage collect the blobs that are not referenced by any document.
+ * <p>
+ * The mark phase scrolls all the documents of the repository (in partitions if configured) and extracts the keys of
+ * their blobs. The keys are forwarded to a single sweep computation that appends them to local files, one per blob
+ * store and key prefix. When all the documents have been marked, the files of each prefix are sorted on disk and
+ * merged with the sorted listing of the blob store for that prefix, the prefixes being processed concurrently. No key
+ * is kept in memory.
+ * <p>
+ * Only the blob stores whose garbage collector is a {@link ListableBinaryGarbageCollector} able to list its blobs are
+ * collected. A blob is deleted only if it's not referenced and if it was last modified before the submission of the
+ * command, so that blobs written while the documents are scrolled are kept.
+ * <p>
+ * The mark phase checkpoints after each bucket. The sweep computation keeps the marked keys in the data directory of
+ * its node, and doesn't checkpoint while documents are marked, so after a restart the keys already marked are replayed
+ * from the stream without scrolling the documents again. Each prefix swept is recorded in that directory, so that a
+ * restart on the same node resumes the sweep with the remaining prefixes. The progress is reported in the status
+ * result.
+ *
+ * @since 11.5
+ */
+public class GarbageCollectBlobsAction implements StreamProcessorTopology {
+
+    private static final Logger log = LogManager.getLogger(GarbageCollectBlobsAction.class);
+
+    public static final String ACTION_NAME = "garbageCollectBlobs";
+
+    public static final String ACTION_FULL_NAME = "bulk/" + ACTION_NAME;
+
+    public static final String SWEEP_NAME = "bulk/garbageCollectBlobsSweep";
+
+    /** The only query accepted by the action, all the documents must be marked. */
+    public static final String QUERY = "SELECT * FROM Document, Relation";
+
+    /** Parameter to only count the unreferenced blobs, without deleting them. */
+    public static final String PARAM_DRY_RUN = "dryRun";
+
+    public static final String SWEEP_CONCURRENCY_OPTION = "sweepConcurrency";
+
+    public static final int SWEEP_CONCURRENCY_DEFAULT = 8;
+
+    public static final String RESULT_PHASE = "phase";
+
+    public static final String PHASE_MARK = "mark";
+
+    public static final String PHASE_SWEEP = "sweep";
+
+    public static final String PHASE_DONE = "done";
+
+    public static final String RESULT_MARKED_DOCUMENTS = "markedDocuments";
+
+    public static final String RESULT_PREFIXES = "prefixes";
+
+    public static final String RESULT_SWEPT_PREFIXES = "sweptPrefixes";
+
+    public static final String RESULT_NUM_BINARIES = "numBinaries";
+
+    public static final String RESULT_SIZE_BINARIES = "sizeBinaries";
+
+    public static final String RESULT_NUM_BINARIES_GC = "numBinariesGC";
+
+    public static final String RESULT_SIZE_BINARIES_GC = "sizeBinariesGC";
+
+    @Override
+    public Topology getTopology(Map<String, String> options) {
+        int sweepConcurrency = getOptionAsInteger(options, SWEEP_CONCURRENCY_OPTION, SWEEP_CONCURRENCY_DEFAULT);
+        return Topology.builder()
+                       .addComputation(MarkComputation::new,
+                               Arrays.asList(INPUT_1 + ":" + ACTION_FULL_NAME, OUTPUT_1 + ":" + SWEEP_NAME,
+                                       OUTPUT_2 + ":" + STATUS_STREAM))
+                       .addComputation(() -> new SweepComputation(sweepConcurrency),
+                               Arrays.asList(INPUT_1 + ":" + SWEEP_NAME, OUTPUT_1 + ":" + STATUS_STREAM))
+                       .build();
+    }
+
+    public static int getOptionAsInteger(Map<String, String> options, String option, int defaultValue) {
+        String value = options.get(option);
+        return value == null ? defaultValue : Integer.parseInt(value);
+    }
+
+    /**
+     * Gets the key of a blob in its blob store, without blob provider prefix and version.
+     */
+    protected static String getStorageKey(String key) {
+        int colon = key.indexOf(':');
+        if (colon >= 0) {
+            key = key.substring(colon + 1);
+        }
+        int seppos = key.indexOf(VER_SEP);
+        if (seppos >= 0) {
+            key = key.substring(0, seppos);
+        }
+        return key;
+    }
+
+    /**
+     * Computation extracting the blob keys of the documents.
+     * <p>
+     * For each bucket, a {@link DataBucket} holding the number of documents and lines of the form
+     * {@code gcId<TAB>key} is forwarded to the sweep computation. The processed documents are reported by the sweep
+     * computation, so that the command is completed only once the blobs are collected.
+     */
+    public static class MarkComputation extends AbstractBulkComputation {
+
+        protected StringBuilder keys;
+
+        public MarkComputation() {
+            super(ACTION_FULL_NAME, 2);
+        }
+
+        @Override
+        public void startBucket(String bucketKey) {
+            keys = new StringBuilder();
+        }
+
+        @Override
+        protected void compute(CoreSession session, List<String> ids, Map<String, Serializable> properties) {
+            BlobManager blobManager = Framework.getService(BlobManager.class);
+            Session internalSession = ((AbstractSession) session).getSession();
+            for (String id : ids) {
+                Document doc;
+                try {
+                    doc = internalSession.getDocumentByUUID(id);
+                } catch (DocumentNotFoundException e) {
+                    // deleted since the scroll, its blobs are not referenced anymore
+                    continue;
+                }
+                doc.visitBlobs(accessor -> markBlob(blobManager, accessor.getBlob()));
+            }
+        }
+
+        protected void markBlob(BlobManager blobManager, Blob blob) {
+            if (!(blob instanceof ManagedBlob)) {
+                return;
+            }
+            BlobProvider blobProvider = blobManager.getBlobProvider(blob);
+            if (blobProvider == null) {
+                log.debug("No blob provider found for blob: {}", () -> ((ManagedBlob) blob).getKey());
+                return;
+            }
+            BinaryGarbageCollector gc = blobProvider.getBinaryGarbageCollector();
+            if (gc == null) {
+                return;
+            }
+            String key = getStorageKey(((ManagedBlob) blob).getKey());
+            keys.append(gc.getId()).append('\t').append(key).append('\n');
+        }
+
+        @Override
+        public void endBucket(ComputationContext context, BulkStatus delta) {
+            DataBucket out = new DataBucket(delta.getId(), delta.getProcessed(), keys.toString());
+            context.produceRecord(OUTPUT_1, delta.getId(), BulkCodecs.getDataBucketCodec().encode(out));
+        }
+
+        @Override
+        public void processFailure(ComputationContext context, Throwable failure) {
+            log.error(String.format("Action: %s fails on record: %s after retries.", metadata.name(),
+                    context.getLastOffset()), failure);
+            // never forward a partial bucket, unmarked documents would cause the deletion of referenced blobs:
+            // abort the command, the sweep computation then drops its marked keys
+            String commandId = delta.getId();
+            Framework.getService(BulkService.class).abort(commandId);
+            BulkStatus errorDelta = BulkStatus.deltaOf(commandId);
+            errorDelta.inError(metadata.name() + " fails on " + context.getLastOffset() + ": " + failure.getMessage());
+            context.produceRecord(OUTPUT_2, commandId, BulkCodecs.getStatusCodec().encode(errorDelta));
+        }
+    }
+
+    /**
+     * A listable garbage collector and the local files of the marked keys of its prefixes.
+     */
+    protected static class Collector {
+
+        protected final ListableBinaryGarbageCollector gc;
+
+        protected final Path dir;
+
+        protected final List<String> prefixes;
+
+        protected final TreeMap<String, Integer> prefixIndexes = new TreeMap<>();
+
+        protected Collector(ListableBinaryGarbageCollector gc, Path dir) {
+            this.gc = gc;
+            this.dir = dir;
+            prefixes = gc.getKeyPrefixes();
+            for (int i = 0; i < prefixes.size(); i++) {
+                prefixIndexes.put(prefixes.get(i), Integer.valueOf(i));
+            }
+        }
+
+        protected Path getKeysFile(int index) {
+            return dir.resolve(String.valueOf(index));
+        }
+
+        protected Path getSortedKeysFile(int index) {
+            return dir.resolve(index + ".sorted");
+        }
+
+        /** The file holding the result of the sweep of a prefix, present once the prefix is swept. */
+        protected Path getSweptFile(int index) {
+            return dir.resolve(index + ".swept");
+        }
+
+        /**
+         * Gets the file of the marked keys of the prefix of the given key, or {@code null} if no prefix matches.
+         */
+        protected Path getKeysFile(String key) {
+            Entry<String, Integer> entry = prefixIndexes.floorEntry(key);
+            if (entry == null || !key.startsWith(entry.getKey())) {
+                return null;
+            }
+            return getKeysFile(entry.getValue().intValue());
+        }
+    }
+
+    /**
+     * A key prefix of a collector, the unit of work of the sweep.
+     */
+    protected static class PrefixToSweep {
+
+        protected final Collector collector;
+
+        protected final int index;
+
+        protected PrefixToSweep(Collector collector, int index) {
+            this.collector = collector;
+            this.index = index;
+        }
+    }
+
+    /**
+     * The sweep of a command, whose documents are all marked.
+     * <p>
+     * Its parameters are saved in the directory of the command, and each swept prefix leaves a file holding its
+     * result, so that the sweep resumes with the remaining prefixes after a restart.
+     */
+    protected static class Sweep {
+
+        protected static final String PROPERTIES_FILE = "sweep.properties";
+
+        protected static final String DOCUMENTS_PROP = "documents";
+
+        protected static final String SUBMIT_TIME_PROP = "submitTime";
+
+        protected static final String DRY_RUN_PROP = "dryRun";
+
+        protected static final String GC_PROP_PREFIX = "gc.";
+
+        protected final String commandId;
+
+        protected final long documents;
+
+        protected final long submitTime;
+
+        protected final boolean dryRun;
+
+        protected final int prefixes;
+
+        protected final List<PrefixToSweep> remaining = new ArrayList<>();
+
+        protected final BinaryManagerStatus status = new BinaryManagerStatus();
+
+        protected final Instant start = Instant.now();
+
+        protected Sweep(String commandId, long documents, long submitTime, boolean dryRun,
+                Collection<Collector> collectors) throws IOException {
+            this.commandId = commandId;
+            this.documents = documents;
+            this.submitTime = submitTime;
+            this.dryRun = dryRun;
+            int count = 0;
+            for (Collector collector : collectors) {
+                for (int i = 0; i < collector.prefixes.size(); i++) {
+                    count++;
+                    Path sweptFile = collector.getSweptFile(i);
+                    if (Files.exists(sweptFile)) {
+                        addStatus(readStatus(sweptFile));
+                    } else {
+                        remaining.add(new PrefixToSweep(collector, i));
+                    }
+                }
+            }
+            prefixes = count;
+        }
+
+        protected int getSwept() {
+            return prefixes - remaining.size();
+        }
+
+        protected void addStatus(BinaryManagerStatus prefixStatus) {
+            status.numBinaries += prefixStatus.numBinaries;
+            status.sizeBinaries += prefixStatus.sizeBinaries;
+            status.numBinariesGC += prefixStatus.numBinariesGC;
+            status.sizeBinariesGC += prefixStatus.sizeBinariesGC;
+        }
+
+        protected static void writeStatus(Path path, BinaryManagerStatus status) throws IOException {
+            String line = status.numBinaries + " " + status.sizeBinaries + " " + status.numBinariesGC + " "
+                    + status.sizeBinariesGC;
+            writeAtomically(path, Collections.singletonList(line));
+        }
+
+        protected static BinaryManagerStatus readStatus(Path path) throws IOException {
+            String[] values = Files.readAllLines(path, Charset.defaultCharset()).get(0).split(" ");
+            BinaryManagerStatus status = new BinaryManagerStatus();
+            status.numBinaries = Long.parseLong(values[0]);
+            status.sizeBinaries = Long.parseLong(values[1]);
+            status.numBinariesGC = Long.parseLong(values[2]);
+            status.sizeBinariesGC = Long.parseLong(values[3]);
+            return status;
+        }
+
+        /**
+         * Saves the parameters of the sweep of a command in its directory.
+         */
+        protected static void save(Path commandDir, long documents, long submitTime, boolean dryRun,
+                List<String> gcIds) throws IOException {
+            List<String> lines = new ArrayList<>();
+            lines.add(DOCUMENTS_PROP + "=" + documents);
+            lines.add(SUBMIT_TIME_PROP + "=" + submitTime);
+            lines.add(DRY_RUN_PROP + "=" + dryRun);
+            for (int i = 0; i < gcIds.size(); i++) {
+                lines.add(GC_PROP_PREFIX + i + "=" + gcIds.get(i));
+            }
+            // the ids are written as is, they only have to be compared with the ids of the current collectors
+            writeAtomically(commandDir.resolve(PROPERTIES_FILE), lines);
+        }
+
+        /**
+         * Loads the sweep of a command from its directory, or returns {@code null} if its documents are not all
+         * marked.
+         */
+        protected static Sweep load(Path commandDir) throws IOException {
+            Path path = commandDir.resolve(PROPERTIES_FILE);
+            if (!Files.exists(path)) {
+                return null;
+            }
+            Map<String, String> props = new HashMap<>();
+            for (String line : Files.readAllLines(path, Charset.defaultCharset())) {
+                int eq = line.indexOf('=');
+                props.put(line.substring(0, eq), line.substring(eq + 1));
+            }
+            Map<String, ListableBinaryGarbageCollector> gcs = new HashMap<>();
+            for (BinaryGarbageCollector gc : Framework.getService(DocumentBlobManager.class).getGarbageCollectors()) {
+                if (gc instanceof ListableBinaryGarbageCollector) {
+                    gcs.putIfAbsent(gc.getId(), (ListableBinaryGarbageCollector) gc);
+                }
+            }
+            List<Collector> collectors = new ArrayList<>();
+            for (int i = 0; props.containsKey(GC_PROP_PREFIX + i); i++) {
+                String gcId = props.get(GC_PROP_PREFIX + i);
+                ListableBinaryGarbageCollector gc = gcs.get(gcId);
+                if (gc == null) {
+                    log.warn("Garbage collector: {} not found anymore, skipping it", gcId);
+                    continue;
+                }
+                collectors.add(new Collector(gc, commandDir.resolve(String.valueOf(i))));
+            }
+            return new Sweep(commandDir.getFileName().toString(), Long.parseLong(props.get(DOCUMENTS_PROP)),
+                    Long.parseLong(props.get(SUBMIT_TIME_PROP)), Boolean.parseBoolean(props.get(DRY_RUN_PROP)),
+                    collectors);
+        }
+
+        protected static void writeAtomically(Path path, List<String> lines) throws IOException {
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            Files.write(tmp, lines, Charset.defaultCharset());
+            Files.move(tmp, path, ATOMIC_MOVE, REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Iterates over a sorted file of keys to check in order if keys are marked.
+     */
+    protected static class SortedKeys implements Closeable {
+
+        protected final BufferedReader reader;
+
+        protected String current;
+
+        protected SortedKeys(Path path) throws IOException {
+            reader = Files.exists(path) ? Files.newBufferedReader(path, Charset.defaultCharset()) : null;
+            current = reader == null ? null : reader.readLine();
+        }
+
+        /**
+         * Checks if a key is marked. The keys must be checked in increasing order.
+         */
+        protected boolean contains(String key) {
+            try {
+                while (current != null && current.compareTo(key) < 0) {
+                    current = reader.readLine();
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return key.equals(current);
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+    }
+
+    /**
+     * Computation collecting the marked keys on disk and sweeping the unreferenced blobs once all the documents are
+     * marked. It must run on a single partition.
+     * <p>
+     * The marked keys are kept in the data directory of the node running the computation. Until all the documents of a
+     * command are marked, no checkpoint is done, so after a restart the marked keys are replayed from the stream.
+     * Afterwards, the prefixes are swept by batches on timer, with a checkpoint after each batch, and a restart on the
+     * same node resumes the sweep with the prefixes not yet swept. If the computation moves to another node, the
+     * commands in sweep phase are not resumed there and must be submitted again.
+     */
+    public static class SweepComputation extends AbstractComputation {
+
+        protected static final long CHECK_DELAY_MS = 1000;
+
+        protected final int concurrency;
+
+        protected Path dir;
+
+        protected ExecutorService executor;
+
+        protected final Map<String, Map<String, Collector>> collectors = new HashMap<>();
+
+        protected final Map<String, Long> counters = new HashMap<>();
+
+        protected final Map<String, Long> reported = new HashMap<>();
+
+        protected final Map<String, Long> totals = new HashMap<>();
+
+        protected final Map<String, Sweep> sweeps = new LinkedHashMap<>();
+
+        public SweepComputation(int concurrency) {
+            super(SWEEP_NAME, 1, 1);
+            this.concurrency = concurrency;
+        }
+
+        @Override
+        public void init(ComputationContext context) {
+            super.init(context);
+            AtomicInteger threadNumber = new AtomicInteger();
+            executor = Executors.newFixedThreadPool(concurrency, r -> {
+                Thread thread = new Thread(r, "Nuxeo-GarbageCollectBlobs-Sweep-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+            dir = Environment.getDefault().getData().toPath().resolve(ACTION_NAME);
+            try {
+                Files.createDirectories(dir);
+                loadSweeps();
+            } catch (IOException e) {
+                throw new IllegalStateException("Cannot initialize directory: " + dir + " for " + this, e);
+            }
+            context.setTimer("check", System.currentTimeMillis() + CHECK_DELAY_MS);
+        }
+
+        /**
+         * Loads the sweeps in progress. The marked keys of the commands whose documents are not all marked are
+         * deleted, they are replayed from the stream.
+         */
+        protected void loadSweeps() throws IOException {
+            try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir)) {
+                for (Path commandDir : ds) {
+                    Sweep sweep = Sweep.load(commandDir);
+                    if (sweep == null) {
+                        FileUtils.deleteDirectory(commandDir.toFile());
+                    } else {
+                        log.info("Resuming sweep of command: {}, {}/{} prefixes already swept", sweep.commandId,
+                                sweep.getSwept(), sweep.prefixes);
+                        sweeps.put(sweep.commandId, sweep);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public void destroy() {
+            if (executor != null) {
+                executor.shutdownNow();
+            }
+        }
+
+        @Override
+        public void processTimer(ComputationContext context, String key, long timestamp) {
+            // solves the race condition where the total is known after the records have been processed,
+            // and reports the progress of the mark phase
+            for (String commandId : new ArrayList<>(counters.keySet())) {
+                if (isAborted(commandId)) {
+                    log.debug("Skipping aborted command: {}", commandId);
+                    finish(context, commandId);
+                } else if (counters.get(commandId) >= getTotal(commandId)) {
+                    startSweep(context, commandId);
+                } else if (!counters.get(commandId).equals(reported.get(commandId))) {
+                    reported.put(commandId, counters.get(commandId));
+                    BulkStatus delta = BulkStatus.deltaOf(commandId);
+                    delta.setResult(getResult(PHASE_MARK, counters.get(commandId), 0, 0, new BinaryManagerStatus()));
+                    AbstractBulkComputation.updateStatus(context, delta);
+                }
+            }
+            long delay = CHECK_DELAY_MS;
+            for (Sweep sweep : new ArrayList<>(sweeps.values())) {
+                if (isAborted(sweep.commandId)) {
+                    log.debug("Skipping aborted command: {}", sweep.commandId);
+                    finish(context, sweep.commandId);
+                } else {
+                    sweepBatch(context, sweep);
+                    // don't wait before the next batch, records can still be processed between batches
+                    delay = 0;
+                }
+            }
+            context.setTimer("check", System.currentTimeMillis() + delay);
+        }
+
+        @Override
+        public void processRecord(ComputationContext context, String inputStreamName, Record record) {
+            Codec<DataBucket> codec = BulkCodecs.getDataBucketCodec();
+            DataBucket in = codec.decode(record.getData());
+            String commandId = in.getCommandId();
+            if (sweeps.containsKey(commandId)) {
+                // replayed after a restart, the marked keys are already saved
+                return;
+            }
+            if (isAbortedOrCompleted(commandId)) {
+                // also replayed after a restart if no checkpoint was done since the completion
+                log.debug("Skipping aborted or completed command: {}", commandId);
+                finish(context, commandId);
+                return;
+            }
+            appendKeys(commandId, in.getDataAsString());
+            counters.merge(commandId, Long.valueOf(in.getCount()), Long::sum);
+            if (counters.get(commandId) >= getTotal(commandId)) {
+                startSweep(context, commandId);
+            }
+        }
+
+        protected Map<String, Collector> getCollectors(String commandId) {
+            return collectors.computeIfAbsent(commandId, id -> {
+                Map<String, Collector> map = new LinkedHashMap<>();
+                for (BinaryGarbageCollector gc : Framework.getService(DocumentBlobManager.class)
+                                                          .getGarbageCollectors()) {
+                    String gcId = gc.getId();
+                    if (map.containsKey(gcId)) {
+                        // several blob providers may share a storage
+                        continue;
+                    }
+                    if (!(gc instanceof ListableBinaryGarbageCollector)
+                            || !((ListableBinaryGarbageCollector) gc).isListable()) {
+                        log.warn("Blobs of garbage collector: {} cannot be listed, skipping it", gcId);
+                        continue;
+                    }
+                    Path collectorDir = dir.resolve(id).resolve(String.valueOf(map.size()));
+                    map.put(gcId, new Collector((ListableBinaryGarbageCollector) gc, collectorDir));
+                }
+                return map;
+            });
+        }
+
+        protected void appendKeys(String commandId, String data) {
+            Map<String, Collector> map = getCollectors(commandId);
+            Map<Path, List<String>> keysByFile = new HashMap<>();
+            for (String line : data.split("\n")) {
+                int tab = line.indexOf('\t');
+                if (tab < 0) {
+                    continue;
+                }
+                Collector collector = map.get(line.substring(0, tab));
+                if (collector == null) {
+                    // not listable
+                    continue;
+                }
+                String key = line.substring(tab + 1);
+                Path path = collector.getKeysFile(key);
+                if (path != null) {
+                    keysByFile.computeIfAbsent(path, k -> new ArrayList<>()).add(key);
+                }
+            }
+            try {
+                for (Entry<Path, List<String>> es : keysByFile.entrySet()) {
+                    Path path = es.getKey();
+                    Files.createDirectories(path.getParent());
+                    Files.write(path, es.getValue(), Charset.defaultCharset(), CREATE, APPEND);
+                }
+            } catch (IOException e) {
+                // a lost key would cause the deletion of a referenced blob
+                throw new NuxeoException("Cannot write marked keys for command: " + commandId, e);
+            }
+        }
+
+        protected long getTotal(String commandId) {
+            if (!totals.containsKey(commandId)) {
+                BulkStatus status = Framework.getService(BulkService.class).getStatus(commandId);
+                if (!status.isScrollCompleted() || status.getTotal() == 0) {
+                    return Long.MAX_VALUE;
+                }
+                totals.put(commandId, Long.valueOf(status.getTotal()));
+            }
+            return totals.get(commandId).longValue();
+        }
+
+        protected boolean isAborted(String commandId) {
+            return ABORTED.equals(Framework.getService(BulkService.class).getStatus(commandId).getState());
+        }
+
+        protected boolean isAbortedOrCompleted(String commandId) {
+            BulkStatus.State state = Framework.getService(BulkService.class).getStatus(commandId).getState();
+            return ABORTED.equals(state) || COMPLETED.equals(state);
+        }
+
+        /**
+         * Saves the parameters of the sweep of a command whose documents are all marked, and schedules its sweep.
+         */
+        protected void startSweep(ComputationContext context, String commandId) {
+            BulkService bulkService = Framework.getService(BulkService.class);
+            BulkCommand command = bulkService.getCommand(commandId);
+            long submitTime = bulkService.getStatus(commandId).getSubmitTime().toEpochMilli();
+            boolean dryRun = command != null && Boolean.TRUE.equals(command.getParam(PARAM_DRY_RUN));
+            long documents = counters.get(commandId).longValue();
+            Map<String, Collector> map = getCollectors(commandId);
+            Sweep sweep;
+            try {
+                Path commandDir = dir.resolve(commandId);
+                Files.createDirectories(commandDir);
+                Sweep.save(commandDir, documents, submitTime, dryRun, new ArrayList<>(map.keySet()));
+                sweep = new Sweep(commandId, documents, submitTime, dryRun, map.values());
+            } catch (IOException e) {
+                throw new NuxeoException("Cannot save sweep of command: " + commandId, e);
+            }
+            log.debug("Sweeping {} prefixes for command: {}, dryRun: {}", sweep.prefixes, commandId, dryRun);
+            collectors.remove(commandId);
+            counters.remove(commandId);
+            reported.remove(commandId);
+            totals.remove(commandId);
+            sweeps.put(commandId, sweep);
+            reportSweep(context, sweep, PHASE_SWEEP);
+            checkpointIfNoMarkInProgress(context);
+        }
+
+        /**
+         * Sweeps the next prefixes of a command, as many as the concurrency, then completes the command if they were
+         * the last ones.
+         */
+        protected void sweepBatch(ComputationContext context, Sweep sweep) {
+            List<PrefixToSweep> batch = new ArrayList<>(
+                    sweep.remaining.subList(0, Math.min(concurrency, sweep.remaining.size())));
+            List<Future<BinaryManagerStatus>> futures = new ArrayList<>(batch.size());
+            for (PrefixToSweep prefix : batch) {
+                futures.add(executor.submit(() -> sweepPrefix(prefix, sweep.submitTime, sweep.dryRun)));
+            }
+            try {
+                for (Future<BinaryManagerStatus> future : futures) {
+                    sweep.addStatus(future.get());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new NuxeoException(e);
+            } catch (ExecutionException e) {
+                throw new NuxeoException("Cannot sweep blobs for command: " + sweep.commandId, e.getCause());
+            }
+            sweep.remaining.removeAll(batch);
+            if (sweep.remaining.isEmpty()) {
+                log.debug("Swept blobs for command: {}: {}", sweep.commandId, sweep.status);
+                reportSweep(context, sweep, PHASE_DONE);
+                finish(context, sweep.commandId);
+            } else {
+                reportSweep(context, sweep, PHASE_SWEEP);
+                checkpointIfNoMarkInProgress(context);
+            }
+        }
+
+        /**
+         * Merges the sorted marked keys of a prefix with the listing of its blobs, and deletes the unreferenced ones.
+         * <p>
+         * The result is saved in a file, and the marked keys are deleted only afterwards.
+         */
+        protected BinaryManagerStatus sweepPrefix(PrefixToSweep prefixToSweep, long submitTime, boolean dryRun)
+                throws IOException {
+            Collector collector = prefixToSweep.collector;
+            int index = prefixToSweep.index;
+            BinaryManagerStatus status = new BinaryManagerStatus();
+            String prefix = collector.prefixes.get(index);
+            Path keysFile = collector.getKeysFile(index);
+            Path sortedFile = collector.getSortedKeysFile(index);
+            if (Files.exists(keysFile)) {
+                // if interrupted, the sort is done again as long as the unsorted keys are there
+                ExternalSort.sort(keysFile.toFile(), sortedFile.toFile());
+                Files.delete(keysFile);
+            }
+            try (SortedKeys marked = new SortedKeys(sortedFile)) {
+                String[] previous = new String[1];
+                collector.gc.listBlobs(prefix, (key, length, lastModified) -> {
+                    if (previous[0] != null && key.compareTo(previous[0]) <= 0) {
+                        // the merge would miss marked keys
+                        throw new NuxeoException("Blobs of: " + collector.gc.getId() + " not listed in order, key: "
+                                + key + " after: " + previous[0]);
+                    }
+                    previous[0] = key;
+                    status.numBinaries++;
+                    status.sizeBinaries += length;
+                    if (marked.contains(key) || lastModified >= submitTime) {
+                        return;
+                    }
+                    status.numBinariesGC++;
+                    status.sizeBinariesGC += length;
+                    if (!dryRun) {
+                        collector.gc.deleteBlob(key);
+                    }
+                });
+            }
+            Sweep.writeStatus(collector.getSweptFile(index), status);
+            Files.deleteIfExists(sortedFile);
+            return status;
+        }
+
+        /**
+         * Reports the progress of a sweep right away, as no checkpoint may be done while other commands are marked.
+         */
+        protected void reportSweep(ComputationContext context, Sweep sweep, String phase) {
+            BulkStatus delta = BulkStatus.deltaOf(sweep.commandId);
+            if (PHASE_DONE.equals(phase)) {
+                delta.setProcessingStartTime(sweep.start);
+                delta.setProcessingEndTime(Instant.now());
+                delta.setProcessed(sweep.documents);
+                sweep.status.gcDuration = Instant.now().toEpochMilli() - sweep.start.toEpochMilli();
+            }
+            delta.setResult(getResult(phase, sweep.documents, sweep.prefixes, sweep.getSwept(), sweep.status));
+            ((ComputationContextImpl) context).produceRecordImmediate(OUTPUT_1, sweep.commandId,
+                    BulkCodecs.getStatusCodec().encode(delta));
+        }
+
+        protected Map<String, Serializable> getResult(String phase, long documents, int prefixes, int swept,
+                BinaryManagerStatus status) {
+            Map<String, Serializable> result = new HashMap<>();
+            result.put(RESULT_PHASE, phase);
+            result.put(RESULT_MARKED_DOCUMENTS, Long.valueOf(documents));
+            result.put(RESULT_PREFIXES, Integer.valueOf(prefixes));
+            result.put(RESULT_SWEPT_PREFIXES, Integer.valueOf(swept));
+            result.put(RESULT_NUM_BINARIES, Long.valueOf(status.numBinaries));
+            result.put(RESULT_SIZE_BINARIES, Long.valueOf(status.sizeBinaries));
+            result.put(RESULT_NUM_BINARIES_GC, Long.valueOf(status.numBinariesGC));
+            result.put(RESULT_SIZE_BINARIES_GC, Long.valueOf(status.sizeBinariesGC));
+            return result;
+        }
+
+        /**
+         * Asks for a checkpoint if no command is in mark phase, as the marked keys of such a command would not be
+         * replayed after a restart.
+         */
+        protected void checkpointIfNoMarkInProgress(ComputationContext context) {
+            if (counters.isEmpty()) {
+                context.askForCheckpoint();
+            }
+        }
+
+        protected void finish(ComputationContext context, String commandId) {
+            try {
+                FileUtils.deleteDirectory(dir.resolve(commandId).toFile());
+            } catch (IOException e) {
+                log.error("Unable to delete marked keys of command: " + commandId, e);
+            }
+            collectors.remove(commandId);
+            counters.remove(commandId);
+            reported.remove(commandId);
+            totals.remove(commandId);
+            sweeps.remove(commandId);
+            checkpointIfNoMarkInProgress(context);
+        }
+    }
+
+}
@@ -0,0 +1,61 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.core.action;
+
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.PARAM_DRY_RUN;
+import static org.nuxeo.ecm.core.action.GarbageCollectBlobsAction.QUERY;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.nuxeo.ecm.core.api.repository.RepositoryManager;
+import org.nuxeo.ecm.core.bulk.AbstractBulkActionValidation;
+import org.nuxeo.ecm.core.bulk.message.BulkCommand;
+import org.nuxeo.runtime.api.Framework;
+
+/**
+ * Checks that the blob garbage collection marks all the documents, as any unmarked blob would be deleted.
+ *
+ * @since 11.5
+ */
+public class GarbageCollectBlobsValidation extends AbstractBulkActionValidation {
+
+    @Override
+    protected List<String> getParametersToValidate() {
+        return Collections.singletonList(PARAM_DRY_RUN);
+    }
+
+    @Override
+    protected void validateCommand(BulkCommand command) throws IllegalArgumentException {
+        validateBoolean(PARAM_DRY_RUN, command);
+        if (!QUERY.equals(command.getQuery()) || command.useExternalScroller()) {
+            throw new IllegalArgumentException("The query must be: " + QUERY + " in command: " + command);
+        }
+        Long queryLimit = command.getQueryLimit();
+        if (queryLimit != null && queryLimit.longValue() > 0) {
+            throw new IllegalArgumentException("The query cannot be limited in command: " + command);
+        }
+        // blobs may be shared between repositories, their documents would have to be marked too
+        RepositoryManager repositoryManager = Framework.getService(RepositoryManager.class);
+        if (repositoryManager != null && repositoryManager.getRepositoryNames().size() > 1) {
+            throw new IllegalArgumentException("Cannot garbage collect blobs with several repositories: " + command);
+        }
+    }
+
+}
@@ -61,6 +61,7 @@ import java.util.Map.Entry;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.logging.log4j.LogManager;
@@ -97,6 +98,8 @@ import org.nuxeo.ecm.core.model.Session;
 import org.nuxeo.ecm.core.query.QueryFilter;
 import org.nuxeo.ecm.core.query.QueryParseException;
 import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.model.KeysetTransformer;
+import org.nuxeo.ecm.core.query.sql.model.PartitionTransformer;
 import org.nuxeo.ecm.core.query.sql.model.SQLQuery.Transformer;
 import org.nuxeo.ecm.core.schema.DocumentType;
 import org.nuxeo.ecm.core.schema.FacetNames;
@@ -1217,8 +1220,56 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         return ret;
     }
 
+    @Override
+    public DocumentModelList queryAfter(String query, Filter filter, long limit, List<Serializable> sortValues) {
+        Span span = Tracing.getTracer().getCurrentSpan();
+        Map<String, AttributeValue> map = new HashMap<>();
+        map.put("nxql", AttributeValue.stringAttributeValue(query));
+        if (filter != null) {
+            map.put("filter", AttributeValue.stringAttributeValue(filter.toString()));
+        }
+        map.put("limit", AttributeValue.longAttributeValue(limit));
+        map.put("sortValues", AttributeValue.stringAttributeValue(String.valueOf(sortValues)));
+        span.addAnnotation("AbstractSession#queryAfter", map);
+
+        Session session = getSession();
+        KeysetTransformer transformer = new KeysetTransformer(sortValues, session.isNullSortedFirst(false),
+                session.isNullSortedFirst(true));
+        DocumentModelList ret = tracedQuery(query, NXQL.NXQL, filter, limit, 0, 0, transformer);
+
+        map.clear();
+        map.put("size", AttributeValue.longAttributeValue(ret.size()));
+        span.addAnnotation("AbstractSession#queryAfter.done", map);
+        return ret;
+    }
+
+    @Override
+    public long queryEstimatedCount(String query) {
+        SecurityService securityService = getSecurityService();
+        String[] principals = getPrincipalsToCheck();
+        String[] permissions = securityService.getPermissionsToCheck(BROWSE);
+        Collection<Transformer> transformers = getPoliciesQueryTransformers(NXQL.NXQL);
+        QueryFilter queryFilter = new QueryFilter(getPrincipal(), principals, permissions, null, transformers, 0, 0);
+        try {
+            return getSession().queryEstimatedCount(query, NXQL.NXQL, queryFilter);
+        } catch (QueryParseException e) {
+            e.addInfo("Failed to estimate query: " + query);
+            throw e;
+        }
+    }
+
     protected DocumentModelList tracedQuery(String query, String queryType, Filter filter, long limit, long offset,
             long countUpTo) {
+        return tracedQuery(query, queryType, filter, limit, offset, countUpTo, null);
+    }
+
+    /**
+     * Executes a query, with an additional query transformer applied after the ones of the security policies.
+     *
+     * @since 11.5
+     */
+    protected DocumentModelList tracedQuery(String query, String queryType, Filter filter, long limit, long offset,
+            long countUpTo, Transformer transformer) {
         SecurityService securityService = getSecurityService();
         NuxeoPrincipal principal = getPrincipal();
         try {
@@ -1230,6 +1281,10 @@ public abstract class AbstractSession implements CoreSession, Serializable {
             String[] principals = getPrincipalsToCheck();
             String[] permissions = securityService.getPermissionsToCheck(permission);
             Collection<Transformer> transformers = getPoliciesQueryTransformers(queryType);
+            if (transformer != null) {
+                transformers = new ArrayList<>(transformers);
+                transformers.add(transformer);
+            }
 
             QueryFilter queryFilter = new QueryFilter(principal, principals, permissions,
                     filter instanceof FacetFilter ? (FacetFilter) filter : null, transformers, postFilter ? 0 : limit,
@@ -1349,6 +1404,24 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         return getSession().queryProjection(query, queryType, queryFilter, distinctDocuments, countUpTo, params);
     }
 
+    @Override
+    public Stream<Map<String, Serializable>> queryProjectionStream(String query, String queryType,
+            boolean distinctDocuments, int batchSize, Object... params) {
+        NuxeoPrincipal principal = getPrincipal();
+        String[] principals = getPrincipalsToCheck();
+        String[] permissions = getPermissionsToCheck(BROWSE);
+        Collection<Transformer> transformers = getPoliciesQueryTransformers(queryType);
+
+        QueryFilter queryFilter = new QueryFilter(principal, principals, permissions, null, transformers, 0, 0);
+        try {
+            return getSession().queryProjectionStream(query, queryType, queryFilter, distinctDocuments, batchSize,
+                    params);
+        } catch (QueryParseException e) {
+            e.addInfo("Failed to execute query: " + queryType + ": " + query);
+            throw e;
+        }
+    }
+
     protected String[] getPrincipalsToCheck() {
         NuxeoPrincipal principal = getPrincipal();
         String[] principals;
@@ -1395,6 +1468,41 @@ public abstract class AbstractSession implements CoreSession, Serializable {
         return getSession().scroll(query, queryFilter, batchSize, keepAliveSeconds);
     }
 
+    @Override
+    public ScrollResult<String> scroll(String query, int batchSize, int keepAliveSeconds, int partition,
+            int partitions) {
+        Map<String, AttributeValue> map = new HashMap<>();
+        Span span = Tracing.getTracer().getCurrentSpan();
+        map.put("nxql", AttributeValue.stringAttributeValue(query));
+        map.put("batchSize", AttributeValue.longAttributeValue(batchSize));
+        map.put("keepAliveSeconds", AttributeValue.longAttributeValue(keepAliveSeconds));
+        map.put("partition", AttributeValue.longAttributeValue(partition));
+        map.put("partitions", AttributeValue.longAttributeValue(partitions));
+        String idTemplate = getSession().getRandomIdTemplate();
+        if (idTemplate == null) {
+            // ids cannot be partitioned by ranges, the first partition holds all the documents
+            if (partition > 0) {
+                return ScrollResultImpl.emptyResult();
+            }
+            return scroll(query, batchSize, keepAliveSeconds);
+        }
+        Transformer partitionTransformer = new PartitionTransformer(partition, partitions, idTemplate);
+        QueryFilter queryFilter;
+        if (isAdministrator()) {
+            queryFilter = new QueryFilter(getPrincipal(), null, null, null,
+                    Collections.singletonList(partitionTransformer), 0, 0);
+        } else {
+            String[] principals = getPrincipalsToCheck();
+            String[] permissions = getSecurityService().getPermissionsToCheck(BROWSE);
+            List<Transformer> transformers = new ArrayList<>(getPoliciesQueryTransformers(NXQL.NXQL));
+            transformers.add(partitionTransformer);
+            queryFilter = new QueryFilter(getPrincipal(), principals, permissions, null, transformers, 0, 0);
+        }
+        map.put("queryFilter", AttributeValue.stringAttributeValue(queryFilter.toString()));
+        span.addAnnotation("AbstractSession#scroll", map);
+        return getSession().scroll(query, queryFilter, batchSize, keepAliveSeconds);
+    }
+
     @Override
     public ScrollResult<String> scroll(String scrollId) {
         Span span = Tracing.getTracer().getCurrentSpan();
@@ -21,10 +21,12 @@ package org.nuxeo.ecm.core.blob;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Calendar;
+import java.util.List;
 import java.util.Set;
 
 import org.nuxeo.ecm.core.api.Blob;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.blob.binary.BinaryGarbageCollector;
 import org.nuxeo.ecm.core.blob.binary.BinaryManagerStatus;
 import org.nuxeo.ecm.core.model.Document;
 
@@ -160,6 +162,16 @@ public interface DocumentBlobManager {
      */
     boolean isBinariesGarbageCollectionInProgress();
 
+    /**
+     * Gets the garbage collectors of the blob providers to which document blobs are dispatched.
+     * <p>
+     * Several garbage collectors may have the same {@link BinaryGarbageCollector#getId id}.
+     *
+     * @return the garbage collectors
+     * @since 11.5
+     */
+    List<BinaryGarbageCollector> getGarbageCollectors();
+
     /**
      * INTERNAL. Marks a binary as referenced during garbage collection. Called back by repository implementations
      * during {@link #garbageCollectBinaries}.
@@ -309,7 +309,8 @@ public class DocumentBlobManagerComponent extends DefaultComponent implements Do
 
     // find which GCs to use
     // only GC the binary managers to which we dispatch blobs
-    protected List<BinaryGarbageCollector> getGarbageCollectors() {
+    @Override
+    public List<BinaryGarbageCollector> getGarbageCollectors() {
         List<BinaryGarbageCollector> gcs = new LinkedList<>();
         for (String providerId : getBlobDispatcher().getBlobProviderIds()) {
             BlobProvider blobProvider = getBlobProvider(providerId);
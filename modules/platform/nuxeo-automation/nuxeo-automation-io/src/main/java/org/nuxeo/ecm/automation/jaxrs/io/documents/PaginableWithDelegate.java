@@ -26,6 +26,7 @@ import org.nuxeo.ecm.automation.core.util.Paginable;
 import org.nuxeo.ecm.platform.query.api.Aggregate;
 import org.nuxeo.ecm.platform.query.api.Bucket;
 import org.nuxeo.ecm.platform.query.api.QuickFilter;
+import org.nuxeo.ecm.platform.query.api.ResultsCountKind;
 
 /**
  * Paginable object that uses a delegate to handle pagination.
@@ -132,4 +133,9 @@ public class PaginableWithDelegate<T> extends ArrayList<T> implements Paginable<
         return delegate.getResultsCountLimit();
     }
 
+    @Override
+    public ResultsCountKind getResultsCountKind() {
+        return delegate.getResultsCountKind();
+    }
+
 }
@@ -20,10 +20,13 @@ package org.nuxeo.elasticsearch.scroll;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.stream.Collectors;
 
 import org.elasticsearch.search.SearchHit;
+import org.nuxeo.ecm.core.api.scroll.ScrollRequest;
+import org.nuxeo.ecm.core.scroll.DocumentScrollRequest;
 import org.nuxeo.ecm.core.scroll.RepositoryScroll;
 import org.nuxeo.elasticsearch.api.ElasticSearchService;
 import org.nuxeo.elasticsearch.api.EsScrollResult;
@@ -37,6 +40,14 @@ public class ElasticSearchScroll extends RepositoryScroll {
 
     protected EsScrollResult esScroll;
 
+    @Override
+    public void init(ScrollRequest request, Map<String, String> options) {
+        if (request instanceof DocumentScrollRequest && ((DocumentScrollRequest) request).isPartitioned()) {
+            throw new IllegalArgumentException("Partitioned scroll is not supported: " + request);
+        }
+        super.init(request, options);
+    }
+
     @Override
     public boolean hasNext() {
         if (hasNextResult == null) {
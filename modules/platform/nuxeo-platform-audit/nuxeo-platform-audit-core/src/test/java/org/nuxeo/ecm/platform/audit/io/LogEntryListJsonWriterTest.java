@@ -63,7 +63,7 @@ public class LogEntryListJsonWriterTest extends AbstractJsonWriterTest.External<
         PageProvider<LogEntry> pp = (PageProvider<LogEntry>) pps.getPageProvider(name, null, 3l, 0l, properties, root);
         LogEntryList list = new LogEntryList(pp);
         JsonAssert json = jsonAssert(list);
-        json.properties(19);
+        json.properties(20);
         json.has("entity-type").isEquals("logEntries");
         json.has("isPaginable").isTrue();
         json.has("resultsCount").isInt();
@@ -81,6 +81,7 @@ public class LogEntryListJsonWriterTest extends AbstractJsonWriterTest.External<
         json.has("pageIndex").isEquals(pp.getCurrentPageIndex());
         json.has("pageCount").isEquals(pp.getResultsCount());
         json.has("currentPageOffset").isEquals(pp.getCurrentPageOffset());
+        json.has("resultsCountKind").isEquals("exact");
         json = json.has("entries").isArray();
         json = json.has(0).isObject();
         json.has("entity-type").isEquals("logEntry");
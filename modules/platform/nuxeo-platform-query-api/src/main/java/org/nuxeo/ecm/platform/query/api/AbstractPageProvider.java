@@ -90,6 +90,11 @@ public abstract class AbstractPageProvider<T> implements PageProvider<T> {
 
     protected long resultsCount = UNKNOWN_SIZE;
 
+    /**
+     * @since 11.5
+     */
+    protected ResultsCountKind resultsCountKind = ResultsCountKind.EXACT;
+
     protected int currentEntryIndex = 0;
 
     /**
@@ -511,6 +516,7 @@ public abstract class AbstractPageProvider<T> implements PageProvider<T> {
     @Override
     public void refresh() {
         setResultsCount(UNKNOWN_SIZE);
+        setResultsCountKind(ResultsCountKind.EXACT);
         setCurrentHigherNonEmptyPageIndex(-1);
         currentSelectPage = null;
         errorMessage = null;
@@ -697,6 +703,20 @@ public abstract class AbstractPageProvider<T> implements PageProvider<T> {
         setCurrentHigherNonEmptyPageIndex(-1);
     }
 
+    @Override
+    public ResultsCountKind getResultsCountKind() {
+        return resultsCountKind;
+    }
+
+    /**
+     * Sets how the results count was computed.
+     *
+     * @since 11.5
+     */
+    public void setResultsCountKind(ResultsCountKind resultsCountKind) {
+        this.resultsCountKind = resultsCountKind;
+    }
+
     @Override
     public void setSortable(boolean sortable) {
         this.sortable = sortable;
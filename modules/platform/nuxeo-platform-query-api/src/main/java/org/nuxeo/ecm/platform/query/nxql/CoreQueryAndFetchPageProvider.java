@@ -31,6 +31,7 @@ import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.IterableQueryResult;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.ReadReplicaHelper;
 import org.nuxeo.ecm.core.api.SortInfo;
 import org.nuxeo.ecm.core.query.sql.NXQL;
 import org.nuxeo.ecm.platform.query.api.AbstractPageProvider;
@@ -53,6 +54,9 @@ import org.nuxeo.ecm.platform.query.api.WhereClauseDefinition;
  * <p>
  * Also since 6.0, the page provider property named {@link #USE_UNRESTRICTED_SESSION_PROPERTY} allows specifying whether
  * the query should be run as unrestricted.
+ * <p>
+ * Since 11.5, the page provider property named {@link #REPLICA_LAG_TOLERANT_PROPERTY} allows the query to run on a
+ * read replica of the repository.
  *
  * @author Anahide Tchertchian
  * @since 5.4
@@ -75,6 +79,13 @@ public class CoreQueryAndFetchPageProvider extends AbstractPageProvider<Map<Stri
      */
     public static final String LANGUAGE_PROPERTY = "language";
 
+    /**
+     * Boolean property stating that the query tolerates the replication lag of the repository read replicas, if any.
+     *
+     * @since 11.5
+     */
+    public static final String REPLICA_LAG_TOLERANT_PROPERTY = "replicaLagTolerant";
+
     private static final long serialVersionUID = 1L;
 
     private static final Log log = LogFactory.getLog(CoreQueryDocumentPageProvider.class);
@@ -92,6 +103,9 @@ public class CoreQueryAndFetchPageProvider extends AbstractPageProvider<Map<Stri
 
     @Override
     public List<Map<String, Serializable>> getCurrentPage() {
+        if (isReplicaLagTolerant() && !ReadReplicaHelper.isLagTolerated()) {
+            return ReadReplicaHelper.runLagTolerant(this::getCurrentPage);
+        }
         checkQueryCache();
         CoreSession coreSession = null;
         long t0 = System.currentTimeMillis();
@@ -280,6 +294,13 @@ public class CoreQueryAndFetchPageProvider extends AbstractPageProvider<Map<Stri
         }
     }
 
+    /**
+     * @since 11.5
+     */
+    protected boolean isReplicaLagTolerant() {
+        return getBooleanProperty(REPLICA_LAG_TOLERANT_PROPERTY, false);
+    }
+
     protected boolean useUnrestrictedSession() {
         return getBooleanProperty(USE_UNRESTRICTED_SESSION_PROPERTY, false);
     }
@@ -20,23 +20,35 @@
 package org.nuxeo.ecm.platform.query.nxql;
 
 import java.io.Serializable;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Calendar;
 import java.util.List;
 import java.util.Map;
 
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.nuxeo.ecm.core.api.CoreInstance;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
 import org.nuxeo.ecm.core.api.Filter;
 import org.nuxeo.ecm.core.api.NuxeoException;
+import org.nuxeo.ecm.core.api.ReadReplicaHelper;
 import org.nuxeo.ecm.core.api.SortInfo;
+import org.nuxeo.ecm.core.api.model.PropertyException;
+import org.nuxeo.ecm.core.query.QueryParseException;
+import org.nuxeo.ecm.core.query.sql.NXQL;
+import org.nuxeo.ecm.core.query.sql.SQLQueryParser;
+import org.nuxeo.ecm.core.query.sql.model.KeysetTransformer;
+import org.nuxeo.ecm.core.query.sql.model.OrderByExpr;
+import org.nuxeo.ecm.core.query.sql.model.SQLQuery;
 import org.nuxeo.ecm.platform.query.api.AbstractPageProvider;
 import org.nuxeo.ecm.platform.query.api.PageProviderDefinition;
 import org.nuxeo.ecm.platform.query.api.PageSelections;
 import org.nuxeo.ecm.platform.query.api.QuickFilter;
+import org.nuxeo.ecm.platform.query.api.ResultsCountKind;
 import org.nuxeo.ecm.platform.query.api.WhereClauseDefinition;
 import org.nuxeo.runtime.api.Framework;
 import org.nuxeo.runtime.services.config.ConfigurationService;
@@ -53,6 +65,10 @@ import org.nuxeo.runtime.services.config.ConfigurationService;
  * Since 6.0, the page provider property named {@link #USE_UNRESTRICTED_SESSION_PROPERTY} allows specifying whether the
  * query should be run as unrestricted. When such a property is set to "true", the additional property
  * {@link #DETACH_DOCUMENTS_PROPERTY} is used to detach documents (defaults to true when session is unrestricted).
+ * <p>
+ * Since 11.5, the page provider property named {@link #KEYSET_PAGINATION_PROPERTY} enables keyset pagination, the
+ * property named {@link #RESULTS_COUNT_STRATEGY_PROPERTY} specifies how the results are counted, and the property named
+ * {@link #REPLICA_LAG_TOLERANT_PROPERTY} allows the query to run on a read replica of the repository.
  *
  * @author Anahide Tchertchian
  * @since 5.4
@@ -92,6 +108,62 @@ public class CoreQueryDocumentPageProvider extends AbstractPageProvider<Document
      */
     public static final String DETACH_DOCUMENTS_PROPERTY = "detachDocuments";
 
+    /**
+     * Boolean property enabling keyset pagination.
+     * <p>
+     * When the page following the current one is requested, its documents are queried as the ones sorted after the
+     * last document of the current page instead of using an offset, so that its cost doesn't depend on its position.
+     * The sort infos are completed by {@code ecm:uuid} to get a total order, and keyset pagination is only used when
+     * the sort keys of the last document are all known, a {@code null} value being sorted where the repository puts
+     * NULL values. Other page moves still use an offset.
+     *
+     * @since 11.5
+     */
+    public static final String KEYSET_PAGINATION_PROPERTY = "keysetPagination";
+
+    /**
+     * Property specifying how the results are counted, the name of a {@link ResultsCountKind}:
+     * <ul>
+     * <li>{@code exact} (default): the results are counted, up to {@link #MAX_RESULTS_PROPERTY} if defined,
+     * <li>{@code capped}: the results are counted up to {@link #RESULTS_COUNT_CAP_PROPERTY},
+     * <li>{@code estimated}: the count is estimated from the repository statistics if the repository can do it,
+     * <li>{@code cached}: the count of an identical query by the same user is reused for
+     * {@link #RESULTS_COUNT_CACHE_TTL_PROPERTY}.
+     * </ul>
+     * When an estimated or cached count is not available, the results are counted. When the current page is the last
+     * one, the exact count is known.
+     *
+     * @since 11.5
+     */
+    public static final String RESULTS_COUNT_STRATEGY_PROPERTY = "resultsCountStrategy";
+
+    /**
+     * Property specifying the limit up to which results are counted with the {@code capped} strategy.
+     *
+     * @since 11.5
+     */
+    public static final String RESULTS_COUNT_CAP_PROPERTY = "resultsCountCap";
+
+    /** @since 11.5 */
+    public static final long DEFAULT_RESULTS_COUNT_CAP = 10_000;
+
+    /**
+     * Property specifying the duration in seconds during which a count is reused with the {@code cached} strategy.
+     *
+     * @since 11.5
+     */
+    public static final String RESULTS_COUNT_CACHE_TTL_PROPERTY = "resultsCountCacheTTL";
+
+    /** @since 11.5 */
+    public static final long DEFAULT_RESULTS_COUNT_CACHE_TTL = 60;
+
+    /**
+     * Boolean property stating that the query tolerates the replication lag of the repository read replicas, if any.
+     *
+     * @since 11.5
+     */
+    public static final String REPLICA_LAG_TOLERANT_PROPERTY = "replicaLagTolerant";
+
     private static final Log log = LogFactory.getLog(CoreQueryDocumentPageProvider.class);
 
     private static final long serialVersionUID = 1L;
@@ -102,8 +174,25 @@ public class CoreQueryDocumentPageProvider extends AbstractPageProvider<Document
 
     protected Long maxResults;
 
+    /**
+     * The page index whose last document has the sort key values {@link #keysetValues}.
+     *
+     * @since 11.5
+     */
+    protected long keysetPageIndex = -1;
+
+    /**
+     * The sort key values of the last document of the page {@link #keysetPageIndex}, or {@code null}.
+     *
+     * @since 11.5
+     */
+    protected ArrayList<Serializable> keysetValues;
+
     @Override
     public List<DocumentModel> getCurrentPage() {
+        if (isReplicaLagTolerant() && !ReadReplicaHelper.isLagTolerated()) {
+            return ReadReplicaHelper.runLagTolerant(this::getCurrentPage);
+        }
 
         long t0 = System.currentTimeMillis();
 
@@ -127,9 +216,11 @@ public class CoreQueryDocumentPageProvider extends AbstractPageProvider<Document
                 final long minMaxPageSize = getMinMaxPageSize();
 
                 final long offset = getCurrentPageOffset();
+                final List<Serializable> sortValues = getKeysetSortValues();
                 if (log.isDebugEnabled()) {
-                    log.debug(String.format("Perform query for provider '%s': '%s' with pageSize=%s, offset=%s",
-                            getName(), query, Long.valueOf(minMaxPageSize), Long.valueOf(offset)));
+                    log.debug(String.format(
+                            "Perform query for provider '%s': '%s' with pageSize=%s, offset=%s, sortValues=%s",
+                            getName(), query, Long.valueOf(minMaxPageSize), Long.valueOf(offset), sortValues));
                 }
 
                 final DocumentModelList docs;
@@ -138,14 +229,36 @@ public class CoreQueryDocumentPageProvider extends AbstractPageProvider<Document
                 final boolean useUnrestricted = useUnrestrictedSession();
 
                 final boolean detachDocs = detachDocuments();
-                if (maxResults > 0) {
+                final ResultsCountKind countStrategy = getResultsCountStrategy();
+                // count known without counting the results
+                final long knownCount = sortValues == null ? getKnownResultsCount(coreSession, countStrategy) : -1;
+                final long countUpTo = countStrategy == ResultsCountKind.CAPPED ? getResultsCountCap() : maxResults;
+                if (sortValues != null) {
+                    if (useUnrestricted) {
+                        CoreQueryUnrestrictedSessionRunner r = new CoreQueryUnrestrictedSessionRunner(coreSession,
+                                query, filter, minMaxPageSize, sortValues, detachDocs);
+                        r.runUnrestricted();
+                        docs = r.getDocs();
+                    } else {
+                        docs = coreSession.queryAfter(query, getFilter(), minMaxPageSize, sortValues);
+                    }
+                } else if (knownCount >= 0) {
+                    if (useUnrestricted) {
+                        CoreQueryUnrestrictedSessionRunner r = new CoreQueryUnrestrictedSessionRunner(coreSession,
+                                query, filter, minMaxPageSize, offset, false, 0, detachDocs);
+                        r.runUnrestricted();
+                        docs = r.getDocs();
+                    } else {
+                        docs = coreSession.query(query, getFilter(), minMaxPageSize, offset, 0L);
+                    }
+                } else if (countUpTo > 0) {
                     if (useUnrestricted) {
                         CoreQueryUnrestrictedSessionRunner r = new CoreQueryUnrestrictedSessionRunner(coreSession,
-                                query, filter, minMaxPageSize, offset, false, maxResults, detachDocs);
+                                query, filter, minMaxPageSize, offset, false, countUpTo, detachDocs);
                         r.runUnrestricted();
                         docs = r.getDocs();
                     } else {
-                        docs = coreSession.query(query, getFilter(), minMaxPageSize, offset, maxResults);
+                        docs = coreSession.query(query, getFilter(), minMaxPageSize, offset, countUpTo);
                     }
                 } else {
                     // use a totalCount=true instead of countUpTo=-1 to
@@ -160,14 +273,39 @@ public class CoreQueryDocumentPageProvider extends AbstractPageProvider<Document
                     }
                 }
 
-                long resultsCount = docs.totalSize();
-                if (resultsCount < 0) {
-                    // results count is truncated
-                    setResultsCount(UNKNOWN_SIZE_AFTER_QUERY);
-                } else {
+                long resultsCount;
+                if (sortValues != null) {
+                    // not counted, keep the count from the previous pages
+                    resultsCount = getResultsCount();
+                } else if (knownCount >= 0) {
+                    ResultsCountKind kind = countStrategy;
+                    // an estimate cannot be lower than what was already seen
+                    resultsCount = Math.max(knownCount, offset + docs.size());
+                    if ((minMaxPageSize == 0 || docs.size() < minMaxPageSize) && (offset == 0 || !docs.isEmpty())) {
+                        // last page, the count is exact
+                        resultsCount = offset + docs.size();
+                        kind = ResultsCountKind.EXACT;
+                    }
                     setResultsCount(resultsCount);
+                    setResultsCountKind(kind);
+                } else {
+                    resultsCount = docs.totalSize();
+                    if (resultsCount < 0) {
+                        // results count is truncated
+                        setResultsCount(UNKNOWN_SIZE_AFTER_QUERY);
+                        setResultsCountKind(ResultsCountKind.CAPPED);
+                    } else {
+                        setResultsCount(resultsCount);
+                        setResultsCountKind(ResultsCountKind.EXACT);
+                        if (countStrategy == ResultsCountKind.CACHED) {
+                            ResultsCountCache.getInstance()
+                                             .put(coreSession.getRepositoryName(), getCountCachePrincipal(coreSession),
+                                                     query, resultsCount);
+                        }
+                    }
                 }
                 currentPageDocuments = docs;
+                updateKeyset(docs);
 
                 if (log.isDebugEnabled()) {
                     log.debug(String.format("Performed query for provider '%s': got %s hits (limit %s)", getName(),
@@ -220,6 +358,13 @@ public class CoreQueryDocumentPageProvider extends AbstractPageProvider<Document
             sort = sortInfos;
         }
 
+        if (sort != null && !sort.isEmpty() && isKeysetPagination()
+                && !NXQL.ECM_UUID.equals(sort.get(sort.size() - 1).getSortColumn())) {
+            // total order needed for keyset pagination
+            sort = new ArrayList<>(sort);
+            sort.add(new SortInfo(NXQL.ECM_UUID, true));
+        }
+
         SortInfo[] sortArray = null;
         if (sort != null) {
             sortArray = sort.toArray(new SortInfo[] {});
@@ -264,6 +409,13 @@ public class CoreQueryDocumentPageProvider extends AbstractPageProvider<Document
         }
     }
 
+    /**
+     * @since 11.5
+     */
+    protected boolean isReplicaLagTolerant() {
+        return getBooleanProperty(REPLICA_LAG_TOLERANT_PROPERTY, false);
+    }
+
     protected boolean useUnrestrictedSession() {
         return getBooleanProperty(USE_UNRESTRICTED_SESSION_PROPERTY, false);
     }
@@ -272,6 +424,180 @@ public class CoreQueryDocumentPageProvider extends AbstractPageProvider<Document
         return getBooleanProperty(DETACH_DOCUMENTS_PROPERTY, true);
     }
 
+    /**
+     * Gets the strategy used to count the results.
+     *
+     * @since 11.5
+     */
+    protected ResultsCountKind getResultsCountStrategy() {
+        String value = (String) getProperties().get(RESULTS_COUNT_STRATEGY_PROPERTY);
+        if (StringUtils.isBlank(value)) {
+            return ResultsCountKind.EXACT;
+        }
+        try {
+            return ResultsCountKind.of(value);
+        } catch (IllegalArgumentException e) {
+            log.warn(String.format("Invalid %s property value: %s for page provider: %s, fallback to exact.",
+                    RESULTS_COUNT_STRATEGY_PROPERTY, value, getName()));
+            return ResultsCountKind.EXACT;
+        }
+    }
+
+    /**
+     * Gets the limit up to which results are counted with the {@code capped} strategy.
+     *
+     * @since 11.5
+     */
+    protected long getResultsCountCap() {
+        return getLongProperty(RESULTS_COUNT_CAP_PROPERTY, DEFAULT_RESULTS_COUNT_CAP);
+    }
+
+    /**
+     * @since 11.5
+     */
+    protected long getLongProperty(String name, long defaultValue) {
+        Serializable value = getProperties().get(name);
+        if (value instanceof Number) {
+            return ((Number) value).longValue();
+        }
+        if (value != null) {
+            try {
+                return Long.parseLong(value.toString().trim());
+            } catch (NumberFormatException e) {
+                log.warn(String.format("Invalid %s property value: %s for page provider: %s, fallback to %s.", name,
+                        value, getName(), Long.valueOf(defaultValue)));
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Gets the results count if it can be known without counting the results, according to the strategy.
+     *
+     * @return the count, or {@code -1} if the results have to be counted
+     * @since 11.5
+     */
+    protected long getKnownResultsCount(CoreSession coreSession, ResultsCountKind countStrategy) {
+        switch (countStrategy) {
+        case ESTIMATED:
+            if (useUnrestrictedSession()) {
+                return CoreInstance.doPrivileged(coreSession, (CoreSession s) -> s.queryEstimatedCount(query));
+            } else {
+                return coreSession.queryEstimatedCount(query);
+            }
+        case CACHED:
+            Duration ttl = Duration.ofSeconds(
+                    getLongProperty(RESULTS_COUNT_CACHE_TTL_PROPERTY, DEFAULT_RESULTS_COUNT_CACHE_TTL));
+            return ResultsCountCache.getInstance()
+                                    .get(coreSession.getRepositoryName(), getCountCachePrincipal(coreSession), query,
+                                            ttl);
+        default:
+            return -1;
+        }
+    }
+
+    /**
+     * Gets the principal for which results counts are cached, or {@code null} for an unrestricted session.
+     *
+     * @since 11.5
+     */
+    protected String getCountCachePrincipal(CoreSession coreSession) {
+        return useUnrestrictedSession() ? null : coreSession.getPrincipal().getName();
+    }
+
+    /**
+     * @since 11.5
+     */
+    protected boolean isKeysetPagination() {
+        return getBooleanProperty(KEYSET_PAGINATION_PROPERTY, false);
+    }
+
+    /**
+     * Gets the sort key values to query the current page using keyset pagination, or {@code null} to use an offset.
+     *
+     * @since 11.5
+     */
+    protected List<Serializable> getKeysetSortValues() {
+        if (keysetValues == null || getPageSize() == 0 || getCurrentPageIndex() != keysetPageIndex + 1
+                || !isKeysetPagination()) {
+            return null;
+        }
+        return keysetValues;
+    }
+
+    /**
+     * Keeps the sort key values of the last document of the current page, to query the next page after it.
+     *
+     * @since 11.5
+     */
+    protected void updateKeyset(List<DocumentModel> docs) {
+        keysetPageIndex = -1;
+        keysetValues = null;
+        if (docs.isEmpty() || getPageSize() == 0 || !isKeysetPagination()) {
+            return;
+        }
+        List<OrderByExpr> keys;
+        try {
+            SQLQuery sqlQuery = SQLQueryParser.parse(query);
+            if (sqlQuery.orderBy == null || sqlQuery.orderBy.elements.isEmpty()) {
+                // no total order
+                return;
+            }
+            keys = KeysetTransformer.getKeys(sqlQuery);
+            if (keys.size() != sqlQuery.orderBy.elements.size()) {
+                // no total order
+                return;
+            }
+        } catch (QueryParseException e) {
+            return;
+        }
+        DocumentModel doc = docs.get(docs.size() - 1);
+        ArrayList<Serializable> values = new ArrayList<>(keys.size());
+        for (OrderByExpr key : keys) {
+            if (key.reference.cast != null || !addSortValue(doc, key.reference.name, values)) {
+                return;
+            }
+        }
+        keysetPageIndex = getCurrentPageIndex();
+        keysetValues = values;
+    }
+
+    /**
+     * Adds the value of a sort key for a document, which may be {@code null}, to the given list.
+     *
+     * @return {@code false} if the value is unknown or cannot be used for keyset pagination
+     * @since 11.5
+     */
+    protected boolean addSortValue(DocumentModel doc, String name, List<Serializable> values) {
+        Serializable value;
+        switch (name) {
+        case NXQL.ECM_UUID:
+            value = doc.getId();
+            break;
+        case NXQL.ECM_NAME:
+            value = doc.getName();
+            break;
+        case NXQL.ECM_PRIMARYTYPE:
+            value = doc.getType();
+            break;
+        default:
+            if (name.startsWith(NXQL.ECM_PREFIX)) {
+                return false;
+            }
+            try {
+                value = doc.getPropertyValue(name);
+            } catch (PropertyException e) {
+                return false;
+            }
+            if (value != null && !(value instanceof String || value instanceof Long || value instanceof Integer
+                    || value instanceof Double || value instanceof Calendar || value instanceof Boolean)) {
+                return false;
+            }
+        }
+        values.add(value);
+        return true;
+    }
+
     protected CoreSession getCoreSession() {
         Map<String, Serializable> props = getProperties();
         CoreSession coreSession = (CoreSession) props.get(CORE_SESSION_PROPERTY);
@@ -407,6 +733,8 @@ public class CoreQueryDocumentPageProvider extends AbstractPageProvider<Document
     public void refresh() {
         query = null;
         currentPageDocuments = null;
+        keysetPageIndex = -1;
+        keysetValues = null;
         super.refresh();
     }
 
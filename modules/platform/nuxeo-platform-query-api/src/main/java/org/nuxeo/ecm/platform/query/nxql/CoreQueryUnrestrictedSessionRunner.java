@@ -18,6 +18,9 @@
  */
 package org.nuxeo.ecm.platform.query.nxql;
 
+import java.io.Serializable;
+import java.util.List;
+
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
 import org.nuxeo.ecm.core.api.DocumentModelList;
@@ -45,6 +48,9 @@ public class CoreQueryUnrestrictedSessionRunner extends UnrestrictedSessionRunne
 
     protected final boolean detachDocuments;
 
+    /** @since 11.5 */
+    protected final List<Serializable> sortValues;
+
     protected DocumentModelList docs;
 
     public CoreQueryUnrestrictedSessionRunner(CoreSession session, String query, Filter filter, long limit,
@@ -57,11 +63,33 @@ public class CoreQueryUnrestrictedSessionRunner extends UnrestrictedSessionRunne
         this.countTotal = countTotal;
         this.countUpTo = countUpTo;
         this.detachDocuments = detachDocuments;
+        sortValues = null;
+    }
+
+    /**
+     * Constructor for a keyset pagination query, returning the documents sorted after the given sort key values.
+     *
+     * @since 11.5
+     * @see CoreSession#queryAfter
+     */
+    public CoreQueryUnrestrictedSessionRunner(CoreSession session, String query, Filter filter, long limit,
+            List<Serializable> sortValues, boolean detachDocuments) {
+        super(session);
+        this.query = query;
+        this.filter = filter;
+        this.limit = limit;
+        offset = 0;
+        countTotal = false;
+        countUpTo = 0;
+        this.detachDocuments = detachDocuments;
+        this.sortValues = sortValues;
     }
 
     @Override
     public void run() {
-        if (countTotal) {
+        if (sortValues != null) {
+            docs = session.queryAfter(query, filter, limit, sortValues);
+        } else if (countTotal) {
             docs = session.query(query, filter, limit, offset, countTotal);
         } else {
             docs = session.query(query, filter, limit, offset, countUpTo);
@@ -0,0 +1,96 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.ecm.platform.query.nxql;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Cache of the results counts of queries, shared by all the page providers.
+ * <p>
+ * The counts depend on the user, so the key includes the repository and principal along with the query. Each lookup
+ * gives the maximum age of the counts it accepts.
+ *
+ * @since 11.5
+ */
+public class ResultsCountCache {
+
+    protected static final int MAX_SIZE = 10_000;
+
+    /** Upper bound for the age of all the counts. */
+    protected static final Duration MAX_TTL = Duration.ofHours(1);
+
+    protected static final ResultsCountCache INSTANCE = new ResultsCountCache(MAX_SIZE, MAX_TTL);
+
+    protected static class Entry {
+
+        protected final long count;
+
+        protected final long time;
+
+        protected Entry(long count, long time) {
+            this.count = count;
+            this.time = time;
+        }
+    }
+
+    protected final Cache<List<String>, Entry> cache;
+
+    public ResultsCountCache(int maxSize, Duration maxTTL) {
+        cache = CacheBuilder.newBuilder()
+                            .maximumSize(maxSize)
+                            .expireAfterWrite(maxTTL.toMillis(), TimeUnit.MILLISECONDS)
+                            .build();
+    }
+
+    public static ResultsCountCache getInstance() {
+        return INSTANCE;
+    }
+
+    protected static List<String> getKey(String repositoryName, String principal, String query) {
+        return Arrays.asList(repositoryName, principal, query);
+    }
+
+    /**
+     * Gets the count of a query if it's not older than the given TTL.
+     *
+     * @return the count, or {@code -1} if it is missing or too old
+     */
+    public long get(String repositoryName, String principal, String query, Duration ttl) {
+        Entry entry = cache.getIfPresent(getKey(repositoryName, principal, query));
+        if (entry == null || System.currentTimeMillis() - entry.time > ttl.toMillis()) {
+            return -1;
+        }
+        return entry.count;
+    }
+
+    public void put(String repositoryName, String principal, String query, long count) {
+        cache.put(getKey(repositoryName, principal, query), new Entry(count, System.currentTimeMillis()));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+}
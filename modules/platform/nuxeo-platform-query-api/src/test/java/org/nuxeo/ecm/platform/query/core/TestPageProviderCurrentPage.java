@@ -22,8 +22,11 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotEquals;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import javax.inject.Inject;
 
@@ -32,6 +35,7 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.nuxeo.ecm.core.api.CoreSession;
 import org.nuxeo.ecm.core.api.DocumentModel;
+import org.nuxeo.ecm.core.api.SortInfo;
 import org.nuxeo.ecm.core.test.CoreFeature;
 import org.nuxeo.ecm.core.test.annotations.Granularity;
 import org.nuxeo.ecm.core.test.annotations.RepositoryConfig;
@@ -39,7 +43,9 @@ import org.nuxeo.ecm.platform.query.api.PageProvider;
 import org.nuxeo.ecm.platform.query.api.PageProviderDefinition;
 import org.nuxeo.ecm.platform.query.api.PageProviderService;
 import org.nuxeo.ecm.platform.query.api.PageSelections;
+import org.nuxeo.ecm.platform.query.api.ResultsCountKind;
 import org.nuxeo.ecm.platform.query.nxql.CoreQueryDocumentPageProvider;
+import org.nuxeo.ecm.platform.query.nxql.ResultsCountCache;
 import org.nuxeo.runtime.test.runner.Deploy;
 import org.nuxeo.runtime.test.runner.Features;
 import org.nuxeo.runtime.test.runner.FeaturesRunner;
@@ -131,4 +137,137 @@ public class TestPageProviderCurrentPage {
         assertEquals(prevId, ((DocumentModel)page.get(0)).getId());
     }
 
+    @Test
+    public void testPageProviderKeysetPagination() {
+        PageProviderDefinition ppd = pps.getPageProviderDefinition(DUMMY_FETCH_DOCUMENTS);
+        HashMap<String, Serializable> props = new HashMap<>();
+        props.put(CoreQueryDocumentPageProvider.CORE_SESSION_PROPERTY, (Serializable) session);
+        props.put(CoreQueryDocumentPageProvider.KEYSET_PAGINATION_PROPERTY, "true");
+        // all the documents have the same sort value, ecm:uuid sorts them
+        List<SortInfo> sortInfos = Collections.singletonList(new SortInfo("dc:source", true));
+        long pageSize = 100;
+        PageProvider<?> pp = pps.getPageProvider(DUMMY_FETCH_DOCUMENTS, ppd, null, sortInfos, pageSize, 0L, props);
+        long numDocs = ppd.getMaxPageSize() + SECOND_PAGE_NUM_DOCS;
+        List<String> ids = new ArrayList<>();
+        for (;;) {
+            List<?> page = pp.getCurrentPage();
+            page.forEach(doc -> ids.add(((DocumentModel) doc).getId()));
+            // the results count of the first page is kept
+            assertEquals(numDocs, pp.getResultsCount());
+            if (!pp.isNextPageAvailable()) {
+                break;
+            }
+            pp.nextPage();
+        }
+        List<String> expected = session.query("SELECT * FROM Document WHERE dc:source = 'dummy'"
+                + " ORDER BY dc:source, ecm:uuid").stream().map(DocumentModel::getId).collect(Collectors.toList());
+        assertEquals(expected, ids);
+        // going back to a previous page uses an offset
+        pp.setCurrentPage(1);
+        assertEquals(expected.get((int) pageSize), ((DocumentModel) pp.getCurrentPage().get(0)).getId());
+    }
+
+    @Test
+    public void testPageProviderKeysetPaginationNullValues() {
+        // some documents have a title, the others have a null title
+        List<DocumentModel> docs = session.query("SELECT * FROM Document WHERE dc:source = 'dummy'");
+        for (int i = 0; i < docs.size(); i += 3) {
+            DocumentModel doc = docs.get(i);
+            doc.setPropertyValue("dc:title", "title " + (i % 7));
+            session.saveDocument(doc);
+        }
+        session.save();
+        checkKeysetPagination(true);
+        checkKeysetPagination(false);
+    }
+
+    protected void checkKeysetPagination(boolean ascending) {
+        PageProviderDefinition ppd = pps.getPageProviderDefinition(DUMMY_FETCH_DOCUMENTS);
+        HashMap<String, Serializable> props = new HashMap<>();
+        props.put(CoreQueryDocumentPageProvider.CORE_SESSION_PROPERTY, (Serializable) session);
+        props.put(CoreQueryDocumentPageProvider.KEYSET_PAGINATION_PROPERTY, "true");
+        List<SortInfo> sortInfos = Collections.singletonList(new SortInfo("dc:title", ascending));
+        PageProvider<?> pp = pps.getPageProvider(DUMMY_FETCH_DOCUMENTS, ppd, null, sortInfos, 10L, 0L, props);
+        List<String> ids = new ArrayList<>();
+        for (;;) {
+            pp.getCurrentPage().forEach(doc -> ids.add(((DocumentModel) doc).getId()));
+            if (!pp.isNextPageAvailable()) {
+                break;
+            }
+            pp.nextPage();
+        }
+        // the documents with a null title are neither skipped nor repeated
+        String query = "SELECT * FROM Document WHERE dc:source = 'dummy' ORDER BY dc:title" + (ascending ? "" : " DESC")
+                + ", ecm:uuid";
+        List<String> expected = session.query(query).stream().map(DocumentModel::getId).collect(Collectors.toList());
+        assertEquals(expected, ids);
+    }
+
+    @Test
+    public void testPageProviderResultsCountStrategies() {
+        PageProviderDefinition ppd = pps.getPageProviderDefinition(DUMMY_FETCH_DOCUMENTS);
+        long numDocs = ppd.getMaxPageSize() + SECOND_PAGE_NUM_DOCS;
+        HashMap<String, Serializable> props = new HashMap<>();
+        props.put(CoreQueryDocumentPageProvider.CORE_SESSION_PROPERTY, (Serializable) session);
+        PageProvider<?> pp = pps.getPageProvider(DUMMY_FETCH_DOCUMENTS, ppd, null, null, 10L, 0L, props);
+        pp.getCurrentPage();
+        assertEquals(ResultsCountKind.EXACT, pp.getResultsCountKind());
+        assertEquals(numDocs, pp.getResultsCount());
+
+        // capped, below the cap the count is exact
+        props.put(CoreQueryDocumentPageProvider.RESULTS_COUNT_STRATEGY_PROPERTY, "capped");
+        props.put(CoreQueryDocumentPageProvider.RESULTS_COUNT_CAP_PROPERTY, "100000");
+        pp = pps.getPageProvider(DUMMY_FETCH_DOCUMENTS, ppd, null, null, 10L, 0L, props);
+        pp.getCurrentPage();
+        assertEquals(ResultsCountKind.EXACT, pp.getResultsCountKind());
+        assertEquals(numDocs, pp.getResultsCount());
+        // above the cap the count is truncated
+        props.put(CoreQueryDocumentPageProvider.RESULTS_COUNT_CAP_PROPERTY, "100");
+        pp = pps.getPageProvider(DUMMY_FETCH_DOCUMENTS, ppd, null, null, 10L, 0L, props);
+        pp.getCurrentPage();
+        assertEquals(ResultsCountKind.CAPPED, pp.getResultsCountKind());
+        assertEquals(PageProvider.UNKNOWN_SIZE_AFTER_QUERY, pp.getResultsCount());
+        props.remove(CoreQueryDocumentPageProvider.RESULTS_COUNT_CAP_PROPERTY);
+
+        // cached, the first query counts the results
+        ResultsCountCache.getInstance().invalidateAll();
+        props.put(CoreQueryDocumentPageProvider.RESULTS_COUNT_STRATEGY_PROPERTY, "cached");
+        pp = pps.getPageProvider(DUMMY_FETCH_DOCUMENTS, ppd, null, null, 10L, 0L, props);
+        pp.getCurrentPage();
+        assertEquals(ResultsCountKind.EXACT, pp.getResultsCountKind());
+        assertEquals(numDocs, pp.getResultsCount());
+        // the next one reuses the count
+        pp = pps.getPageProvider(DUMMY_FETCH_DOCUMENTS, ppd, null, null, 10L, 0L, props);
+        pp.getCurrentPage();
+        assertEquals(ResultsCountKind.CACHED, pp.getResultsCountKind());
+        assertEquals(numDocs, pp.getResultsCount());
+        // except on the last page, where the results are all seen
+        pp.setCurrentPage(pp.getNumberOfPages() - 1);
+        pp.getCurrentPage();
+        assertEquals(ResultsCountKind.EXACT, pp.getResultsCountKind());
+        assertEquals(numDocs, pp.getResultsCount());
+    }
+
+    @Test
+    public void testPageProviderResultsCountBelowMaxResults() {
+        PageProviderDefinition ppd = pps.getPageProviderDefinition(DUMMY_FETCH_DOCUMENTS);
+        long numDocs = ppd.getMaxPageSize() + SECOND_PAGE_NUM_DOCS;
+        HashMap<String, Serializable> props = new HashMap<>();
+        props.put(CoreQueryDocumentPageProvider.CORE_SESSION_PROPERTY, (Serializable) session);
+        props.put(CoreQueryDocumentPageProvider.MAX_RESULTS_PROPERTY, "10000");
+        // the count is limited by maxResults but not truncated
+        PageProvider<?> pp = pps.getPageProvider(DUMMY_FETCH_DOCUMENTS, ppd, null, null, 10L, 0L, props);
+        pp.getCurrentPage();
+        assertEquals(ResultsCountKind.EXACT, pp.getResultsCountKind());
+        assertEquals(numDocs, pp.getResultsCount());
+
+        // same for the first query of the cached strategy, which counts up to maxResults
+        ResultsCountCache.getInstance().invalidateAll();
+        props.put(CoreQueryDocumentPageProvider.RESULTS_COUNT_STRATEGY_PROPERTY, "cached");
+        pp = pps.getPageProvider(DUMMY_FETCH_DOCUMENTS, ppd, null, null, 10L, 0L, props);
+        pp.getCurrentPage();
+        assertEquals(ResultsCountKind.EXACT, pp.getResultsCountKind());
+        assertEquals(numDocs, pp.getResultsCount());
+    }
+
 }
@@ -0,0 +1,381 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.common.file;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * A LRU cache of {@link File}s with maximum filesystem size, designed for many concurrent accesses.
+ * <p>
+ * The files are stored in the cache directory like for {@link LRUFileCache}, but their access times and sizes are kept
+ * in memory in lock-striped segments, so that accesses to different keys don't contend, and no filesystem scan or
+ * modification time update is needed. The total size and number of files are maintained incrementally.
+ * <p>
+ * When the cache becomes bigger than its maximum size or number of files, the least recently used entries that are old
+ * enough are deleted asynchronously by a background thread, not by the thread that put the file in the cache.
+ * <p>
+ * Files added to or deleted from the cache directory by other means are detected when their key is accessed.
+ *
+ * @since 11.5
+ */
+public class ShardedLRUFileCache extends LRUFileCache {
+
+    private static final Log log = LogFactory.getLog(ShardedLRUFileCache.class);
+
+    /** Default number of segments. */
+    public static final int DEFAULT_SEGMENTS = 16;
+
+    /**
+     * A cache entry.
+     */
+    protected static class CacheEntry {
+
+        protected final long size;
+
+        /** Last access time, in milliseconds. */
+        protected volatile long time;
+
+        protected CacheEntry(long size, long time) {
+            this.size = size;
+            this.time = time;
+        }
+    }
+
+    /**
+     * A segment of the cache, holding the entries of a subset of the keys in access order.
+     */
+    protected static class Segment {
+
+        protected final ReentrantLock lock = new ReentrantLock();
+
+        /** Entries in access order (least recently used first), guarded by {@link #lock}. */
+        protected final LinkedHashMap<String, CacheEntry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    protected final Segment[] segments;
+
+    protected final AtomicLong size = new AtomicLong();
+
+    protected final AtomicLong count = new AtomicLong();
+
+    protected final AtomicBoolean evictionScheduled = new AtomicBoolean();
+
+    protected final ExecutorService evictor;
+
+    /**
+     * Constructs a cache in the given directory with the given maximum size (in bytes).
+     * <p>
+     * The files already present in the directory are part of the cache.
+     *
+     * @param dir the directory to use to store cached files
+     * @param maxSize the maximum size of the cache (in bytes)
+     * @param maxCount the maximum number of files in the cache
+     * @param minAge the minimum age of a file in the cache to be eligible for removal (in seconds)
+     * @param segments the number of segments, rounded up to a power of two
+     */
+    public ShardedLRUFileCache(File dir, long maxSize, long maxCount, long minAge, int segments) {
+        super(dir, maxSize, maxCount, minAge);
+        int n = Integer.highestOneBit(Math.max(1, segments) * 2 - 1);
+        this.segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            this.segments[i] = new Segment();
+        }
+        evictor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "Nuxeo-FileCache-Evictor-" + dir.getName());
+            thread.setDaemon(true);
+            return thread;
+        });
+        loadEntries();
+    }
+
+    /**
+     * Registers the files already present in the cache directory, oldest first.
+     */
+    protected void loadEntries() {
+        List<PathInfo> files = new ArrayList<>();
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, RegularFileFilter.INSTANCE)) {
+            for (Path path : ds) {
+                try {
+                    files.add(new PathInfo(path));
+                } catch (IOException e) {
+                    log.error(e, e);
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // no directory yet
+        } catch (IOException e) {
+            log.error(e, e);
+        }
+        Collections.sort(files, Collections.reverseOrder()); // oldest first
+        for (PathInfo pi : files) {
+            addEntry(pi.path.getFileName().toString(), pi.size, pi.time);
+        }
+        scheduleEviction();
+    }
+
+    protected Segment getSegment(String key) {
+        int h = key.hashCode();
+        h ^= h >>> 16;
+        return segments[h & (segments.length - 1)];
+    }
+
+    /**
+     * Adds or replaces an entry, and updates the size accounting.
+     */
+    protected void addEntry(String key, long fileSize, long time) {
+        Segment segment = getSegment(key);
+        CacheEntry previous;
+        segment.lock.lock();
+        try {
+            previous = segment.entries.put(key, new CacheEntry(fileSize, time));
+        } finally {
+            segment.lock.unlock();
+        }
+        if (previous == null) {
+            count.incrementAndGet();
+            size.addAndGet(fileSize);
+        } else {
+            size.addAndGet(fileSize - previous.size);
+        }
+    }
+
+    /**
+     * Removes an entry if it's still the given one, and updates the size accounting.
+     *
+     * @return {@code true} if the entry was removed
+     */
+    protected boolean removeEntry(Segment segment, String key, CacheEntry entry) {
+        boolean removed;
+        segment.lock.lock();
+        try {
+            removed = segment.entries.remove(key, entry);
+        } finally {
+            segment.lock.unlock();
+        }
+        if (removed) {
+            count.decrementAndGet();
+            size.addAndGet(-entry.size);
+        }
+        return removed;
+    }
+
+    @Override
+    public long getSize() {
+        return size.get();
+    }
+
+    @Override
+    public int getNumberOfItems() {
+        return (int) count.get();
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            List<CacheEntry> removed;
+            segment.lock.lock();
+            try {
+                removed = new ArrayList<>(segment.entries.values());
+                segment.entries.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+            for (CacheEntry entry : removed) {
+                count.decrementAndGet();
+                size.addAndGet(-entry.size);
+            }
+        }
+        super.clear();
+    }
+
+    @Override
+    public File putFile(String key, File file) throws IllegalArgumentException, IOException {
+        Path source = file.toPath();
+
+        // put file in cache
+        checkKey(key);
+        Path path = dir.resolve(key);
+        try {
+            long fileSize = Files.size(source);
+            Files.move(source, path, ATOMIC_MOVE, REPLACE_EXISTING);
+            addEntry(key, fileSize, System.currentTimeMillis());
+            scheduleEviction();
+        } catch (FileAlreadyExistsException faee) {
+            // already something there
+            getFile(key);
+            // remove unused tmp file
+            try {
+                Files.delete(source);
+            } catch (IOException e) {
+                log.error(e, e);
+            }
+        }
+        return path.toFile();
+    }
+
+    @Override
+    public File getFile(String key) {
+        checkKey(key);
+        Path path = dir.resolve(key);
+        Segment segment = getSegment(key);
+        CacheEntry entry;
+        segment.lock.lock();
+        try {
+            entry = segment.entries.get(key); // records access in the segment order
+        } finally {
+            segment.lock.unlock();
+        }
+        if (!Files.exists(path)) {
+            if (entry != null) {
+                // deleted externally
+                removeEntry(segment, key, entry);
+            }
+            return null;
+        }
+        if (entry == null) {
+            // added externally
+            try {
+                addEntry(key, Files.size(path), System.currentTimeMillis());
+                scheduleEviction();
+            } catch (IOException e) {
+                log.error(e, e);
+            }
+        } else {
+            entry.time = System.currentTimeMillis();
+        }
+        return path.toFile();
+    }
+
+    protected boolean isOverLimits() {
+        return size.get() > maxSize || count.get() > maxCount;
+    }
+
+    /**
+     * Schedules an asynchronous eviction if the cache is over its limits and no eviction is already scheduled.
+     */
+    protected void scheduleEviction() {
+        if (isOverLimits() && evictionScheduled.compareAndSet(false, true)) {
+            evictor.execute(() -> {
+                int evicted = 0;
+                try {
+                    evicted = evict();
+                } catch (RuntimeException e) {
+                    // don't kill the evictor
+                    log.error(e, e);
+                } finally {
+                    evictionScheduled.set(false);
+                }
+                if (evicted > 0) {
+                    // files put while finishing may have been skipped
+                    scheduleEviction();
+                }
+            });
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries that are old enough, until the cache is within its limits.
+     * <p>
+     * The least recently used entry of each segment is a candidate, the oldest of the candidates is deleted first.
+     *
+     * @return the number of deleted entries
+     */
+    protected int evict() {
+        int evicted = 0;
+        while (isOverLimits()) {
+            long threshold = System.currentTimeMillis() - minAgeMillis;
+            Segment oldestSegment = null;
+            String oldestKey = null;
+            CacheEntry oldestEntry = null;
+            for (Segment segment : segments) {
+                segment.lock.lock();
+                try {
+                    Iterator<Entry<String, CacheEntry>> it = segment.entries.entrySet().iterator();
+                    if (it.hasNext()) {
+                        Entry<String, CacheEntry> es = it.next();
+                        CacheEntry entry = es.getValue();
+                        if (entry.time < threshold && (oldestEntry == null || entry.time < oldestEntry.time)) {
+                            oldestSegment = segment;
+                            oldestKey = es.getKey();
+                            oldestEntry = entry;
+                        }
+                    }
+                } finally {
+                    segment.lock.unlock();
+                }
+            }
+            if (oldestEntry == null) {
+                // nothing old enough to be deleted
+                break;
+            }
+            if (removeEntry(oldestSegment, oldestKey, oldestEntry)) {
+                evicted++;
+                try {
+                    Files.deleteIfExists(dir.resolve(oldestKey));
+                } catch (IOException e) {
+                    log.error(e, e);
+                }
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * Waits for the pending evictions to be done.
+     */
+    public void waitForEviction() throws InterruptedException, ExecutionException {
+        do {
+            evictor.submit(() -> {
+                // nothing, just wait for the previous tasks
+            }).get();
+        } while (evictionScheduled.get());
+    }
+
+    /**
+     * Stops the background eviction thread. The cache must not be used afterwards.
+     */
+    public void close() {
+        evictor.shutdown();
+    }
+
+}
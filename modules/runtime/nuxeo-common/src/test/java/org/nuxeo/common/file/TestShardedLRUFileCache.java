@@ -0,0 +1,201 @@
+/*
+ * (C) Copyright 2021 Nuxeo (http://nuxeo.com/) and others.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *
+ * Contributors:
+ *     Florent Guillaume
+ */
+package org.nuxeo.common.file;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class TestShardedLRUFileCache {
+
+    public File dir;
+
+    @Before
+    public void setUp() throws Exception {
+        dir = File.createTempFile("nxtestshardedlrufilecache.", "", new File(System.getProperty("java.io.tmpdir")));
+        dir.delete();
+        dir.mkdir();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        FileUtils.deleteQuietly(dir);
+    }
+
+    public long getDirSize() {
+        long size = 0;
+        for (File f : dir.listFiles()) {
+            size += f.length();
+        }
+        return size;
+    }
+
+    @Test
+    public void testShardedLRUFileCache() throws Exception {
+        ShardedLRUFileCache cache = new ShardedLRUFileCache(dir, 100, 9999, 1, 4); // 100 bytes max
+        assertEquals(0, cache.getSize());
+        assertEquals(0, cache.getNumberOfItems());
+
+        byte[] buf = new byte[30];
+
+        cache.putFile("1", new ByteArrayInputStream(buf));
+        cache.putFile("2", new ByteArrayInputStream(buf));
+        Thread.sleep(10);
+        cache.putFile("3", new ByteArrayInputStream(buf));
+        cache.waitForEviction();
+        assertEquals(3, cache.getNumberOfItems());
+        assertEquals(90, cache.getSize());
+        assertEquals(90, getDirSize());
+
+        // access 1 so that 2 becomes the least recently used
+        Thread.sleep(1100);
+        assertNotNull(cache.getFile("1"));
+        cache.putFile("4", new ByteArrayInputStream(buf));
+        cache.waitForEviction();
+        assertEquals(3, cache.getNumberOfItems());
+        assertEquals(90, cache.getSize());
+        assertEquals(90, getDirSize());
+        assertTrue(new File(dir, "1").exists());
+        assertFalse(new File(dir, "2").exists());
+        assertTrue(new File(dir, "3").exists());
+        assertTrue(new File(dir, "4").exists());
+
+        // store something bigger than the whole cache
+        Thread.sleep(1100);
+        cache.putFile("5", new ByteArrayInputStream(new byte[150]));
+        cache.waitForEviction();
+        assertEquals(1, cache.getNumberOfItems());
+        assertEquals(150, cache.getSize());
+        assertEquals(150, getDirSize());
+        assertTrue(new File(dir, "5").exists());
+
+        // clear
+        cache.clear();
+        assertEquals(0, cache.getNumberOfItems());
+        assertEquals(0, cache.getSize());
+        assertEquals(0, getDirSize());
+    }
+
+    @Test
+    public void testShardedLRUFileCacheMinAge() throws Exception {
+        ShardedLRUFileCache cache = new ShardedLRUFileCache(dir, 10000, 2, 3600, 4); // 2 files max
+        byte[] buf = new byte[30];
+        cache.putFile("1", new ByteArrayInputStream(buf));
+        cache.putFile("2", new ByteArrayInputStream(buf));
+        cache.putFile("3", new ByteArrayInputStream(buf));
+        cache.waitForEviction();
+        // nothing old enough to be removed
+        assertEquals(3, cache.getNumberOfItems());
+        assertEquals(90, getDirSize());
+    }
+
+    @Test
+    public void testShardedLRUFileCacheExistingFiles() throws Exception {
+        FileUtils.writeByteArrayToFile(new File(dir, "1"), new byte[30]);
+        FileUtils.writeByteArrayToFile(new File(dir, "2"), new byte[40]);
+        ShardedLRUFileCache cache = new ShardedLRUFileCache(dir, 100, 9999, 0, 4);
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(70, cache.getSize());
+        assertNotNull(cache.getFile("1"));
+    }
+
+    @Test
+    public void testShardedLRUFileCacheExternalChanges() throws Exception {
+        ShardedLRUFileCache cache = new ShardedLRUFileCache(dir, 100, 9999, 0, 4);
+        cache.putFile("1", new ByteArrayInputStream(new byte[30]));
+        assertEquals(1, cache.getNumberOfItems());
+        assertEquals(30, cache.getSize());
+
+        // simulate external process doing cleanup
+        FileUtils.deleteDirectory(dir);
+        assertNull(cache.getFile("1"));
+        assertEquals(0, cache.getNumberOfItems());
+        assertEquals(0, cache.getSize());
+
+        // we can still create entries without crashing
+        cache.putFile("2", new ByteArrayInputStream(new byte[40]));
+        assertEquals(1, cache.getNumberOfItems());
+        assertEquals(40, cache.getSize());
+
+        // file added externally
+        FileUtils.writeByteArrayToFile(new File(dir, "3"), new byte[20]);
+        assertNotNull(cache.getFile("3"));
+        assertEquals(2, cache.getNumberOfItems());
+        assertEquals(60, cache.getSize());
+    }
+
+    @Test
+    public void testShardedLRUFileCacheConcurrency() throws Exception {
+        ShardedLRUFileCache cache = new ShardedLRUFileCache(dir, 1000, 9999, 0, 8);
+        int n = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(n);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < n; t++) {
+                int thread = t;
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        String key = thread + "-" + i;
+                        cache.putFile(key, new ByteArrayInputStream(new byte[10]));
+                        cache.getFile(key);
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Thread.sleep(10);
+        cache.putFile("last", new ByteArrayInputStream(new byte[10]));
+        cache.waitForEviction();
+        assertEquals(getDirSize(), cache.getSize());
+        assertEquals(dir.listFiles().length, cache.getNumberOfItems());
+        assertTrue(cache.getSize() <= 1000);
+    }
+
+    @Test
+    public void testShardedLRUFileCacheClose() throws Exception {
+        ShardedLRUFileCache cache = new ShardedLRUFileCache(dir, 100, 9999, 0, 4);
+        cache.putFile("1", new ByteArrayInputStream(new byte[10]));
+        cache.close();
+        assertTrue(cache.evictor.awaitTermination(10, TimeUnit.SECONDS));
+        // the cached files are still there
+        assertNotNull(cache.getFile("1"));
+    }
+
+}